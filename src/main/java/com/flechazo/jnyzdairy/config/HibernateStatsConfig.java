@@ -0,0 +1,62 @@
+package com.flechazo.jnyzdairy.config;
+
+import com.flechazo.jnyzdairy.service.QueryStatsService;
+import com.flechazo.jnyzdairy.util.QueryProbeStatementInspector;
+import com.flechazo.jnyzdairy.util.QueryProbeStatistics;
+import com.flechazo.jnyzdairy.util.RepositoryStatsInterceptor;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+
+/**
+ * Hibernate统计配置类，注册收集查询统计所需的Hibernate钩子，并在每个Spring Data仓库代理上添加统计拦截器。
+ * <p>
+ * 是否启用由配置项 {@code app.query-stats.enabled} 决定，关闭时Hibernate不收集统计信息，拦截器直接执行仓库方法。
+ *
+ * @author Flechazo
+ */
+@Configuration
+public class HibernateStatsConfig {
+
+    /**
+     * 启用Hibernate统计信息，并注册将事件记入当前仓库方法调用的统计实现和语句检查器。
+     *
+     * @param queryStatsConfig 查询统计配置
+     * @return Hibernate属性定制器
+     */
+    @Bean
+    public HibernatePropertiesCustomizer queryStatsHibernatePropertiesCustomizer(QueryStatsConfig queryStatsConfig) {
+        return properties -> {
+            if (queryStatsConfig.isEnabled()) {
+                properties.put(AvailableSettings.GENERATE_STATISTICS, true);
+                properties.put(AvailableSettings.STATS_BUILDER, QueryProbeStatistics.FACTORY);
+                properties.put(AvailableSettings.STATEMENT_INSPECTOR, new QueryProbeStatementInspector());
+            }
+        };
+    }
+
+    /**
+     * 在仓库工厂创建代理之前添加统计拦截器。声明为静态方法，避免提前初始化本配置类。
+     *
+     * @param queryStatsServiceProvider 查询统计服务的提供者，在第一次调用仓库方法时才获取
+     * @return Bean后处理器
+     */
+    @Bean
+    public static BeanPostProcessor repositoryStatsPostProcessor(ObjectProvider<QueryStatsService> queryStatsServiceProvider) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean) {
+                    factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+                            (proxyFactory, information) -> proxyFactory.addAdvice(new RepositoryStatsInterceptor(
+                                    information.getRepositoryInterface().getSimpleName(), queryStatsServiceProvider))));
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,164 @@
+package com.flechazo.jnyzdairy.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 图片处理配置类，用于从<b>application.properties</b>文件中加载图片处理相关的配置。
+ * <p>该类通过@ConfigurationProperties注解指定前缀来绑定配置文件中的属性。
+ *
+ * @author Flechazo
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.image")
+public class ImageConfig {
+
+    /**
+     * 单张图片允许的最大像素数（宽 × 高）。
+     * <p>
+     * 在解码像素之前根据文件头中的尺寸进行检查，防止小文件声明超大尺寸造成内存耗尽（解压炸弹）。
+     */
+    private long maxPixels = 40_000_000L;
+
+    /**
+     * JPEG编码相关配置。
+     */
+    private Jpeg jpeg = new Jpeg();
+
+    /**
+     * 上传原图的体积优化配置。
+     */
+    private Optimize optimize = new Optimize();
+
+    /**
+     * 水印相关配置。
+     */
+    private Watermark watermark = new Watermark();
+
+    /**
+     * 图片变体（缩略图等）相关配置。
+     */
+    private Variant variant = new Variant();
+
+    /**
+     * 原图优化配置，控制上传图片在保存前的元数据去除和重新编码。
+     */
+    @Data
+    public static class Optimize {
+
+        /**
+         * 是否启用原图优化。
+         */
+        private boolean enabled = true;
+
+        /**
+         * 是否尝试以渐进式编码有损地重新编码JPEG；关闭时只去除元数据，扫描数据保持不变。
+         */
+        private boolean reencodeJpeg = false;
+
+        /**
+         * 重新编码JPEG时使用的压缩质量，取值范围0.0-1.0。
+         */
+        private float jpegQuality = 0.92f;
+    }
+
+    /**
+     * 水印配置，控制水印的样式以及水印图层缓存。
+     */
+    @Data
+    public static class Watermark {
+
+        /**
+         * 文字水印的字体名称。
+         */
+        private String fontName = "Arial";
+
+        /**
+         * 文字水印在参考宽度下的字号。
+         */
+        private int fontSize = 30;
+
+        /**
+         * 水印的不透明度，取值范围0.0-1.0。
+         */
+        private float opacity = 0.5f;
+
+        /**
+         * 水印与图片右下角的间距（像素）。
+         */
+        private int margin = 10;
+
+        /**
+         * 参考宽度（像素），宽于该值的图片按比例放大水印；不大于0时水印始终使用原始大小。
+         */
+        private int referenceWidth = 1920;
+
+        /**
+         * 尺寸档位步长（像素），目标图片宽度向下取整到该步长的倍数后作为缓存键的一部分。
+         */
+        private int bucketStep = 256;
+
+        /**
+         * 水印图层缓存的最大条目数。
+         */
+        private int cacheSize = 64;
+
+        /**
+         * 合成后端：{@code java2d} 使用Graphics2D合成；{@code raster} 直接在像素数组上合成，
+         * 以 {@code vector} 配置构建且运行时启用了 {@code jdk.incubator.vector} 模块时使用SIMD指令。
+         */
+        private String compositor = "java2d";
+    }
+
+    /**
+     * JPEG编码配置，应用于所有由服务端重新编码的JPEG图片。
+     */
+    @Data
+    public static class Jpeg {
+
+        /**
+         * 压缩质量，取值范围0.0-1.0。
+         */
+        private float quality = 0.85f;
+
+        /**
+         * 是否输出渐进式JPEG。
+         */
+        private boolean progressive = true;
+    }
+
+    /**
+     * 图片变体配置，控制按需生成的缩放图片及其磁盘缓存。
+     */
+    @Data
+    public static class Variant {
+
+        /**
+         * 变体缓存目录，生成的缩放图片将保存在该目录下。
+         */
+        private String cachePath = "./storage/cache/variants";
+
+        /**
+         * 变体缓存的最大磁盘占用（字节），超过后按最近最少使用顺序淘汰。
+         */
+        private long cacheMaxBytes = 512L * 1024 * 1024;
+
+        /**
+         * 被淘汰的变体文件保留在磁盘上的时间（毫秒）。已经返回给其他请求、尚未开始发送的文件在此期间仍然可读，
+         * 之后才会被删除。
+         */
+        private long evictionGracePeriod = 60_000;
+
+        /**
+         * 允许请求的最大宽度或高度（像素）。
+         */
+        private int maxDimension = 2048;
+
+        /**
+         * 尺寸取整步长（像素），请求的宽高会向上取整到该步长的倍数，以限制变体数量。
+         */
+        private int step = 16;
+    }
+}
@@ -0,0 +1,37 @@
+package com.flechazo.jnyzdairy.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 查询统计配置类，用于从<b>application.properties</b>文件中加载仓库方法统计和慢查询日志相关的配置。
+ * <p>该类通过@ConfigurationProperties注解指定前缀来绑定配置文件中的属性。
+ *
+ * @author Flechazo
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.query-stats")
+public class QueryStatsConfig {
+
+    /**
+     * 是否启用查询统计，关闭时仓库方法直接执行，Hibernate也不收集统计信息。
+     */
+    private boolean enabled = true;
+
+    /**
+     * 慢调用阈值（毫秒），仓库方法的执行时间达到该值时记录一条警告日志，不大于0时不记录。
+     */
+    private long slowThreshold = 200;
+
+    /**
+     * 慢调用日志中最多列出的不同SQL语句数。
+     */
+    private int maxLoggedStatements = 10;
+
+    /**
+     * 管理接口中最多列出的HQL查询数，按最长执行时间降序排列。
+     */
+    private int maxReportedQueries = 50;
+}
@@ -2,10 +2,14 @@ package com.flechazo.jnyzdairy.config;
 
 import com.flechazo.jnyzdairy.filter.JwtAuthenticationFilter;
 import com.flechazo.jnyzdairy.util.JwtUtil;
+import com.flechazo.jnyzdairy.util.TimedPasswordEncoder;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
@@ -48,19 +52,52 @@ public class SecurityConfig {
      */
     private final CorsFilter corsFilter;
 
+    /**
+     * 指标注册表，用于记录令牌验证和密码哈希的耗时。
+     */
+    private final MeterRegistry meterRegistry;
+
     /**
      * 构造函数，注入依赖的服务和工具类。
      *
      * @param userDetailsService 用户详情服务
      * @param jwtUtil           JWT工具类
      * @param corsFilter        跨域资源共享过滤器
+     * @param meterRegistry     指标注册表
      */
     public SecurityConfig(UserDetailsService userDetailsService,
                           JwtUtil jwtUtil,
-                          @Qualifier("customCorsFilter") CorsFilter corsFilter) {
+                          @Qualifier("customCorsFilter") CorsFilter corsFilter,
+                          MeterRegistry meterRegistry) {
         this.userDetailsService = userDetailsService;
         this.jwtUtil = jwtUtil;
         this.corsFilter = corsFilter;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 配置监控端点的过滤链，优先于应用的过滤链匹配。
+     * <p>
+     * 通过 {@link EndpointRequest} 匹配监控端点，无论端点在管理端口还是应用端口上提供都生效。
+     * 只开放健康检查和Prometheus采集端点，其他端点即使被暴露也拒绝访问。
+     *
+     * @param http HttpSecurity对象，用于配置安全规则
+     * @return 配置好的SecurityFilterChain对象
+     * @throws Exception 如果配置过程中发生错误
+     */
+    @Bean
+    @Order(1)
+    public SecurityFilterChain managementFilterChain(HttpSecurity http) throws Exception {
+        http
+                .securityMatcher(EndpointRequest.toAnyEndpoint())
+                .csrf(AbstractHttpConfigurer::disable)
+                .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                .authorizeHttpRequests(auth -> auth
+                        .requestMatchers(EndpointRequest.to("health", "prometheus")).permitAll()
+                        .anyRequest().denyAll()
+                );
+
+        return http.build();
     }
 
     /**
@@ -114,17 +151,17 @@ public class SecurityConfig {
      */
     @Bean
     public JwtAuthenticationFilter jwtAuthenticationFilter() {
-        return new JwtAuthenticationFilter(jwtUtil, userDetailsService);
+        return new JwtAuthenticationFilter(jwtUtil, userDetailsService, meterRegistry);
     }
 
     /**
-     * 创建并返回一个密码编码器实例，用于加密和校验用户密码。
+     * 创建并返回一个密码编码器实例，用于加密和校验用户密码，并记录每次哈希的耗时。
      *
      * @return PasswordEncoder对象
      */
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        return new TimedPasswordEncoder(new BCryptPasswordEncoder(), meterRegistry);
     }
 
     /**
@@ -0,0 +1,54 @@
+package com.flechazo.jnyzdairy.config;
+
+import com.flechazo.jnyzdairy.service.SegmentStore;
+import com.flechazo.jnyzdairy.service.StorageBackend;
+import com.flechazo.jnyzdairy.service.StorageJournalService;
+import com.flechazo.jnyzdairy.service.impl.JournalingStorageBackend;
+import com.flechazo.jnyzdairy.service.impl.LocalStorageBackend;
+import com.flechazo.jnyzdairy.service.impl.MeteredStorageBackend;
+import com.flechazo.jnyzdairy.service.impl.PackedStorageBackend;
+import com.flechazo.jnyzdairy.service.impl.S3StorageBackend;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 存储后端配置类，根据配置项 {@code app.storage.backend} 创建具体的存储后端，
+ * 启用小文件打包存储时包装为打包存储后端，再包装为记录变更日志的存储后端，最外层记录各操作的耗时指标。
+ *
+ * @author Flechazo
+ */
+@Configuration
+public class StorageBackendConfig {
+
+    /**
+     * 创建存储后端。
+     * <p>
+     * 具体实现不作为单独的Bean注册，所有写入和删除都经过日志包装，不会绕过变更日志。
+     *
+     * @param storageConfig         存储配置
+     * @param segmentStore          段文件存储
+     * @param storageJournalService 存储变更日志服务
+     * @param eventPublisher        应用事件发布器
+     * @param meterRegistry         指标注册表
+     * @return 存储后端实例
+     */
+    @Bean
+    public StorageBackend storageBackend(StorageConfig storageConfig,
+                                         SegmentStore segmentStore,
+                                         StorageJournalService storageJournalService,
+                                         ApplicationEventPublisher eventPublisher,
+                                         MeterRegistry meterRegistry) {
+        StorageBackend delegate = switch (storageConfig.getBackend()) {
+            case "local" -> new LocalStorageBackend(storageConfig);
+            case "s3" -> new S3StorageBackend(storageConfig);
+            default -> throw new IllegalStateException("Unknown storage backend: " + storageConfig.getBackend());
+        };
+        if (segmentStore.isEnabled()) {
+            delegate = new PackedStorageBackend(delegate, segmentStore);
+        }
+        return new MeteredStorageBackend(new JournalingStorageBackend(delegate, storageJournalService, eventPublisher),
+                storageConfig.getBackend(), meterRegistry);
+    }
+}
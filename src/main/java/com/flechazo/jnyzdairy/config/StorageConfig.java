@@ -0,0 +1,438 @@
+package com.flechazo.jnyzdairy.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 存储配置类，用于从<b>application.properties</b>文件中加载存储后端相关的配置。
+ * <p>该类通过@ConfigurationProperties注解指定前缀来绑定配置文件中的属性。
+ *
+ * @author Flechazo
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.storage")
+public class StorageConfig {
+
+    /**
+     * 存储后端类型：{@code local} 使用本地文件系统，{@code s3} 使用S3兼容的对象存储。
+     */
+    private String backend = "local";
+
+    /**
+     * 本地存储的根路径。使用对象存储时，该目录仅用于暂存上传中的文件和缓存。
+     */
+    private String rootPath = "./storage";
+
+    /**
+     * S3兼容对象存储的相关配置。
+     */
+    private S3 s3 = new S3();
+
+    /**
+     * 对象键的目录分层配置。
+     */
+    private Layout layout = new Layout();
+
+    /**
+     * 孤儿文件回收配置。
+     */
+    private Gc gc = new Gc();
+
+    /**
+     * 存储变更日志配置。
+     */
+    private Journal journal = new Journal();
+
+    /**
+     * 用户存储配额配置。
+     */
+    private Quota quota = new Quota();
+
+    /**
+     * 小文件打包存储配置。
+     */
+    private Packed packed = new Packed();
+
+    /**
+     * 热点文件缓存配置。
+     */
+    private HotCache hotCache = new HotCache();
+
+    /**
+     * 存储对象延迟删除配置。
+     */
+    private Deletion deletion = new Deletion();
+
+    /**
+     * 已删除用户数据清理配置。
+     */
+    private Purge purge = new Purge();
+
+    /**
+     * 已删除用户数据清理配置。用户被删除并超过保留期后，后台分批删除其日记、图片和头像。
+     */
+    @Data
+    public static class Purge {
+
+        /**
+         * 是否清理已删除用户的数据。
+         */
+        private boolean enabled = true;
+
+        /**
+         * 清理的cron表达式。
+         */
+        private String cron = "0 0 1 * * ?";
+
+        /**
+         * 用户被删除后数据的保留天数，期间数据仍保留在数据库和存储中。
+         */
+        private int retentionDays = 30;
+
+        /**
+         * 每批删除的最大日记数，每批在一个短事务中完成。
+         */
+        private int batchSize = 100;
+
+        /**
+         * 每秒最多删除的数据库行数（日记和图片），不大于0时不限速。
+         */
+        private int maxRowsPerSecond = 1000;
+
+        /**
+         * 每秒最多登记删除的文件数，不大于0时不限速。
+         */
+        private int maxFilesPerSecond = 100;
+
+        /**
+         * 某个用户清理失败后第一次重试的退避时间（毫秒），之后每次失败翻倍。
+         */
+        private long retryBackoff = 60L * 60 * 1000;
+
+        /**
+         * 清理失败后重试的最大退避时间（毫秒）。
+         */
+        private long maxRetryBackoff = 7L * 24 * 60 * 60 * 1000;
+    }
+
+    /**
+     * 存储对象延迟删除配置。删除文件时只在事务中登记待删除记录，事务提交后由后台批量删除存储对象。
+     */
+    @Data
+    public static class Deletion {
+
+        /**
+         * 两次批量删除之间的间隔（毫秒），也是失败后第一次重试的退避时间。
+         */
+        private long interval = 1000;
+
+        /**
+         * 每批删除的最大对象数。
+         */
+        private int batchSize = 1000;
+
+        /**
+         * 失败后重试的最大退避时间（毫秒）。
+         */
+        private long maxBackoff = 60L * 60 * 1000;
+    }
+
+    /**
+     * 热点文件缓存配置。被频繁请求的小文件和图片变体缓存在堆外内存中，命中时不访问存储后端。
+     */
+    @Data
+    public static class HotCache {
+
+        /**
+         * 是否启用热点文件缓存。
+         */
+        private boolean enabled = true;
+
+        /**
+         * 缓存占用的堆外内存上限（字节），不能超过JVM的直接内存上限（{@code -XX:MaxDirectMemorySize}）。
+         */
+        private long maxBytes = 64L * 1024 * 1024;
+
+        /**
+         * 可缓存的单个文件大小上限（字节）。
+         */
+        private int maxObjectSize = 256 * 1024;
+
+        /**
+         * 文件在近期被请求的次数达到该值后才会被加载到缓存中，避免只访问一次的文件挤占缓存。
+         */
+        private int minFrequency = 2;
+
+        /**
+         * 缓存划分的条带数，向上取整为2的幂。每个条带有独立的锁、容量和访问频率草图，并发请求只在同一条带上竞争。
+         */
+        private int stripes = 16;
+    }
+
+    /**
+     * 小文件打包存储配置。不超过阈值的对象追加写入大的段文件，而不是各自占用一个文件，仅适用于本地存储后端。
+     */
+    @Data
+    public static class Packed {
+
+        /**
+         * 是否启用打包存储。
+         */
+        private boolean enabled = false;
+
+        /**
+         * 打包存储的对象大小上限（字节），超过该大小的对象仍按单独的文件存储。
+         */
+        private int threshold = 64 * 1024;
+
+        /**
+         * 单个段文件的大小（字节），不能超过2GB。
+         */
+        private int segmentSize = 256 * 1024 * 1024;
+
+        /**
+         * 段文件压缩的cron表达式。
+         */
+        private String compactionCron = "0 0 5 * * ?";
+
+        /**
+         * 段文件中已删除或被覆盖的数据所占比例达到该值时进行压缩。
+         */
+        private double compactionGarbageRatio = 0.4;
+    }
+
+    /**
+     * 用户存储配额配置。每个用户占用的字节数和文件数随上传和删除在同一事务中增量更新，并定期与实际数据核对。
+     */
+    @Data
+    public static class Quota {
+
+        /**
+         * 是否在上传前检查配额。关闭时仍然统计用量。
+         */
+        private boolean enabled = true;
+
+        /**
+         * 每个用户最多占用的字节数。
+         */
+        private long maxBytes = 1024L * 1024 * 1024;
+
+        /**
+         * 每个用户最多拥有的文件数。
+         */
+        private long maxFiles = 10_000;
+
+        /**
+         * 本节点缓存的用量的有效期（毫秒），过期后从数据库重新加载。其他节点的写入最多延迟这么久才能在本节点看到，
+         * 为0时每次检查都查询数据库。
+         */
+        private long cacheTtl = 5000;
+
+        /**
+         * 本节点最多缓存用量的用户数，超出时淘汰最久未使用的用户。
+         */
+        private int cacheSize = 10_000;
+
+        /**
+         * 用量核对的cron表达式。
+         */
+        private String reconcileCron = "0 0 4 * * ?";
+
+        /**
+         * 用量核对时每批处理的用户数。
+         */
+        private int reconcileBatchSize = 100;
+    }
+
+    /**
+     * 存储变更日志配置。存储后端的每次创建、覆盖和删除都会追加到日志中，维护任务从检查点开始增量处理。
+     */
+    @Data
+    public static class Journal {
+
+        /**
+         * 是否记录存储变更日志。
+         */
+        private boolean enabled = true;
+
+        /**
+         * 缓冲的日志条目写入数据库的间隔（毫秒）。
+         */
+        private long flushInterval = 1000;
+
+        /**
+         * 内存中最多缓冲的日志条目数，超出时丢弃缓冲并要求所有维护任务重新全量扫描。
+         */
+        private int maxBuffered = 100_000;
+
+        /**
+         * 日志压缩的cron表达式。
+         */
+        private String compactionCron = "0 30 3 * * ?";
+    }
+
+    /**
+     * 孤儿文件回收配置。孤儿文件指存储中存在、但没有任何数据库记录引用的文件。
+     */
+    @Data
+    public static class Gc {
+
+        /**
+         * 是否启用定时回收。
+         */
+        private boolean enabled = true;
+
+        /**
+         * 定时回收的cron表达式。
+         */
+        private String cron = "0 0 2 * * ?";
+
+        /**
+         * 是否只生成报告而不删除文件。
+         */
+        private boolean dryRun = true;
+
+        /**
+         * 宽限期（分钟），最近修改时间在宽限期内的文件视为上传中，不会被回收。
+         */
+        private long gracePeriodMinutes = 24 * 60;
+
+        /**
+         * 并行处理的分片数。
+         */
+        private int parallelism = 4;
+
+        /**
+         * 每秒最多检查的文件数。
+         */
+        private int maxScannedPerSecond = 5000;
+
+        /**
+         * 每秒最多删除的文件数。
+         */
+        private int maxDeletesPerSecond = 50;
+
+        /**
+         * 报告中最多列出的孤儿文件数。
+         */
+        private int reportLimit = 1000;
+    }
+
+    /**
+     * 对象键的目录分层配置：用户文件和内容寻址文件按摘要的十六进制前缀分为多级目录，避免单个目录下条目过多。
+     */
+    @Data
+    public static class Layout {
+
+        /**
+         * 分层的级数，取值范围1-4。
+         */
+        private int levels = 2;
+
+        /**
+         * 每一级目录名的十六进制字符数，取值范围1-2。
+         */
+        private int width = 2;
+
+        /**
+         * 是否在新位置找不到文件时继续查找旧布局下的位置，迁移完成前必须开启。
+         */
+        private boolean dualRead = true;
+
+        /**
+         * 旧布局文件的迁移配置。
+         */
+        private Migration migration = new Migration();
+    }
+
+    /**
+     * 旧布局文件迁移任务的配置。
+     */
+    @Data
+    public static class Migration {
+
+        /**
+         * 是否启用迁移任务。
+         */
+        private boolean enabled = false;
+
+        /**
+         * 每批处理的用户数。
+         */
+        private int batchSize = 100;
+
+        /**
+         * 每秒最多移动的文件数，用于限制迁移对存储的压力。
+         */
+        private int maxFilesPerSecond = 200;
+
+        /**
+         * 两批之间的间隔时间（毫秒）。
+         */
+        private long interval = 1000;
+    }
+
+    /**
+     * S3兼容对象存储配置，适用于AWS S3以及MinIO等兼容实现。
+     */
+    @Data
+    public static class S3 {
+
+        /**
+         * 服务地址，为空时使用AWS的默认地址；使用MinIO时填写其地址，例如 {@code http://localhost:9000}。
+         */
+        private String endpoint;
+
+        /**
+         * 区域。
+         */
+        private String region = "us-east-1";
+
+        /**
+         * 存储桶名称。
+         */
+        private String bucket;
+
+        /**
+         * 对象键的公共前缀，用于多个应用共享同一个存储桶。
+         */
+        private String prefix = "";
+
+        /**
+         * 访问密钥，为空时使用默认的凭证链（环境变量、实例角色等）。
+         */
+        private String accessKey;
+
+        /**
+         * 访问密钥对应的私钥。
+         */
+        private String secretKey;
+
+        /**
+         * 是否使用路径风格的访问地址，MinIO等自建服务通常需要开启。
+         */
+        private boolean pathStyleAccess = true;
+
+        /**
+         * 连接池的最大连接数。
+         */
+        private int maxConnections = 64;
+
+        /**
+         * 建立连接的超时时间（毫秒）。
+         */
+        private int connectionTimeout = 5000;
+
+        /**
+         * 超过该大小（字节）的文件使用分片上传。
+         */
+        private long multipartThreshold = 16L * 1024 * 1024;
+
+        /**
+         * 分片上传时每个分片的大小（字节），不能小于5MB。
+         */
+        private long partSize = 8L * 1024 * 1024;
+    }
+}
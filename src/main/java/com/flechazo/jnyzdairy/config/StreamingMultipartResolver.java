@@ -0,0 +1,47 @@
+package com.flechazo.jnyzdairy.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.web.multipart.support.StandardServletMultipartResolver;
+
+import java.util.regex.Pattern;
+
+/**
+ * 支持流式上传的multipart解析器。
+ * <p>
+ * 对于流式上传接口，该解析器不做任何解析，使请求体保持未读状态，由控制器直接按部分读取并写入存储目录；
+ * 其他请求仍使用标准的Servlet multipart解析。
+ *
+ * @author Flechazo
+ */
+public class StreamingMultipartResolver extends StandardServletMultipartResolver {
+
+    /**
+     * 流式上传接口的路径格式。
+     */
+    private static final Pattern STREAMING_PATH = Pattern.compile("^/api/diaries/\\d+/images/stream$");
+
+    /**
+     * 判断请求是否需要由Spring解析multipart内容。
+     *
+     * @param request HTTP请求对象
+     * @return 流式上传请求返回 {@code false}，其他请求按标准规则判断
+     */
+    @Override
+    public boolean isMultipart(HttpServletRequest request) {
+        if (isStreamingRequest(request)) {
+            return false;
+        }
+        return super.isMultipart(request);
+    }
+
+    /**
+     * 判断请求是否为流式上传请求。
+     *
+     * @param request HTTP请求对象
+     * @return 如果是流式上传请求则返回 {@code true}
+     */
+    public static boolean isStreamingRequest(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return STREAMING_PATH.matcher(path).matches();
+    }
+}
@@ -2,6 +2,7 @@ package com.flechazo.jnyzdairy.constant;
 
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -17,6 +18,7 @@ public class FileConstants {
      * 允许的图片文件类型集合。
      * <p>
      * 该集合列出了系统接受的所有图片文件的MIME类型，用于验证上传文件的合法性。
+     * 上传文件的类型根据文件头的魔数识别，而不是客户端声明的Content-Type。
      */
     public static final Set<String> ALLOWED_IMAGE_TYPES = new HashSet<>(Arrays.asList(
             "image/jpeg",
@@ -25,6 +27,18 @@ public class FileConstants {
             "image/webp"
     ));
 
+    /**
+     * 图片MIME类型与存储文件扩展名的对应关系。
+     * <p>
+     * 存储文件时根据该映射确定扩展名，而不是沿用客户端提供的文件名。
+     */
+    public static final Map<String, String> IMAGE_EXTENSIONS = Map.of(
+            "image/jpeg", "jpg",
+            "image/png", "png",
+            "image/gif", "gif",
+            "image/webp", "webp"
+    );
+
     /**
      * 最大文件大小<b>（50MB）</b>。
      * <p>
@@ -32,6 +46,13 @@ public class FileConstants {
      */
     public static final long MAX_FILE_SIZE = 50 * 1024 * 1024;
 
+    /**
+     * 单次流式上传的最大图片数量。
+     * <p>
+     * 流式上传的所有图片在同一事务中提交，提交前全部暂存在磁盘上，数量需要受到限制。
+     */
+    public static final int MAX_STREAMED_FILES = 20;
+
     /**
      * 文件名最大长度。
      * <p>
@@ -0,0 +1,54 @@
+package com.flechazo.jnyzdairy.controller;
+
+import com.flechazo.jnyzdairy.dto.QueryStatsReport;
+import com.flechazo.jnyzdairy.service.QueryStatsService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * 查询统计控制器，用于处理管理员查看和重置数据库查询统计的请求。
+ *
+ * @author Flechazo
+ */
+@RestController
+@RequestMapping("/api/admin/queries")
+@PreAuthorize("hasRole('ADMIN')")
+public class AdminQueryStatsController {
+
+    /**
+     * 查询统计服务。
+     */
+    private final QueryStatsService queryStatsService;
+
+    /**
+     * 构造函数，注入查询统计服务实例。
+     *
+     * @param queryStatsService 查询统计服务实例
+     */
+    public AdminQueryStatsController(QueryStatsService queryStatsService) {
+        this.queryStatsService = queryStatsService;
+    }
+
+    /**
+     * 获取各仓库方法的数据库访问次数和执行时间，以及执行最慢的查询。
+     *
+     * @param limit 最多返回的仓库方法数，默认为50，最大为1000
+     * @return 包含查询统计报告的响应实体
+     */
+    @GetMapping
+    public ResponseEntity<QueryStatsReport> getReport(@RequestParam(name = "limit", defaultValue = "50") int limit) {
+        return ResponseEntity.ok(queryStatsService.getReport(Math.min(Math.max(limit, 1), 1000)));
+    }
+
+    /**
+     * 清空查询统计，用于在调整索引或查询之后重新开始统计。
+     *
+     * @return 无内容的响应实体
+     */
+    @DeleteMapping
+    public ResponseEntity<Void> reset() {
+        queryStatsService.reset();
+        return ResponseEntity.noContent().build();
+    }
+}
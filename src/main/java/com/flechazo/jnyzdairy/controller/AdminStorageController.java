@@ -0,0 +1,115 @@
+package com.flechazo.jnyzdairy.controller;
+
+import com.flechazo.jnyzdairy.dto.HotCacheStats;
+import com.flechazo.jnyzdairy.dto.StorageGcReport;
+import com.flechazo.jnyzdairy.entity.UserStorageUsage;
+import com.flechazo.jnyzdairy.service.HotFileCache;
+import com.flechazo.jnyzdairy.service.StorageGcService;
+import com.flechazo.jnyzdairy.service.StorageQuotaService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * 存储管理控制器，用于处理管理员的存储维护请求。
+ *
+ * @author Flechazo
+ */
+@RestController
+@RequestMapping("/api/admin/storage")
+@PreAuthorize("hasRole('ADMIN')")
+public class AdminStorageController {
+
+    /**
+     * 孤儿文件回收服务。
+     */
+    private final StorageGcService storageGcService;
+
+    /**
+     * 用户存储配额服务。
+     */
+    private final StorageQuotaService storageQuotaService;
+
+    /**
+     * 热点文件缓存。
+     */
+    private final HotFileCache hotFileCache;
+
+    /**
+     * 构造函数，注入孤儿文件回收服务、用户存储配额服务和热点文件缓存实例。
+     *
+     * @param storageGcService    孤儿文件回收服务实例
+     * @param storageQuotaService 用户存储配额服务实例
+     * @param hotFileCache        热点文件缓存实例
+     */
+    public AdminStorageController(StorageGcService storageGcService, StorageQuotaService storageQuotaService,
+                                  HotFileCache hotFileCache) {
+        this.storageGcService = storageGcService;
+        this.storageQuotaService = storageQuotaService;
+        this.hotFileCache = hotFileCache;
+    }
+
+    /**
+     * 获取当前或最近一次孤儿文件回收的进度和报告。
+     *
+     * @return 包含回收报告的响应实体，尚未运行过时返回404
+     */
+    @GetMapping("/gc")
+    public ResponseEntity<StorageGcReport> getGcReport() {
+        StorageGcReport report = storageGcService.getReport();
+        return report == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(report);
+    }
+
+    /**
+     * 在后台启动一次孤儿文件回收。
+     *
+     * @param dryRun 是否只生成报告而不删除文件，默认为试运行
+     * @param full   是否强制全量回收，默认在存储变更日志完整时只做增量回收
+     * @return 包含回收报告的响应实体，已有回收在运行时返回409
+     */
+    @PostMapping("/gc")
+    public ResponseEntity<StorageGcReport> startGc(@RequestParam(name = "dryRun", defaultValue = "true") boolean dryRun,
+                                                   @RequestParam(name = "full", defaultValue = "false") boolean full) {
+        StorageGcReport report = storageGcService.start(dryRun, full);
+        if (report == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(report);
+    }
+
+    /**
+     * 获取存储用量最多的用户。
+     *
+     * @param limit 最多返回的用户数，默认为20，最大为1000
+     * @return 包含用量记录列表的响应实体，按占用字节数降序排列
+     */
+    @GetMapping("/usage")
+    public ResponseEntity<List<UserStorageUsage>> getTopConsumers(
+            @RequestParam(name = "limit", defaultValue = "20") int limit) {
+        return ResponseEntity.ok(storageQuotaService.getTopConsumers(Math.min(Math.max(limit, 1), 1000)));
+    }
+
+    /**
+     * 获取指定用户的存储用量。
+     *
+     * @param userId 用户ID
+     * @return 包含用量记录的响应实体
+     */
+    @GetMapping("/usage/{userId}")
+    public ResponseEntity<UserStorageUsage> getUsage(@PathVariable Long userId) {
+        return ResponseEntity.ok(storageQuotaService.getUsage(userId));
+    }
+
+    /**
+     * 获取热点文件缓存的占用情况和命中率。
+     *
+     * @return 包含缓存统计的响应实体
+     */
+    @GetMapping("/cache")
+    public ResponseEntity<HotCacheStats> getCacheStats() {
+        return ResponseEntity.ok(hotFileCache.getStats());
+    }
+}
@@ -1,15 +1,29 @@
 package com.flechazo.jnyzdairy.controller;
 
+import com.flechazo.jnyzdairy.constant.FileConstants;
+import com.flechazo.jnyzdairy.dto.BulkDeleteRequest;
+import com.flechazo.jnyzdairy.dto.BulkDeleteResponse;
 import com.flechazo.jnyzdairy.entity.Diary;
+import com.flechazo.jnyzdairy.entity.DiaryImage;
+import com.flechazo.jnyzdairy.exception.FileStorageException;
 import com.flechazo.jnyzdairy.service.DiaryService;
 import com.flechazo.jnyzdairy.util.SecurityUtils;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.apache.commons.fileupload2.core.DiskFileItem;
+import org.apache.commons.fileupload2.core.DiskFileItemFactory;
+import org.apache.commons.fileupload2.core.FileItemInput;
+import org.apache.commons.fileupload2.core.FileItemInputIterator;
+import org.apache.commons.fileupload2.core.FileUploadException;
+import org.apache.commons.fileupload2.jakarta.servlet6.JakartaServletFileUpload;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -69,6 +83,54 @@ public class DiaryController {
         return ResponseEntity.ok(diary);
     }
 
+    /**
+     * 以流的方式为日记上传图片。
+     * <p>
+     * 该接口不经过Spring的multipart解析，请求体中的每个文件部分直接写入暂存文件，
+     * 不会先缓冲到临时文件。该接口不能使用查询参数或表单参数，否则容器会提前解析整个请求体。
+     * <p>
+     * 请求是原子的：所有图片都通过检查后才一起保存，任意一张失败时整个请求失败，不保存任何图片。
+     * 单次请求最多包含 {@link FileConstants#MAX_STREAMED_FILES} 张图片。
+     *
+     * @param id      日记ID
+     * @param request HTTP请求对象，从中读取multipart请求体
+     * @return 包含新添加图片信息的响应实体，顺序与请求中的顺序一致
+     * @throws IOException 如果读取或保存图片时发生错误
+     */
+    @PostMapping("/{id}/images/stream")
+    @PreAuthorize("@securityService.isOwner(#id)")
+    public ResponseEntity<List<DiaryImage>> streamImages(@PathVariable Long id, HttpServletRequest request)
+            throws IOException {
+        if (!JakartaServletFileUpload.isMultipartContent(request)) {
+            throw new FileStorageException("请求必须为multipart/form-data格式");
+        }
+
+        JakartaServletFileUpload<DiskFileItem, DiskFileItemFactory> upload = new JakartaServletFileUpload<>();
+        upload.setFileCountMax(FileConstants.MAX_STREAMED_FILES);
+        List<DiaryImage> images;
+        try {
+            FileItemInputIterator iterator = upload.getItemIterator(request);
+            int[] count = {0};
+            images = diaryService.addDiaryImages(id, () -> {
+                while (iterator.hasNext()) {
+                    FileItemInput item = iterator.next();
+                    if (item.isFormField()) {
+                        continue;
+                    }
+                    /* 在读取下一张图片之前检查数量，不依赖迭代器是否执行上面的限制 */
+                    if (++count[0] > FileConstants.MAX_STREAMED_FILES) {
+                        throw new FileStorageException("单次上传的图片数量超过限制");
+                    }
+                    return item.getInputStream();
+                }
+                return null;
+            });
+        } catch (FileUploadException e) {
+            throw new FileStorageException("无法解析上传请求", e);
+        }
+        return ResponseEntity.ok(images);
+    }
+
     /**
      * 获取日记。
      * <p>
@@ -143,6 +205,20 @@ public class DiaryController {
         return ResponseEntity.ok().build();
     }
 
+    /**
+     * 批量删除日记。
+     * <p>
+     * 所有日记的所有权在一次查询中验证，任何一个日记属于其他用户时整个请求被拒绝。
+     *
+     * @param request 包含日记ID列表的请求体
+     * @return 包含实际删除数量的响应实体
+     */
+    @PostMapping("/bulk-delete")
+    @PreAuthorize("@securityService.isOwnerOfAll(#request.ids)")
+    public ResponseEntity<BulkDeleteResponse> deleteDiaries(@Valid @RequestBody BulkDeleteRequest request) {
+        return ResponseEntity.ok(new BulkDeleteResponse(diaryService.deleteDiaries(request.getIds())));
+    }
+
     /**
      * 删除日记图片。
      * <p>
@@ -157,4 +233,18 @@ public class DiaryController {
         diaryService.deleteDiaryImage(imageId);
         return ResponseEntity.ok().build();
     }
-}
\ No newline at end of file
+
+    /**
+     * 批量删除日记图片。
+     * <p>
+     * 所有图片的所有权在一次查询中验证，任何一张图片属于其他用户时整个请求被拒绝。
+     *
+     * @param request 包含图片ID列表的请求体
+     * @return 包含实际删除数量的响应实体
+     */
+    @PostMapping("/images/bulk-delete")
+    @PreAuthorize("@securityService.isImageOwnerOfAll(#request.ids)")
+    public ResponseEntity<BulkDeleteResponse> deleteImages(@Valid @RequestBody BulkDeleteRequest request) {
+        return ResponseEntity.ok(new BulkDeleteResponse(diaryService.deleteDiaryImages(request.getIds())));
+    }
+}
@@ -1,20 +1,26 @@
 package com.flechazo.jnyzdairy.controller;
 
 import com.flechazo.jnyzdairy.dto.FileResponse;
+import com.flechazo.jnyzdairy.dto.ImageVariant;
+import com.flechazo.jnyzdairy.dto.StorageObject;
 import com.flechazo.jnyzdairy.service.FileStorageService;
-import org.springframework.core.io.Resource;
+import com.flechazo.jnyzdairy.service.HotFileCache;
+import com.flechazo.jnyzdairy.service.ImageVariantService;
+import com.flechazo.jnyzdairy.service.StorageBackend;
+import com.flechazo.jnyzdairy.service.UserService;
+import com.flechazo.jnyzdairy.util.AvatarPaths;
+import com.flechazo.jnyzdairy.util.FileResponseWriter;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.InputStream;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 
 /**
  * 文件控制器，用于处理文件上传和下载的HTTP请求。
@@ -31,18 +37,58 @@ public class FileController {
     private final FileStorageService fileStorageService;
 
     /**
-     * 构造函数，注入文件存储服务。
+     * 图片变体服务，提供按需缩放和格式转换的功能。
+     */
+    private final ImageVariantService imageVariantService;
+
+    /**
+     * 文件响应写出工具，负责Range、条件请求和零拷贝发送。
+     */
+    private final FileResponseWriter fileResponseWriter;
+
+    /**
+     * 存储后端，提供文件内容的读取。
+     */
+    private final StorageBackend storageBackend;
+
+    /**
+     * 热点文件缓存，频繁访问的小文件和图片变体从堆外内存写出。
+     */
+    private final HotFileCache hotFileCache;
+
+    /**
+     * 用户服务，用于更新用户头像。
+     */
+    private final UserService userService;
+
+    /**
+     * 构造函数，注入文件存储服务、图片变体服务、文件响应写出工具、存储后端、热点文件缓存和用户服务。
      *
-     * @param fileStorageService 文件存储服务实例
+     * @param fileStorageService  文件存储服务实例
+     * @param imageVariantService 图片变体服务实例
+     * @param fileResponseWriter  文件响应写出工具实例
+     * @param storageBackend      存储后端实例
+     * @param hotFileCache        热点文件缓存实例
+     * @param userService         用户服务实例
      */
-    public FileController(FileStorageService fileStorageService) {
+    public FileController(FileStorageService fileStorageService,
+                          ImageVariantService imageVariantService,
+                          FileResponseWriter fileResponseWriter,
+                          StorageBackend storageBackend,
+                          HotFileCache hotFileCache,
+                          UserService userService) {
         this.fileStorageService = fileStorageService;
+        this.imageVariantService = imageVariantService;
+        this.fileResponseWriter = fileResponseWriter;
+        this.storageBackend = storageBackend;
+        this.hotFileCache = hotFileCache;
+        this.userService = userService;
     }
 
     /**
      * 上传用户头像。
      * <p>
-     * 该方法为指定用户ID上传用户头像，并返回上传后的文件路径。
+     * 该方法为当前用户上传头像并设为用户头像，返回最大尺寸头像的文件路径。
      *
      * @param userId 用户ID
      * @param file   待上传的文件
@@ -54,7 +100,7 @@ public class FileController {
             @RequestAttribute("userId") Long userId,
             @RequestParam("file") MultipartFile file) {
         try {
-            String filePath = fileStorageService.saveUserAvatar(userId, file);
+            String filePath = userService.updateAvatar(userId, file).getAvatarPath();
             return ResponseEntity.ok(new FileResponse(filePath));
         } catch (IOException e) {
             /* 如果上传过程中发生IO异常，则返回400错误响应 */
@@ -65,40 +111,144 @@ public class FileController {
     /**
      * 获取文件。
      * <p>
-     * 根据提供的用户ID和文件路径获取文件资源。
+     * 根据提供的用户ID和文件路径获取文件资源。当提供了 {@code w}、{@code h} 或 {@code fmt} 参数时，
+     * 返回按需生成的图片变体而不是原图；头像请求 {@code w} 或 {@code h} 时返回预先渲染的最接近的尺寸。
+     * 响应支持Range请求和ETag/Last-Modified条件请求，内容寻址文件、头像及其变体会携带长期缓存头。
      *
-     * @param userId 用户ID
-     * @param request HTTP请求对象，用于提取文件路径信息
-     * @return 包含文件资源的响应实体
+     * @param userId   用户ID
+     * @param width    变体宽度（可选）
+     * @param height   变体高度（可选）
+     * @param format   变体格式（可选）
+     * @param accept   请求的Accept头，用于协商变体格式
+     * @param request  HTTP请求对象，用于提取文件路径信息
+     * @param response HTTP响应对象，文件内容直接写入该响应
      * @throws IOException 如果读取文件时发生错误，则抛出此异常
      */
     @GetMapping("/{userId}/**")
-    public ResponseEntity<Resource> getFile(
+    public void getFile(
             @PathVariable Long userId,
-            HttpServletRequest request) throws IOException {
-
-        /*
-         * 提取文件路径并构建完整的文件系统路径。
-         * 检查文件是否存在，并设置适当的响应头以返回文件内容。
-         */
-        String filePath = request.getRequestURI()
-                .split("/api/files/" + userId + "/")[1];
-        Path path = Paths.get(fileStorageService.getUserPath(), userId.toString(), filePath);
-
-        if (!Files.exists(path)) {
-            /* 如果文件不存在，则返回404错误响应 */
-            return ResponseEntity.notFound().build();
+            @RequestParam(name = "w", required = false) Integer width,
+            @RequestParam(name = "h", required = false) Integer height,
+            @RequestParam(name = "fmt", required = false) String format,
+            @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+
+        /* 提取文件路径并解析为存储后端中的对象键 */
+        String filePath = extractFilePath(userId, request);
+        if (filePath != null && format == null && (width != null || height != null)
+                && AvatarPaths.isVariant(filePath)) {
+            /* 头像已预先渲染为固定尺寸，直接返回不小于请求尺寸的最小变体 */
+            filePath = AvatarPaths.smallestCovering(filePath,
+                    Math.max(width == null ? 0 : width, height == null ? 0 : height));
+            width = null;
+            height = null;
+        }
+        String key = filePath == null ? null : fileStorageService.resolveKey(userId, filePath);
+        if (key == null) {
+            /* 如果路径非法，则返回404错误响应 */
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
         }
+        String legacyKey = fileStorageService.resolveLegacyKey(userId, filePath);
+        boolean immutable = fileStorageService.isContentAddressed(filePath) || AvatarPaths.isVariant(filePath);
+        boolean variantRequested = width != null || height != null || format != null;
 
-        String contentType = Files.probeContentType(path);
-        if (contentType == null) {
-            contentType = "application/octet-stream";
+        /* 内容寻址文件以内容摘要作为强ETag */
+        String fileName = key.substring(key.lastIndexOf('/') + 1);
+        int dot = fileName.indexOf('.');
+        String etag = immutable ? "\"" + (dot < 0 ? fileName : fileName.substring(0, dot)) + "\"" : null;
+
+        if (!variantRequested) {
+            /* 频繁访问的小文件直接从堆外缓存写出 */
+            HotFileCache.CachedFile cached = hotFileCache.getOrLoad(key);
+            if (cached != null) {
+                fileResponseWriter.write(request, response, fileName, cached.getSize(), cached.getLastModified(),
+                        fileStorageService.getContentType(filePath), etag, immutable, cached::copy);
+                return;
+            }
         }
 
-        Resource resource = new org.springframework.core.io.UrlResource(path.toUri());
-        return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(contentType))
-                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + path.getFileName().toString() + "\"")
-                .body(resource);
+        Path local = storageBackend.localPath(key);
+        if (local != null && !variantRequested && legacyKey == null) {
+            /* 本地文件直接发送，文件是否存在由写出时的一次stat判断 */
+            fileResponseWriter.write(request, response, local, fileStorageService.getContentType(filePath),
+                    etag, immutable);
+            return;
+        }
+
+        StorageObject object = locate(key, legacyKey);
+        if (object == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        String objectKey = object.getKey();
+
+        if (variantRequested) {
+            /* 返回按需生成的图片变体 */
+            ImageVariant variant = imageVariantService.getVariant(object, width, height, format, accept);
+            if (format == null) {
+                /* 未显式指定格式时，输出格式取决于Accept头 */
+                response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+            }
+            HotFileCache.CachedFile cached = hotFileCache.getOrLoad(variant.getPath());
+            if (cached != null) {
+                fileResponseWriter.write(request, response, variant.getPath().getFileName().toString(),
+                        cached.getSize(), cached.getLastModified(), variant.getContentType(), null, immutable,
+                        cached::copy);
+                return;
+            }
+            fileResponseWriter.write(request, response, variant.getPath(), variant.getContentType(), null, immutable);
+            return;
+        }
+
+        Path objectPath = storageBackend.localPath(objectKey);
+        if (objectPath != null) {
+            /* 文件位于旧布局下的本地文件 */
+            fileResponseWriter.write(request, response, objectPath, fileStorageService.getContentType(filePath),
+                    etag, immutable);
+            return;
+        }
+
+        /* 内容类型来自上传时记录的元数据，不再探测文件；内容按需从存储后端分段读取 */
+        fileResponseWriter.write(request, response, fileName, object.getSize(), object.getLastModified(),
+                fileStorageService.getContentType(filePath), etag, immutable, (start, count, out) -> {
+                    try (InputStream input = storageBackend.get(objectKey, start, count)) {
+                        input.transferTo(out);
+                    }
+                });
+    }
+
+    /**
+     * 查找文件对应的存储对象。存储布局迁移期间，新位置找不到时查找旧位置；
+     * 旧位置也找不到时再查找一次新位置，以免文件恰好在两次查询之间被迁移。
+     *
+     * @param key       新布局下的对象键
+     * @param legacyKey 旧布局下的对象键，为 {@code null} 时只查找新位置
+     * @return 存储对象信息，文件不存在时返回 {@code null}
+     * @throws IOException 如果查询时发生错误
+     */
+    private StorageObject locate(String key, String legacyKey) throws IOException {
+        StorageObject object = storageBackend.stat(key);
+        if (object != null || legacyKey == null) {
+            return object;
+        }
+        object = storageBackend.stat(legacyKey);
+        return object != null ? object : storageBackend.stat(key);
+    }
+
+    /**
+     * 从请求URI中提取相对于用户的文件路径。
+     *
+     * @param userId  用户ID
+     * @param request HTTP请求对象
+     * @return 文件路径，无法提取时返回 {@code null}
+     */
+    private String extractFilePath(Long userId, HttpServletRequest request) {
+        String[] parts = request.getRequestURI().split("/api/files/" + userId + "/", 2);
+        if (parts.length < 2 || parts[1].isEmpty()) {
+            return null;
+        }
+        return parts[1];
     }
 }
\ No newline at end of file
@@ -1,13 +1,22 @@
 package com.flechazo.jnyzdairy.controller;
 
+import com.flechazo.jnyzdairy.dto.UserFilter;
+import com.flechazo.jnyzdairy.dto.UserPage;
 import com.flechazo.jnyzdairy.entity.User;
 import com.flechazo.jnyzdairy.service.UserService;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.util.List;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 
 /**
  * 用户控制器，用于处理用户信息相关的HTTP请求。
@@ -65,7 +74,9 @@ public class UserController {
     /**
      * 更新用户头像。
      * <p>
-     * 该方法根据提供的ID更新指定用户的头像图片。仅限用户本人或管理员操作。
+     * 该方法根据提供的ID更新指定用户的头像图片。图片被裁剪为正方形并渲染为几种固定尺寸，
+     * 返回的 {@code avatarPath} 指向最大尺寸，请求时附带 {@code w} 参数即可获得不小于该宽度的最小尺寸。
+     * 仅限用户本人或管理员操作。
      *
      * @param id   用户ID
      * @param file 待上传的文件
@@ -74,25 +85,52 @@ public class UserController {
     @PostMapping("/{id}/avatar")
     @PreAuthorize("@securityService.isCurrentUser(#id) or hasRole('ADMIN')")
     public ResponseEntity<User> updateAvatar(@PathVariable Long id, @RequestParam("file") MultipartFile file) {
-        // TODO: 实现文件上传逻辑
-        // 文件上传后的路径
-        String avatarPath = "";
-        User updatedUser = userService.updateAvatar(id, avatarPath);
-        return ResponseEntity.ok(updatedUser);
+        try {
+            User updatedUser = userService.updateAvatar(id, file);
+            return ResponseEntity.ok(updatedUser);
+        } catch (IOException e) {
+            /* 如果上传过程中发生IO异常，则返回400错误响应 */
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     /**
-     * 获取所有用户列表（仅管理员）。
+     * 分页获取用户列表（仅管理员）。
      * <p>
-     * 该方法返回系统中所有用户的列表，仅限管理员访问。
+     * 该方法按ID降序返回满足过滤条件的用户摘要，不包含密码等敏感字段。
+     * 将响应中的 {@code nextCursor} 作为 {@code cursor} 参数传入即可获取下一页。
      *
-     * @return 包含用户列表的响应实体
+     * @param filter 过滤条件，包括状态、角色、创建和最后登录时间范围以及用户名或邮箱前缀
+     * @param cursor 上一页返回的游标，第一页不传
+     * @param limit  每页大小，默认为50，最大为500
+     * @return 包含用户分页结果的响应实体
      */
     @GetMapping
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<List<User>> getAllUsers() {
-        List<User> users = userService.findAllUsers();
-        return ResponseEntity.ok(users);
+    public ResponseEntity<UserPage> getUsers(UserFilter filter,
+                                             @RequestParam(name = "cursor", required = false) Long cursor,
+                                             @RequestParam(name = "limit", defaultValue = "50") int limit) {
+        return ResponseEntity.ok(userService.findUsers(filter, cursor, Math.min(Math.max(limit, 1), 500)));
+    }
+
+    /**
+     * 以CSV格式导出用户列表（仅管理员）。
+     * <p>
+     * 该方法接受与用户列表相同的过滤条件，边查询边写出响应，适合导出全部用户。
+     *
+     * @param filter   过滤条件
+     * @param response HTTP响应
+     * @throws IOException 如果写出失败
+     */
+    @GetMapping("/export")
+    @PreAuthorize("hasRole('ADMIN')")
+    public void exportUsers(UserFilter filter, HttpServletResponse response) throws IOException {
+        response.setContentType("text/csv;charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.attachment().filename("users.csv").build().toString());
+        Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+        userService.exportUsers(filter, writer);
+        writer.flush();
     }
 
     /**
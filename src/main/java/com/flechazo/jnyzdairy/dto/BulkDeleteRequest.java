@@ -0,0 +1,23 @@
+package com.flechazo.jnyzdairy.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 批量删除请求DTO，用于封装要删除的日记或图片的ID列表。
+ *
+ * @author Flechazo
+ */
+@Data
+public class BulkDeleteRequest {
+
+    /**
+     * 要删除的ID列表，不能为空，一次最多1000个。
+     */
+    @NotEmpty(message = "ID列表不能为空")
+    @Size(max = 1000, message = "一次最多删除1000项")
+    private List<Long> ids;
+}
@@ -0,0 +1,19 @@
+package com.flechazo.jnyzdairy.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 批量删除响应DTO，用于封装实际删除的数量。
+ *
+ * @author Flechazo
+ */
+@Data
+@AllArgsConstructor
+public class BulkDeleteResponse {
+
+    /**
+     * 实际删除的数量，不存在的ID不计入。
+     */
+    private int deleted;
+}
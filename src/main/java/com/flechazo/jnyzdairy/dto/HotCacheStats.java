@@ -0,0 +1,67 @@
+package com.flechazo.jnyzdairy.dto;
+
+import lombok.Data;
+
+/**
+ * 热点文件缓存统计DTO，用于封装缓存的占用情况和命中率。
+ *
+ * @author Flechazo
+ */
+@Data
+public class HotCacheStats {
+
+    /**
+     * 缓存的文件数。
+     */
+    private int entries;
+
+    /**
+     * 缓存占用的堆外内存字节数。
+     */
+    private long bytes;
+
+    /**
+     * 缓存占用的堆外内存上限。
+     */
+    private long maxBytes;
+
+    /**
+     * 命中次数。
+     */
+    private long hits;
+
+    /**
+     * 未命中次数。
+     */
+    private long misses;
+
+    /**
+     * 命中缓存所返回的字节数。
+     */
+    private long hitBytes;
+
+    /**
+     * 命中率，尚无请求时为0。
+     */
+    private double hitRatio;
+
+    /**
+     * 从存储中加载到缓存的文件数。
+     */
+    private long admissions;
+
+    /**
+     * 因访问频率低于将被淘汰的文件而未能进入缓存的次数。
+     */
+    private long rejections;
+
+    /**
+     * 为腾出空间而淘汰的文件数。
+     */
+    private long evictions;
+
+    /**
+     * 因文件被覆盖或删除而失效的次数。
+     */
+    private long invalidations;
+}
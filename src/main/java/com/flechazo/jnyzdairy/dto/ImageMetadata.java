@@ -0,0 +1,47 @@
+package com.flechazo.jnyzdairy.dto;
+
+import lombok.Data;
+
+/**
+ * 图片元数据DTO，用于封装上传时从图片数据中提取的信息。
+ *
+ * @author Flechazo
+ */
+@Data
+public class ImageMetadata {
+
+    /**
+     * 图片的存储访问路径。
+     */
+    private String path;
+
+    /**
+     * 图片宽度（像素），为文件中存储的原始宽度，未应用EXIF方向。
+     */
+    private Integer width;
+
+    /**
+     * 图片高度（像素），为文件中存储的原始高度，未应用EXIF方向。
+     */
+    private Integer height;
+
+    /**
+     * 根据文件头识别出的MIME类型。
+     */
+    private String mimeType;
+
+    /**
+     * 文件大小（字节）。
+     */
+    private long byteSize;
+
+    /**
+     * EXIF方向值（1-8），没有方向信息时为1。
+     */
+    private int orientation = 1;
+
+    /**
+     * 文件内容的SHA-256摘要（小写十六进制）。
+     */
+    private String contentHash;
+}
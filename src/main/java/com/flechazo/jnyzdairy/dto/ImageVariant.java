@@ -0,0 +1,31 @@
+package com.flechazo.jnyzdairy.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.nio.file.Path;
+
+/**
+ * 图片变体DTO，用于封装按需生成的缩放图片的位置及其响应信息。
+ *
+ * @author Flechazo
+ */
+@Data
+@AllArgsConstructor
+public class ImageVariant {
+
+    /**
+     * 变体文件在缓存目录中的路径。
+     */
+    private Path path;
+
+    /**
+     * 变体图片的MIME类型，例如 {@code image/jpeg}。
+     */
+    private String contentType;
+
+    /**
+     * 输出格式是否根据请求的 {@code Accept} 头协商得出，若是则响应需要携带 {@code Vary: Accept}。
+     */
+    private boolean negotiated;
+}
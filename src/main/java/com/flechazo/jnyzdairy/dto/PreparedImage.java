@@ -0,0 +1,53 @@
+package com.flechazo.jnyzdairy.dto;
+
+import com.flechazo.jnyzdairy.service.BlobStorageService;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 已暂存并通过检查、尚未提交的图片，用于将多张图片在同一事务中一起提交。
+ * <p>
+ * 暂存文件在提交或丢弃之前一直占用磁盘，调用方必须在结束时调用
+ * {@link com.flechazo.jnyzdairy.service.FileStorageService#discard(PreparedImage)}。
+ *
+ * @author Flechazo
+ */
+@Data
+@AllArgsConstructor
+public class PreparedImage {
+
+    /**
+     * 暂存文件，首次出现的内容已经过体积优化。
+     */
+    private BlobStorageService.StagedBlob staged;
+
+    /**
+     * 存储文件的扩展名。
+     */
+    private String extension;
+
+    /**
+     * 根据文件头识别出的MIME类型。
+     */
+    private String mimeType;
+
+    /**
+     * 计入用量的字节数，内容已存储时为已存储文件的大小。
+     */
+    private long byteSize;
+
+    /**
+     * EXIF方向值。
+     */
+    private int orientation;
+
+    /**
+     * 图片宽度（像素）。
+     */
+    private int width;
+
+    /**
+     * 图片高度（像素）。
+     */
+    private int height;
+}
@@ -0,0 +1,37 @@
+package com.flechazo.jnyzdairy.dto;
+
+import lombok.Data;
+
+/**
+ * HQL查询统计DTO，用于封装Hibernate收集的单条查询的执行情况。
+ *
+ * @author Flechazo
+ */
+@Data
+public class QueryExecutionStats {
+
+    /**
+     * 查询语句，参数以占位符表示。
+     */
+    private String query;
+
+    /**
+     * 执行次数。
+     */
+    private long executions;
+
+    /**
+     * 返回的总行数。
+     */
+    private long rows;
+
+    /**
+     * 平均执行时间（毫秒）。
+     */
+    private long averageTime;
+
+    /**
+     * 最长执行时间（毫秒）。
+     */
+    private long maxTime;
+}
@@ -0,0 +1,54 @@
+package com.flechazo.jnyzdairy.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 查询统计报告DTO，用于封装Hibernate的全局计数、各仓库方法的统计和执行最慢的查询。
+ *
+ * @author Flechazo
+ */
+@Data
+public class QueryStatsReport {
+
+    /**
+     * 统计开始的时间（毫秒时间戳），即启动或上次重置的时间。
+     */
+    private long since;
+
+    /**
+     * 准备执行的SQL语句总数。
+     */
+    private long statements;
+
+    /**
+     * 加载的实体总数。
+     */
+    private long entityLoads;
+
+    /**
+     * 抓取的集合总数。
+     */
+    private long collectionFetches;
+
+    /**
+     * 执行的HQL和原生查询总数。
+     */
+    private long queryExecutions;
+
+    /**
+     * 提交的事务数。
+     */
+    private long transactions;
+
+    /**
+     * 各仓库方法的统计，按总执行时间降序排列。
+     */
+    private List<RepositoryMethodStats> methods;
+
+    /**
+     * 执行最慢的查询，按最长执行时间降序排列。
+     */
+    private List<QueryExecutionStats> queries;
+}
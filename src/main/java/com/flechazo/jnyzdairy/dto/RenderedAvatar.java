@@ -0,0 +1,44 @@
+package com.flechazo.jnyzdairy.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * 头像渲染结果DTO，用于封装一次上传渲染出的各个尺寸的编码数据。
+ *
+ * @author Flechazo
+ */
+@Data
+@AllArgsConstructor
+public class RenderedAvatar {
+
+    /**
+     * 最大尺寸编码数据的SHA-256摘要的前16个十六进制字符，作为文件名的一部分。
+     */
+    private String hash;
+
+    /**
+     * 文件扩展名，带透明通道的图片为 {@code png}，其他为 {@code jpg}。
+     */
+    private String extension;
+
+    /**
+     * 尺寸到编码数据的映射，按尺寸升序排列。
+     */
+    private Map<Integer, byte[]> variants;
+
+    /**
+     * 所有尺寸的编码数据的总字节数。
+     *
+     * @return 总字节数
+     */
+    public long getTotalBytes() {
+        long total = 0;
+        for (byte[] data : variants.values()) {
+            total += data.length;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,69 @@
+package com.flechazo.jnyzdairy.dto;
+
+import lombok.Data;
+
+/**
+ * 仓库方法统计DTO，用于封装一个仓库方法自启动或上次重置以来的调用次数、数据库访问次数和耗时。
+ * <p>
+ * 平均每次调用的语句数或实体加载数随结果集大小增长时，通常意味着存在N+1查询。
+ *
+ * @author Flechazo
+ */
+@Data
+public class RepositoryMethodStats {
+
+    /**
+     * 仓库接口名，例如 {@code DiaryRepository}。
+     */
+    private String repository;
+
+    /**
+     * 方法名。
+     */
+    private String method;
+
+    /**
+     * 调用次数。
+     */
+    private long invocations;
+
+    /**
+     * 执行的SQL语句总数。
+     */
+    private long statements;
+
+    /**
+     * 单次调用执行的最多SQL语句数。
+     */
+    private long maxStatements;
+
+    /**
+     * 加载的实体总数。
+     */
+    private long entityLoads;
+
+    /**
+     * 抓取的集合总数。
+     */
+    private long collectionFetches;
+
+    /**
+     * 总执行时间（毫秒）。
+     */
+    private double totalTime;
+
+    /**
+     * 平均执行时间（毫秒）。
+     */
+    private double averageTime;
+
+    /**
+     * 最长执行时间（毫秒）。
+     */
+    private double maxTime;
+
+    /**
+     * 执行时间达到慢调用阈值的次数。
+     */
+    private long slowInvocations;
+}
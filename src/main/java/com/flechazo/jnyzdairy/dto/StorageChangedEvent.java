@@ -0,0 +1,25 @@
+package com.flechazo.jnyzdairy.dto;
+
+import com.flechazo.jnyzdairy.entity.StorageOperation;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 存储变更事件DTO，在存储后端中的对象被创建、覆盖或删除后发布，供进程内的缓存等组件订阅。
+ *
+ * @author Flechazo
+ */
+@Data
+@AllArgsConstructor
+public class StorageChangedEvent {
+
+    /**
+     * 变更类型。
+     */
+    private StorageOperation operation;
+
+    /**
+     * 发生变更的对象键。
+     */
+    private String key;
+}
@@ -0,0 +1,96 @@
+package com.flechazo.jnyzdairy.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 孤儿文件回收报告DTO，用于封装一次回收的进度和结果。
+ *
+ * @author Flechazo
+ */
+@Data
+public class StorageGcReport {
+
+    /**
+     * 是否为只生成报告而不删除文件的试运行。
+     */
+    private boolean dryRun;
+
+    /**
+     * 是否为只检查变更日志中对象的增量回收。
+     */
+    private boolean incremental;
+
+    /**
+     * 是否仍在运行。
+     */
+    private boolean running;
+
+    /**
+     * 开始时间。
+     */
+    private LocalDateTime startedAt;
+
+    /**
+     * 结束时间，运行中为 {@code null}。
+     */
+    private LocalDateTime finishedAt;
+
+    /**
+     * 分片总数。
+     */
+    private int shardsTotal;
+
+    /**
+     * 已完成的分片数。
+     */
+    private int shardsDone;
+
+    /**
+     * 处理失败的分片数，失败的分片会在下一次回收时重新处理。
+     */
+    private int shardsFailed;
+
+    /**
+     * 已检查的文件数。
+     */
+    private long scanned;
+
+    /**
+     * 被数据库记录引用的文件数。
+     */
+    private long referenced;
+
+    /**
+     * 因处于宽限期内而跳过的未引用文件数。
+     */
+    private long skippedRecent;
+
+    /**
+     * 发现的孤儿文件数。
+     */
+    private long orphans;
+
+    /**
+     * 孤儿文件的总大小（字节）。
+     */
+    private long orphanBytes;
+
+    /**
+     * 已删除的孤儿文件数，试运行时始终为0。
+     */
+    private long deleted;
+
+    /**
+     * 已删除的过期暂存文件数。
+     */
+    private long stagingDeleted;
+
+    /**
+     * 孤儿文件的对象键，数量受配置的上限限制。
+     */
+    private List<String> orphanKeys = new ArrayList<>();
+}
@@ -0,0 +1,29 @@
+package com.flechazo.jnyzdairy.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 存储对象DTO，用于封装存储后端中一个对象的基本信息。
+ *
+ * @author Flechazo
+ */
+@Data
+@AllArgsConstructor
+public class StorageObject {
+
+    /**
+     * 对象键，形如 {@code blobs/ab/<摘要>.jpg}。
+     */
+    private String key;
+
+    /**
+     * 对象大小（字节）。
+     */
+    private long size;
+
+    /**
+     * 最后修改时间（毫秒时间戳）。
+     */
+    private long lastModified;
+}
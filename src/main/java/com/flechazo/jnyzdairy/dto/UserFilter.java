@@ -0,0 +1,56 @@
+package com.flechazo.jnyzdairy.dto;
+
+import com.flechazo.jnyzdairy.entity.UserRole;
+import com.flechazo.jnyzdairy.entity.UserStatus;
+import lombok.Data;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDateTime;
+
+/**
+ * 用户列表过滤条件DTO，由查询参数绑定，所有条件均可为空，为空时不过滤。
+ *
+ * @author Flechazo
+ */
+@Data
+public class UserFilter {
+
+    /**
+     * 用户状态。
+     */
+    private UserStatus status;
+
+    /**
+     * 用户角色。
+     */
+    private UserRole role;
+
+    /**
+     * 创建时间下限（包含）。
+     */
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime createdFrom;
+
+    /**
+     * 创建时间上限（不包含）。
+     */
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime createdTo;
+
+    /**
+     * 最后登录时间下限（包含），从未登录的用户不会匹配。
+     */
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime lastLoginFrom;
+
+    /**
+     * 最后登录时间上限（不包含），从未登录的用户不会匹配。
+     */
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime lastLoginTo;
+
+    /**
+     * 用户名或邮箱的前缀，不区分大小写。
+     */
+    private String q;
+}
@@ -0,0 +1,26 @@
+package com.flechazo.jnyzdairy.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 用户列表分页响应DTO，使用游标分页。
+ *
+ * @author Flechazo
+ */
+@Data
+@AllArgsConstructor
+public class UserPage {
+
+    /**
+     * 本页的用户，按ID降序排列。
+     */
+    private List<UserSummary> items;
+
+    /**
+     * 下一页的游标，作为 {@code cursor} 参数传入即可获取下一页，没有更多数据时为空。
+     */
+    private Long nextCursor;
+}
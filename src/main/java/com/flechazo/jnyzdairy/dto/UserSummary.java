@@ -0,0 +1,65 @@
+package com.flechazo.jnyzdairy.dto;
+
+import com.flechazo.jnyzdairy.entity.UserRole;
+import com.flechazo.jnyzdairy.entity.UserStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 用户摘要DTO，用于管理员的用户列表和导出，只包含列表需要展示的字段。
+ * <p>
+ * 由查询直接构造，不加载用户实体，也不包含密码等敏感字段。
+ *
+ * @author Flechazo
+ */
+@Data
+@AllArgsConstructor
+public class UserSummary {
+
+    /**
+     * 用户ID。
+     */
+    private Long id;
+
+    /**
+     * 用户名。
+     */
+    private String username;
+
+    /**
+     * 电子邮件地址。
+     */
+    private String email;
+
+    /**
+     * 显示名称。
+     */
+    private String displayName;
+
+    /**
+     * 头像路径。
+     */
+    private String avatarPath;
+
+    /**
+     * 用户角色。
+     */
+    private UserRole role;
+
+    /**
+     * 用户状态。
+     */
+    private UserStatus status;
+
+    /**
+     * 最后一次登录时间，从未登录时为空。
+     */
+    private LocalDateTime lastLogin;
+
+    /**
+     * 创建时间。
+     */
+    private LocalDateTime createdAt;
+}
@@ -1,7 +1,10 @@
 package com.flechazo.jnyzdairy.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
 import java.time.LocalDateTime;
 
@@ -12,7 +15,7 @@ import java.time.LocalDateTime;
  */
 @Data
 @Entity
-@Table(name = "diary_images")
+@Table(name = "diary_images", indexes = @Index(name = "idx_diary_images_content_hash", columnList = "content_hash"))
 public class DiaryImage {
 
     /**
@@ -24,7 +27,12 @@ public class DiaryImage {
 
     /**
      * 关联的日记条目，每个日记图片都属于一个特定的日记条目，不能为空。
+     * <p>
+     * 使用 {@code @JsonIgnore} 注解防止序列化时出现循环引用。
      */
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "diary_id", nullable = false)
     private Diary diary;
@@ -46,6 +54,39 @@ public class DiaryImage {
     @Column(name = "is_preview")
     private boolean isPreview;
 
+    /**
+     * 图片宽度（像素），上传时从文件头中读取，未应用EXIF方向。
+     */
+    private Integer width;
+
+    /**
+     * 图片高度（像素），上传时从文件头中读取，未应用EXIF方向。
+     */
+    private Integer height;
+
+    /**
+     * 图片的MIME类型，上传时根据文件头识别。
+     */
+    @Column(name = "mime_type", length = 32)
+    private String mimeType;
+
+    /**
+     * 图片文件大小（字节）。
+     */
+    @Column(name = "byte_size")
+    private Long byteSize;
+
+    /**
+     * EXIF方向值（1-8），没有方向信息时为1。
+     */
+    private Integer orientation;
+
+    /**
+     * 图片内容的SHA-256摘要，用于内容寻址存储和缓存校验。
+     */
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
     /**
      * 创建时间戳，记录图片创建的时间。
      */
@@ -0,0 +1,67 @@
+package com.flechazo.jnyzdairy.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 后台任务的进度检查点实体类，记录可恢复任务已经处理到的位置。
+ * <p>
+ * 任务在每处理完一批数据后更新检查点，应用重启后从检查点继续执行，不会重复处理已完成的部分。
+ *
+ * @author Flechazo
+ */
+@Data
+@Entity
+@NoArgsConstructor
+@Table(name = "job_checkpoints")
+public class JobCheckpoint {
+
+    /**
+     * 任务名称，作为检查点的唯一标识符。
+     */
+    @Id
+    @Column(length = 100)
+    private String name;
+
+    /**
+     * 任务已经处理到的位置，格式由具体任务决定。
+     */
+    @Column(nullable = false)
+    private String position;
+
+    /**
+     * 任务是否已经全部完成。
+     */
+    @Column(nullable = false)
+    private boolean completed;
+
+    /**
+     * 更新时间戳，记录检查点最后一次更新的时间。
+     */
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    /**
+     * 构造函数，创建处于初始位置的检查点。
+     *
+     * @param name     任务名称
+     * @param position 初始位置
+     */
+    public JobCheckpoint(String name, String position) {
+        this.name = name;
+        this.position = position;
+    }
+
+    /**
+     * 在持久化和更新之前自动设置更新时间。
+     */
+    @PrePersist
+    @PreUpdate
+    protected void onUpdate() {
+        /* 设置更新时间为当前时间 */
+        updatedAt = LocalDateTime.now();
+    }
+}
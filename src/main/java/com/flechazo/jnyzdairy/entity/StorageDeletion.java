@@ -0,0 +1,68 @@
+package com.flechazo.jnyzdairy.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 待删除存储对象实体类，即文件删除的发件箱。
+ * <p>
+ * 删除文件的事务只在该表中插入记录，随事务一同提交或回滚；事务提交后由后台任务批量删除对应的存储对象，
+ * 成功后删除记录，失败时按退避时间重试。删除不存在的对象不会出错，同一对象被处理多次也没有影响。
+ *
+ * @author Flechazo
+ */
+@Data
+@Entity
+@NoArgsConstructor
+@Table(name = "storage_deletion_outbox", indexes = {
+        @Index(name = "idx_storage_deletion_outbox_next_attempt_at", columnList = "next_attempt_at"),
+        @Index(name = "idx_storage_deletion_outbox_object_key", columnList = "object_key")
+})
+public class StorageDeletion {
+
+    /**
+     * 记录的唯一标识符，按插入顺序递增。
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * 要删除的对象键。
+     */
+    @Column(name = "object_key", nullable = false, length = 512)
+    private String objectKey;
+
+    /**
+     * 内容寻址文件的摘要，删除前据此确认文件没有被重新登记；用户文件为 {@code null}。
+     */
+    @Column(name = "blob_hash", length = 64)
+    private String blobHash;
+
+    /**
+     * 已经失败的次数。
+     */
+    @Column(nullable = false)
+    private int attempts;
+
+    /**
+     * 下次尝试删除的时间。
+     */
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    /**
+     * 最近一次失败的原因。
+     */
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    /**
+     * 记录的创建时间。
+     */
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,68 @@
+package com.flechazo.jnyzdairy.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 存储日志条目实体类，记录存储后端中一个对象的一次变更。
+ * <p>
+ * 条目按序列号递增追加，维护任务从各自的检查点开始读取之后的条目，只处理发生过变更的对象，
+ * 而不必遍历整个存储。
+ *
+ * @author Flechazo
+ */
+@Data
+@Entity
+@NoArgsConstructor
+@Table(name = "storage_journal", indexes = @Index(name = "idx_storage_journal_object_key", columnList = "object_key"))
+public class StorageJournalEntry {
+
+    /**
+     * 序列号，作为条目的唯一标识符，按追加顺序递增。
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long seq;
+
+    /**
+     * 发生变更的对象键。
+     */
+    @Column(name = "object_key", nullable = false, length = 512)
+    private String objectKey;
+
+    /**
+     * 变更类型。
+     */
+    @Column(nullable = false, length = 10)
+    @Enumerated(EnumType.STRING)
+    private StorageOperation operation;
+
+    /**
+     * 变更后的对象大小（字节），删除时为0。
+     */
+    @Column(nullable = false)
+    private long size;
+
+    /**
+     * 变更发生的时间。
+     */
+    @Column(name = "recorded_at", nullable = false)
+    private LocalDateTime recordedAt;
+
+    /**
+     * 构造函数，创建一条当前时间的日志条目。
+     *
+     * @param operation 变更类型
+     * @param objectKey 对象键
+     * @param size      变更后的对象大小
+     */
+    public StorageJournalEntry(StorageOperation operation, String objectKey, long size) {
+        this.operation = operation;
+        this.objectKey = objectKey;
+        this.size = size;
+        this.recordedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,24 @@
+package com.flechazo.jnyzdairy.entity;
+
+/**
+ * 存储变更类型枚举，用于定义存储日志中记录的对象变更。
+ *
+ * @author Flechazo
+ */
+public enum StorageOperation {
+
+    /**
+     * 创建了新的对象。
+     */
+    CREATE,
+
+    /**
+     * 覆盖了已存在的对象。
+     */
+    REPLACE,
+
+    /**
+     * 删除了对象。
+     */
+    DELETE;
+}
@@ -0,0 +1,60 @@
+package com.flechazo.jnyzdairy.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 内容寻址存储的文件实体类，每个唯一的文件内容只对应一条记录和一个物理文件。
+ * <p>
+ * 文件以其内容的SHA-256摘要作为标识，引用计数记录了有多少条业务数据引用了该文件，
+ * 只有当最后一个引用被移除时物理文件才会被删除。
+ *
+ * @author Flechazo
+ */
+@Data
+@Entity
+@Table(name = "stored_blobs")
+public class StoredBlob {
+
+    /**
+     * 文件内容的SHA-256摘要（小写十六进制），作为文件的唯一标识符。
+     */
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    /**
+     * 文件扩展名，首次存储时确定，用于构建物理文件名。
+     */
+    @Column(nullable = false, length = 10)
+    private String extension;
+
+    /**
+     * 文件大小（字节）。
+     */
+    @Column(nullable = false)
+    private long size;
+
+    /**
+     * 引用计数，表示当前引用该文件的业务数据条数。
+     */
+    @Column(name = "ref_count", nullable = false)
+    private long refCount;
+
+    /**
+     * 创建时间戳，记录文件首次存储的时间。
+     */
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    /**
+     * 在持久化之前自动设置创建时间。
+     */
+    @PrePersist
+    protected void onCreate() {
+        /* 设置创建时间为当前时间 */
+        createdAt = LocalDateTime.now();
+    }
+}
@@ -5,6 +5,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
@@ -16,7 +17,11 @@ import java.util.List;
  */
 @Data
 @Entity
-@Table(name = "users")
+@Table(name = "users", indexes = {
+        @Index(name = "idx_users_status_id", columnList = "status, id"),
+        @Index(name = "idx_users_created_at", columnList = "created_at"),
+        @Index(name = "idx_users_last_login", columnList = "last_login")
+})
 @NoArgsConstructor
 @AllArgsConstructor
 public class User {
@@ -36,7 +41,10 @@ public class User {
 
     /**
      * 密码，用于用户认证，不能为空。
+     * <p>
+     * 只在反序列化时读取，序列化时不输出，防止密码摘要出现在响应中。
      */
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     @Column(nullable = false)
     private String password;
 
@@ -78,6 +86,33 @@ public class User {
     @Column(name = "last_login")
     private LocalDateTime lastLogin;
 
+    /**
+     * 删除时间，记录用户被标记为删除的时间，超过保留期后其数据会被清理。
+     */
+    @Column(name = "deleted_at")
+    private LocalDateTime deletedAt;
+
+    /**
+     * 数据清理完成时间，记录已删除用户的日记、图片和头像被全部清理的时间。
+     */
+    @JsonIgnore
+    @Column(name = "purged_at")
+    private LocalDateTime purgedAt;
+
+    /**
+     * 数据清理失败的次数，为空表示没有失败过。
+     */
+    @JsonIgnore
+    @Column(name = "purge_failures")
+    private Integer purgeFailures;
+
+    /**
+     * 数据清理失败后下次重试的时间，在此之前清理任务不会领取该用户。
+     */
+    @JsonIgnore
+    @Column(name = "purge_retry_at")
+    private LocalDateTime purgeRetryAt;
+
     /**
      * 创建时间戳，记录用户创建的时间。
      */
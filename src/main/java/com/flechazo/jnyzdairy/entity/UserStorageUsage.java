@@ -0,0 +1,57 @@
+package com.flechazo.jnyzdairy.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 用户存储用量实体类，记录每个用户占用的字节数和文件数。
+ * <p>
+ * 用量在保存和删除文件的同一事务中增量更新，无需遍历用户的文件；定期核对任务会以实际数据校正累计误差。
+ * 日记图片按引用计算，同一用户多次上传相同内容的图片时，每次都计入用量。
+ *
+ * @author Flechazo
+ */
+@Data
+@Entity
+@NoArgsConstructor
+@Table(name = "user_storage_usage")
+public class UserStorageUsage {
+
+    /**
+     * 用户ID，作为用量记录的唯一标识符。
+     */
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    /**
+     * 占用的字节数。
+     */
+    @Column(name = "used_bytes", nullable = false)
+    private long usedBytes;
+
+    /**
+     * 拥有的文件数。
+     */
+    @Column(name = "file_count", nullable = false)
+    private long fileCount;
+
+    /**
+     * 更新时间戳，记录用量最后一次变化的时间。
+     */
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    /**
+     * 在持久化和更新之前自动设置更新时间。
+     */
+    @PrePersist
+    @PreUpdate
+    protected void onUpdate() {
+        /* 设置更新时间为当前时间 */
+        updatedAt = LocalDateTime.now();
+    }
+}
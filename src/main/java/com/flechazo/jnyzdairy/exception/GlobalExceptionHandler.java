@@ -114,6 +114,19 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
     }
 
+    /**
+     * 处理存储配额超限异常（StorageQuotaExceededException）。
+     *
+     * @param e 存储配额超限异常
+     * @return 包含错误信息的 ResponseEntity 对象，状态码为 507 (Insufficient Storage)
+     */
+    @ExceptionHandler(StorageQuotaExceededException.class)
+    public ResponseEntity<Map<String, String>> handleStorageQuotaExceededException(StorageQuotaExceededException e) {
+        Map<String, String> response = new HashMap<>();
+        response.put("error", e.getMessage());
+        return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).body(response);
+    }
+
     /**
      * 处理所有其他类型的异常。
      *
@@ -0,0 +1,22 @@
+package com.flechazo.jnyzdairy.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * 存储配额超限异常，当用户的存储用量将超过配额时抛出。
+ *
+ * @author Flechazo
+ */
+@ResponseStatus(HttpStatus.INSUFFICIENT_STORAGE)
+public class StorageQuotaExceededException extends RuntimeException {
+
+    /**
+     * 构造函数，用于初始化带有消息的存储配额超限异常。
+     *
+     * @param message 异常的消息描述
+     */
+    public StorageQuotaExceededException(String message) {
+        super(message);
+    }
+}
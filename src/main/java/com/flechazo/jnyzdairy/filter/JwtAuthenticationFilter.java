@@ -1,6 +1,8 @@
 package com.flechazo.jnyzdairy.filter;
 
 import com.flechazo.jnyzdairy.util.JwtUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -16,6 +18,7 @@ import org.springframework.security.web.authentication.WebAuthenticationDetailsS
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * JWT认证过滤器，用于拦截请求并验证JWT令牌。
@@ -38,6 +41,16 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
      */
     private final UserDetailsService userDetailsService;
 
+    /**
+     * 令牌验证通过、成功认证的请求的耗时计时器
+     */
+    private final Timer authenticatedTimer;
+
+    /**
+     * 令牌无效或验证出错的请求的耗时计时器
+     */
+    private final Timer rejectedTimer;
+
     /**
      * 日志记录器，用于记录系统日志
      */
@@ -48,10 +61,13 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
      *
      * @param jwtUtil            用于解析和验证JWT的工具类
      * @param userDetailsService 用户详情服务，用于加载用户信息
+     * @param meterRegistry      指标注册表，用于记录令牌验证的耗时
      */
-    public JwtAuthenticationFilter(JwtUtil jwtUtil, UserDetailsService userDetailsService) {
+    public JwtAuthenticationFilter(JwtUtil jwtUtil, UserDetailsService userDetailsService, MeterRegistry meterRegistry) {
         this.jwtUtil = jwtUtil;
         this.userDetailsService = userDetailsService;
+        this.authenticatedTimer = validationTimer("authenticated", meterRegistry);
+        this.rejectedTimer = validationTimer("rejected", meterRegistry);
     }
 
     /**
@@ -68,9 +84,12 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             @NonNull HttpServletRequest request,
             @NonNull HttpServletResponse response,
             @NonNull FilterChain filterChain) throws ServletException, IOException {
+        /* 从请求中提取JWT令牌 */
+        String token = extractToken(request);
+        /* 记录令牌解析、签名校验和加载用户的耗时，没有令牌的请求不计入 */
+        long start = System.nanoTime();
+        boolean authenticated = false;
         try {
-            /* 从请求中提取JWT令牌 */
-            String token = extractToken(request);
             /* 验证令牌有效性 */
             if (token != null && jwtUtil.validateToken(token)) {
                 /* 从令牌中提取用户名 */
@@ -92,6 +111,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                         authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                         /* 将认证信息存入安全上下文 */
                         SecurityContextHolder.getContext().setAuthentication(authentication);
+                        authenticated = true;
                         /* 记录成功认证日志 */
                         logger.debug("Successfully authenticated user: {}", username);
                     }
@@ -100,6 +120,10 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         } catch (Exception e) {
             /* 记录认证失败日志 */
             logger.error("Cannot set user authentication", e);
+        } finally {
+            if (token != null) {
+                (authenticated ? authenticatedTimer : rejectedTimer).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
         }
 
         /* 继续执行过滤链 */
@@ -120,4 +144,11 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
         return null;
     }
+
+    private static Timer validationTimer(String outcome, MeterRegistry meterRegistry) {
+        return Timer.builder("security.jwt.validation")
+                .description("Latency of JWT validation and user loading")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
 }
\ No newline at end of file
@@ -1,10 +1,16 @@
 package com.flechazo.jnyzdairy.repository;
 
 import com.flechazo.jnyzdairy.entity.DiaryImage;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * 日记图片数据访问接口
@@ -26,4 +32,94 @@ public interface DiaryImageRepository extends JpaRepository<DiaryImage, Long> {
      * @param diaryId 日记ID
      */
     void deleteByDiaryId(Long diaryId);
-} 
\ No newline at end of file
+
+    /**
+     * 根据内容摘要查找图片的MIME类型
+     * @param contentHash 图片内容摘要
+     * @param pageable 分页参数，通常只取第一条
+     * @return MIME类型列表
+     */
+    @Query("select i.mimeType from DiaryImage i where i.contentHash = :contentHash and i.mimeType is not null")
+    List<String> findMimeTypesByContentHash(@Param("contentHash") String contentHash, Pageable pageable);
+
+    /**
+     * 判断是否存在指定内容摘要的图片
+     * @param contentHash 图片内容摘要
+     * @return 存在时返回true
+     */
+    boolean existsByContentHash(String contentHash);
+
+    /**
+     * 判断是否存在指定访问路径的图片
+     * @param path 图片访问路径
+     * @return 存在时返回true
+     */
+    boolean existsByPath(String path);
+
+    /**
+     * 统计用户按内容寻址存储的日记图片的字节数之和，旧的用户目录下的图片不计入
+     * @param userId 用户ID
+     * @return 字节数之和，没有图片时为0
+     */
+    @Query("select coalesce(sum(i.byteSize), 0) from DiaryImage i " +
+            "where i.diary.user.id = :userId and i.contentHash is not null")
+    long sumContentAddressedByteSizeByUserId(@Param("userId") Long userId);
+
+    /**
+     * 统计用户按内容寻址存储的日记图片数，旧的用户目录下的图片不计入
+     * @param userId 用户ID
+     * @return 图片数
+     */
+    long countByDiaryUserIdAndContentHashIsNotNull(Long userId);
+
+    /**
+     * 查询图片所属日记的所有者的用户ID，在一次连接查询中完成，不加载图片、日记和用户
+     * @param id 图片ID
+     * @return 用户ID，图片不存在时为空
+     */
+    @Query("select i.diary.user.id from DiaryImage i where i.id = :id")
+    Optional<Long> findUserIdById(@Param("id") Long id);
+
+    /**
+     * 统计指定图片中不属于指定用户的图片数
+     * @param ids 图片ID
+     * @param userId 用户ID
+     * @return 图片数，为0时表示所有存在的图片都属于该用户
+     */
+    @Query("select count(i) from DiaryImage i where i.id in :ids and i.diary.user.id <> :userId")
+    long countByIdInAndOwnerNot(@Param("ids") Collection<Long> ids, @Param("userId") Long userId);
+
+    /**
+     * 查找指定图片的访问路径
+     * @param ids 图片ID
+     * @return 访问路径列表
+     */
+    @Query("select i.path from DiaryImage i where i.id in :ids")
+    List<String> findPathsByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * 查找指定日记的所有图片的访问路径
+     * @param diaryIds 日记ID
+     * @return 访问路径列表
+     */
+    @Query("select i.path from DiaryImage i where i.diary.id in :diaryIds")
+    List<String> findPathsByDiaryIdIn(@Param("diaryIds") Collection<Long> diaryIds);
+
+    /**
+     * 在一条语句中删除指定的图片，不加载实体
+     * @param ids 图片ID
+     * @return 删除的行数
+     */
+    @Modifying
+    @Query("delete from DiaryImage i where i.id in :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * 在一条语句中删除指定日记的所有图片，不加载实体
+     * @param diaryIds 日记ID
+     * @return 删除的行数
+     */
+    @Modifying
+    @Query("delete from DiaryImage i where i.diary.id in :diaryIds")
+    int deleteByDiaryIds(@Param("diaryIds") Collection<Long> diaryIds);
+}
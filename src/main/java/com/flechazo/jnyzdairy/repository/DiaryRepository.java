@@ -1,10 +1,15 @@
 package com.flechazo.jnyzdairy.repository;
 
 import com.flechazo.jnyzdairy.entity.Diary;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -41,4 +46,38 @@ public interface DiaryRepository extends JpaRepository<Diary, Long> {
      */
     List<Diary> findByUserIdAndDateBetweenOrderByDateDesc(
         Long userId, LocalDateTime startDate, LocalDateTime endDate);
-} 
\ No newline at end of file
+
+    /**
+     * 查询日记所有者的用户ID，只读取外键列，不加载日记内容和用户
+     * @param id 日记ID
+     * @return 用户ID，日记不存在时为空
+     */
+    @Query("select d.user.id from Diary d where d.id = :id")
+    Optional<Long> findUserIdById(@Param("id") Long id);
+
+    /**
+     * 统计指定日记中不属于指定用户的日记数
+     * @param ids 日记ID
+     * @param userId 用户ID
+     * @return 日记数，为0时表示所有存在的日记都属于该用户
+     */
+    long countByIdInAndUserIdNot(Collection<Long> ids, Long userId);
+
+    /**
+     * 在一条语句中删除指定的日记，不加载实体，调用前必须先删除其图片
+     * @param ids 日记ID
+     * @return 删除的行数
+     */
+    @Modifying
+    @Query("delete from Diary d where d.id in :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * 按ID升序查询用户的一批日记ID，用于分批删除
+     * @param userId 用户ID
+     * @param pageable 分页参数，只使用其中的每页大小
+     * @return 日记ID列表
+     */
+    @Query("select d.id from Diary d where d.user.id = :userId order by d.id")
+    List<Long> findIdsByUserId(@Param("userId") Long userId, Pageable pageable);
+} 
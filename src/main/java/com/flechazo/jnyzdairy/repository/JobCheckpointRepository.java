@@ -0,0 +1,39 @@
+package com.flechazo.jnyzdairy.repository;
+
+import com.flechazo.jnyzdairy.entity.JobCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * 任务检查点数据访问接口，用于读取和保存可恢复任务的进度。
+ *
+ * @author Flechazo
+ */
+@Repository
+public interface JobCheckpointRepository extends JpaRepository<JobCheckpoint, String> {
+
+    /**
+     * 查找名称以指定前缀开头的检查点。
+     *
+     * @param prefix 名称前缀
+     * @return 检查点列表
+     */
+    List<JobCheckpoint> findByNameStartingWith(String prefix);
+
+    /**
+     * 将名称以指定前缀开头的检查点标记为未完成。
+     *
+     * @param prefix 名称前缀
+     * @return 受影响的行数
+     */
+    @Modifying
+    @Transactional
+    @Query("update JobCheckpoint c set c.completed = false where c.name like concat(:prefix, '%')")
+    int resetByNamePrefix(@Param("prefix") String prefix);
+}
@@ -0,0 +1,61 @@
+package com.flechazo.jnyzdairy.repository;
+
+import com.flechazo.jnyzdairy.entity.StorageDeletion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 待删除存储对象数据访问接口，用于写入和领取文件删除的发件箱记录。
+ *
+ * @author Flechazo
+ */
+@Repository
+public interface StorageDeletionRepository extends JpaRepository<StorageDeletion, Long> {
+
+    /**
+     * 在一条语句中插入多条待删除记录。
+     * <p>
+     * 对象键和摘要分别以换行符连接，两者一一对应；用户文件的摘要为空字符串，插入后为 {@code null}。
+     *
+     * @param keys   以换行符分隔的对象键
+     * @param hashes 以换行符分隔的内容寻址文件摘要
+     * @param now    当前时间
+     * @return 插入的行数
+     */
+    @Modifying
+    @Query(value = "insert into storage_deletion_outbox (object_key, blob_hash, attempts, next_attempt_at, created_at) " +
+            "select r.object_key, nullif(r.blob_hash, ''), 0, :now, :now " +
+            "from unnest(string_to_array(:keys, chr(10)), string_to_array(:hashes, chr(10))) " +
+            "with ordinality as r(object_key, blob_hash, ord) order by r.ord",
+            nativeQuery = true)
+    int insertAll(@Param("keys") String keys, @Param("hashes") String hashes, @Param("now") LocalDateTime now);
+
+    /**
+     * 领取一批已到重试时间的记录并锁定到事务结束。已被其他实例锁定的记录被跳过，多个实例可以同时处理而不会重复。
+     *
+     * @param now   当前时间
+     * @param limit 最多领取的记录数
+     * @return 按插入顺序排列的记录
+     */
+    @Query(value = "select * from storage_deletion_outbox where next_attempt_at <= :now " +
+            "order by id limit :limit for update skip locked",
+            nativeQuery = true)
+    List<StorageDeletion> claim(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    /**
+     * 删除指定对象键的待删除记录。记录正在被处理时等待处理事务结束。
+     *
+     * @param keys 对象键
+     * @return 删除的行数
+     */
+    @Modifying
+    @Query("delete from StorageDeletion d where d.objectKey in :keys")
+    int deleteByObjectKeys(@Param("keys") Collection<String> keys);
+}
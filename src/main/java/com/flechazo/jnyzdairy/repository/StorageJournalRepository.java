@@ -0,0 +1,62 @@
+package com.flechazo.jnyzdairy.repository;
+
+import com.flechazo.jnyzdairy.entity.StorageJournalEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * 存储日志数据访问接口，用于追加、读取和压缩存储变更日志。
+ *
+ * @author Flechazo
+ */
+@Repository
+public interface StorageJournalRepository extends JpaRepository<StorageJournalEntry, Long> {
+
+    /**
+     * 按序列号升序读取指定序列号之后的条目。
+     *
+     * @param afterSeq 起始序列号（不含）
+     * @param pageable 分页参数，只使用其中的每页大小
+     * @return 日志条目列表
+     */
+    @Query("select e from StorageJournalEntry e where e.seq > :afterSeq order by e.seq")
+    List<StorageJournalEntry> findAfter(@Param("afterSeq") long afterSeq, Pageable pageable);
+
+    /**
+     * 查询当前最大的序列号。
+     *
+     * @return 最大序列号，日志为空时返回 {@code null}
+     */
+    @Query("select max(e.seq) from StorageJournalEntry e")
+    Long findMaxSeq();
+
+    /**
+     * 删除序列号不大于指定值的条目，这些条目已被所有维护任务处理。
+     *
+     * @param seq 序列号上限（含）
+     * @return 被删除的条目数
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from StorageJournalEntry e where e.seq <= :seq")
+    int deleteUpTo(@Param("seq") long seq);
+
+    /**
+     * 删除已被同一对象的更新条目取代的条目。读取者只关心每个对象的最新变更，被取代的条目不再需要。
+     *
+     * @return 被删除的条目数
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "delete from storage_journal j where exists (" +
+            "select 1 from storage_journal n where n.object_key = j.object_key and n.seq > j.seq)",
+            nativeQuery = true)
+    int deleteSuperseded();
+}
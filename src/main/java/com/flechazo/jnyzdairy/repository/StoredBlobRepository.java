@@ -0,0 +1,148 @@
+package com.flechazo.jnyzdairy.repository;
+
+import com.flechazo.jnyzdairy.entity.StoredBlob;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * 内容寻址文件数据访问接口，用于维护文件记录及其引用计数。
+ *
+ * @author Flechazo
+ */
+@Repository
+public interface StoredBlobRepository extends JpaRepository<StoredBlob, String> {
+
+    /**
+     * 获取一个文件引用：记录不存在时插入引用计数为1的新记录，否则将引用计数加1。
+     * <p>
+     * 该语句在冲突时会锁定对应的行直到事务结束，从而与并发的释放操作互斥。
+     *
+     * @param hash      文件内容摘要
+     * @param extension 文件扩展名
+     * @param size      文件大小
+     * @return 受影响的行数
+     */
+    @Modifying
+    @Query(value = "insert into stored_blobs (hash, extension, size, ref_count, created_at) " +
+            "values (:hash, :extension, :size, 1, now()) " +
+            "on conflict (hash) do update set ref_count = stored_blobs.ref_count + 1",
+            nativeQuery = true)
+    int acquire(@Param("hash") String hash, @Param("extension") String extension, @Param("size") long size);
+
+    /**
+     * 释放一个文件引用，将引用计数减1。
+     *
+     * @param hash 文件内容摘要
+     * @return 受影响的行数
+     */
+    @Modifying
+    @Query("update StoredBlob b set b.refCount = b.refCount - 1 where b.hash = :hash")
+    int release(@Param("hash") String hash);
+
+    /**
+     * 删除已不再被引用的文件记录。
+     *
+     * @param hash 文件内容摘要
+     * @return 被删除的行数，为1时表示调用方应删除对应的物理文件
+     */
+    @Modifying
+    @Query("delete from StoredBlob b where b.hash = :hash and b.refCount <= 0")
+    int deleteIfUnreferenced(@Param("hash") String hash);
+
+    /**
+     * 计算批量释放引用的文件大小之和，每个文件按释放的引用数计入。
+     *
+     * @param hashes 以逗号分隔的文件内容摘要
+     * @param counts 以逗号分隔的引用数，与摘要一一对应
+     * @return 字节数之和
+     */
+    @Query(value = "select coalesce(sum(b.size * cast(r.n as bigint)), 0) from stored_blobs b " +
+            "join unnest(string_to_array(:hashes, ','), string_to_array(:counts, ',')) as r(hash, n) " +
+            "on b.hash = r.hash",
+            nativeQuery = true)
+    long sumReleasedBytes(@Param("hashes") String hashes, @Param("counts") String counts);
+
+    /**
+     * 在一条语句中释放多个文件的引用，每个文件的引用计数减去对应的引用数。
+     * <p>
+     * 该语句锁定涉及的行直到事务结束，与并发的获取操作互斥。
+     *
+     * @param hashes 以逗号分隔的文件内容摘要
+     * @param counts 以逗号分隔的引用数，与摘要一一对应
+     * @return 受影响的行数
+     */
+    @Modifying
+    @Query(value = "update stored_blobs b set ref_count = b.ref_count - cast(r.n as bigint) " +
+            "from unnest(string_to_array(:hashes, ','), string_to_array(:counts, ',')) as r(hash, n) " +
+            "where b.hash = r.hash",
+            nativeQuery = true)
+    int releaseAll(@Param("hashes") String hashes, @Param("counts") String counts);
+
+    /**
+     * 查找已不再被引用的文件名（{@code <摘要>.<扩展名>}）。
+     *
+     * @param hashes 文件内容摘要
+     * @return 文件名列表
+     */
+    @Query("select concat(b.hash, '.', b.extension) from StoredBlob b where b.hash in :hashes and b.refCount <= 0")
+    List<String> findUnreferencedNames(@Param("hashes") Collection<String> hashes);
+
+    /**
+     * 批量删除已不再被引用的文件记录。
+     *
+     * @param hashes 文件内容摘要
+     * @return 被删除的行数
+     */
+    @Modifying
+    @Query("delete from StoredBlob b where b.hash in :hashes and b.refCount <= 0")
+    int deleteUnreferenced(@Param("hashes") Collection<String> hashes);
+
+    /**
+     * 查找仍有文件记录的摘要。
+     *
+     * @param hashes 文件内容摘要
+     * @return 存在文件记录的摘要
+     */
+    @Query("select b.hash from StoredBlob b where b.hash in :hashes")
+    Set<String> findExistingHashes(@Param("hashes") Collection<String> hashes);
+
+    /**
+     * 按文件名升序流式查询摘要以指定前缀开头、且仍被引用的内容寻址文件名（{@code <摘要>.<扩展名>}）。
+     * <p>
+     * 引用来自日记图片的访问路径以及引用计数大于0的文件记录。排序使用 {@code C} 排序规则，
+     * 与Java字符串的比较顺序一致，可直接与排序后的文件列表做归并连接。必须在事务中调用并关闭返回的流。
+     *
+     * @param hashPrefix 摘要前缀
+     * @return 文件名流
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query(value = "select name from (" +
+            "select substring(i.path from '[^/]+$') as name from diary_images i " +
+            "where i.content_hash like concat(:hashPrefix, '%') " +
+            "union " +
+            "select b.hash || '.' || b.extension as name from stored_blobs b " +
+            "where b.ref_count > 0 and b.hash like concat(:hashPrefix, '%')" +
+            ") refs order by name collate \"C\"",
+            nativeQuery = true)
+    Stream<String> streamReferencedNames(@Param("hashPrefix") String hashPrefix);
+
+    /**
+     * 判断内容寻址文件是否仍有引用计数大于0的文件记录。
+     *
+     * @param hash     文件内容摘要
+     * @param refCount 引用计数的下限，通常为0
+     * @return 有引用时返回 {@code true}
+     */
+    boolean existsByHashAndRefCountGreaterThan(String hash, long refCount);
+}
@@ -1,12 +1,23 @@
 package com.flechazo.jnyzdairy.repository;
 
+import com.flechazo.jnyzdairy.dto.UserSummary;
 import com.flechazo.jnyzdairy.entity.User;
+import com.flechazo.jnyzdairy.entity.UserRole;
+import com.flechazo.jnyzdairy.entity.UserStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Repository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * 用户数据访问接口，用于定义对用户实体进行数据库操作的方法。
@@ -16,6 +27,25 @@ import java.util.Optional;
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
 
+    /**
+     * 用户摘要查询，按ID降序返回ID小于游标且满足过滤条件的用户，为空的条件不参与过滤。
+     * <p>
+     * 前缀匹配使用 {@code lower(username)} 和 {@code lower(email)} 上的 {@code text_pattern_ops} 索引，
+     * 索引定义在 {@code schema.sql} 中。
+     */
+    String USER_SUMMARY_QUERY = "SELECT new com.flechazo.jnyzdairy.dto.UserSummary(u.id, u.username, u.email, " +
+            "u.displayName, u.avatarPath, u.role, u.status, u.lastLogin, u.createdAt) FROM User u " +
+            "WHERE u.id < :beforeId " +
+            "AND (:status IS NULL OR u.status = :status) " +
+            "AND (:role IS NULL OR u.role = :role) " +
+            "AND (:createdFrom IS NULL OR u.createdAt >= :createdFrom) " +
+            "AND (:createdTo IS NULL OR u.createdAt < :createdTo) " +
+            "AND (:lastLoginFrom IS NULL OR u.lastLogin >= :lastLoginFrom) " +
+            "AND (:lastLoginTo IS NULL OR u.lastLogin < :lastLoginTo) " +
+            "AND (:prefix IS NULL OR lower(u.username) LIKE :prefix ESCAPE '!' " +
+            "OR lower(u.email) LIKE :prefix ESCAPE '!') " +
+            "ORDER BY u.id DESC";
+
     /**
      * 根据用户名查找用户。
      *
@@ -47,4 +77,142 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * @return 如果存在返回true，否则返回false
      */
     boolean existsByEmail(String email);
-}
\ No newline at end of file
+
+    /**
+     * 检查是否有用户使用指定的头像路径。
+     *
+     * @param avatarPath 头像访问路径
+     * @return 如果存在返回true，否则返回false
+     */
+    boolean existsByAvatarPath(String avatarPath);
+
+    /**
+     * 按ID升序查询大于指定ID的用户ID，用于分批遍历所有用户。
+     *
+     * @param afterId  上一批的最大用户ID，从头开始时传入0
+     * @param pageable 分页参数，只使用其中的每页大小
+     * @return 用户ID列表
+     */
+    @Query("SELECT u.id FROM User u WHERE u.id > :afterId ORDER BY u.id")
+    List<Long> findIdsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * 领取一个待清理数据的已删除用户，并锁定该用户直到当前事务结束。
+     * <p>
+     * 使用 {@code SKIP LOCKED} 跳过其他节点正在清理的用户，多个节点可以同时执行清理而不会处理同一个用户。
+     * 清理失败后重试时间晚于 {@code retryBefore} 的用户不会被领取。必须在事务中调用。
+     *
+     * @param cutoff      删除时间上限，在此之前删除的用户才会被清理
+     * @param retryBefore 重试时间上限，通常为本次清理开始的时间，使本次失败的用户在本次清理中不再被领取
+     * @return 用户ID，没有待清理的用户时为空
+     */
+    @Query(value = "select id from users where status = 'DELETED' and deleted_at <= :cutoff and purged_at is null " +
+            "and (purge_retry_at is null or purge_retry_at <= :retryBefore) " +
+            "order by deleted_at, id limit 1 for update skip locked",
+            nativeQuery = true)
+    Optional<Long> claimPurgeCandidate(@Param("cutoff") LocalDateTime cutoff,
+                                       @Param("retryBefore") LocalDateTime retryBefore);
+
+    /**
+     * 查询用户数据清理失败的次数。
+     *
+     * @param id 用户ID
+     * @return 失败次数，没有失败过时为空
+     */
+    @Query("SELECT u.purgeFailures FROM User u WHERE u.id = :id")
+    Optional<Integer> findPurgeFailures(@Param("id") Long id);
+
+    /**
+     * 记录用户数据清理失败，在重试时间之前清理任务不会再领取该用户。
+     *
+     * @param id       用户ID
+     * @param failures 失败的次数
+     * @param retryAt  下次重试的时间
+     * @return 受影响的行数
+     */
+    @Modifying
+    @Query("UPDATE User u SET u.purgeFailures = :failures, u.purgeRetryAt = :retryAt WHERE u.id = :id")
+    int recordPurgeFailure(@Param("id") Long id, @Param("failures") int failures,
+                           @Param("retryAt") LocalDateTime retryAt);
+
+    /**
+     * 将用户标记为数据已清理，并清除头像路径。
+     *
+     * @param id       用户ID
+     * @param purgedAt 清理完成时间
+     * @return 受影响的行数
+     */
+    @Modifying
+    @Query("UPDATE User u SET u.purgedAt = :purgedAt, u.avatarPath = null WHERE u.id = :id")
+    int markPurged(@Param("id") Long id, @Param("purgedAt") LocalDateTime purgedAt);
+
+    /**
+     * 按访问路径升序流式查询用户文件的引用，只包含用户ID的SHA-256摘要以指定前缀开头的路径。
+     * <p>
+     * 引用来自用户头像和未按内容寻址存储的日记图片，与存储布局中用户文件的分层方式一致。
+     * 排序使用 {@code C} 排序规则，与Java字符串的比较顺序一致。必须在事务中调用并关闭返回的流。
+     *
+     * @param hashPrefix 用户ID摘要的前缀
+     * @return 访问路径流，例如 {@code 1/avatar/xxx.jpg}
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query(value = "select path from (" +
+            "select u.avatar_path as path from users u where u.avatar_path is not null and u.avatar_path <> '' " +
+            "union " +
+            "select i.path from diary_images i where i.content_hash is null" +
+            ") refs " +
+            "where encode(sha256(convert_to(split_part(path, '/', 1), 'UTF8')), 'hex') like concat(:hashPrefix, '%') " +
+            "order by path collate \"C\"",
+            nativeQuery = true)
+    Stream<String> streamReferencedPaths(@Param("hashPrefix") String hashPrefix);
+
+    /**
+     * 按ID降序分页查询用户摘要，使用游标分页，不论翻到第几页都只扫描一页的数据。
+     *
+     * @param beforeId      上一页最后一个用户的ID，第一页传入 {@link Long#MAX_VALUE}
+     * @param status        用户状态
+     * @param role          用户角色
+     * @param createdFrom   创建时间下限（包含）
+     * @param createdTo     创建时间上限（不包含）
+     * @param lastLoginFrom 最后登录时间下限（包含）
+     * @param lastLoginTo   最后登录时间上限（不包含）
+     * @param prefix        用户名或邮箱的小写前缀模式，以 {@code %} 结尾，{@code !} 为转义字符
+     * @param pageable      分页参数，只使用其中的每页大小
+     * @return 用户摘要列表
+     */
+    @Query(USER_SUMMARY_QUERY)
+    List<UserSummary> findSummaries(@Param("beforeId") Long beforeId,
+                                    @Param("status") UserStatus status,
+                                    @Param("role") UserRole role,
+                                    @Param("createdFrom") LocalDateTime createdFrom,
+                                    @Param("createdTo") LocalDateTime createdTo,
+                                    @Param("lastLoginFrom") LocalDateTime lastLoginFrom,
+                                    @Param("lastLoginTo") LocalDateTime lastLoginTo,
+                                    @Param("prefix") String prefix,
+                                    Pageable pageable);
+
+    /**
+     * 按ID降序流式查询用户摘要，用于导出。结果不进入持久化上下文，内存占用与用户数无关。
+     * 必须在事务中调用并关闭返回的流。
+     *
+     * @param beforeId      ID上限（不包含），导出全部时传入 {@link Long#MAX_VALUE}
+     * @param status        用户状态
+     * @param role          用户角色
+     * @param createdFrom   创建时间下限（包含）
+     * @param createdTo     创建时间上限（不包含）
+     * @param lastLoginFrom 最后登录时间下限（包含）
+     * @param lastLoginTo   最后登录时间上限（不包含）
+     * @param prefix        用户名或邮箱的小写前缀模式，以 {@code %} 结尾，{@code !} 为转义字符
+     * @return 用户摘要流
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query(USER_SUMMARY_QUERY)
+    Stream<UserSummary> streamSummaries(@Param("beforeId") Long beforeId,
+                                        @Param("status") UserStatus status,
+                                        @Param("role") UserRole role,
+                                        @Param("createdFrom") LocalDateTime createdFrom,
+                                        @Param("createdTo") LocalDateTime createdTo,
+                                        @Param("lastLoginFrom") LocalDateTime lastLoginFrom,
+                                        @Param("lastLoginTo") LocalDateTime lastLoginTo,
+                                        @Param("prefix") String prefix);
+}
@@ -0,0 +1,62 @@
+package com.flechazo.jnyzdairy.repository;
+
+import com.flechazo.jnyzdairy.entity.UserStorageUsage;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * 用户存储用量数据访问接口。
+ *
+ * @author Flechazo
+ */
+@Repository
+public interface UserStorageUsageRepository extends JpaRepository<UserStorageUsage, Long> {
+
+    /**
+     * 在用户的用量上累加增量，记录不存在时插入新记录。
+     * <p>
+     * 该语句会锁定对应的行直到事务结束，同一用户的并发更新依次进行，不会丢失增量。
+     *
+     * @param userId 用户ID
+     * @param bytes  字节数的增量，可以为负
+     * @param files  文件数的增量，可以为负
+     * @return 受影响的行数
+     */
+    @Modifying
+    @Query(value = "insert into user_storage_usage (user_id, used_bytes, file_count, updated_at) " +
+            "values (:userId, greatest(:bytes, 0), greatest(:files, 0), now()) " +
+            "on conflict (user_id) do update set " +
+            "used_bytes = greatest(user_storage_usage.used_bytes + :bytes, 0), " +
+            "file_count = greatest(user_storage_usage.file_count + :files, 0), " +
+            "updated_at = now()",
+            nativeQuery = true)
+    int add(@Param("userId") Long userId, @Param("bytes") long bytes, @Param("files") long files);
+
+    /**
+     * 将用户的用量设置为核对得到的实际值。
+     *
+     * @param userId 用户ID
+     * @param bytes  实际占用的字节数
+     * @param files  实际拥有的文件数
+     * @return 受影响的行数
+     */
+    @Modifying
+    @Query("update UserStorageUsage u set u.usedBytes = :bytes, u.fileCount = :files, " +
+            "u.updatedAt = current_timestamp where u.userId = :userId")
+    int set(@Param("userId") Long userId, @Param("bytes") long bytes, @Param("files") long files);
+
+    /**
+     * 按占用字节数降序查询用量记录。
+     *
+     * @param pageable 分页参数
+     * @return 用量记录列表
+     */
+    @Query("select u from UserStorageUsage u order by u.usedBytes desc, u.userId")
+    List<UserStorageUsage> findTopConsumers(Pageable pageable);
+}
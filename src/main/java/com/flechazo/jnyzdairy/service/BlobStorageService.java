@@ -0,0 +1,293 @@
+package com.flechazo.jnyzdairy.service;
+
+import com.flechazo.jnyzdairy.dto.StorageObject;
+import com.flechazo.jnyzdairy.entity.StoredBlob;
+import com.flechazo.jnyzdairy.repository.StoredBlobRepository;
+import com.flechazo.jnyzdairy.util.StorageLayout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * 内容寻址存储服务，按文件内容的SHA-256摘要存储文件，相同内容只保存一份。
+ * <p>
+ * 上传的数据在写入本地暂存文件的同时计算摘要，调用方检查通过后在数据库中登记引用并将暂存文件写入存储后端
+ * （本地后端只需一次原子重命名）；如果相同内容的文件已经存在，则直接丢弃暂存文件。
+ * 引用计数与调用方的事务一同提交或回滚，存储对象仅在最后一个引用被释放、事务提交后由后台删除；
+ * 在此之前重新上传相同内容时，提交会撤销尚未执行的删除。
+ *
+ * @author Flechazo
+ */
+@Service
+public class BlobStorageService {
+
+    /**
+     * 内容寻址文件所在的目录名，同时也是逻辑路径中的目录段。
+     */
+    public static final String BLOB_DIRECTORY = "blobs";
+
+    /**
+     * 内容寻址文件名的格式：64位十六进制摘要加扩展名。
+     */
+    private static final Pattern BLOB_NAME = Pattern.compile("[0-9a-f]{64}\\.[a-z0-9]{1,10}");
+
+    private static final Logger logger = LoggerFactory.getLogger(BlobStorageService.class);
+
+    private final StoredBlobRepository storedBlobRepository;
+    private final StorageBackend storageBackend;
+    private final StorageLayout storageLayout;
+    private final StorageDeletionService storageDeletionService;
+    private final Path incomingRoot;
+
+    /**
+     * 构造函数，用于依赖注入。
+     *
+     * @param storedBlobRepository 内容寻址文件仓库接口
+     * @param storageBackend       存储后端
+     * @param storageLayout          存储布局
+     * @param storageDeletionService 存储对象的后台批量删除服务
+     * @param rootPath               本地存储的根路径，上传中的文件暂存在其下
+     */
+    public BlobStorageService(StoredBlobRepository storedBlobRepository,
+                              StorageBackend storageBackend,
+                              StorageLayout storageLayout,
+                              StorageDeletionService storageDeletionService,
+                              @Value("${app.storage.root-path}") String rootPath) {
+        this.storedBlobRepository = storedBlobRepository;
+        this.storageBackend = storageBackend;
+        this.storageLayout = storageLayout;
+        this.storageDeletionService = storageDeletionService;
+        this.incomingRoot = Paths.get(rootPath, ".staging").toAbsolutePath().normalize();
+    }
+
+    /**
+     * 将文件内容写入暂存文件，并在写入的同时计算摘要。
+     * <p>
+     * 使用本地存储后端时，暂存文件与最终位置位于同一文件系统，提交时只需一次原子重命名，不会再次复制数据。
+     *
+     * @param input 文件内容输入流，调用方负责关闭
+     * @return 暂存文件信息
+     * @throws IOException 如果写入文件时发生错误
+     */
+    public StagedBlob stage(InputStream input) throws IOException {
+        Files.createDirectories(incomingRoot);
+        Path staged = incomingRoot.resolve(UUID.randomUUID() + ".tmp");
+        try {
+            MessageDigest digest = newDigest();
+            long size;
+            try (DigestInputStream digestInput = new DigestInputStream(input, digest)) {
+                size = Files.copy(digestInput, staged);
+            }
+            return new StagedBlob(staged, HexFormat.of().formatHex(digest.digest()), size);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(staged);
+            throw e;
+        }
+    }
+
+    /**
+     * 提交暂存文件并登记一个引用。如果相同内容的文件已经存在，则丢弃暂存文件。
+     * <p>
+     * 相同内容的文件刚被释放、尚在等待后台删除时，提交会撤销该删除；后台正在删除时，等待删除结束后重新写入。
+     * 必须在事务中调用，引用计数随调用方事务一同提交。
+     *
+     * @param staged    暂存文件信息
+     * @param extension 文件扩展名（小写，不含点）
+     * @return 文件记录
+     * @throws IOException 如果移动文件时发生错误
+     */
+    @Transactional(rollbackFor = {IOException.class})
+    public StoredBlob commit(StagedBlob staged, String extension) throws IOException {
+        String hash = staged.getHash();
+        try {
+            /* 先登记引用（锁定记录），再放置存储对象，避免与并发的释放操作交错 */
+            storedBlobRepository.acquire(hash, extension, staged.getSize());
+            StoredBlob blob = storedBlobRepository.findById(hash)
+                    .orElseThrow(() -> new IllegalStateException("Blob not registered: " + hash));
+
+            String blobName = blob.getHash() + "." + blob.getExtension();
+            /*
+             * 撤销最后一个引用被释放时登记的删除。后台正在删除该对象时，撤销会等待其事务结束，
+             * 此时对象已被删除，下面的检查会重新写入；否则撤销锁定了待删除记录，后台不会再领取它们
+             */
+            List<String> keys = new ArrayList<>(2);
+            if (storageLayout.isDualRead()) {
+                keys.add(storageLayout.legacyBlobKey(blobName));
+            }
+            keys.add(keyOf(blobName));
+            storageDeletionService.cancel(keys);
+            if (find(blobName) != null) {
+                logger.debug("Deduplicated blob {}", hash);
+            } else {
+                storageBackend.put(keyOf(blobName), staged.getPath());
+                logger.debug("Stored new blob {} ({} bytes)", hash, staged.getSize());
+            }
+            return blob;
+        } finally {
+            discard(staged);
+        }
+    }
+
+    /**
+     * 丢弃暂存文件。
+     *
+     * @param staged 暂存文件信息
+     * @throws IOException 如果删除文件时发生错误
+     */
+    public void discard(StagedBlob staged) throws IOException {
+        Files.deleteIfExists(staged.getPath());
+    }
+
+    /**
+     * 释放文件的一个引用，当引用计数归零时登记删除存储对象，存储对象在事务提交后由后台删除。
+     * <p>
+     * 必须在事务中调用，引用计数随调用方事务一同提交。
+     *
+     * @param blobName 文件名，格式为 {@code <摘要>.<扩展名>}
+     * @return 被释放的文件的大小，文件记录不存在时返回0
+     */
+    @Transactional
+    public long release(String blobName) {
+        if (!isBlobName(blobName)) {
+            throw new IllegalArgumentException("Invalid blob name: " + blobName);
+        }
+        String hash = blobName.substring(0, blobName.indexOf('.'));
+        long size = storedBlobRepository.findById(hash).map(StoredBlob::getSize).orElse(0L);
+        storedBlobRepository.release(hash);
+        if (storedBlobRepository.deleteIfUnreferenced(hash) > 0) {
+            storageDeletionService.deleteBlobsAfterCommit(List.of(blobName));
+            logger.debug("Released last reference of blob {}", hash);
+        }
+        return size;
+    }
+
+    /**
+     * 批量释放文件引用。引用计数的更新和不再被引用的文件记录的删除各只需一条语句，
+     * 不再被引用的存储对象在事务提交后由后台批量删除。
+     * <p>
+     * 必须在事务中调用，引用计数随调用方事务一同提交。
+     *
+     * @param references 文件名（{@code <摘要>.<扩展名>}）到释放的引用数的映射
+     * @return 被释放的文件的大小之和，每个文件按释放的引用数计入
+     */
+    @Transactional
+    public long releaseAll(Map<String, Long> references) {
+        if (references.isEmpty()) {
+            return 0;
+        }
+        List<String> hashes = new ArrayList<>(references.size());
+        List<String> counts = new ArrayList<>(references.size());
+        for (Map.Entry<String, Long> entry : references.entrySet()) {
+            if (!isBlobName(entry.getKey())) {
+                throw new IllegalArgumentException("Invalid blob name: " + entry.getKey());
+            }
+            hashes.add(entry.getKey().substring(0, entry.getKey().indexOf('.')));
+            counts.add(entry.getValue().toString());
+        }
+        String joinedHashes = String.join(",", hashes);
+        String joinedCounts = String.join(",", counts);
+
+        long size = storedBlobRepository.sumReleasedBytes(joinedHashes, joinedCounts);
+        storedBlobRepository.releaseAll(joinedHashes, joinedCounts);
+        List<String> unreferenced = storedBlobRepository.findUnreferencedNames(hashes);
+        if (!unreferenced.isEmpty()) {
+            storedBlobRepository.deleteUnreferenced(hashes);
+            storageDeletionService.deleteBlobsAfterCommit(unreferenced);
+            logger.debug("Released {} blobs, {} unreferenced", hashes.size(), unreferenced.size());
+        }
+        return size;
+    }
+
+    /**
+     * 获取文件在存储后端中的对象键。文件按摘要前缀分层存放，以避免单个目录下文件过多。
+     *
+     * @param blobName 文件名，格式为 {@code <摘要>.<扩展名>}
+     * @return 对象键，形如 {@code blobs/ab/cd/<摘要>.jpg}
+     */
+    public String keyOf(String blobName) {
+        return storageLayout.blobKey(blobName);
+    }
+
+    /**
+     * 查找已存储的文件。迁移完成前，新布局下找不到时继续查找旧布局下的位置。
+     *
+     * @param blobName 文件名，格式为 {@code <摘要>.<扩展名>}
+     * @return 存储对象信息，文件不存在时返回 {@code null}
+     * @throws IOException 如果查询时发生错误
+     */
+    public StorageObject find(String blobName) throws IOException {
+        StorageObject object = storageBackend.stat(keyOf(blobName));
+        if (object == null && storageLayout.isDualRead()) {
+            object = storageBackend.stat(storageLayout.legacyBlobKey(blobName));
+        }
+        return object;
+    }
+
+    /**
+     * 判断给定的文件名是否为合法的内容寻址文件名。
+     *
+     * @param blobName 文件名
+     * @return 合法时返回 {@code true}
+     */
+    public boolean isBlobName(String blobName) {
+        return blobName != null && BLOB_NAME.matcher(blobName).matches();
+    }
+
+    private MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * 暂存文件信息，记录尚未提交的文件位置、内容摘要和大小。
+     */
+    public static class StagedBlob {
+
+        private final Path path;
+        private final String hash;
+        private final long size;
+
+        /**
+         * 构造函数，初始化暂存文件信息。
+         *
+         * @param path 暂存文件路径
+         * @param hash 文件内容摘要
+         * @param size 文件大小
+         */
+        public StagedBlob(Path path, String hash, long size) {
+            this.path = path;
+            this.hash = hash;
+            this.size = size;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.flechazo.jnyzdairy.service;
 
 import com.google.code.kaptcha.impl.DefaultKaptcha;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
@@ -8,6 +10,7 @@ import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 验证码服务类，提供生成验证码文本和图片的功能。
@@ -20,13 +23,22 @@ public class CaptchaService {
 
     private final DefaultKaptcha captchaProducer;
 
+    /**
+     * 验证码图片绘制和编码的耗时计时器。
+     */
+    private final Timer renderTimer;
+
     /**
      * 构造函数，用于依赖注入。
      *
      * @param captchaProducer 用于生成验证码的组件
+     * @param meterRegistry   指标注册表，用于记录验证码图片的生成耗时
      */
-    public CaptchaService(DefaultKaptcha captchaProducer) {
+    public CaptchaService(DefaultKaptcha captchaProducer, MeterRegistry meterRegistry) {
         this.captchaProducer = captchaProducer;
+        this.renderTimer = Timer.builder("captcha.render")
+                .description("Latency of captcha image rendering and encoding")
+                .register(meterRegistry);
     }
 
     /**
@@ -60,6 +72,7 @@ public class CaptchaService {
      * @throws IOException 如果生成验证码图片或转换为字节数组失败
      */
     public byte[] generateCaptchaImage(String code) throws IOException {
+        long start = System.nanoTime();
         try {
             BufferedImage image = captchaProducer.createImage(code);
             if (image == null) {
@@ -77,6 +90,8 @@ public class CaptchaService {
         } catch (Exception e) {
             log.error("Error generating captcha image", e);
             throw new IOException("Failed to generate captcha image", e);
+        } finally {
+            renderTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         }
     }
 }
\ No newline at end of file
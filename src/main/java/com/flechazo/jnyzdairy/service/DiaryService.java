@@ -1,9 +1,13 @@
 package com.flechazo.jnyzdairy.service;
 
 import com.flechazo.jnyzdairy.entity.Diary;
+import com.flechazo.jnyzdairy.entity.DiaryImage;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -40,6 +44,34 @@ public interface DiaryService {
      */
     Diary updateDiary(Long diaryId, String content, List<MultipartFile> newImages);
 
+    /**
+     * 以流的方式为现有日记条目添加一组图片。
+     * <p>
+     * 图片数据直接从输入流写入暂存文件，不经过临时文件。所有图片暂存并通过检查后在同一个事务中提交：
+     * 任意一张图片失败时，整组图片都不会被保存，已暂存的数据全部丢弃。
+     *
+     * @param diaryId 日记ID
+     * @param parts 图片数据的来源，依次返回每张图片的输入流
+     * @return 新添加的日记图片，顺序与请求中的顺序一致
+     * @throws IOException 如果读取或保存图片时发生错误
+     */
+    List<DiaryImage> addDiaryImages(Long diaryId, ImagePartSource parts) throws IOException;
+
+    /**
+     * 流式上传中图片数据的来源。
+     */
+    @FunctionalInterface
+    interface ImagePartSource {
+
+        /**
+         * 返回下一张图片的输入流，由调用方读取后关闭。
+         *
+         * @return 下一张图片的输入流，没有更多图片时返回 {@code null}
+         * @throws IOException 如果读取请求时发生错误
+         */
+        InputStream next() throws IOException;
+    }
+
     /**
      * 获取指定ID的日记条目。
      * <p>
@@ -100,4 +132,24 @@ public interface DiaryService {
      * @param imageId 图片ID
      */
     void deleteDiaryImage(Long imageId);
+
+    /**
+     * 批量删除日记条目及其所有图片。
+     * <p>
+     * 日记和图片记录各用一条语句删除，图片文件的引用批量释放，不再被引用的文件在事务提交后由后台批量删除。
+     *
+     * @param diaryIds 日记ID列表，不存在的ID被忽略
+     * @return 实际删除的日记数
+     */
+    int deleteDiaries(Collection<Long> diaryIds);
+
+    /**
+     * 批量删除日记图片。
+     * <p>
+     * 图片记录用一条语句删除，图片文件的引用批量释放，不再被引用的文件在事务提交后由后台批量删除。
+     *
+     * @param imageIds 图片ID列表，不存在的ID被忽略
+     * @return 实际删除的图片数
+     */
+    int deleteDiaryImages(Collection<Long> imageIds);
 }
\ No newline at end of file
@@ -1,8 +1,13 @@
 package com.flechazo.jnyzdairy.service;
 
+import com.flechazo.jnyzdairy.dto.ImageMetadata;
+import com.flechazo.jnyzdairy.dto.PreparedImage;
 import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * 文件存储服务接口，提供文件上传、删除和验证等功能。
@@ -23,39 +28,130 @@ public interface FileStorageService {
 
     /**
      * 根据提供的文件路径删除文件。
+     * <p>
+     * 对于内容寻址存储的文件，该方法只释放一个引用，物理文件在最后一个引用释放后才会被删除。
      *
      * @param filePath 要删除的文件的路径
      * @throws IOException 如果删除文件时发生IO异常
      */
     void deleteFile(String filePath) throws IOException;
 
+    /**
+     * 批量删除文件。
+     * <p>
+     * 内容寻址存储的文件按用户分组，每组只用少量语句释放全部引用，不再被引用的物理文件在事务提交后由后台批量删除。
+     *
+     * @param filePaths 要删除的文件的路径
+     * @throws IOException 如果删除文件时发生IO异常
+     */
+    void deleteFiles(Collection<String> filePaths) throws IOException;
+
     /**
      * 保存用户头像文件，并返回该文件的访问路径。
+     * <p>
+     * 头像被居中裁剪为正方形并渲染为几种固定尺寸，文件以渲染结果的摘要命名，内容永不改变。
      *
      * @param userId 用户标识符
      * @param file   用户上传的头像文件
-     * @return 用户头像的相对或绝对路径
+     * @return 最大尺寸头像的访问路径
      * @throws IOException 如果保存头像过程中发生IO异常
      */
     String saveUserAvatar(Long userId, MultipartFile file) throws IOException;
 
     /**
-     * 保存日记条目的图片，并返回该图片的访问路径。
+     * 保存日记条目的图片，并返回该图片的访问路径及元数据。
+     * <p>
+     * 图片按内容去重存储，相同内容的图片共享同一个物理文件。图片的尺寸、类型、大小、方向和内容摘要
+     * 在写入的同一次读取过程中提取，无需再次读取文件。
      *
      * @param userId 用户标识符
      * @param date   日记条目日期
      * @param file   用户上传的图片文件
-     * @return 日记图片的相对或绝对路径
+     * @return 日记图片的访问路径及元数据
      * @throws IOException 如果保存图片过程中发生IO异常
      */
-    String saveDiaryImage(Long userId, LocalDateTime date, MultipartFile file) throws IOException;
+    ImageMetadata saveDiaryImage(Long userId, LocalDateTime date, MultipartFile file) throws IOException;
+
+    /**
+     * 以流的方式保存日记条目的图片，并返回该图片的访问路径及元数据。
+     * <p>
+     * 数据直接写入存储目录而不经过临时文件，大小限制、摘要计算和类型识别在同一次读取中完成。
+     *
+     * @param userId 用户标识符
+     * @param date   日记条目日期，图片按内容寻址存储，不依赖日期，可以为 {@code null}
+     * @param input  图片数据输入流，调用方负责关闭
+     * @return 日记图片的访问路径及元数据
+     * @throws IOException 如果保存图片过程中发生IO异常
+     */
+    ImageMetadata saveDiaryImage(Long userId, LocalDateTime date, InputStream input) throws IOException;
+
+    /**
+     * 暂存并检查一张日记图片，不写入数据库和存储后端，用于将多张图片在同一事务中一起提交。
+     * <p>
+     * 调用方必须在结束时调用 {@link #discard(PreparedImage)}，无论图片是否已经提交。
+     *
+     * @param userId 用户标识符
+     * @param input  图片数据输入流，调用方负责关闭
+     * @return 暂存的图片
+     * @throws IOException 如果读取或暂存图片时发生错误
+     */
+    PreparedImage prepareDiaryImage(Long userId, InputStream input) throws IOException;
+
+    /**
+     * 在当前事务中提交暂存的图片，所有图片合计检查配额，事务回滚时全部回滚。
+     *
+     * @param userId 用户标识符
+     * @param images 暂存的图片
+     * @return 各图片的访问路径及元数据，顺序与参数一致
+     * @throws IOException 如果写入存储时发生错误
+     */
+    List<ImageMetadata> commitDiaryImages(Long userId, List<PreparedImage> images) throws IOException;
+
+    /**
+     * 丢弃暂存的图片。
+     *
+     * @param image 暂存的图片
+     * @throws IOException 如果删除暂存文件时发生错误
+     */
+    void discard(PreparedImage image) throws IOException;
+
+    /**
+     * 将用户文件的访问路径解析为存储后端中的对象键。
+     *
+     * @param userId   用户标识符
+     * @param filePath 相对于该用户的文件路径
+     * @return 对象键，如果路径非法则返回 {@code null}
+     */
+    String resolveKey(Long userId, String filePath);
+
+    /**
+     * 将用户文件的访问路径解析为旧存储布局下的对象键，用于布局迁移完成前的兼容读取。
+     *
+     * @param userId   用户标识符
+     * @param filePath 相对于该用户的文件路径
+     * @return 旧布局下的对象键，如果路径非法或已关闭兼容读取则返回 {@code null}
+     */
+    String resolveLegacyKey(Long userId, String filePath);
+
+    /**
+     * 判断给定的访问路径是否指向内容寻址存储的文件。
+     * <p>
+     * 内容寻址文件的内容永不改变，其文件名即为内容摘要，可以被客户端长期缓存。
+     *
+     * @param filePath 相对于用户的文件路径
+     * @return 如果是内容寻址文件则返回 {@code true}
+     */
+    boolean isContentAddressed(String filePath);
 
     /**
-     * 获取用户的根文件夹路径，通常用于构建文件存储位置。
+     * 获取文件的MIME类型。
+     * <p>
+     * 日记图片的类型来自上传时记录的元数据，其他文件根据存储时确定的扩展名判断，均不需要读取文件。
      *
-     * @return 用户文件的根路径
+     * @param filePath 相对于用户的文件路径
+     * @return MIME类型，无法判断时返回 {@code application/octet-stream}
      */
-    String getUserPath();
+    String getContentType(String filePath);
 
     /**
      * 验证提供的文件是否为有效的图片文件类型。
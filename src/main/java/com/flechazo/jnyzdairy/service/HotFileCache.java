@@ -0,0 +1,581 @@
+package com.flechazo.jnyzdairy.service;
+
+import com.flechazo.jnyzdairy.config.StorageConfig;
+import com.flechazo.jnyzdairy.dto.HotCacheStats;
+import com.flechazo.jnyzdairy.dto.StorageChangedEvent;
+import com.flechazo.jnyzdairy.dto.StorageObject;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 热点文件缓存，将被频繁请求的小文件和图片变体缓存在堆外内存中，命中时直接从内存写出响应，不访问存储后端。
+ * <p>
+ * 文件内容保存在直接缓冲区中，不占用Java堆，也不会增加垃圾回收的负担；写出时经由每个线程复用的传输缓冲区分段复制到响应中，
+ * 不为每个请求分配与文件大小相当的数组。
+ * <p>
+ * 淘汰策略为分段LRU：新加载的文件先进入试用段，再次命中后晋升到保护段，保护段超出容量时最久未使用的文件降回试用段。
+ * 缓存已满时，只有近期访问频率高于将被淘汰文件的新文件才能进入缓存，访问频率由定期衰减的计数草图估计。
+ * 文件在近期被请求的次数达到阈值后才会被加载，只访问一次的文件不会挤占缓存。
+ * <p>
+ * 缓存按键的哈希划分为若干条带，每个条带独立维护分段、容量和访问频率草图，由各自的锁保护；
+ * 并发的请求只在访问同一条带时才会竞争，淘汰和准入也只在条带内比较。
+ * <p>
+ * 存储对象被覆盖或删除时，{@link StorageChangedEvent} 使对应的缓存立即失效；图片变体的路径随原图版本变化，不需要失效。
+ * 该缓存只在单个实例内有效，其他实例上的变更不会使本实例的缓存失效。
+ * <p>
+ * 统计信息同时以 {@code cache.*} 指标导出，命中率由 {@code cache.gets} 按 {@code result} 标签计算。
+ *
+ * @author Flechazo
+ */
+@Service
+public class HotFileCache implements MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(HotFileCache.class);
+
+    /**
+     * 本地文件（图片变体）缓存键的前缀，与存储对象键区分。
+     */
+    private static final String FILE_KEY_PREFIX = "file:";
+
+    /**
+     * 保护段占缓存容量的比例。
+     */
+    private static final double PROTECTED_RATIO = 0.8;
+
+    /**
+     * 写出响应时每次复制的字节数。
+     */
+    private static final int TRANSFER_CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * 每个线程复用的传输缓冲区。
+     */
+    private static final ThreadLocal<byte[]> TRANSFER_BUFFER = ThreadLocal.withInitial(() -> new byte[TRANSFER_CHUNK_SIZE]);
+
+    private final StorageConfig.HotCache config;
+    private final StorageBackend storageBackend;
+
+    /**
+     * 按键的哈希划分的条带，数量为2的幂。
+     */
+    private final Stripe[] stripes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder hitBytes = new LongAdder();
+    private final LongAdder admissions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * 构造函数，用于依赖注入。
+     *
+     * @param storageConfig  存储配置
+     * @param storageBackend 存储后端，用于加载未缓存的对象
+     */
+    public HotFileCache(StorageConfig storageConfig, StorageBackend storageBackend) {
+        this.config = storageConfig.getHotCache();
+        this.storageBackend = storageBackend;
+        int count = config.getStripes() <= 1 ? 1 : Integer.highestOneBit(config.getStripes() - 1) << 1;
+        long capacity = config.getMaxBytes() / count;
+        /* 按平均每个文件8KB估计条带中的文件数，草图宽度与之相当 */
+        int expectedEntries = (int) Math.min(1 << 20, Math.max(64, capacity / 8192));
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(capacity, expectedEntries);
+        }
+    }
+
+    /**
+     * 获取缓存的存储对象，未缓存但近期频繁访问时从存储后端加载。
+     *
+     * @param key 对象键
+     * @return 缓存的文件；未缓存且不值得加载、对象不存在或超过大小上限时返回 {@code null}
+     * @throws IOException 如果加载时发生错误
+     */
+    public CachedFile getOrLoad(String key) throws IOException {
+        Stripe stripe = stripeFor(key);
+        CachedFile file = stripe.lookup(key);
+        if (file != null) {
+            return file;
+        }
+        long expectedEpoch = stripe.candidateEpoch(key);
+        if (expectedEpoch < 0) {
+            return null;
+        }
+
+        StorageObject object = storageBackend.stat(key);
+        if (object == null || !stripe.isAdmissible(key, object.getSize())) {
+            return null;
+        }
+        ByteBuffer data = ByteBuffer.allocateDirect((int) object.getSize());
+        Path local = storageBackend.localPath(key);
+        if (local != null) {
+            try (FileChannel channel = FileChannel.open(local, StandardOpenOption.READ)) {
+                if (!readFully(channel, data)) {
+                    return null;
+                }
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+        } else {
+            try (InputStream input = storageBackend.get(key)) {
+                if (!readFully(Channels.newChannel(input), data)) {
+                    return null;
+                }
+            }
+        }
+        return stripe.admit(key, data, object.getLastModified(), expectedEpoch);
+    }
+
+    /**
+     * 获取缓存的本地文件，未缓存但近期频繁访问时从磁盘加载。用于内容不可变的图片变体。
+     *
+     * @param path 本地文件路径
+     * @return 缓存的文件；未缓存且不值得加载、文件不存在或超过大小上限时返回 {@code null}
+     * @throws IOException 如果加载时发生错误
+     */
+    public CachedFile getOrLoad(Path path) throws IOException {
+        String key = FILE_KEY_PREFIX + path.toAbsolutePath();
+        Stripe stripe = stripeFor(key);
+        CachedFile file = stripe.lookup(key);
+        if (file != null) {
+            return file;
+        }
+        long expectedEpoch = stripe.candidateEpoch(key);
+        if (expectedEpoch < 0) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attrs.isRegularFile() || !stripe.isAdmissible(key, attrs.size())) {
+                return null;
+            }
+            ByteBuffer data = ByteBuffer.allocateDirect((int) attrs.size());
+            return readFully(channel, data)
+                    ? stripe.admit(key, data, attrs.lastModifiedTime().toMillis(), expectedEpoch) : null;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 存储对象被覆盖或删除时使其缓存失效。
+     *
+     * @param event 存储变更事件
+     */
+    @EventListener
+    public void onStorageChanged(StorageChangedEvent event) {
+        invalidate(event.getKey());
+    }
+
+    /**
+     * 使指定对象的缓存失效。
+     *
+     * @param key 对象键
+     */
+    public void invalidate(String key) {
+        if (stripeFor(key).invalidate(key)) {
+            invalidations.increment();
+        }
+    }
+
+    /**
+     * 获取缓存的统计信息。
+     *
+     * @return 缓存统计
+     */
+    public HotCacheStats getStats() {
+        HotCacheStats stats = new HotCacheStats();
+        int entries = 0;
+        long bytes = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                entries += stripe.probation.size() + stripe.protectedSegment.size();
+                bytes += stripe.probationBytes + stripe.protectedBytes;
+            }
+        }
+        stats.setEntries(entries);
+        stats.setBytes(bytes);
+        stats.setMaxBytes(config.getMaxBytes());
+        stats.setHits(hits.sum());
+        stats.setMisses(misses.sum());
+        stats.setHitBytes(hitBytes.sum());
+        long requests = stats.getHits() + stats.getMisses();
+        stats.setHitRatio(requests == 0 ? 0 : (double) stats.getHits() / requests);
+        stats.setAdmissions(admissions.sum());
+        stats.setRejections(rejections.sum());
+        stats.setEvictions(evictions.sum());
+        stats.setInvalidations(invalidations.sum());
+        return stats;
+    }
+
+    /**
+     * 将缓存的统计信息注册为指标，计数直接读取统计用的累加器，不在访问路径上增加开销。
+     *
+     * @param registry 指标注册表
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        String cache = "hot-files";
+        FunctionCounter.builder("cache.gets", hits, LongAdder::sum)
+                .tag("cache", cache).tag("result", "hit")
+                .description("Number of cache lookups that returned a cached file")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", misses, LongAdder::sum)
+                .tag("cache", cache).tag("result", "miss")
+                .description("Number of cache lookups that did not return a cached file")
+                .register(registry);
+        FunctionCounter.builder("cache.puts", admissions, LongAdder::sum)
+                .tag("cache", cache)
+                .description("Number of files admitted to the cache")
+                .register(registry);
+        FunctionCounter.builder("cache.rejections", rejections, LongAdder::sum)
+                .tag("cache", cache)
+                .description("Number of loaded files rejected by the admission policy")
+                .register(registry);
+        FunctionCounter.builder("cache.evictions", evictions, LongAdder::sum)
+                .tag("cache", cache)
+                .description("Number of files evicted from the cache")
+                .register(registry);
+        FunctionCounter.builder("cache.invalidations", invalidations, LongAdder::sum)
+                .tag("cache", cache)
+                .description("Number of cached files invalidated by storage changes")
+                .register(registry);
+        Gauge.builder("cache.size", this, c -> c.getStats().getEntries())
+                .tag("cache", cache)
+                .description("Number of cached files")
+                .register(registry);
+        Gauge.builder("cache.bytes", this, c -> c.getStats().getBytes())
+                .tag("cache", cache)
+                .baseUnit("bytes")
+                .description("Off-heap bytes held by cached files")
+                .register(registry);
+    }
+
+    /**
+     * 键所在的条带。
+     */
+    private Stripe stripeFor(String key) {
+        int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    /**
+     * 读满缓冲区。文件在查询大小之后被截短时返回 {@code false}，此时不缓存，由调用方按未缓存处理。
+     */
+    private static boolean readFully(ReadableByteChannel channel, ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            if (channel.read(data) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 缓存的文件，内容保存在只读的直接缓冲区中。
+     */
+    public final class CachedFile {
+
+        private final String key;
+        private final ByteBuffer data;
+        private final int size;
+        private final long lastModified;
+
+        private CachedFile(String key, ByteBuffer data, long lastModified) {
+            this.key = key;
+            this.data = data;
+            this.size = data.remaining();
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * @return 文件大小（字节）
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return 最后修改时间（毫秒）
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * 将文件的一段内容写入输出流，签名与 {@link com.flechazo.jnyzdairy.util.FileResponseWriter.RangeSource} 一致。
+         * 多个请求可以同时读取同一文件，每次读取使用独立的视图，不改变共享缓冲区的位置。
+         *
+         * @param start 起始偏移量
+         * @param count 字节数
+         * @param out   输出流
+         * @throws IOException 如果写入时发生错误
+         */
+        public void copy(long start, long count, OutputStream out) throws IOException {
+            ByteBuffer view = data.slice((int) start, (int) count);
+            byte[] chunk = TRANSFER_BUFFER.get();
+            while (view.hasRemaining()) {
+                int length = Math.min(chunk.length, view.remaining());
+                view.get(chunk, 0, length);
+                out.write(chunk, 0, length);
+            }
+            hitBytes.add(count);
+        }
+    }
+
+    /**
+     * 缓存的一个条带：访问频率草图和两个按访问顺序排列的分段，均由条带自身的锁保护。
+     */
+    private final class Stripe {
+
+        private final long capacity;
+        private final long protectedCapacity;
+        private final FrequencySketch sketch;
+        private final LinkedHashMap<String, CachedFile> probation = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<String, CachedFile> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+        private long probationBytes;
+        private long protectedBytes;
+
+        /**
+         * 条带内失效次数的版本号，加载期间有失效发生时，加载的内容可能已经过时，不放入缓存。
+         */
+        private long epoch;
+
+        Stripe(long capacity, int expectedEntries) {
+            this.capacity = capacity;
+            this.protectedCapacity = (long) (capacity * PROTECTED_RATIO);
+            this.sketch = new FrequencySketch(expectedEntries);
+        }
+
+        /**
+         * 查找缓存并记录一次访问，试用段中的文件再次命中时晋升到保护段。
+         */
+        CachedFile lookup(String key) {
+            if (!config.isEnabled()) {
+                return null;
+            }
+            CachedFile file;
+            synchronized (this) {
+                sketch.increment(key);
+                file = protectedSegment.get(key);
+                if (file == null && (file = probation.remove(key)) != null) {
+                    probationBytes -= file.size;
+                    promote(file);
+                }
+            }
+            (file == null ? misses : hits).increment();
+            return file;
+        }
+
+        /**
+         * 文件近期的访问次数达到阈值时返回当前的版本号，作为加载的起点；否则返回-1，不值得加载。
+         */
+        synchronized long candidateEpoch(String key) {
+            return config.isEnabled() && sketch.frequency(key) >= config.getMinFrequency() ? epoch : -1;
+        }
+
+        /**
+         * 判断大小为 {@code size} 的文件能否进入缓存，避免加载注定会被拒绝的文件。
+         */
+        synchronized boolean isAdmissible(String key, long size) {
+            if (size > config.getMaxObjectSize() || size > capacity) {
+                return false;
+            }
+            if (probationBytes + protectedBytes + size <= capacity) {
+                return true;
+            }
+            CachedFile victim = eldest();
+            return victim == null || sketch.frequency(key) > sketch.frequency(victim.key);
+        }
+
+        /**
+         * 将加载的文件放入试用段，必要时淘汰访问频率更低的文件。无法放入缓存时仍返回该文件，供本次请求使用。
+         */
+        CachedFile admit(String key, ByteBuffer data, long lastModified, long expectedEpoch) {
+            data.flip();
+            CachedFile file = new CachedFile(key, data.asReadOnlyBuffer(), lastModified);
+            int evicted = 0;
+            boolean admitted = false;
+            synchronized (this) {
+                CachedFile existing = protectedSegment.get(key);
+                if (existing == null) {
+                    existing = probation.get(key);
+                }
+                if (existing != null) {
+                    /* 其他请求已经加载了同一文件 */
+                    return existing;
+                }
+                if (epoch == expectedEpoch) {
+                    int frequency = sketch.frequency(key);
+                    while (probationBytes + protectedBytes + file.size > capacity) {
+                        CachedFile victim = eldest();
+                        if (victim == null || sketch.frequency(victim.key) >= frequency) {
+                            break;
+                        }
+                        remove(victim);
+                        evicted++;
+                    }
+                    if (probationBytes + protectedBytes + file.size <= capacity) {
+                        probation.put(key, file);
+                        probationBytes += file.size;
+                        admitted = true;
+                    }
+                }
+            }
+            evictions.add(evicted);
+            (admitted ? admissions : rejections).increment();
+            if (logger.isDebugEnabled()) {
+                logger.debug("{} {} ({} bytes) in hot file cache, evicted {}", admitted ? "Admitted" : "Rejected",
+                        key, file.size, evicted);
+            }
+            return file;
+        }
+
+        /**
+         * 使文件的缓存失效。
+         *
+         * @return 文件在缓存中时返回 {@code true}
+         */
+        synchronized boolean invalidate(String key) {
+            epoch++;
+            CachedFile file = probation.remove(key);
+            if (file != null) {
+                probationBytes -= file.size;
+            } else if ((file = protectedSegment.remove(key)) != null) {
+                protectedBytes -= file.size;
+            }
+            return file != null;
+        }
+
+        /**
+         * 将文件放入保护段，保护段超出容量时最久未使用的文件降回试用段。必须持有锁。
+         */
+        private void promote(CachedFile file) {
+            protectedSegment.put(file.key, file);
+            protectedBytes += file.size;
+            Iterator<CachedFile> iterator = protectedSegment.values().iterator();
+            while (protectedBytes > protectedCapacity && iterator.hasNext()) {
+                CachedFile demoted = iterator.next();
+                if (demoted == file) {
+                    break;
+                }
+                iterator.remove();
+                protectedBytes -= demoted.size;
+                probation.put(demoted.key, demoted);
+                probationBytes += demoted.size;
+            }
+        }
+
+        /**
+         * 下一个将被淘汰的文件：试用段中最久未使用的文件，试用段为空时为保护段中最久未使用的文件。必须持有锁。
+         */
+        private CachedFile eldest() {
+            Iterator<CachedFile> iterator = probation.isEmpty()
+                    ? protectedSegment.values().iterator()
+                    : probation.values().iterator();
+            return iterator.hasNext() ? iterator.next() : null;
+        }
+
+        /**
+         * 从所在的分段中移除文件。必须持有锁。
+         */
+        private void remove(CachedFile file) {
+            if (probation.remove(file.key) != null) {
+                probationBytes -= file.size;
+            } else if (protectedSegment.remove(file.key) != null) {
+                protectedBytes -= file.size;
+            }
+        }
+    }
+
+    /**
+     * 访问频率草图：计数-最小草图，每个键映射到四行中各一个4位计数器，频率取四者的最小值。
+     * 累计记录的访问次数达到草图宽度的10倍时所有计数器减半，使频率反映近期的访问情况。
+     */
+    private static final class FrequencySketch {
+
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final byte[][] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int expectedEntries) {
+            int width = Integer.highestOneBit(expectedEntries - 1) << 1;
+            this.table = new byte[SEEDS.length][width];
+            this.mask = width - 1;
+            this.sampleSize = width * 10;
+        }
+
+        void increment(String key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int index = index(hash, i);
+                if (table[i][index] < MAX_COUNT) {
+                    table[i][index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(String key) {
+            int hash = spread(key.hashCode());
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < SEEDS.length; i++) {
+                frequency = Math.min(frequency, table[i][index(hash, i)]);
+            }
+            return frequency;
+        }
+
+        private int index(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % SEEDS.length];
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private void reset() {
+            for (byte[] row : table) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>= 1;
+                }
+            }
+            additions /= 2;
+        }
+
+        private static int spread(int hash) {
+            hash *= 0x7FEB352D;
+            return hash ^ (hash >>> 15);
+        }
+    }
+}
@@ -0,0 +1,460 @@
+package com.flechazo.jnyzdairy.service;
+
+import com.flechazo.jnyzdairy.config.ImageConfig;
+import com.flechazo.jnyzdairy.dto.ImageVariant;
+import com.flechazo.jnyzdairy.dto.StorageObject;
+import com.flechazo.jnyzdairy.util.ImageCodec;
+import com.flechazo.jnyzdairy.util.ImageUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import net.coobird.thumbnailator.Thumbnails;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 图片变体服务，按需生成指定尺寸和格式的图片，并将结果保存在容量受限的磁盘缓存中。
+ * <p>
+ * 缓存按最近最少使用（LRU）顺序淘汰；同一变体的并发请求只会触发一次渲染，
+ * 其余请求等待该次渲染完成后直接复用结果。
+ *
+ * @author Flechazo
+ */
+@Service
+public class ImageVariantService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageVariantService.class);
+
+    /**
+     * 协商时优先考虑的紧凑格式，仅当运行环境中存在对应的ImageIO写入器时才会使用。
+     */
+    private static final String COMPACT_FORMAT = "webp";
+
+    /**
+     * 允许通过 {@code fmt} 参数显式请求的输出格式。
+     */
+    private static final Set<String> SUPPORTED_FORMATS = Set.of("jpeg", "png", "gif", "webp");
+
+    private final ImageConfig.Variant config;
+    private final ImageUtils imageUtils;
+    private final ImageCodec imageCodec;
+    private final StorageBackend storageBackend;
+    private final Path cacheRoot;
+
+    /**
+     * 缓存索引，按访问顺序排列，最久未访问的条目位于最前端。
+     */
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(256, 0.75f, true);
+
+    /**
+     * 缓存中所有变体文件的总字节数，受 {@link #index} 的锁保护。
+     */
+    private long cachedBytes;
+
+    /**
+     * 已从索引中淘汰、等待删除的变体文件及其淘汰时间（纳秒），受 {@link #index} 的锁保护。
+     * <p>
+     * 变体的路径在返回给请求之后才会被打开（sendfile在请求处理完成后才打开文件），
+     * 淘汰时立即删除会使这些请求返回404或不完整的响应，因此文件在宽限期过后才被删除。
+     */
+    private final LinkedHashMap<String, Long> evicted = new LinkedHashMap<>();
+
+    /**
+     * 正在渲染中的变体，用于合并同一变体的并发请求。
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<Path>> inflight = new ConcurrentHashMap<>();
+
+    /**
+     * 缓存命中、未命中和淘汰的计数，以及渲染变体的耗时计时器。
+     */
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Timer renderTimer;
+
+    /**
+     * 构造函数，用于依赖注入。
+     *
+     * @param imageConfig    图片处理配置
+     * @param imageUtils     图片处理工具类
+     * @param imageCodec     图片编解码工具类
+     * @param storageBackend 存储后端，用于读取原图
+     * @param meterRegistry  指标注册表，用于记录缓存命中率和渲染耗时
+     */
+    public ImageVariantService(ImageConfig imageConfig, ImageUtils imageUtils, ImageCodec imageCodec,
+                               StorageBackend storageBackend, MeterRegistry meterRegistry) {
+        this.config = imageConfig.getVariant();
+        this.imageUtils = imageUtils;
+        this.imageCodec = imageCodec;
+        this.storageBackend = storageBackend;
+        this.cacheRoot = Paths.get(config.getCachePath()).toAbsolutePath().normalize();
+
+        String cache = "image-variants";
+        this.hits = Counter.builder("cache.gets").tag("cache", cache).tag("result", "hit")
+                .description("Number of variant lookups served from the disk cache")
+                .register(meterRegistry);
+        this.misses = Counter.builder("cache.gets").tag("cache", cache).tag("result", "miss")
+                .description("Number of variant lookups that required rendering")
+                .register(meterRegistry);
+        this.evictions = Counter.builder("cache.evictions").tag("cache", cache)
+                .description("Number of variants evicted from the disk cache")
+                .register(meterRegistry);
+        Gauge.builder("cache.size", this, ImageVariantService::cachedEntries).tag("cache", cache)
+                .description("Number of cached variants")
+                .register(meterRegistry);
+        Gauge.builder("cache.bytes", this, ImageVariantService::cachedBytes).tag("cache", cache)
+                .baseUnit("bytes")
+                .description("Disk bytes held by cached variants")
+                .register(meterRegistry);
+        this.renderTimer = ImageUtils.operationTimer("variant", meterRegistry);
+    }
+
+    /**
+     * 启动时扫描缓存目录，按文件最后修改时间重建LRU索引。
+     *
+     * @throws IOException 如果缓存目录无法创建或读取
+     */
+    @PostConstruct
+    public void loadIndex() throws IOException {
+        Files.createDirectories(cacheRoot);
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(cacheRoot)) {
+            files = walk.filter(Files::isRegularFile).toList();
+        }
+
+        List<Map.Entry<Path, BasicFileAttributes>> entries = new ArrayList<>(files.size());
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.contains(".tmp-")) {
+                /* 上次运行残留的未完成文件 */
+                Files.deleteIfExists(file);
+                continue;
+            }
+            entries.add(Map.entry(file, Files.readAttributes(file, BasicFileAttributes.class)));
+        }
+        entries.sort(Comparator.comparing(e -> e.getValue().lastModifiedTime()));
+
+        synchronized (index) {
+            for (Map.Entry<Path, BasicFileAttributes> entry : entries) {
+                index.put(cacheRoot.relativize(entry.getKey()).toString(), entry.getValue().size());
+                cachedBytes += entry.getValue().size();
+            }
+        }
+        logger.info("Loaded {} image variants ({} bytes) from cache", entries.size(), cachedBytes);
+        evictIfNecessary();
+    }
+
+    /**
+     * 获取原图的指定变体，如果缓存中不存在则生成。
+     * <p>
+     * 宽高会向上取整到配置的步长并且不会超过原图尺寸；只指定一边时另一边按比例计算。
+     * 未指定格式时，如果 {@code Accept} 头表明客户端支持更紧凑的格式则使用该格式，否则沿用原图格式。
+     *
+     * @param original 原图在存储后端中的对象信息
+     * @param width    目标宽度，可为空
+     * @param height   目标高度，可为空
+     * @param format   目标格式，可为空
+     * @param accept   请求的 {@code Accept} 头，可为空
+     * @return 变体文件及其响应信息
+     * @throws IOException 如果读取原图或写入缓存时发生错误
+     */
+    public ImageVariant getVariant(StorageObject original, Integer width, Integer height, String format,
+                                   String accept) throws IOException {
+        String sourceFormat = normalizeFormat(getExtension(original.getKey()));
+        boolean negotiated = false;
+        String targetFormat;
+        if (format != null && !format.isBlank()) {
+            targetFormat = normalizeFormat(format);
+            if (!SUPPORTED_FORMATS.contains(targetFormat) || !hasWriter(targetFormat)) {
+                throw new IllegalArgumentException("Unsupported image format: " + format);
+            }
+        } else if (accept != null && accept.contains("image/" + COMPACT_FORMAT) && hasWriter(COMPACT_FORMAT)) {
+            targetFormat = COMPACT_FORMAT;
+            negotiated = true;
+        } else {
+            /* 原图格式没有可用的写入器时退回PNG */
+            targetFormat = hasWriter(sourceFormat) ? sourceFormat : "png";
+        }
+
+        Integer targetWidth = snap(width);
+        Integer targetHeight = snap(height);
+
+        String key = cacheKey(original, targetWidth, targetHeight, targetFormat);
+
+        Path cached = lookup(key);
+        if (cached == null) {
+            misses.increment();
+            cached = renderOnce(key, original, targetWidth, targetHeight, targetFormat);
+        } else {
+            hits.increment();
+        }
+        return new ImageVariant(cached, "image/" + targetFormat, negotiated);
+    }
+
+    /**
+     * 在缓存索引中查找变体，命中时同时更新其访问顺序。
+     *
+     * @param key 变体缓存键
+     * @return 命中的变体文件路径，未命中时返回 {@code null}
+     */
+    private Path lookup(String key) {
+        synchronized (index) {
+            if (index.get(key) == null) {
+                return null;
+            }
+        }
+        Path path = cacheRoot.resolve(key);
+        if (Files.exists(path)) {
+            return path;
+        }
+        /* 文件已被外部删除，同步清理索引 */
+        synchronized (index) {
+            Long size = index.remove(key);
+            if (size != null) {
+                cachedBytes -= size;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 渲染变体，同一缓存键的并发请求只会有一个线程实际执行渲染。
+     */
+    private Path renderOnce(String key, StorageObject original, Integer width, Integer height, String format)
+            throws IOException {
+        CompletableFuture<Path> future = new CompletableFuture<>();
+        CompletableFuture<Path> existing = inflight.putIfAbsent(key, future);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof UncheckedIOException io) {
+                    throw io.getCause();
+                }
+                throw e;
+            }
+        }
+
+        try {
+            Path path = render(key, original, width, height, format);
+            future.complete(path);
+            return path;
+        } catch (IOException e) {
+            future.completeExceptionally(new UncheckedIOException(e));
+            throw e;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(key, future);
+        }
+    }
+
+    /**
+     * 生成变体文件：按目标尺寸子采样解码原图，再用Thumbnailator缩放到精确尺寸，
+     * 先写入临时文件再原子地移动到缓存位置。原图不在本地文件系统中时先下载到缓存目录下的临时文件。
+     */
+    private Path render(String key, StorageObject original, Integer width, Integer height, String format)
+            throws IOException {
+        Path local = storageBackend.localPath(original.getKey());
+        if (local != null) {
+            return render(key, local, width, height, format);
+        }
+        Files.createDirectories(cacheRoot);
+        Path download = cacheRoot.resolve(".tmp-src-" + UUID.randomUUID());
+        try {
+            try (InputStream input = storageBackend.get(original.getKey())) {
+                Files.copy(input, download);
+            }
+            return render(key, download, width, height, format);
+        } finally {
+            Files.deleteIfExists(download);
+        }
+    }
+
+    private Path render(String key, Path original, Integer width, Integer height, String format)
+            throws IOException {
+        long start = System.nanoTime();
+        Dimension source = imageUtils.ensureDecodable(original);
+        BufferedImage decoded = imageCodec.read(original,
+                width == null ? 0 : width, height == null ? 0 : height);
+
+        Thumbnails.Builder<BufferedImage> builder = Thumbnails.of(decoded);
+        /* 不放大图片，目标尺寸不超过原图尺寸 */
+        if (width != null && height != null) {
+            builder.size(Math.min(width, source.width), Math.min(height, source.height));
+        } else if (width != null) {
+            builder.width(Math.min(width, source.width));
+        } else if (height != null) {
+            builder.height(Math.min(height, source.height));
+        } else {
+            builder.scale(1.0);
+        }
+        builder.keepAspectRatio(true);
+        if ("jpeg".equals(format)) {
+            /* JPEG不支持透明通道，需先转换为RGB */
+            builder.imageType(BufferedImage.TYPE_INT_RGB);
+        }
+        BufferedImage scaled = builder.asBufferedImage();
+
+        Path target = cacheRoot.resolve(key);
+        Files.createDirectories(target.getParent());
+        synchronized (index) {
+            /* 重新渲染已淘汰的变体时，先将其移出待删除列表，避免新文件被清理 */
+            evicted.remove(key);
+        }
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp-" + UUID.randomUUID());
+        try {
+            imageCodec.write(scaled, format, temp);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        renderTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        long size = Files.size(target);
+        synchronized (index) {
+            Long previous = index.put(key, size);
+            cachedBytes += size - (previous == null ? 0 : previous);
+        }
+        logger.debug("Rendered image variant {} ({} bytes)", key, size);
+        evictIfNecessary();
+        return target;
+    }
+
+    /**
+     * 当缓存总大小超过上限时，按最近最少使用顺序将变体移出索引，并删除淘汰时间超过宽限期的文件。
+     * <p>
+     * 淘汰的文件不再计入缓存大小，宽限期内磁盘占用可能暂时超过上限。
+     */
+    private void evictIfNecessary() {
+        long now = System.nanoTime();
+        int count = 0;
+        synchronized (index) {
+            Iterator<Map.Entry<String, Long>> iterator = index.entrySet().iterator();
+            while (cachedBytes > config.getCacheMaxBytes() && iterator.hasNext()) {
+                Map.Entry<String, Long> eldest = iterator.next();
+                cachedBytes -= eldest.getValue();
+                evicted.remove(eldest.getKey());
+                evicted.put(eldest.getKey(), now);
+                iterator.remove();
+                count++;
+            }
+            sweepEvicted(now);
+        }
+        evictions.increment(count);
+    }
+
+    /**
+     * 删除淘汰时间超过宽限期的变体文件。在持有索引锁时调用，与渲染时将文件移入缓存位置互斥。
+     */
+    private void sweepEvicted(long now) {
+        long gracePeriod = TimeUnit.MILLISECONDS.toNanos(config.getEvictionGracePeriod());
+        Iterator<Map.Entry<String, Long>> iterator = evicted.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            if (now - entry.getValue() < gracePeriod) {
+                /* 按淘汰时间顺序插入，其后的条目都还在宽限期内 */
+                break;
+            }
+            iterator.remove();
+            try {
+                Files.deleteIfExists(cacheRoot.resolve(entry.getKey()));
+            } catch (IOException e) {
+                logger.warn("Failed to delete evicted image variant: {}", entry.getKey(), e);
+            }
+        }
+    }
+
+    /**
+     * 定期删除超过宽限期的淘汰文件，没有新的变体渲染时也不会长期占用磁盘。
+     */
+    @Scheduled(fixedDelayString = "${app.image.variant.eviction-grace-period:60000}")
+    public void sweepEvicted() {
+        synchronized (index) {
+            sweepEvicted(System.nanoTime());
+        }
+    }
+
+    private double cachedEntries() {
+        synchronized (index) {
+            return index.size();
+        }
+    }
+
+    private double cachedBytes() {
+        synchronized (index) {
+            return cachedBytes;
+        }
+    }
+
+    /**
+     * 计算变体缓存键。
+     * <p>
+     * 键中包含原图的最后修改时间和大小，原图被替换后旧变体自然失效并随后被淘汰。
+     */
+    private String cacheKey(StorageObject original, Integer width, Integer height, String format) {
+        String source = original.getKey() + "|" + original.getLastModified()
+                + "|" + original.getSize() + "|" + width + "x" + height;
+        String hash = sha256(source);
+        return hash.substring(0, 2) + "/" + hash + "." + ("jpeg".equals(format) ? "jpg" : format);
+    }
+
+    /**
+     * 将请求的尺寸向上取整到配置的步长，并校验其范围。
+     */
+    private Integer snap(Integer dimension) {
+        if (dimension == null) {
+            return null;
+        }
+        if (dimension <= 0 || dimension > config.getMaxDimension()) {
+            throw new IllegalArgumentException("Image dimension must be between 1 and " + config.getMaxDimension());
+        }
+        int step = Math.max(1, config.getStep());
+        return Math.min(config.getMaxDimension(), (dimension + step - 1) / step * step);
+    }
+
+    private boolean hasWriter(String format) {
+        return imageCodec.canWrite(format);
+    }
+
+    private String normalizeFormat(String format) {
+        String lower = format.toLowerCase(Locale.ROOT);
+        return "jpg".equals(lower) ? "jpeg" : lower;
+    }
+
+    private String getExtension(String fileName) {
+        return fileName.substring(fileName.lastIndexOf('.') + 1);
+    }
+
+    private String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
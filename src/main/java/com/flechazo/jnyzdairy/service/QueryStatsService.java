@@ -0,0 +1,276 @@
+package com.flechazo.jnyzdairy.service;
+
+import com.flechazo.jnyzdairy.config.QueryStatsConfig;
+import com.flechazo.jnyzdairy.dto.QueryExecutionStats;
+import com.flechazo.jnyzdairy.dto.QueryStatsReport;
+import com.flechazo.jnyzdairy.dto.RepositoryMethodStats;
+import com.flechazo.jnyzdairy.util.QueryProbe;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.QueryStatistics;
+import org.hibernate.stat.Statistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 查询统计服务，按仓库方法汇总数据库访问次数和执行时间，记录慢调用，并导出为指标。
+ * <p>
+ * 每次仓库方法调用的语句数、实体加载数和集合抓取数由 {@link QueryProbe} 在调用线程上收集，
+ * 慢调用日志中包含参数的形状（类型、集合大小、分页参数）和执行的SQL语句（参数以 {@code ?} 表示），
+ * 不包含参数的值，可以在生产环境中长期开启，代替逐条打印SQL。
+ * <p>
+ * 仓库方法之外触发的延迟加载不计入任何方法，只体现在Hibernate的全局计数中。
+ *
+ * @author Flechazo
+ */
+@Service
+public class QueryStatsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryStatsService.class);
+
+    private final QueryStatsConfig config;
+    private final Statistics statistics;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 各仓库方法的统计，键为 {@code 仓库接口名.方法名}。
+     */
+    private final Map<String, MethodStats> methods = new ConcurrentHashMap<>();
+
+    /**
+     * 构造函数，用于依赖注入。
+     *
+     * @param config               查询统计配置
+     * @param entityManagerFactory 实体管理器工厂，用于读取Hibernate的统计信息
+     * @param meterRegistry        指标注册表
+     */
+    public QueryStatsService(QueryStatsConfig config, EntityManagerFactory entityManagerFactory,
+                             MeterRegistry meterRegistry) {
+        this.config = config;
+        this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        this.meterRegistry = meterRegistry;
+        FunctionCounter.builder("hibernate.statements", statistics, Statistics::getPrepareStatementCount)
+                .description("Number of SQL statements prepared")
+                .register(meterRegistry);
+        FunctionCounter.builder("hibernate.entities.loads", statistics, Statistics::getEntityLoadCount)
+                .description("Number of entities loaded from the database")
+                .register(meterRegistry);
+        FunctionCounter.builder("hibernate.collections.fetches", statistics, Statistics::getCollectionFetchCount)
+                .description("Number of collections fetched from the database")
+                .register(meterRegistry);
+        FunctionCounter.builder("hibernate.query.executions", statistics, Statistics::getQueryExecutionCount)
+                .description("Number of HQL and native queries executed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 判断是否启用了查询统计。
+     *
+     * @return 启用时返回 {@code true}
+     */
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * 开始记录一次仓库方法调用。
+     *
+     * @return 本次调用的计数，调用结束时传给 {@link #record}
+     */
+    public QueryProbe begin() {
+        return QueryProbe.begin(config.getMaxLoggedStatements());
+    }
+
+    /**
+     * 结束记录一次仓库方法调用，累加统计并在执行时间达到阈值时记录慢调用日志。
+     *
+     * @param repository 仓库接口名
+     * @param method     方法名
+     * @param args       调用参数，只记录其形状
+     * @param probe      {@link #begin()} 返回的计数
+     * @param nanos      执行时间（纳秒）
+     */
+    public void record(String repository, String method, Object[] args, QueryProbe probe, long nanos) {
+        QueryProbe.end(probe);
+        MethodStats stats = methods.computeIfAbsent(repository + "." + method,
+                key -> new MethodStats(repository, method, meterRegistry));
+        stats.invocations.increment();
+        stats.statements.add(probe.getStatements());
+        stats.maxStatements.accumulate(probe.getStatements());
+        stats.entityLoads.add(probe.getEntityLoads());
+        stats.collectionFetches.add(probe.getCollectionFetches());
+        stats.totalNanos.add(nanos);
+        stats.maxNanos.accumulate(nanos);
+        stats.timer.record(nanos, TimeUnit.NANOSECONDS);
+        stats.statementSummary.record(probe.getStatements());
+        stats.entityLoadCounter.increment(probe.getEntityLoads());
+        stats.collectionFetchCounter.increment(probe.getCollectionFetches());
+
+        long threshold = config.getSlowThreshold();
+        if (threshold > 0 && nanos >= TimeUnit.MILLISECONDS.toNanos(threshold)) {
+            stats.slowInvocations.increment();
+            logger.warn("Slow repository call {}.{}({}) took {} ms: {} statements, {} entity loads, {} collection fetches{}",
+                    repository, method, shapeOf(args), TimeUnit.NANOSECONDS.toMillis(nanos), probe.getStatements(),
+                    probe.getEntityLoads(), probe.getCollectionFetches(), formatSql(probe.getSql()));
+        }
+    }
+
+    /**
+     * 生成查询统计报告。
+     *
+     * @param limit 最多返回的仓库方法数
+     * @return 查询统计报告
+     */
+    public QueryStatsReport getReport(int limit) {
+        QueryStatsReport report = new QueryStatsReport();
+        report.setSince(statistics.getStartTime());
+        report.setStatements(statistics.getPrepareStatementCount());
+        report.setEntityLoads(statistics.getEntityLoadCount());
+        report.setCollectionFetches(statistics.getCollectionFetchCount());
+        report.setQueryExecutions(statistics.getQueryExecutionCount());
+        report.setTransactions(statistics.getSuccessfulTransactionCount());
+
+        List<RepositoryMethodStats> methodStats = new ArrayList<>(methods.size());
+        for (MethodStats stats : methods.values()) {
+            methodStats.add(stats.toDto());
+        }
+        methodStats.sort(Comparator.comparingDouble(RepositoryMethodStats::getTotalTime).reversed());
+        report.setMethods(methodStats.size() > limit ? new ArrayList<>(methodStats.subList(0, limit)) : methodStats);
+
+        List<QueryExecutionStats> queries = new ArrayList<>();
+        for (String query : statistics.getQueries()) {
+            QueryStatistics queryStatistics = statistics.getQueryStatistics(query);
+            QueryExecutionStats stats = new QueryExecutionStats();
+            stats.setQuery(query);
+            stats.setExecutions(queryStatistics.getExecutionCount());
+            stats.setRows(queryStatistics.getExecutionRowCount());
+            stats.setAverageTime(queryStatistics.getExecutionAvgTime());
+            stats.setMaxTime(queryStatistics.getExecutionMaxTime());
+            queries.add(stats);
+        }
+        queries.sort(Comparator.comparingLong(QueryExecutionStats::getMaxTime).reversed());
+        int maxQueries = config.getMaxReportedQueries();
+        report.setQueries(queries.size() > maxQueries ? new ArrayList<>(queries.subList(0, maxQueries)) : queries);
+        return report;
+    }
+
+    /**
+     * 清空仓库方法统计和Hibernate的统计信息，已导出的指标不受影响。
+     */
+    public void reset() {
+        methods.clear();
+        statistics.clear();
+        logger.info("Query statistics reset");
+    }
+
+    /**
+     * 描述调用参数的形状：集合和数组只给出大小，分页参数给出页码、页大小和排序，其他参数只给出类型。
+     */
+    private static String shapeOf(Object[] args) {
+        if (args == null) {
+            return "";
+        }
+        StringJoiner joiner = new StringJoiner(", ");
+        for (Object arg : args) {
+            if (arg == null) {
+                joiner.add("null");
+            } else if (arg instanceof Collection<?> collection) {
+                joiner.add(arg.getClass().getSimpleName() + "[" + collection.size() + "]");
+            } else if (arg instanceof Object[] array) {
+                joiner.add(arg.getClass().getComponentType().getSimpleName() + "[" + array.length + "]");
+            } else if (arg instanceof Pageable pageable) {
+                joiner.add(pageable.isPaged()
+                        ? "Page(" + pageable.getPageNumber() + ", " + pageable.getPageSize() + ", " + pageable.getSort() + ")"
+                        : "Unpaged");
+            } else {
+                joiner.add(arg.getClass().getSimpleName());
+            }
+        }
+        return joiner.toString();
+    }
+
+    private static String formatSql(Map<String, Integer> sql) {
+        StringBuilder builder = new StringBuilder();
+        sql.forEach((statement, count) -> builder.append("\n  [").append(count).append("x] ").append(statement));
+        return builder.toString();
+    }
+
+    /**
+     * 单个仓库方法的累计统计及其指标。
+     */
+    private static final class MethodStats {
+
+        private final String repository;
+        private final String method;
+        private final LongAdder invocations = new LongAdder();
+        private final LongAdder statements = new LongAdder();
+        private final LongAccumulator maxStatements = new LongAccumulator(Math::max, 0);
+        private final LongAdder entityLoads = new LongAdder();
+        private final LongAdder collectionFetches = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder slowInvocations = new LongAdder();
+
+        private final Timer timer;
+        private final DistributionSummary statementSummary;
+        private final Counter entityLoadCounter;
+        private final Counter collectionFetchCounter;
+
+        private MethodStats(String repository, String method, MeterRegistry meterRegistry) {
+            this.repository = repository;
+            this.method = method;
+            this.timer = Timer.builder("repository.invocation")
+                    .description("Latency of repository method invocations")
+                    .tag("repository", repository).tag("method", method)
+                    .register(meterRegistry);
+            this.statementSummary = DistributionSummary.builder("repository.statements")
+                    .description("Number of SQL statements executed per repository method invocation")
+                    .tag("repository", repository).tag("method", method)
+                    .register(meterRegistry);
+            this.entityLoadCounter = Counter.builder("repository.entity.loads")
+                    .description("Number of entities loaded by repository method invocations")
+                    .tag("repository", repository).tag("method", method)
+                    .register(meterRegistry);
+            this.collectionFetchCounter = Counter.builder("repository.collection.fetches")
+                    .description("Number of collections fetched by repository method invocations")
+                    .tag("repository", repository).tag("method", method)
+                    .register(meterRegistry);
+        }
+
+        private RepositoryMethodStats toDto() {
+            RepositoryMethodStats dto = new RepositoryMethodStats();
+            dto.setRepository(repository);
+            dto.setMethod(method);
+            long count = invocations.sum();
+            double totalMillis = totalNanos.sum() / 1e6;
+            dto.setInvocations(count);
+            dto.setStatements(statements.sum());
+            dto.setMaxStatements(maxStatements.get());
+            dto.setEntityLoads(entityLoads.sum());
+            dto.setCollectionFetches(collectionFetches.sum());
+            dto.setTotalTime(totalMillis);
+            dto.setAverageTime(count == 0 ? 0 : totalMillis / count);
+            dto.setMaxTime(maxNanos.get() / 1e6);
+            dto.setSlowInvocations(slowInvocations.sum());
+            return dto;
+        }
+    }
+}
@@ -1,17 +1,24 @@
 package com.flechazo.jnyzdairy.service;
 
-import com.flechazo.jnyzdairy.entity.Diary;
-import com.flechazo.jnyzdairy.entity.DiaryImage;
 import com.flechazo.jnyzdairy.repository.DiaryImageRepository;
 import com.flechazo.jnyzdairy.repository.DiaryRepository;
+import com.flechazo.jnyzdairy.util.RequestOwnershipCache;
 import com.flechazo.jnyzdairy.util.SecurityUtils;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.Collection;
+import java.util.Optional;
 
 /**
  * 安全服务，用于权限验证。
  * <p>
  * 该服务提供了一系列方法来检查当前用户是否拥有特定资源的所有权或访问权限，
  * 包括日记和日记图片。此外，还提供了辅助方法来获取当前用户的ID。
+ * <p>
+ * 所有权检查只查询所有者ID，不加载日记内容和关联实体；查询结果在请求范围内缓存，
+ * 服务层在同一请求中通过 {@link #getDiaryOwnerId(Long)} 获取所有者时不再查询数据库。
  *
  * @author Flechazo
  */
@@ -20,52 +27,99 @@ public class SecurityService {
 
     private final DiaryRepository diaryRepository;
     private final DiaryImageRepository diaryImageRepository;
+    private final ObjectProvider<RequestOwnershipCache> ownershipCache;
 
     /**
      * 构造函数，用于依赖注入。
      *
      * @param diaryRepository 日记仓库接口，用于与日记数据交互
      * @param diaryImageRepository 日记图片仓库接口，用于与日记图片数据交互
+     * @param ownershipCache 请求范围内的所有权缓存，不在请求中时不使用
      */
-    public SecurityService(DiaryRepository diaryRepository, DiaryImageRepository diaryImageRepository) {
+    public SecurityService(DiaryRepository diaryRepository, DiaryImageRepository diaryImageRepository,
+                           ObjectProvider<RequestOwnershipCache> ownershipCache) {
         this.diaryRepository = diaryRepository;
         this.diaryImageRepository = diaryImageRepository;
+        this.ownershipCache = ownershipCache;
     }
 
     /**
      * 检查当前用户是否是给定ID的日记条目的所有者。
      * <p>
-     * 该方法通过日记ID查找对应的日记条目，并对比其关联的用户ID与当前用户的ID。
+     * 该方法通过日记ID查询对应日记条目的所有者ID，并与当前用户的ID对比。
      * 如果两者匹配，则认为当前用户是该日记条目的所有者。
      *
      * @param diaryId 日记条目的唯一标识符
      * @return 如果当前用户是日记条目的所有者则返回 {@code true}，否则返回 {@code false}
      */
     public boolean isOwner(Long diaryId) {
-        Diary diary = diaryRepository.findById(diaryId).orElse(null);
-        if (diary == null) {
-            return false;
-        }
-        Long currentUserId = getCurrentUserId();
-        return diary.getUser().getId().equals(currentUserId);
+        Long ownerId = getDiaryOwnerId(diaryId);
+        return ownerId != null && ownerId.equals(getCurrentUserId());
     }
 
     /**
      * 检查当前用户是否是给定ID的日记图片的所有者。
      * <p>
-     * 该方法通过图片ID查找对应的日记图片，并对比其关联的日记条目所属用户ID与当前用户的ID。
+     * 该方法通过图片ID查询其所属日记条目的所有者ID，并与当前用户的ID对比。
      * 如果两者匹配，则认为当前用户是该日记图片的所有者。
      *
      * @param imageId 日记图片的唯一标识符
      * @return 如果当前用户是日记图片的所有者则返回 {@code true}，否则返回 {@code false}
      */
     public boolean isImageOwner(Long imageId) {
-        DiaryImage image = diaryImageRepository.findById(imageId).orElse(null);
-        if (image == null) {
-            return false;
+        Long ownerId = getImageOwnerId(imageId);
+        return ownerId != null && ownerId.equals(getCurrentUserId());
+    }
+
+    /**
+     * 检查当前用户是否是所有给定ID的日记条目的所有者，不存在的日记条目被忽略。
+     * <p>
+     * 无论日记条目有多少，都只执行一次计数查询。
+     *
+     * @param diaryIds 日记条目的唯一标识符列表
+     * @return 如果没有任何日记条目属于其他用户则返回 {@code true}，否则返回 {@code false}
+     */
+    public boolean isOwnerOfAll(Collection<Long> diaryIds) {
+        return diaryRepository.countByIdInAndUserIdNot(diaryIds, getCurrentUserId()) == 0;
+    }
+
+    /**
+     * 检查当前用户是否是所有给定ID的日记图片的所有者，不存在的图片被忽略。
+     * <p>
+     * 无论图片有多少，都只执行一次计数查询。
+     *
+     * @param imageIds 日记图片的唯一标识符列表
+     * @return 如果没有任何图片属于其他用户则返回 {@code true}，否则返回 {@code false}
+     */
+    public boolean isImageOwnerOfAll(Collection<Long> imageIds) {
+        return diaryImageRepository.countByIdInAndOwnerNot(imageIds, getCurrentUserId()) == 0;
+    }
+
+    /**
+     * 获取日记条目的所有者ID。在请求中调用时，同一日记只查询一次数据库。
+     *
+     * @param diaryId 日记条目的唯一标识符
+     * @return 所有者的用户ID，日记条目不存在时返回 {@code null}
+     */
+    public Long getDiaryOwnerId(Long diaryId) {
+        if (RequestContextHolder.getRequestAttributes() == null) {
+            return diaryRepository.findUserIdById(diaryId).orElse(null);
         }
-        Long currentUserId = getCurrentUserId();
-        return image.getDiary().getUser().getId().equals(currentUserId);
+        return ownershipCache.getObject().getDiaryOwner(diaryId, diaryRepository::findUserIdById).orElse(null);
+    }
+
+    /**
+     * 获取日记图片的所有者ID。在请求中调用时，同一图片只查询一次数据库。
+     *
+     * @param imageId 日记图片的唯一标识符
+     * @return 所有者的用户ID，图片不存在时返回 {@code null}
+     */
+    public Long getImageOwnerId(Long imageId) {
+        if (RequestContextHolder.getRequestAttributes() == null) {
+            return diaryImageRepository.findUserIdById(imageId).orElse(null);
+        }
+        return ownershipCache.getObject().getImageOwner(imageId, diaryImageRepository::findUserIdById)
+                .orElse(null);
     }
 
     /**
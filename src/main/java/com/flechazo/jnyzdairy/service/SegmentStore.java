@@ -0,0 +1,540 @@
+package com.flechazo.jnyzdairy.service;
+
+import com.flechazo.jnyzdairy.config.StorageConfig;
+import com.flechazo.jnyzdairy.dto.StorageObject;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 段文件存储，将小对象追加写入大的段文件，减少海量小文件带来的inode占用和open/stat/close系统调用。
+ * <p>
+ * 每条记录由记录头、对象键、内容和CRC32校验和组成；删除时追加一条墓碑记录。对象键到内容位置的索引保存在内存中，
+ * 启动时按段文件编号顺序重放所有记录重建，校验失败的记录及其之后的内容视为未写完而被忽略。
+ * 读取直接使用段文件的内存映射，不经过系统调用，也不复制到堆内存。
+ * <p>
+ * 新记录只追加到当前的活动段，活动段写满后封存并创建新的段。被删除或覆盖的记录所占比例超过阈值的封存段
+ * 由后台压缩：仍然有效的记录被复制到活动段，随后删除整个段文件。写入不会同步刷盘，
+ * 与本地存储后端的单独文件一样依赖操作系统的页缓存。
+ *
+ * @author Flechazo
+ */
+@Service
+public class SegmentStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentStore.class);
+
+    /**
+     * 记录开头的魔数，用于识别记录边界。
+     */
+    private static final int MAGIC = 0x4A5A5347;
+
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_TOMBSTONE = 2;
+
+    /**
+     * 记录头的长度：魔数(4) + 类型(1) + 修改时间(8) + 键长度(2) + 内容长度(4)。
+     */
+    private static final int HEADER_SIZE = 19;
+
+    /**
+     * 记录尾部CRC32校验和的长度。
+     */
+    private static final int TRAILER_SIZE = 4;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final StorageConfig.Packed config;
+    private final boolean enabled;
+    private final Path directory;
+
+    /**
+     * 对象键到内容位置的索引，按键排序以支持前缀列举。
+     */
+    private final ConcurrentSkipListMap<String, Location> index = new ConcurrentSkipListMap<>();
+
+    /**
+     * 段编号到段的映射。
+     */
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+
+    /**
+     * 当前追加写入的段，由对象锁保护。
+     */
+    private Segment active;
+
+    /**
+     * 构造函数，用于依赖注入。
+     *
+     * @param storageConfig 存储配置
+     */
+    public SegmentStore(StorageConfig storageConfig) {
+        this.config = storageConfig.getPacked();
+        this.enabled = config.isEnabled() && "local".equals(storageConfig.getBackend());
+        this.directory = Paths.get(storageConfig.getRootPath(), ".segments").toAbsolutePath().normalize();
+        if (config.getThreshold() <= 0 || (long) config.getThreshold() + HEADER_SIZE + TRAILER_SIZE
+                + Short.MAX_VALUE * 2 > config.getSegmentSize()) {
+            throw new IllegalStateException("app.storage.packed.threshold must be positive and well below segment-size");
+        }
+        if (config.isEnabled() && !enabled) {
+            logger.warn("Packed storage is only supported by the local storage backend and stays disabled");
+        }
+    }
+
+    /**
+     * 打开所有段文件并重建索引。
+     *
+     * @throws IOException 如果读取段文件时发生错误
+     */
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(directory);
+        List<Integer> ids;
+        try (Stream<Path> files = Files.list(directory)) {
+            ids = files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+
+        for (int id : ids) {
+            Segment segment = new Segment(id, segmentPath(id));
+            segments.put(id, segment);
+            load(segment);
+        }
+
+        Segment last = ids.isEmpty() ? null : segments.get(ids.get(ids.size() - 1));
+        if (last != null) {
+            /* 清除上次未写完的记录 */
+            last.channel.truncate(last.size);
+        }
+        if (last != null && last.size + config.getThreshold() + HEADER_SIZE + TRAILER_SIZE <= config.getSegmentSize()) {
+            activate(last);
+        } else {
+            roll();
+        }
+        logger.info("Opened {} storage segments with {} packed objects", segments.size(), index.size());
+    }
+
+    /**
+     * 关闭所有段文件。
+     *
+     * @throws IOException 如果关闭时发生错误
+     */
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (active != null) {
+            active.channel.force(false);
+        }
+        for (Segment segment : segments.values()) {
+            segment.channel.close();
+        }
+        segments.clear();
+        index.clear();
+        active = null;
+    }
+
+    /**
+     * 判断打包存储是否启用。
+     *
+     * @return 启用时返回 {@code true}
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 判断指定大小的对象是否应当打包存储。
+     *
+     * @param length 对象大小
+     * @return 不超过阈值时返回 {@code true}
+     */
+    public boolean accepts(long length) {
+        return enabled && length <= config.getThreshold();
+    }
+
+    /**
+     * 判断对象是否位于段文件中。
+     *
+     * @param key 对象键
+     * @return 位于段文件中时返回 {@code true}
+     */
+    public boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * 写入对象，已存在的同名对象被覆盖。
+     *
+     * @param key  对象键
+     * @param data 对象内容，大小不超过阈值
+     * @throws IOException 如果写入时发生错误
+     */
+    public synchronized void put(String key, byte[] data) throws IOException {
+        Location location = append(TYPE_PUT, key, data, System.currentTimeMillis());
+        release(index.put(key, location));
+        active.liveBytes.addAndGet(location.recordSize);
+    }
+
+    /**
+     * 删除对象，追加一条墓碑记录。
+     *
+     * @param key 对象键
+     * @return 对象存在并已删除时返回 {@code true}
+     * @throws IOException 如果写入时发生错误
+     */
+    public synchronized boolean delete(String key) throws IOException {
+        if (!index.containsKey(key)) {
+            return false;
+        }
+        append(TYPE_TOMBSTONE, key, new byte[0], System.currentTimeMillis());
+        release(index.remove(key));
+        return true;
+    }
+
+    /**
+     * 获取对象的基本信息。
+     *
+     * @param key 对象键
+     * @return 对象信息，对象不在段文件中时返回 {@code null}
+     */
+    public StorageObject stat(String key) {
+        Location location = index.get(key);
+        return location == null ? null : new StorageObject(key, location.length, location.lastModified);
+    }
+
+    /**
+     * 读取对象内容。
+     *
+     * @param key 对象键
+     * @return 指向内存映射中对象内容的只读缓冲区，对象不在段文件中时返回 {@code null}
+     */
+    public ByteBuffer read(String key) {
+        while (true) {
+            Location location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+            Segment segment = segments.get(location.segmentId);
+            if (segment != null) {
+                return segment.mapped.slice((int) location.offset, location.length);
+            }
+            if (index.get(key) == location) {
+                return null;
+            }
+            /* 段刚被压缩删除，索引中已是新的位置，重新查找 */
+        }
+    }
+
+    /**
+     * 列出键以指定前缀开头的对象。
+     *
+     * @param prefix 键前缀
+     * @return 按键排序的对象信息流
+     */
+    public Stream<StorageObject> list(String prefix) {
+        return index.subMap(prefix, true, prefix + Character.MAX_VALUE, false).entrySet().stream()
+                .map(entry -> new StorageObject(entry.getKey(), entry.getValue().length, entry.getValue().lastModified));
+    }
+
+    /**
+     * 压缩无效数据比例超过阈值的封存段。
+     *
+     * @throws IOException 如果读写段文件时发生错误
+     */
+    public void compact() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        List<Segment> candidates;
+        synchronized (this) {
+            candidates = segments.values().stream()
+                    .filter(segment -> segment != active && segment.garbageRatio() >= config.getCompactionGarbageRatio())
+                    .sorted(Comparator.comparingInt(segment -> segment.id))
+                    .toList();
+        }
+        for (Segment segment : candidates) {
+            compact(segment);
+        }
+    }
+
+    /**
+     * 压缩一个封存段：将仍然有效的记录复制到活动段，然后删除该段。
+     * <p>
+     * 墓碑记录用于屏蔽更早的段中同名对象的旧记录，只要还有更早的段存在且该对象没有被重新写入，就需要保留。
+     */
+    private void compact(Segment segment) throws IOException {
+        long before = segment.size;
+        boolean olderSegments = segments.keySet().stream().anyMatch(id -> id < segment.id);
+        int copied = 0;
+        long position = 0;
+        while (position < segment.size) {
+            Record record = readRecord(segment.mapped, position, segment.size);
+            if (record == null) {
+                break;
+            }
+            synchronized (this) {
+                if (record.type == TYPE_PUT) {
+                    Location current = index.get(record.key);
+                    if (current != null && current.segmentId == segment.id && current.offset == record.dataOffset) {
+                        byte[] data = new byte[record.dataLength];
+                        segment.mapped.get((int) record.dataOffset, data);
+                        Location moved = append(TYPE_PUT, record.key, data, record.lastModified);
+                        index.put(record.key, moved);
+                        active.liveBytes.addAndGet(moved.recordSize);
+                        copied++;
+                    }
+                } else if (olderSegments && !index.containsKey(record.key)) {
+                    append(TYPE_TOMBSTONE, record.key, new byte[0], record.lastModified);
+                }
+            }
+            position += record.size;
+        }
+
+        synchronized (this) {
+            segments.remove(segment.id);
+        }
+        /* 正在读取的内存映射在文件删除后仍然有效 */
+        segment.channel.close();
+        Files.deleteIfExists(segment.path);
+        logger.info("Compacted storage segment {}: copied {} live objects, reclaimed {} bytes", segment.id, copied,
+                before - segment.liveBytes.get());
+    }
+
+    /**
+     * 重放段文件中的记录，更新索引和段中有效数据的大小。
+     */
+    private void load(Segment segment) throws IOException {
+        long limit = segment.channel.size();
+        segment.mapped = segment.channel.map(FileChannel.MapMode.READ_ONLY, 0, limit);
+        long position = 0;
+        Record record;
+        while ((record = readRecord(segment.mapped, position, limit)) != null) {
+            if (record.type == TYPE_PUT) {
+                Location location = new Location(segment.id, record.dataOffset, record.dataLength,
+                        record.lastModified, record.size);
+                release(index.put(record.key, location));
+                segment.liveBytes.addAndGet(record.size);
+            } else {
+                release(index.remove(record.key));
+            }
+            position += record.size;
+        }
+        segment.size = position;
+        if (position < limit && segment.mapped.getInt((int) position) != 0) {
+            logger.warn("Ignoring {} bytes of incomplete records at the end of storage segment {}",
+                    limit - position, segment.id);
+        }
+    }
+
+    /**
+     * 解析一条记录，记录不完整或校验失败时返回 {@code null}。
+     */
+    private Record readRecord(ByteBuffer buffer, long position, long limit) {
+        if (position + HEADER_SIZE + TRAILER_SIZE > limit) {
+            return null;
+        }
+        int offset = (int) position;
+        if (buffer.getInt(offset) != MAGIC) {
+            return null;
+        }
+        byte type = buffer.get(offset + 4);
+        long lastModified = buffer.getLong(offset + 5);
+        int keyLength = Short.toUnsignedInt(buffer.getShort(offset + 13));
+        int dataLength = buffer.getInt(offset + 15);
+        if ((type != TYPE_PUT && type != TYPE_TOMBSTONE) || dataLength < 0) {
+            return null;
+        }
+        long size = (long) HEADER_SIZE + keyLength + dataLength + TRAILER_SIZE;
+        if (position + size > limit) {
+            return null;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(offset + 4, HEADER_SIZE - 4 + keyLength + dataLength));
+        if ((int) crc.getValue() != buffer.getInt((int) (offset + size - TRAILER_SIZE))) {
+            return null;
+        }
+        byte[] key = new byte[keyLength];
+        buffer.get(offset + HEADER_SIZE, key);
+        return new Record(type, new String(key, StandardCharsets.UTF_8), lastModified,
+                position + HEADER_SIZE + keyLength, dataLength, size);
+    }
+
+    /**
+     * 向活动段追加一条记录，活动段空间不足时先切换到新的段。调用方必须持有对象锁。
+     */
+    private Location append(byte type, String key, byte[] data, long lastModified) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Storage key too long: " + key);
+        }
+        int size = HEADER_SIZE + keyBytes.length + data.length + TRAILER_SIZE;
+        if (active.size + size > config.getSegmentSize()) {
+            roll();
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(size);
+        record.putInt(MAGIC).put(type).putLong(lastModified).putShort((short) keyBytes.length).putInt(data.length)
+                .put(keyBytes).put(data);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, size - 4 - TRAILER_SIZE);
+        record.putInt((int) crc.getValue()).flip();
+
+        long position = active.size;
+        while (record.hasRemaining()) {
+            active.channel.write(record, position + record.position());
+        }
+        active.size = position + size;
+        return new Location(active.id, position + HEADER_SIZE + keyBytes.length, data.length, lastModified, size);
+    }
+
+    /**
+     * 封存当前的活动段并创建新的段。
+     */
+    private void roll() throws IOException {
+        int id = 1;
+        if (active != null) {
+            active.channel.force(false);
+            active.channel.truncate(active.size);
+            id = active.id + 1;
+        }
+        for (int existing : segments.keySet()) {
+            id = Math.max(id, existing + 1);
+        }
+        Segment segment = new Segment(id, segmentPath(id));
+        segments.put(id, segment);
+        activate(segment);
+        logger.debug("Started storage segment {}", id);
+    }
+
+    /**
+     * 将段设为活动段：文件预先扩展到段大小（稀疏文件），整个段只需映射一次。
+     */
+    private void activate(Segment segment) throws IOException {
+        if (segment.channel.size() < config.getSegmentSize()) {
+            segment.channel.write(ByteBuffer.wrap(new byte[1]), config.getSegmentSize() - 1L);
+        }
+        segment.mapped = segment.channel.map(FileChannel.MapMode.READ_ONLY, 0, config.getSegmentSize());
+        active = segment;
+    }
+
+    /**
+     * 对象被覆盖或删除后，从其原来所在的段中扣除有效数据的大小。
+     */
+    private void release(Location previous) {
+        if (previous != null) {
+            Segment segment = segments.get(previous.segmentId);
+            if (segment != null) {
+                segment.liveBytes.addAndGet(-previous.recordSize);
+            }
+        }
+    }
+
+    private Path segmentPath(int id) {
+        return directory.resolve(String.format("%08d", id) + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * 段文件。
+     */
+    private static final class Segment {
+
+        private final int id;
+        private final Path path;
+        private final FileChannel channel;
+
+        /**
+         * 段文件的只读内存映射。
+         */
+        private volatile MappedByteBuffer mapped;
+
+        /**
+         * 已写入的有效记录的总长度。
+         */
+        private volatile long size;
+
+        /**
+         * 仍然有效的记录的总长度。
+         */
+        private final AtomicLong liveBytes = new AtomicLong();
+
+        Segment(int id, Path path) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        }
+
+        double garbageRatio() {
+            return size == 0 ? 0 : 1 - (double) liveBytes.get() / size;
+        }
+    }
+
+    /**
+     * 对象内容在段文件中的位置。
+     */
+    private static final class Location {
+
+        private final int segmentId;
+        private final long offset;
+        private final int length;
+        private final long lastModified;
+        private final long recordSize;
+
+        Location(int segmentId, long offset, int length, long lastModified, long recordSize) {
+            this.segmentId = segmentId;
+            this.offset = offset;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.recordSize = recordSize;
+        }
+    }
+
+    /**
+     * 解析出的一条记录。
+     */
+    private static final class Record {
+
+        private final byte type;
+        private final String key;
+        private final long lastModified;
+        private final long dataOffset;
+        private final int dataLength;
+        private final long size;
+
+        Record(byte type, String key, long lastModified, long dataOffset, int dataLength, long size) {
+            this.type = type;
+            this.key = key;
+            this.lastModified = lastModified;
+            this.dataOffset = dataOffset;
+            this.dataLength = dataLength;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.flechazo.jnyzdairy.service;
+
+import com.flechazo.jnyzdairy.dto.StorageObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.stream.Stream;
+
+/**
+ * 存储后端接口，以键值方式保存文件内容，屏蔽本地文件系统与对象存储之间的差异。
+ * <p>
+ * 对象键是以 {@code /} 分隔的相对路径，例如 {@code blobs/ab/<摘要>.jpg} 或 {@code users/1/avatar/xxx.jpg}。
+ * 具体实现由配置项 {@code app.storage.backend} 选择。
+ *
+ * @author Flechazo
+ */
+public interface StorageBackend {
+
+    /**
+     * 将本地文件作为对象内容写入，已存在的同名对象会被覆盖。
+     * <p>
+     * 调用方在写入后不再使用该文件，实现可以直接移动该文件而不复制其内容。
+     *
+     * @param key    对象键
+     * @param source 本地文件
+     * @throws IOException 如果写入时发生错误
+     */
+    void put(String key, Path source) throws IOException;
+
+    /**
+     * 将输入流的内容作为对象内容写入，已存在的同名对象会被覆盖。
+     *
+     * @param key    对象键
+     * @param input  内容输入流，调用方负责关闭
+     * @param length 内容长度
+     * @throws IOException 如果写入时发生错误
+     */
+    void put(String key, InputStream input, long length) throws IOException;
+
+    /**
+     * 获取对象的基本信息。
+     *
+     * @param key 对象键
+     * @return 对象信息，对象不存在时返回 {@code null}
+     * @throws IOException 如果查询时发生错误
+     */
+    StorageObject stat(String key) throws IOException;
+
+    /**
+     * 读取对象的完整内容。
+     *
+     * @param key 对象键
+     * @return 内容输入流，调用方负责关闭
+     * @throws java.nio.file.NoSuchFileException 如果对象不存在
+     * @throws IOException                       如果读取时发生错误
+     */
+    InputStream get(String key) throws IOException;
+
+    /**
+     * 读取对象内容中的一段。
+     *
+     * @param key    对象键
+     * @param offset 起始位置
+     * @param length 字节数
+     * @return 内容输入流，调用方负责关闭
+     * @throws java.nio.file.NoSuchFileException 如果对象不存在
+     * @throws IOException                       如果读取时发生错误
+     */
+    InputStream get(String key, long offset, long length) throws IOException;
+
+    /**
+     * 删除对象，对象不存在时不做任何操作。
+     *
+     * @param key 对象键
+     * @throws IOException 如果删除时发生错误
+     */
+    void delete(String key) throws IOException;
+
+    /**
+     * 批量删除对象，不存在的对象被忽略。
+     * <p>
+     * 默认实现逐个删除，实现可以改用一次请求删除多个对象的批量接口。
+     *
+     * @param keys 对象键
+     * @throws IOException 如果删除时发生错误
+     */
+    default void deleteAll(Collection<String> keys) throws IOException {
+        for (String key : keys) {
+            delete(key);
+        }
+    }
+
+    /**
+     * 将对象移动到新的键下，目标已存在时被覆盖，源对象不存在时不做任何操作。
+     * <p>
+     * 默认实现先复制内容再删除源对象，实现可以改用更高效的重命名或服务端复制。
+     *
+     * @param sourceKey 源对象键
+     * @param targetKey 目标对象键
+     * @return 源对象存在并已移动时返回 {@code true}
+     * @throws IOException 如果移动时发生错误
+     */
+    default boolean move(String sourceKey, String targetKey) throws IOException {
+        StorageObject source = stat(sourceKey);
+        if (source == null) {
+            return false;
+        }
+        try (InputStream input = get(sourceKey)) {
+            put(targetKey, input, source.getSize());
+        }
+        delete(sourceKey);
+        return true;
+    }
+
+    /**
+     * 列出键以指定前缀开头的所有对象。
+     * <p>
+     * 返回的流可以是惰性的，遍历流时发生的错误以 {@link java.io.UncheckedIOException} 抛出。
+     *
+     * @param prefix 键前缀，例如 {@code blobs/}
+     * @return 对象信息流，调用方负责关闭
+     * @throws IOException 如果开始列举时发生错误
+     */
+    Stream<StorageObject> list(String prefix) throws IOException;
+
+    /**
+     * 获取对象在本地文件系统中的路径，用于零拷贝发送等只适用于本地文件的优化。
+     *
+     * @param key 对象键
+     * @return 本地文件路径，对象不在本地文件系统中时返回 {@code null}
+     */
+    default Path localPath(String key) {
+        return null;
+    }
+}
@@ -0,0 +1,211 @@
+package com.flechazo.jnyzdairy.service;
+
+import com.flechazo.jnyzdairy.config.StorageConfig;
+import com.flechazo.jnyzdairy.entity.StorageDeletion;
+import com.flechazo.jnyzdairy.repository.StorageDeletionRepository;
+import com.flechazo.jnyzdairy.repository.StoredBlobRepository;
+import com.flechazo.jnyzdairy.util.StorageLayout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 存储对象的延迟删除服务，基于事务发件箱实现。
+ * <p>
+ * 删除文件的事务不直接删除存储对象，而是在发件箱表中插入待删除记录，随事务一同提交或回滚：
+ * 事务回滚时文件不会被删除，删除请求也不会因为存储后端缓慢或出错而延长事务、占用连接。
+ * <p>
+ * 事务提交后，后台任务以 {@code FOR UPDATE SKIP LOCKED} 领取一批记录，使用存储后端的批量删除接口删除，
+ * 成功后删除记录；失败时记录原因并按指数退避重试。删除不存在的对象不会出错，记录被重复处理也没有影响。
+ *
+ * @author Flechazo
+ */
+@Service
+public class StorageDeletionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageDeletionService.class);
+
+    /**
+     * 对象键和摘要的分隔符，与发件箱插入语句中的 {@code chr(10)} 对应。
+     */
+    private static final String DELIMITER = "\n";
+
+    /**
+     * 失败原因的最大长度，与表结构一致。
+     */
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final StorageConfig.Deletion config;
+    private final StorageBackend storageBackend;
+    private final StorageLayout storageLayout;
+    private final StorageDeletionRepository storageDeletionRepository;
+    private final StoredBlobRepository storedBlobRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * 构造函数，用于依赖注入。
+     *
+     * @param storageConfig             存储配置
+     * @param storageBackend            存储后端
+     * @param storageLayout             存储布局
+     * @param storageDeletionRepository 待删除存储对象仓库接口
+     * @param storedBlobRepository      内容寻址文件仓库接口，用于删除前确认文件没有被重新登记
+     * @param transactionManager        事务管理器，每批记录在单独的事务中领取和处理
+     */
+    public StorageDeletionService(StorageConfig storageConfig,
+                                  StorageBackend storageBackend,
+                                  StorageLayout storageLayout,
+                                  StorageDeletionRepository storageDeletionRepository,
+                                  StoredBlobRepository storedBlobRepository,
+                                  PlatformTransactionManager transactionManager) {
+        this.config = storageConfig.getDeletion();
+        this.storageBackend = storageBackend;
+        this.storageLayout = storageLayout;
+        this.storageDeletionRepository = storageDeletionRepository;
+        this.storedBlobRepository = storedBlobRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 在当前事务中登记用户文件对应的存储对象，事务提交后由后台删除。必须在事务中调用。
+     *
+     * @param keys 对象键，按删除顺序排列
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void deleteAfterCommit(Collection<String> keys) {
+        insert(new ArrayList<>(keys), Collections.nCopies(keys.size(), ""));
+    }
+
+    /**
+     * 在当前事务中登记内容寻址文件，事务提交后由后台删除，迁移完成前同时删除旧布局下的位置。必须在事务中调用。
+     * <p>
+     * 删除前再确认一次文件记录不存在，以排除在此期间上传了相同内容、重新登记了引用的文件。
+     *
+     * @param blobNames 文件名，格式为 {@code <摘要>.<扩展名>}
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void deleteBlobsAfterCommit(Collection<String> blobNames) {
+        List<String> keys = new ArrayList<>(blobNames.size() * 2);
+        List<String> hashes = new ArrayList<>(blobNames.size() * 2);
+        for (String blobName : blobNames) {
+            String hash = blobName.substring(0, blobName.indexOf('.'));
+            if (storageLayout.isDualRead()) {
+                /* 先删除旧位置，避免文件在两次删除之间被迁移到新位置 */
+                keys.add(storageLayout.legacyBlobKey(blobName));
+                hashes.add(hash);
+            }
+            keys.add(storageLayout.blobKey(blobName));
+            hashes.add(hash);
+        }
+        insert(keys, hashes);
+    }
+
+    /**
+     * 撤销尚未执行的删除，用于重新写入一个已登记删除的用户文件之前。必须在事务中调用。
+     * <p>
+     * 对象正在被后台删除时，等待删除完成后返回，此时对象已不存在，调用方可以据此重新写入。
+     *
+     * @param keys 对象键
+     * @return 撤销的记录数
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int cancel(Collection<String> keys) {
+        return keys.isEmpty() ? 0 : storageDeletionRepository.deleteByObjectKeys(keys);
+    }
+
+    /**
+     * 处理发件箱中已到重试时间的记录，直到没有可领取的记录为止。
+     */
+    @Scheduled(fixedDelayString = "${app.storage.deletion.interval:1000}")
+    public void drain() {
+        try {
+            Integer claimed;
+            do {
+                claimed = transactionTemplate.execute(status -> processBatch());
+            } while (claimed != null && claimed == config.getBatchSize());
+        } catch (RuntimeException e) {
+            logger.warn("Failed to process storage deletion outbox", e);
+        }
+    }
+
+    /**
+     * 领取并处理一批记录。记录在事务结束前保持锁定，其他实例不会同时处理。
+     *
+     * @return 领取的记录数
+     */
+    private int processBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<StorageDeletion> batch = storageDeletionRepository.claim(now, config.getBatchSize());
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        try {
+            List<String> keys = unreferencedKeys(batch);
+            storageBackend.deleteAll(keys);
+            storageDeletionRepository.deleteAllInBatch(batch);
+            logger.debug("Deleted {} storage objects from outbox", keys.size());
+        } catch (IOException | RuntimeException e) {
+            String error = String.valueOf(e.getMessage());
+            if (error.length() > MAX_ERROR_LENGTH) {
+                error = error.substring(0, MAX_ERROR_LENGTH);
+            }
+            for (StorageDeletion deletion : batch) {
+                deletion.setAttempts(deletion.getAttempts() + 1);
+                deletion.setNextAttemptAt(now.plusNanos(backoff(deletion.getAttempts()) * 1_000_000));
+                deletion.setLastError(error);
+            }
+            logger.warn("Failed to delete {} storage objects, will retry", batch.size(), e);
+        }
+        return batch.size();
+    }
+
+    private void insert(List<String> keys, List<String> hashes) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        storageDeletionRepository.insertAll(String.join(DELIMITER, keys), String.join(DELIMITER, hashes),
+                LocalDateTime.now());
+    }
+
+    /**
+     * 去掉在登记删除之后又被重新登记的内容寻址文件，一批只查询一次数据库。
+     */
+    private List<String> unreferencedKeys(List<StorageDeletion> batch) {
+        Set<String> hashes = new HashSet<>();
+        for (StorageDeletion deletion : batch) {
+            if (deletion.getBlobHash() != null) {
+                hashes.add(deletion.getBlobHash());
+            }
+        }
+        Set<String> registered = hashes.isEmpty() ? Set.of() : storedBlobRepository.findExistingHashes(hashes);
+        List<String> keys = new ArrayList<>(batch.size());
+        for (StorageDeletion deletion : batch) {
+            if (deletion.getBlobHash() == null || !registered.contains(deletion.getBlobHash())) {
+                keys.add(deletion.getObjectKey());
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * 第 {@code attempts} 次失败后的退避时间（毫秒），从处理间隔开始每次翻倍，不超过上限。
+     */
+    private long backoff(int attempts) {
+        long delay = config.getInterval() << Math.min(attempts, 20);
+        return Math.min(delay, config.getMaxBackoff());
+    }
+}
@@ -0,0 +1,571 @@
+package com.flechazo.jnyzdairy.service;
+
+import com.flechazo.jnyzdairy.config.StorageConfig;
+import com.flechazo.jnyzdairy.dto.StorageGcReport;
+import com.flechazo.jnyzdairy.dto.StorageObject;
+import com.flechazo.jnyzdairy.entity.JobCheckpoint;
+import com.flechazo.jnyzdairy.entity.StorageJournalEntry;
+import com.flechazo.jnyzdairy.entity.StorageOperation;
+import com.flechazo.jnyzdairy.repository.DiaryImageRepository;
+import com.flechazo.jnyzdairy.repository.StoredBlobRepository;
+import com.flechazo.jnyzdairy.repository.UserRepository;
+import com.flechazo.jnyzdairy.util.AvatarPaths;
+import com.flechazo.jnyzdairy.util.StorageLayout;
+import com.flechazo.jnyzdairy.util.Throttle;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * 孤儿文件回收服务，删除存储中没有任何数据库记录引用的文件。
+ * <p>
+ * 回收按存储布局的第一级目录分片并行进行。每个分片内，列出的文件按连接键排序，数据库中的引用以相同的顺序流式读取，
+ * 两者做归并连接，未匹配的文件即为孤儿文件。内存占用只与单个分片的文件数有关，与引用总数无关。
+ * <ul>
+ *     <li>内容寻址文件以文件名连接，引用来自日记图片和引用计数大于0的文件记录。</li>
+ *     <li>用户文件以访问路径连接，引用来自用户头像和未按内容寻址存储的日记图片；头像的各个尺寸都以最大尺寸的路径连接。</li>
+ * </ul>
+ * 系统背景图等不在 {@code blobs/} 和 {@code userdata/} 下的文件不在回收范围内；旧布局下的用户文件由布局迁移任务负责，
+ * 迁移到新布局后再参与回收。最近修改时间在宽限期内的文件视为上传中，不会被回收。
+ * <p>
+ * 全量回收需要列出存储中的所有文件。日常回收以增量方式进行：只检查存储变更日志中自上次回收以来
+ * 被创建或覆盖、且已超过宽限期的对象。变更日志不完整（首次运行或应用异常退出）时自动改为全量回收，
+ * 全量回收开始时记录日志位置，完成后从该位置继续增量回收。
+ *
+ * @author Flechazo
+ */
+@Service
+public class StorageGcService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageGcService.class);
+
+    /**
+     * 回收在存储变更日志中的消费者名称。
+     */
+    private static final String JOURNAL_CONSUMER = "gc";
+
+    /**
+     * 增量回收时每次读取的日志条目数。
+     */
+    private static final int JOURNAL_PAGE_SIZE = 1000;
+
+    private final StorageConfig.Gc config;
+    private final StorageBackend storageBackend;
+    private final StorageLayout storageLayout;
+    private final BlobStorageService blobStorageService;
+    private final StoredBlobRepository storedBlobRepository;
+    private final UserRepository userRepository;
+    private final DiaryImageRepository diaryImageRepository;
+    private final StorageJournalService storageJournalService;
+    private final boolean journalEnabled;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Path stagingRoot;
+
+    /**
+     * 手动触发的回收在此线程中运行，不占用请求线程。
+     */
+    private final ExecutorService launcher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "storage-gc");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * 当前或最近一次回收的进度。
+     */
+    private volatile Progress progress;
+
+    /**
+     * 构造函数，用于依赖注入。
+     *
+     * @param storageConfig         存储配置
+     * @param storageBackend        存储后端
+     * @param storageLayout         存储布局
+     * @param blobStorageService    内容寻址存储服务
+     * @param storedBlobRepository  内容寻址文件仓库接口
+     * @param userRepository        用户仓库接口
+     * @param diaryImageRepository  日记图片仓库接口
+     * @param storageJournalService 存储变更日志服务
+     * @param transactionManager    事务管理器，用于流式读取引用
+     */
+    public StorageGcService(StorageConfig storageConfig,
+                            StorageBackend storageBackend,
+                            StorageLayout storageLayout,
+                            BlobStorageService blobStorageService,
+                            StoredBlobRepository storedBlobRepository,
+                            UserRepository userRepository,
+                            DiaryImageRepository diaryImageRepository,
+                            StorageJournalService storageJournalService,
+                            PlatformTransactionManager transactionManager) {
+        this.config = storageConfig.getGc();
+        this.storageBackend = storageBackend;
+        this.storageLayout = storageLayout;
+        this.blobStorageService = blobStorageService;
+        this.storedBlobRepository = storedBlobRepository;
+        this.userRepository = userRepository;
+        this.diaryImageRepository = diaryImageRepository;
+        this.storageJournalService = storageJournalService;
+        this.journalEnabled = storageConfig.getJournal().isEnabled();
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.stagingRoot = Paths.get(storageConfig.getRootPath(), ".staging").toAbsolutePath().normalize();
+    }
+
+    /**
+     * 关闭手动回收的启动线程。
+     */
+    @PreDestroy
+    public void close() {
+        launcher.shutdownNow();
+    }
+
+    /**
+     * 在当前线程中执行一次回收。
+     *
+     * @param dryRun 是否只生成报告而不删除文件
+     * @param full   是否强制全量回收，否则在变更日志完整时只做增量回收
+     * @return 回收报告，已有回收在运行时返回 {@code null}
+     */
+    public StorageGcReport run(boolean dryRun, boolean full) {
+        if (!running.compareAndSet(false, true)) {
+            return null;
+        }
+        try {
+            return execute(new Progress(dryRun), full);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 在后台线程中启动一次回收。
+     *
+     * @param dryRun 是否只生成报告而不删除文件
+     * @param full   是否强制全量回收，否则在变更日志完整时只做增量回收
+     * @return 刚启动的回收的报告，已有回收在运行时返回 {@code null}
+     */
+    public StorageGcReport start(boolean dryRun, boolean full) {
+        if (!running.compareAndSet(false, true)) {
+            return null;
+        }
+        Progress started = new Progress(dryRun);
+        progress = started;
+        launcher.execute(() -> {
+            try {
+                execute(started, full);
+            } finally {
+                running.set(false);
+            }
+        });
+        return started.toReport();
+    }
+
+    /**
+     * 获取当前或最近一次回收的报告。
+     *
+     * @return 回收报告，尚未运行过时返回 {@code null}
+     */
+    public StorageGcReport getReport() {
+        Progress current = progress;
+        return current == null ? null : current.toReport();
+    }
+
+    /**
+     * 选择回收方式：变更日志完整时增量回收，否则全量回收。
+     * <p>
+     * 全量回收开始前记录日志位置，只有非试运行且所有分片都成功时才将该位置标记为完成，
+     * 否则下一次仍然全量回收。
+     */
+    private StorageGcReport execute(Progress current, boolean full) {
+        JobCheckpoint checkpoint = journalEnabled ? storageJournalService.getCheckpoint(JOURNAL_CONSUMER) : null;
+        if (!full && checkpoint != null && checkpoint.isCompleted()) {
+            return collectIncremental(current, Long.parseLong(checkpoint.getPosition()));
+        }
+
+        boolean tracked = journalEnabled && !current.dryRun;
+        if (tracked) {
+            storageJournalService.beginRescan(JOURNAL_CONSUMER);
+        }
+        StorageGcReport report = collect(current);
+        if (tracked && report.getShardsFailed() == 0 && report.getShardsDone() == report.getShardsTotal()) {
+            storageJournalService.completeRescan(JOURNAL_CONSUMER);
+        }
+        return report;
+    }
+
+    private StorageGcReport collect(Progress current) {
+        progress = current;
+        List<String> shards = storageLayout.shards();
+        current.shardsTotal = shards.size() * 2;
+        logger.info("Starting storage GC over {} shards (dry run: {})", current.shardsTotal, current.dryRun);
+
+        Throttle scanThrottle = new Throttle(config.getMaxScannedPerSecond());
+        Throttle deleteThrottle = new Throttle(config.getMaxDeletesPerSecond());
+        long cutoff = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(config.getGracePeriodMinutes());
+
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, config.getParallelism()));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (String shard : shards) {
+                futures.add(workers.submit(() -> collectShard("blobs " + shard, current,
+                        () -> listBlobs(shard, scanThrottle), this::blobJoinKey,
+                        () -> storedBlobRepository.streamReferencedNames(shard), this::isBlobRegistered,
+                        cutoff, deleteThrottle)));
+                futures.add(workers.submit(() -> collectShard("users " + shard, current,
+                        () -> listPrefix(List.of(storageLayout.userShardPrefix(shard)), scanThrottle),
+                        this::userJoinKey,
+                        () -> userRepository.streamReferencedPaths(shard), key -> false,
+                        cutoff, deleteThrottle)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            cleanStaging(current, cutoff);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Storage GC interrupted");
+        } catch (ExecutionException e) {
+            logger.error("Storage GC failed", e.getCause());
+        } finally {
+            workers.shutdownNow();
+            current.finishedAt = LocalDateTime.now();
+        }
+
+        StorageGcReport report = current.toReport();
+        logger.info("Storage GC finished: scanned {}, referenced {}, orphans {} ({} bytes), deleted {}, " +
+                        "skipped recent {}, failed shards {}", report.getScanned(), report.getReferenced(),
+                report.getOrphans(), report.getOrphanBytes(), report.getDeleted(), report.getSkippedRecent(),
+                report.getShardsFailed());
+        return report;
+    }
+
+    /**
+     * 增量回收：按序列号读取检查点之后的变更日志，检查被创建或覆盖过的对象是否仍被引用。
+     * <p>
+     * 遇到仍在宽限期内记录的条目即停止，之后的条目留到下一次回收；同一对象在一页中多次变更时只按最后一次处理。
+     * 每处理完一页推进一次检查点，中途失败时下一次从最后推进的位置重新处理，重复检查不会造成误删。
+     */
+    private StorageGcReport collectIncremental(Progress current, long position) {
+        progress = current;
+        current.incremental = true;
+        current.shardsTotal = 1;
+        logger.info("Starting incremental storage GC from journal position {} (dry run: {})", position,
+                current.dryRun);
+
+        Throttle deleteThrottle = new Throttle(config.getMaxDeletesPerSecond());
+        long cutoff = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(config.getGracePeriodMinutes());
+        LocalDateTime recordedCutoff = LocalDateTime.now().minusMinutes(config.getGracePeriodMinutes());
+        try {
+            boolean more = true;
+            while (more) {
+                List<StorageJournalEntry> entries = storageJournalService.read(position, JOURNAL_PAGE_SIZE);
+                more = entries.size() == JOURNAL_PAGE_SIZE;
+                Map<String, StorageOperation> changed = new LinkedHashMap<>();
+                long last = position;
+                for (StorageJournalEntry entry : entries) {
+                    if (!entry.getRecordedAt().isBefore(recordedCutoff)) {
+                        more = false;
+                        break;
+                    }
+                    changed.put(entry.getObjectKey(), entry.getOperation());
+                    last = entry.getSeq();
+                }
+
+                for (Map.Entry<String, StorageOperation> entry : changed.entrySet()) {
+                    current.scanned.incrementAndGet();
+                    if (entry.getValue() != StorageOperation.DELETE) {
+                        collectKey(entry.getKey(), current, cutoff, deleteThrottle);
+                    }
+                }
+                if (!current.dryRun && last > position) {
+                    storageJournalService.advance(JOURNAL_CONSUMER, last);
+                }
+                position = last;
+            }
+            current.shardsDone.incrementAndGet();
+            cleanStaging(current, cutoff);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Incremental storage GC interrupted");
+        } catch (IOException | RuntimeException e) {
+            current.shardsFailed.incrementAndGet();
+            logger.error("Incremental storage GC failed at journal position {}", position, e);
+        } finally {
+            current.finishedAt = LocalDateTime.now();
+        }
+
+        StorageGcReport report = current.toReport();
+        logger.info("Incremental storage GC finished at journal position {}: checked {}, referenced {}, " +
+                        "orphans {} ({} bytes), deleted {}, skipped recent {}", position, report.getScanned(),
+                report.getReferenced(), report.getOrphans(), report.getOrphanBytes(), report.getDeleted(),
+                report.getSkippedRecent());
+        return report;
+    }
+
+    /**
+     * 检查单个对象是否为孤儿文件，是则删除。不在回收范围内的对象（系统文件、旧布局下的用户文件）直接跳过。
+     */
+    private void collectKey(String key, Progress current, long cutoff, Throttle deleteThrottle)
+            throws IOException, InterruptedException {
+        boolean referenced;
+        if (key.startsWith(BlobStorageService.BLOB_DIRECTORY + "/")) {
+            String blobName = blobJoinKey(key);
+            referenced = blobName != null && isBlobReferenced(blobName.substring(0, blobName.indexOf('.')));
+        } else if (key.startsWith(StorageLayout.USER_DIRECTORY + "/")) {
+            String path = userJoinKey(key);
+            referenced = path != null
+                    && (userRepository.existsByAvatarPath(path) || diaryImageRepository.existsByPath(path));
+        } else {
+            return;
+        }
+
+        StorageObject object = storageBackend.stat(key);
+        if (object == null) {
+            return;
+        }
+        if (referenced) {
+            current.referenced.incrementAndGet();
+        } else if (object.getLastModified() > cutoff) {
+            current.skippedRecent.incrementAndGet();
+        } else {
+            current.recordOrphan(object, config.getReportLimit());
+            if (!current.dryRun) {
+                deleteThrottle.acquire();
+                storageBackend.delete(key);
+                current.deleted.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 用户文件的连接键：访问路径，头像的各个尺寸映射为用户记录中保存的最大尺寸的路径。
+     */
+    private String userJoinKey(String key) {
+        String path = storageLayout.userPathOf(key);
+        return path == null ? null : AvatarPaths.canonical(path);
+    }
+
+    /**
+     * 判断内容寻址文件是否被日记图片引用或仍有引用计数大于0的文件记录。
+     */
+    private boolean isBlobReferenced(String hash) {
+        return storedBlobRepository.existsByHashAndRefCountGreaterThan(hash, 0)
+                || diaryImageRepository.existsByContentHash(hash);
+    }
+
+    /**
+     * 处理一个分片：列出文件并按连接键排序，与按相同顺序流式读取的引用做归并连接。
+     * <p>
+     * 连接键为 {@code null} 的文件位于布局中不可能被访问到的位置，直接视为孤儿文件。
+     * 删除前再用 {@code recheck} 确认一次，以排除在读取引用之后才登记的引用。
+     */
+    private void collectShard(String name, Progress current, Callable<List<StorageObject>> lister,
+                              Function<String, String> joinKey, Callable<Stream<String>> references,
+                              Predicate<String> recheck, long cutoff, Throttle deleteThrottle) {
+        try {
+            List<Map.Entry<String, StorageObject>> listed = new ArrayList<>();
+            for (StorageObject object : lister.call()) {
+                String key = joinKey.apply(object.getKey());
+                listed.add(new AbstractMap.SimpleImmutableEntry<>(key == null ? "" : key, object));
+            }
+            listed.sort(Map.Entry.comparingByKey());
+            current.scanned.addAndGet(listed.size());
+
+            /* 流式读取引用的同时持有只读事务，连接在事务中完成，删除在事务结束后进行 */
+            List<StorageObject> orphans = readOnlyTransaction.execute(status -> {
+                try (Stream<String> stream = references.call()) {
+                    return mergeJoin(listed, stream.iterator(), current);
+                } catch (Exception e) {
+                    throw new IllegalStateException("Failed to read references for shard " + name, e);
+                }
+            });
+
+            for (StorageObject orphan : Objects.requireNonNull(orphans)) {
+                if (orphan.getLastModified() > cutoff) {
+                    current.skippedRecent.incrementAndGet();
+                    continue;
+                }
+                if (recheck.test(orphan.getKey())) {
+                    current.referenced.incrementAndGet();
+                    continue;
+                }
+                current.recordOrphan(orphan, config.getReportLimit());
+                if (!current.dryRun) {
+                    deleteThrottle.acquire();
+                    storageBackend.delete(orphan.getKey());
+                    current.deleted.incrementAndGet();
+                }
+            }
+            current.shardsDone.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            current.shardsFailed.incrementAndGet();
+            logger.error("Storage GC failed for shard {}", name, e);
+        }
+    }
+
+    /**
+     * 归并连接：两边都已按连接键升序排列，返回没有匹配引用的文件。
+     */
+    private List<StorageObject> mergeJoin(List<Map.Entry<String, StorageObject>> listed, Iterator<String> references,
+                                          Progress current) {
+        List<StorageObject> orphans = new ArrayList<>();
+        String reference = references.hasNext() ? references.next() : null;
+        for (Map.Entry<String, StorageObject> entry : listed) {
+            String key = entry.getKey();
+            while (reference != null && reference.compareTo(key) < 0) {
+                reference = references.hasNext() ? references.next() : null;
+            }
+            if (!key.isEmpty() && key.equals(reference)) {
+                current.referenced.incrementAndGet();
+            } else {
+                orphans.add(entry.getValue());
+            }
+        }
+        return orphans;
+    }
+
+    /**
+     * 列出分片下新旧两种布局的内容寻址文件。
+     */
+    private List<StorageObject> listBlobs(String shard, Throttle scanThrottle) throws IOException,
+            InterruptedException {
+        Set<String> prefixes = new LinkedHashSet<>();
+        prefixes.add(storageLayout.blobShardPrefix(shard));
+        prefixes.addAll(storageLayout.legacyBlobShardPrefixes(shard));
+        return listPrefix(prefixes, scanThrottle);
+    }
+
+    private List<StorageObject> listPrefix(Collection<String> prefixes, Throttle scanThrottle) throws IOException,
+            InterruptedException {
+        List<StorageObject> objects = new ArrayList<>();
+        for (String prefix : prefixes) {
+            try (Stream<StorageObject> stream = storageBackend.list(prefix)) {
+                Iterator<StorageObject> iterator = stream.iterator();
+                while (iterator.hasNext()) {
+                    scanThrottle.acquire();
+                    objects.add(iterator.next());
+                }
+            }
+        }
+        return objects;
+    }
+
+    /**
+     * 内容寻址文件的连接键为文件名，文件必须位于新布局或旧布局下与其摘要对应的位置。
+     */
+    private String blobJoinKey(String key) {
+        String blobName = key.substring(key.lastIndexOf('/') + 1);
+        if (!blobStorageService.isBlobName(blobName)) {
+            return null;
+        }
+        return key.equals(blobStorageService.keyOf(blobName)) || key.equals(storageLayout.legacyBlobKey(blobName))
+                ? blobName : null;
+    }
+
+    /**
+     * 判断内容寻址文件当前是否有文件记录，用于删除前的再次确认。
+     */
+    private boolean isBlobRegistered(String key) {
+        String blobName = blobJoinKey(key);
+        return blobName != null && storedBlobRepository.existsById(blobName.substring(0, blobName.indexOf('.')));
+    }
+
+    /**
+     * 删除上传中断后遗留在暂存目录中的过期文件。
+     */
+    private void cleanStaging(Progress current, long cutoff) {
+        if (current.dryRun || !Files.isDirectory(stagingRoot)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(stagingRoot)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.isRegularFile(file) && Files.getLastModifiedTime(file).toMillis() < cutoff) {
+                    Files.deleteIfExists(file);
+                    current.stagingDeleted.incrementAndGet();
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to clean staging directory {}", stagingRoot, e);
+        }
+    }
+
+    /**
+     * 回收进度，各分片的工作线程并发更新其中的计数器。
+     */
+    private static class Progress {
+
+        private final boolean dryRun;
+        private volatile boolean incremental;
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private volatile LocalDateTime finishedAt;
+        private volatile int shardsTotal;
+        private final AtomicInteger shardsDone = new AtomicInteger();
+        private final AtomicInteger shardsFailed = new AtomicInteger();
+        private final AtomicLong scanned = new AtomicLong();
+        private final AtomicLong referenced = new AtomicLong();
+        private final AtomicLong skippedRecent = new AtomicLong();
+        private final AtomicLong orphans = new AtomicLong();
+        private final AtomicLong orphanBytes = new AtomicLong();
+        private final AtomicLong deleted = new AtomicLong();
+        private final AtomicLong stagingDeleted = new AtomicLong();
+        private final List<String> orphanKeys = Collections.synchronizedList(new ArrayList<>());
+
+        Progress(boolean dryRun) {
+            this.dryRun = dryRun;
+        }
+
+        void recordOrphan(StorageObject orphan, int reportLimit) {
+            orphans.incrementAndGet();
+            orphanBytes.addAndGet(orphan.getSize());
+            synchronized (orphanKeys) {
+                if (orphanKeys.size() < reportLimit) {
+                    orphanKeys.add(orphan.getKey());
+                }
+            }
+        }
+
+        StorageGcReport toReport() {
+            StorageGcReport report = new StorageGcReport();
+            report.setDryRun(dryRun);
+            report.setIncremental(incremental);
+            report.setRunning(finishedAt == null);
+            report.setStartedAt(startedAt);
+            report.setFinishedAt(finishedAt);
+            report.setShardsTotal(shardsTotal);
+            report.setShardsDone(shardsDone.get());
+            report.setShardsFailed(shardsFailed.get());
+            report.setScanned(scanned.get());
+            report.setReferenced(referenced.get());
+            report.setSkippedRecent(skippedRecent.get());
+            report.setOrphans(orphans.get());
+            report.setOrphanBytes(orphanBytes.get());
+            report.setDeleted(deleted.get());
+            report.setStagingDeleted(stagingDeleted.get());
+            synchronized (orphanKeys) {
+                report.setOrphanKeys(new ArrayList<>(orphanKeys));
+            }
+            return report;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.flechazo.jnyzdairy.service;
+
+import com.flechazo.jnyzdairy.config.StorageConfig;
+import com.flechazo.jnyzdairy.entity.JobCheckpoint;
+import com.flechazo.jnyzdairy.entity.StorageJournalEntry;
+import com.flechazo.jnyzdairy.entity.StorageOperation;
+import com.flechazo.jnyzdairy.repository.JobCheckpointRepository;
+import com.flechazo.jnyzdairy.repository.StorageJournalRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+
+/**
+ * 存储变更日志服务，记录存储后端中每个对象的创建、覆盖和删除，并为维护任务提供增量读取。
+ * <p>
+ * 变更先缓冲在内存中，由后台定期批量写入数据库，不增加上传和删除请求的延迟。每个维护任务（消费者）
+ * 有一个检查点，记录已经处理到的序列号；检查点不存在或未完成的消费者需要全量扫描一次，
+ * 扫描开始前记录当时的序列号，扫描完成后从该序列号继续增量处理。
+ * <p>
+ * 应用异常退出时缓冲中的条目会丢失，因此启动时如果发现上次没有正常关闭，所有消费者都会被要求重新全量扫描；
+ * 全量扫描只在这种恢复场景下才需要。日志定期压缩：删除所有消费者都已处理过的条目，以及被同一对象的后续变更取代的条目。
+ *
+ * @author Flechazo
+ */
+@Service
+public class StorageJournalService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageJournalService.class);
+
+    /**
+     * 消费者检查点名称的前缀。
+     */
+    private static final String CONSUMER_PREFIX = "journal:";
+
+    /**
+     * 记录日志运行状态的检查点名称，位置为 {@code running} 或 {@code clean}。
+     */
+    private static final String STATE_CHECKPOINT = "storage-journal";
+
+    private static final String STATE_RUNNING = "running";
+    private static final String STATE_CLEAN = "clean";
+
+    /**
+     * 每次写入数据库的最大条目数。
+     */
+    private static final int FLUSH_BATCH_SIZE = 1000;
+
+    private final StorageConfig.Journal config;
+    private final StorageJournalRepository storageJournalRepository;
+    private final JobCheckpointRepository jobCheckpointRepository;
+
+    /**
+     * 等待写入数据库的日志条目。
+     */
+    private final LinkedBlockingDeque<StorageJournalEntry> buffer = new LinkedBlockingDeque<>();
+
+    /**
+     * 构造函数，用于依赖注入。
+     *
+     * @param storageConfig            存储配置
+     * @param storageJournalRepository 存储日志仓库接口
+     * @param jobCheckpointRepository  任务检查点仓库接口
+     */
+    public StorageJournalService(StorageConfig storageConfig,
+                                 StorageJournalRepository storageJournalRepository,
+                                 JobCheckpointRepository jobCheckpointRepository) {
+        this.config = storageConfig.getJournal();
+        this.storageJournalRepository = storageJournalRepository;
+        this.jobCheckpointRepository = jobCheckpointRepository;
+    }
+
+    /**
+     * 启动时检查上次是否正常关闭，未正常关闭时要求所有消费者重新全量扫描。
+     */
+    @PostConstruct
+    public void start() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        JobCheckpoint state = jobCheckpointRepository.findById(STATE_CHECKPOINT)
+                .orElseGet(() -> new JobCheckpoint(STATE_CHECKPOINT, STATE_CLEAN));
+        if (STATE_RUNNING.equals(state.getPosition())) {
+            requireRescan("previous shutdown was not clean");
+        }
+        state.setPosition(STATE_RUNNING);
+        jobCheckpointRepository.save(state);
+    }
+
+    /**
+     * 关闭时写入缓冲中的条目，并标记为正常关闭。
+     */
+    @PreDestroy
+    public void stop() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        flush();
+        if (buffer.isEmpty()) {
+            jobCheckpointRepository.save(new JobCheckpoint(STATE_CHECKPOINT, STATE_CLEAN));
+        }
+    }
+
+    /**
+     * 记录一次对象变更。
+     *
+     * @param operation 变更类型
+     * @param key       对象键
+     * @param size      变更后的对象大小，删除时为0
+     */
+    public void record(StorageOperation operation, String key, long size) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        if (buffer.size() >= config.getMaxBuffered()) {
+            /* 数据库长时间不可用，放弃缓冲，之后由全量扫描恢复 */
+            buffer.clear();
+            requireRescan("journal buffer overflowed");
+        }
+        buffer.add(new StorageJournalEntry(operation, key, size));
+    }
+
+    /**
+     * 将缓冲中的条目批量写入数据库。写入失败时条目放回缓冲，下次重试。
+     */
+    @Scheduled(fixedDelayString = "${app.storage.journal.flush-interval:1000}")
+    public synchronized void flush() {
+        List<StorageJournalEntry> batch = new ArrayList<>(FLUSH_BATCH_SIZE);
+        while (buffer.drainTo(batch, FLUSH_BATCH_SIZE) > 0) {
+            try {
+                storageJournalRepository.saveAll(batch);
+            } catch (RuntimeException e) {
+                for (int i = batch.size() - 1; i >= 0; i--) {
+                    buffer.addFirst(batch.get(i));
+                }
+                logger.warn("Failed to flush {} storage journal entries, will retry", batch.size(), e);
+                return;
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * 获取消费者的检查点。
+     *
+     * @param consumer 消费者名称
+     * @return 检查点，不存在时返回 {@code null}；未完成的检查点表示需要全量扫描
+     */
+    public JobCheckpoint getCheckpoint(String consumer) {
+        return jobCheckpointRepository.findById(CONSUMER_PREFIX + consumer).orElse(null);
+    }
+
+    /**
+     * 开始一次全量扫描：将消费者的检查点设置为当前最大的序列号并标记为未完成。
+     * <p>
+     * 扫描期间发生的变更序列号都大于该值，扫描完成后从该值继续增量处理即可，不会遗漏。
+     *
+     * @param consumer 消费者名称
+     * @return 扫描开始时的序列号
+     */
+    public long beginRescan(String consumer) {
+        flush();
+        Long maxSeq = storageJournalRepository.findMaxSeq();
+        long mark = maxSeq == null ? 0 : maxSeq;
+        JobCheckpoint checkpoint = new JobCheckpoint(CONSUMER_PREFIX + consumer, Long.toString(mark));
+        jobCheckpointRepository.save(checkpoint);
+        return mark;
+    }
+
+    /**
+     * 完成一次全量扫描，之后消费者可以增量处理。
+     *
+     * @param consumer 消费者名称
+     */
+    public void completeRescan(String consumer) {
+        jobCheckpointRepository.findById(CONSUMER_PREFIX + consumer).ifPresent(checkpoint -> {
+            checkpoint.setCompleted(true);
+            jobCheckpointRepository.save(checkpoint);
+        });
+    }
+
+    /**
+     * 读取检查点之后的一批条目。
+     *
+     * @param afterSeq 起始序列号（不含），即消费者检查点的位置
+     * @param limit    最多读取的条目数
+     * @return 按序列号升序排列的条目
+     */
+    public List<StorageJournalEntry> read(long afterSeq, int limit) {
+        return storageJournalRepository.findAfter(afterSeq, PageRequest.of(0, limit));
+    }
+
+    /**
+     * 推进消费者的检查点。
+     *
+     * @param consumer 消费者名称
+     * @param seq      已处理的最大序列号
+     */
+    public void advance(String consumer, long seq) {
+        JobCheckpoint checkpoint = new JobCheckpoint(CONSUMER_PREFIX + consumer, Long.toString(seq));
+        checkpoint.setCompleted(true);
+        jobCheckpointRepository.save(checkpoint);
+    }
+
+    /**
+     * 压缩日志：删除所有消费者都已处理过的条目，以及被同一对象后续变更取代的条目。
+     */
+    @Scheduled(cron = "${app.storage.journal.compaction-cron:0 30 3 * * ?}")
+    public void compact() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        flush();
+        int superseded = storageJournalRepository.deleteSuperseded();
+
+        List<JobCheckpoint> consumers = jobCheckpointRepository.findByNameStartingWith(CONSUMER_PREFIX);
+        int consumed = 0;
+        if (!consumers.isEmpty()) {
+            long low = consumers.stream().mapToLong(checkpoint -> Long.parseLong(checkpoint.getPosition()))
+                    .min().getAsLong();
+            consumed = storageJournalRepository.deleteUpTo(low);
+        }
+        logger.info("Compacted storage journal: removed {} superseded and {} consumed entries", superseded, consumed);
+    }
+
+    private void requireRescan(String reason) {
+        int consumers = jobCheckpointRepository.resetByNamePrefix(CONSUMER_PREFIX);
+        logger.warn("Storage journal may be incomplete ({}), {} consumers will rescan", reason, consumers);
+    }
+}
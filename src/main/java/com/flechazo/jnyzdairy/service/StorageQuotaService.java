@@ -0,0 +1,258 @@
+package com.flechazo.jnyzdairy.service;
+
+import com.flechazo.jnyzdairy.config.StorageConfig;
+import com.flechazo.jnyzdairy.dto.StorageObject;
+import com.flechazo.jnyzdairy.entity.UserStorageUsage;
+import com.flechazo.jnyzdairy.exception.StorageQuotaExceededException;
+import com.flechazo.jnyzdairy.repository.DiaryImageRepository;
+import com.flechazo.jnyzdairy.repository.UserStorageUsageRepository;
+import com.flechazo.jnyzdairy.util.StorageLayout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * 用户存储配额服务，统计每个用户占用的字节数和文件数，并在上传前检查配额。
+ * <p>
+ * 用量保存在 {@code user_storage_usage} 表中，由保存和删除文件的调用方在同一事务中增量更新，事务回滚时用量随之回滚。
+ * 上传前的配额检查以数据库中的记录为准，本节点在短时间内缓存读到的用量以减少查询：本节点的写入在事务提交后
+ * 同步到缓存，其他节点的写入在缓存过期（{@code app.storage.quota.cache-ttl}）后才能看到。缓存只属于本节点，
+ * 容量受限，按最久未使用淘汰。
+ * <p>
+ * 配额检查与写入之间没有加锁，同一用户的并发上传（包括不同节点上的）可能略微超出配额；
+ * 增量更新的累计误差由定期核对校正。
+ *
+ * @author Flechazo
+ */
+@Service
+public class StorageQuotaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageQuotaService.class);
+
+    private final StorageConfig.Quota config;
+    private final UserStorageUsageRepository userStorageUsageRepository;
+    private final DiaryImageRepository diaryImageRepository;
+    private final StorageBackend storageBackend;
+    private final StorageLayout storageLayout;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * 用户ID到已提交用量的本节点缓存，按访问顺序淘汰。
+     */
+    private final Map<Long, Usage> usages;
+
+    /**
+     * 构造函数，用于依赖注入。
+     *
+     * @param storageConfig              存储配置
+     * @param userStorageUsageRepository 用户存储用量仓库接口
+     * @param diaryImageRepository       日记图片仓库接口，用于核对用量
+     * @param storageBackend             存储后端，用于核对用户文件的用量
+     * @param storageLayout              存储布局
+     * @param transactionManager         事务管理器，每个用户的核对在单独的事务中进行
+     */
+    public StorageQuotaService(StorageConfig storageConfig,
+                               UserStorageUsageRepository userStorageUsageRepository,
+                               DiaryImageRepository diaryImageRepository,
+                               StorageBackend storageBackend,
+                               StorageLayout storageLayout,
+                               PlatformTransactionManager transactionManager) {
+        this.config = storageConfig.getQuota();
+        this.userStorageUsageRepository = userStorageUsageRepository;
+        this.diaryImageRepository = diaryImageRepository;
+        this.storageBackend = storageBackend;
+        this.storageLayout = storageLayout;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        int cacheSize = config.getCacheSize();
+        this.usages = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Usage> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * 检查用户保存一个新文件后是否会超出配额。
+     *
+     * @param userId 用户ID
+     * @param bytes  新文件的字节数，未知时传入0，只检查已有用量
+     * @throws StorageQuotaExceededException 如果会超出配额
+     */
+    public void checkQuota(Long userId, long bytes) {
+        checkQuota(userId, bytes, 1);
+    }
+
+    /**
+     * 检查用户一次保存多个新文件后是否会超出配额。
+     *
+     * @param userId 用户ID
+     * @param bytes  新文件的总字节数
+     * @param files  新文件的数量
+     * @throws StorageQuotaExceededException 如果会超出配额
+     */
+    public void checkQuota(Long userId, long bytes, long files) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        Usage usage = usage(userId);
+        if (usage.bytes + bytes > config.getMaxBytes()) {
+            throw new StorageQuotaExceededException("存储空间不足");
+        }
+        if (usage.files + files > config.getMaxFiles()) {
+            throw new StorageQuotaExceededException("文件数量超过限制");
+        }
+    }
+
+    /**
+     * 在用户的用量上累加增量，必须在保存或删除文件的事务中调用。
+     *
+     * @param userId 用户ID
+     * @param bytes  字节数的增量，删除时为负
+     * @param files  文件数的增量，删除时为负
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(Long userId, long bytes, long files) {
+        userStorageUsageRepository.add(userId, bytes, files);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                /* 尚未缓存或已淘汰的用户在下次检查时从数据库加载，已包含本次增量 */
+                usages.computeIfPresent(userId, (id, usage) -> usage.plus(bytes, files));
+            }
+        });
+    }
+
+    /**
+     * 获取用户的用量。
+     *
+     * @param userId 用户ID
+     * @return 用量记录，没有任何文件的用户返回用量为0的记录
+     */
+    public UserStorageUsage getUsage(Long userId) {
+        return userStorageUsageRepository.findById(userId).orElseGet(() -> {
+            UserStorageUsage usage = new UserStorageUsage();
+            usage.setUserId(userId);
+            return usage;
+        });
+    }
+
+    /**
+     * 获取占用字节数最多的用户。
+     *
+     * @param limit 最多返回的用户数
+     * @return 按占用字节数降序排列的用量记录
+     */
+    public List<UserStorageUsage> getTopConsumers(int limit) {
+        return userStorageUsageRepository.findTopConsumers(PageRequest.of(0, limit));
+    }
+
+    /**
+     * 以实际数据核对用户的用量：按内容寻址存储的日记图片的大小来自数据库，用户目录下的文件
+     * （头像以及未按内容寻址存储的旧日记图片）的大小来自存储后端，每个文件只计入一次。
+     * <p>
+     * 核对期间锁定用户的用量记录，并发的增量更新会等待核对完成，不会被核对结果覆盖。
+     * 核对完成后只让本节点的缓存失效而不写入核对结果，避免覆盖在此之后提交的增量。
+     *
+     * @param userId 用户ID
+     * @return 用量与实际数据不一致并已校正时返回 {@code true}
+     */
+    public boolean reconcile(Long userId) {
+        boolean corrected = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            /* 累加0以确保记录存在并锁定该行 */
+            userStorageUsageRepository.add(userId, 0, 0);
+            UserStorageUsage stored = getUsage(userId);
+            long bytes = diaryImageRepository.sumContentAddressedByteSizeByUserId(userId);
+            long files = diaryImageRepository.countByDiaryUserIdAndContentHashIsNotNull(userId);
+            for (StorageObject object : listUserFiles(userId)) {
+                bytes += object.getSize();
+                files++;
+            }
+            if (stored.getUsedBytes() == bytes && stored.getFileCount() == files) {
+                return false;
+            }
+            userStorageUsageRepository.set(userId, bytes, files);
+            logger.info("Corrected storage usage of user {}: {} bytes / {} files -> {} bytes / {} files", userId,
+                    stored.getUsedBytes(), stored.getFileCount(), bytes, files);
+            return true;
+        }));
+
+        usages.remove(userId);
+        return corrected;
+    }
+
+    /**
+     * 列出用户在存储后端中的文件，迁移完成前同时列出旧布局下的文件。内容寻址文件不在用户目录下，不会被列出。
+     */
+    private List<StorageObject> listUserFiles(Long userId) {
+        List<String> prefixes = new ArrayList<>(2);
+        prefixes.add(storageLayout.userKey(userId, ""));
+        if (storageLayout.isDualRead()) {
+            prefixes.add(storageLayout.legacyUserKey(userId, ""));
+        }
+        List<StorageObject> objects = new ArrayList<>();
+        for (String prefix : prefixes) {
+            try (Stream<StorageObject> stream = storageBackend.list(prefix)) {
+                stream.forEach(objects::add);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to list files of user " + userId, e);
+            }
+        }
+        return objects;
+    }
+
+    /**
+     * 获取用户已提交的用量，缓存过期或不存在时从数据库加载。
+     */
+    private Usage usage(Long userId) {
+        long now = System.currentTimeMillis();
+        Usage usage = usages.get(userId);
+        if (usage != null && now - usage.loadedAt < config.getCacheTtl()) {
+            return usage;
+        }
+        UserStorageUsage stored = getUsage(userId);
+        Usage loaded = new Usage(stored.getUsedBytes(), stored.getFileCount(), now);
+        usages.put(userId, loaded);
+        return loaded;
+    }
+
+    /**
+     * 已提交的用量，不可变。
+     */
+    private static final class Usage {
+
+        private final long bytes;
+        private final long files;
+
+        /**
+         * 从数据库加载的时间，本节点的增量不会延长有效期。
+         */
+        private final long loadedAt;
+
+        Usage(long bytes, long files, long loadedAt) {
+            this.bytes = bytes;
+            this.files = files;
+            this.loadedAt = loadedAt;
+        }
+
+        Usage plus(long deltaBytes, long deltaFiles) {
+            return new Usage(Math.max(0, bytes + deltaBytes), Math.max(0, files + deltaFiles), loadedAt);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.flechazo.jnyzdairy.service;
+
+import com.flechazo.jnyzdairy.config.StorageConfig;
+import com.flechazo.jnyzdairy.entity.User;
+import com.flechazo.jnyzdairy.exception.FileDeletionException;
+import com.flechazo.jnyzdairy.repository.DiaryImageRepository;
+import com.flechazo.jnyzdairy.repository.DiaryRepository;
+import com.flechazo.jnyzdairy.repository.UserRepository;
+import com.flechazo.jnyzdairy.util.Throttle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 已删除用户的数据清理服务，删除超过保留期的已删除用户的日记、图片和头像。
+ * <p>
+ * 清理按批进行，每批在一个短事务中领取一个用户，删除其最多 {@code batch-size} 篇日记及其图片，
+ * 日记全部删除后再删除头像并将用户标记为已清理。删除使用基于集合的语句，不加载实体；
+ * 文件通过事务发件箱登记，事务提交后由后台删除，同一内容寻址文件的其他引用不受影响。
+ * <p>
+ * 每批提交后进度即已保存，应用重启或批次失败后从剩余的数据继续。领取用户时使用 {@code FOR UPDATE SKIP LOCKED}，
+ * 多个节点可以同时清理不同的用户。某个用户的批次失败时记录失败次数和下次重试时间，按指数退避跳过该用户，
+ * 不影响其他用户的清理。批次之间按删除的行数和文件数限速，避免清理占满数据库和存储的带宽。
+ *
+ * @author Flechazo
+ */
+@Service
+public class UserPurgeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserPurgeService.class);
+
+    private final StorageConfig.Purge config;
+    private final UserRepository userRepository;
+    private final DiaryRepository diaryRepository;
+    private final DiaryImageRepository diaryImageRepository;
+    private final FileStorageService fileStorageService;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * 数据库行删除的速率限制器。
+     */
+    private final Throttle rowThrottle;
+
+    /**
+     * 文件删除的速率限制器。
+     */
+    private final Throttle fileThrottle;
+
+    /**
+     * 构造函数，用于依赖注入。
+     *
+     * @param storageConfig        存储配置
+     * @param userRepository       用户仓库接口
+     * @param diaryRepository      日记仓库接口
+     * @param diaryImageRepository 日记图片仓库接口
+     * @param fileStorageService   文件存储服务，用于释放图片和头像文件
+     * @param transactionManager   事务管理器，每批数据在单独的事务中删除
+     */
+    public UserPurgeService(StorageConfig storageConfig,
+                            UserRepository userRepository,
+                            DiaryRepository diaryRepository,
+                            DiaryImageRepository diaryImageRepository,
+                            FileStorageService fileStorageService,
+                            PlatformTransactionManager transactionManager) {
+        this.config = storageConfig.getPurge();
+        this.userRepository = userRepository;
+        this.diaryRepository = diaryRepository;
+        this.diaryImageRepository = diaryImageRepository;
+        this.fileStorageService = fileStorageService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.rowThrottle = new Throttle(config.getMaxRowsPerSecond());
+        this.fileThrottle = new Throttle(config.getMaxFilesPerSecond());
+    }
+
+    /**
+     * 清理所有超过保留期的已删除用户的数据，直到没有可领取的用户为止。
+     * <p>
+     * 某个用户的一批失败时该批回滚，已提交的批次不受影响。失败记录在该用户上，本次清理不再领取该用户，
+     * 之后按退避时间重试，从剩余的数据继续；其他用户的清理照常进行。
+     *
+     * @return 清理完成的用户数
+     * @throws InterruptedException 如果限速等待时线程被中断
+     */
+    public int purge() throws InterruptedException {
+        LocalDateTime startedAt = LocalDateTime.now();
+        LocalDateTime cutoff = startedAt.minusDays(config.getRetentionDays());
+        int purgedUsers = 0;
+        int failedUsers = 0;
+        long deletedRows = 0;
+        long deletedFiles = 0;
+        AtomicReference<Long> claimed = new AtomicReference<>();
+        while (true) {
+            claimed.set(null);
+            BatchResult result;
+            try {
+                result = transactionTemplate.execute(status -> purgeBatch(cutoff, startedAt, claimed));
+            } catch (RuntimeException e) {
+                Long userId = claimed.get();
+                if (userId == null) {
+                    /* 领取用户本身失败，说明数据库不可用，放弃本次清理 */
+                    throw e;
+                }
+                logger.warn("Failed to purge data of deleted user {}, will retry later", userId, e);
+                recordFailure(userId);
+                failedUsers++;
+                continue;
+            }
+            if (result == null) {
+                break;
+            }
+            if (result.completed) {
+                purgedUsers++;
+            }
+            deletedRows += result.rows;
+            deletedFiles += result.files;
+            /* 在事务外等待，不持有用户行锁 */
+            rowThrottle.acquire(result.rows);
+            fileThrottle.acquire(result.files);
+        }
+        if (purgedUsers > 0 || deletedRows > 0 || failedUsers > 0) {
+            logger.info("Purged data of {} deleted users: {} rows, {} files, {} users failed",
+                    purgedUsers, deletedRows, deletedFiles, failedUsers);
+        }
+        return purgedUsers;
+    }
+
+    /**
+     * 领取一个待清理的用户并删除其一批数据。
+     *
+     * @param cutoff    删除时间上限
+     * @param startedAt 本次清理开始的时间，重试时间晚于此的用户不会被领取
+     * @param claimed   领取到的用户ID，批次失败时用于记录失败
+     * @return 本批的删除结果，没有待清理的用户时为 {@code null}
+     */
+    private BatchResult purgeBatch(LocalDateTime cutoff, LocalDateTime startedAt, AtomicReference<Long> claimed) {
+        Optional<Long> candidate = userRepository.claimPurgeCandidate(cutoff, startedAt);
+        if (candidate.isEmpty()) {
+            return null;
+        }
+        Long userId = candidate.get();
+        claimed.set(userId);
+        try {
+            List<Long> diaryIds = diaryRepository.findIdsByUserId(userId, PageRequest.of(0, Math.max(1, config.getBatchSize())));
+            if (!diaryIds.isEmpty()) {
+                List<String> paths = diaryImageRepository.findPathsByDiaryIdIn(diaryIds);
+                if (!paths.isEmpty()) {
+                    fileStorageService.deleteFiles(paths);
+                }
+                int rows = diaryImageRepository.deleteByDiaryIds(diaryIds) + diaryRepository.deleteByIds(diaryIds);
+                return new BatchResult(false, rows, paths.size());
+            }
+
+            /* 日记已全部删除，最后删除头像并标记为已清理 */
+            String avatarPath = userRepository.findById(userId).map(User::getAvatarPath).orElse(null);
+            boolean hasAvatar = avatarPath != null && !avatarPath.isEmpty();
+            if (hasAvatar) {
+                fileStorageService.deleteFile(avatarPath);
+            }
+            userRepository.markPurged(userId, LocalDateTime.now());
+            logger.debug("Purged data of deleted user {}", userId);
+            return new BatchResult(true, 1, hasAvatar ? 1 : 0);
+        } catch (IOException e) {
+            throw new FileDeletionException("Failed to purge files of user " + userId, e);
+        }
+    }
+
+    /**
+     * 在单独的事务中记录用户清理失败，下次重试的时间晚于本次清理开始的时间，本次清理不会再领取该用户。
+     * 记录失败时抛出异常放弃本次清理，避免反复领取同一个用户。
+     *
+     * @param userId 用户ID
+     */
+    private void recordFailure(Long userId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            int failures = userRepository.findPurgeFailures(userId).orElse(0) + 1;
+            LocalDateTime retryAt = LocalDateTime.now().plusNanos(retryBackoff(failures) * 1_000_000);
+            userRepository.recordPurgeFailure(userId, failures, retryAt);
+        });
+    }
+
+    /**
+     * 第 {@code failures} 次失败后的退避时间（毫秒），从配置的退避时间开始每次翻倍，不超过上限。
+     */
+    private long retryBackoff(int failures) {
+        long delay = config.getRetryBackoff() << Math.min(failures - 1, 20);
+        return Math.max(1, Math.min(delay, config.getMaxRetryBackoff()));
+    }
+
+    /**
+     * 一批清理的结果。
+     */
+    private static final class BatchResult {
+
+        /**
+         * 该用户的数据是否已全部清理。
+         */
+        private final boolean completed;
+
+        /**
+         * 删除或更新的数据库行数。
+         */
+        private final int rows;
+
+        /**
+         * 登记删除的文件数。
+         */
+        private final int files;
+
+        private BatchResult(boolean completed, int rows, int files) {
+            this.completed = completed;
+            this.rows = rows;
+            this.files = files;
+        }
+    }
+}
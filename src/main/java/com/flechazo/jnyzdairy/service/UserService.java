@@ -1,9 +1,14 @@
 package com.flechazo.jnyzdairy.service;
 
 import com.flechazo.jnyzdairy.dto.RegisterRequest;
+import com.flechazo.jnyzdairy.dto.UserFilter;
+import com.flechazo.jnyzdairy.dto.UserPage;
 import com.flechazo.jnyzdairy.entity.User;
 
-import java.util.List;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.Writer;
 
 /**
  * 用户服务接口，提供用户管理相关功能。
@@ -73,18 +78,32 @@ public interface UserService {
     void deleteUser(Long id);
 
     /**
-     * 获取所有用户列表。
+     * 分页查询用户列表。
      * <p>
-     * 该方法返回系统中所有用户的列表。
+     * 该方法按ID降序返回满足过滤条件的用户摘要，使用游标分页，翻页代价与页码无关。
      *
-     * @return 包含所有用户信息的 {@code User} 对象列表
+     * @param filter 过滤条件
+     * @param cursor 上一页返回的游标，第一页传入 {@code null}
+     * @param limit  每页大小
+     * @return 包含用户摘要和下一页游标的分页结果
      */
-    List<User> findAllUsers();
+    UserPage findUsers(UserFilter filter, Long cursor, int limit);
+
+    /**
+     * 以CSV格式导出满足过滤条件的用户。
+     * <p>
+     * 该方法流式读取用户并逐行写出，内存占用与用户数无关。
+     *
+     * @param filter 过滤条件
+     * @param writer CSV写出目标，由调用方负责刷新和关闭
+     * @throws IOException 如果写出失败
+     */
+    void exportUsers(UserFilter filter, Writer writer) throws IOException;
 
     /**
      * 更新用户头像。
      * <p>
-     * 该方法用于更新指定ID的用户头像路径。
+     * 该方法用于更新指定ID的用户头像路径，原头像的文件在事务提交后被删除。
      *
      * @param id 用户的唯一标识符
      * @param avatarPath 新的头像文件路径
@@ -92,6 +111,18 @@ public interface UserService {
      */
     User updateAvatar(Long id, String avatarPath);
 
+    /**
+     * 上传并更新用户头像。
+     * <p>
+     * 该方法将上传的图片裁剪并渲染为几种固定尺寸后保存，再将其设为用户头像，两者在同一事务中完成。
+     *
+     * @param id 用户的唯一标识符
+     * @param file 用户上传的头像图片
+     * @return 更新后的 {@code User} 对象
+     * @throws IOException 如果保存头像过程中发生IO异常
+     */
+    User updateAvatar(Long id, MultipartFile file) throws IOException;
+
     /**
      * 检查用户名是否可用。
      * <p>
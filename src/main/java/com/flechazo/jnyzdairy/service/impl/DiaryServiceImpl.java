@@ -1,5 +1,7 @@
 package com.flechazo.jnyzdairy.service.impl;
 
+import com.flechazo.jnyzdairy.dto.ImageMetadata;
+import com.flechazo.jnyzdairy.dto.PreparedImage;
 import com.flechazo.jnyzdairy.entity.Diary;
 import com.flechazo.jnyzdairy.entity.DiaryImage;
 import com.flechazo.jnyzdairy.entity.User;
@@ -10,14 +12,21 @@ import com.flechazo.jnyzdairy.repository.DiaryRepository;
 import com.flechazo.jnyzdairy.repository.UserRepository;
 import com.flechazo.jnyzdairy.service.DiaryService;
 import com.flechazo.jnyzdairy.service.FileStorageService;
+import com.flechazo.jnyzdairy.service.SecurityService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -34,15 +43,19 @@ public class DiaryServiceImpl implements DiaryService {
     private final DiaryImageRepository diaryImageRepository;
     private final UserRepository userRepository;
     private final FileStorageService fileStorageService;
+    private final SecurityService securityService;
+    private final TransactionTemplate transactionTemplate;
 
     /**
      * 构造函数用于依赖注入。
      */
-    public DiaryServiceImpl(DiaryRepository diaryRepository, DiaryImageRepository diaryImageRepository, UserRepository userRepository, FileStorageService fileStorageService) {
+    public DiaryServiceImpl(DiaryRepository diaryRepository, DiaryImageRepository diaryImageRepository, UserRepository userRepository, FileStorageService fileStorageService, SecurityService securityService, PlatformTransactionManager transactionManager) {
         this.diaryRepository = diaryRepository;
         this.diaryImageRepository = diaryImageRepository;
         this.userRepository = userRepository;
         this.fileStorageService = fileStorageService;
+        this.securityService = securityService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     /**
@@ -71,11 +84,8 @@ public class DiaryServiceImpl implements DiaryService {
         if (images != null && !images.isEmpty()) {
             for (MultipartFile image : images) {
                 try {
-                    String imagePath = fileStorageService.saveDiaryImage(userId, date, image);
-                    DiaryImage diaryImage = new DiaryImage();
-                    diaryImage.setDiary(diary);
-                    diaryImage.setPath(imagePath);
-                    diary.getImages().add(diaryImage);
+                    ImageMetadata metadata = fileStorageService.saveDiaryImage(userId, date, image);
+                    diary.getImages().add(createDiaryImage(diary, metadata));
                 } catch (IOException e) {
                     throw new RuntimeException("Failed to save diary image", e);
                 }
@@ -104,12 +114,9 @@ public class DiaryServiceImpl implements DiaryService {
         if (newImages != null && !newImages.isEmpty()) {
             for (MultipartFile image : newImages) {
                 try {
-                    String imagePath = fileStorageService.saveDiaryImage(
+                    ImageMetadata metadata = fileStorageService.saveDiaryImage(
                             diary.getUser().getId(), diary.getDate(), image);
-                    DiaryImage diaryImage = new DiaryImage();
-                    diaryImage.setDiary(diary);
-                    diaryImage.setPath(imagePath);
-                    diary.getImages().add(diaryImage);
+                    diary.getImages().add(createDiaryImage(diary, metadata));
                 } catch (IOException e) {
                     throw new RuntimeException("Failed to save diary image", e);
                 }
@@ -119,6 +126,66 @@ public class DiaryServiceImpl implements DiaryService {
         return diaryRepository.save(diary);
     }
 
+    /**
+     * 以流的方式为现有日记条目添加一组图片。
+     * <p>
+     * 读取和暂存请求体期间不持有数据库连接，所有图片就绪后才开启事务一次性提交。
+     *
+     * @param diaryId 日记ID
+     * @param parts 图片数据的来源
+     * @return 新添加的日记图片
+     * @throws ResourceNotFoundException 如果日记未找到
+     * @throws IOException 如果读取或保存图片时发生错误
+     */
+    @Override
+    public List<DiaryImage> addDiaryImages(Long diaryId, ImagePartSource parts) throws IOException {
+        /* 所有者ID复用权限检查时的查询结果，日记只以引用关联，不加载日记内容 */
+        Long userId = securityService.getDiaryOwnerId(diaryId);
+        if (userId == null) {
+            throw new ResourceNotFoundException("Diary not found");
+        }
+
+        List<PreparedImage> prepared = new ArrayList<>();
+        try {
+            InputStream input;
+            while ((input = parts.next()) != null) {
+                try (InputStream part = input) {
+                    prepared.add(fileStorageService.prepareDiaryImage(userId, part));
+                }
+            }
+            if (prepared.isEmpty()) {
+                return List.of();
+            }
+
+            try {
+                return transactionTemplate.execute(status -> {
+                    List<ImageMetadata> metadata;
+                    try {
+                        metadata = fileStorageService.commitDiaryImages(userId, prepared);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    Diary diary = diaryRepository.getReferenceById(diaryId);
+                    List<DiaryImage> images = new ArrayList<>(metadata.size());
+                    for (ImageMetadata item : metadata) {
+                        images.add(createDiaryImage(diary, item));
+                    }
+                    return diaryImageRepository.saveAll(images);
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        } finally {
+            for (PreparedImage image : prepared) {
+                try {
+                    fileStorageService.discard(image);
+                } catch (IOException e) {
+                    logger.warn("Failed to discard staged image {}", image.getStaged().getPath(), e);
+                }
+            }
+        }
+    }
+
     /**
      * 根据日记ID获取日记条目。
      *
@@ -172,6 +239,8 @@ public class DiaryServiceImpl implements DiaryService {
 
     /**
      * 删除指定ID的日记条目，并删除其关联的所有图片文件。
+     * <p>
+     * 与批量删除使用相同的语句，不加载日记及其图片实体；图片文件在事务提交后由后台删除。
      *
      * @param diaryId 日记ID
      * @throws ResourceNotFoundException 如果日记未找到
@@ -179,23 +248,13 @@ public class DiaryServiceImpl implements DiaryService {
     @Override
     @Transactional(rollbackFor = {RuntimeException.class})
     public void deleteDiary(Long diaryId) {
-        Diary diary = getDiary(diaryId);
-
-        /* 删除相关的图片文件 */
-        for (DiaryImage image : diary.getImages()) {
-            try {
-                fileStorageService.deleteFile(image.getPath());
-            } catch (IOException e) {
-                logger.error("Failed to delete image file: {}", image.getPath(), e);
-                throw new RuntimeException("Failed to delete image file", e);
-            }
+        if (deleteDiaries(List.of(diaryId)) == 0) {
+            throw new ResourceNotFoundException("Diary not found");
         }
-
-        diaryRepository.delete(diary);
     }
 
     /**
-     * 删除指定ID的日记图片，并从文件系统中移除对应的文件。
+     * 删除指定ID的日记图片，对应的文件在事务提交后由后台删除。
      *
      * @param imageId 图片ID
      * @throws ResourceNotFoundException 如果图片未找到
@@ -215,4 +274,73 @@ public class DiaryServiceImpl implements DiaryService {
 
         diaryImageRepository.delete(image);
     }
+
+    /**
+     * 批量删除日记条目及其所有图片。
+     *
+     * @param diaryIds 日记ID列表
+     * @return 实际删除的日记数
+     * @throws FileDeletionException 如果释放图片文件失败
+     */
+    @Override
+    @Transactional(rollbackFor = {RuntimeException.class})
+    public int deleteDiaries(Collection<Long> diaryIds) {
+        releaseImageFiles(diaryImageRepository.findPathsByDiaryIdIn(diaryIds));
+        diaryImageRepository.deleteByDiaryIds(diaryIds);
+        return diaryRepository.deleteByIds(diaryIds);
+    }
+
+    /**
+     * 批量删除日记图片。
+     *
+     * @param imageIds 图片ID列表
+     * @return 实际删除的图片数
+     * @throws FileDeletionException 如果释放图片文件失败
+     */
+    @Override
+    @Transactional(rollbackFor = {RuntimeException.class})
+    public int deleteDiaryImages(Collection<Long> imageIds) {
+        List<String> paths = diaryImageRepository.findPathsByIdIn(imageIds);
+        if (paths.isEmpty()) {
+            return 0;
+        }
+        releaseImageFiles(paths);
+        return diaryImageRepository.deleteByIds(imageIds);
+    }
+
+    /**
+     * 批量释放图片文件的引用。
+     *
+     * @param paths 图片的访问路径
+     */
+    private void releaseImageFiles(List<String> paths) {
+        if (paths.isEmpty()) {
+            return;
+        }
+        try {
+            fileStorageService.deleteFiles(paths);
+        } catch (IOException e) {
+            throw new FileDeletionException("Failed to delete image files", e);
+        }
+    }
+
+    /**
+     * 根据上传时提取的元数据创建日记图片实体。
+     *
+     * @param diary    所属的日记条目
+     * @param metadata 图片的访问路径及元数据
+     * @return 日记图片实体
+     */
+    private DiaryImage createDiaryImage(Diary diary, ImageMetadata metadata) {
+        DiaryImage diaryImage = new DiaryImage();
+        diaryImage.setDiary(diary);
+        diaryImage.setPath(metadata.getPath());
+        diaryImage.setWidth(metadata.getWidth());
+        diaryImage.setHeight(metadata.getHeight());
+        diaryImage.setMimeType(metadata.getMimeType());
+        diaryImage.setByteSize(metadata.getByteSize());
+        diaryImage.setOrientation(metadata.getOrientation());
+        diaryImage.setContentHash(metadata.getContentHash());
+        return diaryImage;
+    }
 }
\ No newline at end of file
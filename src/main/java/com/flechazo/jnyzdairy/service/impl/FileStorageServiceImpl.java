@@ -0,0 +1,657 @@
+package com.flechazo.jnyzdairy.service.impl;
+
+import com.flechazo.jnyzdairy.constant.FileConstants;
+import com.flechazo.jnyzdairy.dto.ImageMetadata;
+import com.flechazo.jnyzdairy.dto.PreparedImage;
+import com.flechazo.jnyzdairy.dto.RenderedAvatar;
+import com.flechazo.jnyzdairy.dto.StorageObject;
+import com.flechazo.jnyzdairy.entity.StoredBlob;
+import com.flechazo.jnyzdairy.exception.FileStorageException;
+import com.flechazo.jnyzdairy.repository.DiaryImageRepository;
+import com.flechazo.jnyzdairy.service.BlobStorageService;
+import com.flechazo.jnyzdairy.service.FileStorageService;
+import com.flechazo.jnyzdairy.service.StorageBackend;
+import com.flechazo.jnyzdairy.service.StorageDeletionService;
+import com.flechazo.jnyzdairy.service.StorageQuotaService;
+import com.flechazo.jnyzdairy.util.AvatarPaths;
+import com.flechazo.jnyzdairy.util.AvatarRenderer;
+import com.flechazo.jnyzdairy.util.HeaderCapturingInputStream;
+import com.flechazo.jnyzdairy.util.ImageHeaderParser;
+import com.flechazo.jnyzdairy.util.ImageOptimizer;
+import com.flechazo.jnyzdairy.util.ImageUtils;
+import com.flechazo.jnyzdairy.util.SizeLimitedInputStream;
+import com.flechazo.jnyzdairy.util.StorageLayout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.awt.Dimension;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * 文件存储服务实现类，将文件保存在配置的存储后端中。
+ * <p>
+ * 所有返回的访问路径都以用户ID开头，例如 {@code 1/avatar/xxx.jpg}，
+ * 与 {@code /api/files/{userId}/**} 的访问地址一一对应。访问路径与对象键之间的映射由 {@link StorageLayout} 决定，
+ * 存储布局调整时数据库中保存的访问路径无需改变。
+ * 日记图片按内容去重存储，其访问路径形如 {@code 1/blobs/<摘要>.jpg}。
+ * <p>
+ * 保存前检查用户的存储配额，保存和删除时在同一事务中更新用户的存储用量。
+ *
+ * @author Flechazo
+ */
+@Service
+public class FileStorageServiceImpl implements FileStorageService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileStorageServiceImpl.class);
+
+    /**
+     * 上传时保留的文件头字节数，足以覆盖常见图片的尺寸和EXIF信息。
+     */
+    private static final int HEADER_CAPTURE_SIZE = 128 * 1024;
+
+    /**
+     * 识别图片格式所需的文件头字节数。
+     */
+    private static final int MAGIC_SIZE = 16;
+
+    /**
+     * 内容摘要到MIME类型的缓存容量。内容寻址文件的类型永不改变，缓存无需失效。
+     */
+    private static final int CONTENT_TYPE_CACHE_SIZE = 10_000;
+
+    private final BlobStorageService blobStorageService;
+    private final DiaryImageRepository diaryImageRepository;
+    private final ImageUtils imageUtils;
+    private final ImageOptimizer imageOptimizer;
+    private final StorageBackend storageBackend;
+    private final StorageLayout storageLayout;
+    private final StorageQuotaService storageQuotaService;
+    private final StorageDeletionService storageDeletionService;
+    private final AvatarRenderer avatarRenderer;
+
+    /**
+     * 内容摘要到MIME类型的LRU缓存。
+     */
+    private final Map<String, String> contentTypeCache = Collections.synchronizedMap(
+            new LinkedHashMap<>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > CONTENT_TYPE_CACHE_SIZE;
+                }
+            });
+
+    /**
+     * 构造函数，用于依赖注入。
+     *
+     * @param blobStorageService     内容寻址存储服务
+     * @param diaryImageRepository   日记图片仓库接口，用于查询图片元数据
+     * @param imageUtils             图片处理工具类
+     * @param imageOptimizer         图片体积优化工具类
+     * @param storageBackend         存储后端
+     * @param storageLayout          存储布局
+     * @param storageQuotaService    用户存储配额服务
+     * @param storageDeletionService 存储对象的延迟删除服务
+     * @param avatarRenderer         头像渲染工具类
+     */
+    public FileStorageServiceImpl(BlobStorageService blobStorageService,
+                                  DiaryImageRepository diaryImageRepository,
+                                  ImageUtils imageUtils,
+                                  ImageOptimizer imageOptimizer,
+                                  StorageBackend storageBackend,
+                                  StorageLayout storageLayout,
+                                  StorageQuotaService storageQuotaService,
+                                  StorageDeletionService storageDeletionService,
+                                  AvatarRenderer avatarRenderer) {
+        this.blobStorageService = blobStorageService;
+        this.diaryImageRepository = diaryImageRepository;
+        this.imageUtils = imageUtils;
+        this.imageOptimizer = imageOptimizer;
+        this.storageBackend = storageBackend;
+        this.storageLayout = storageLayout;
+        this.storageQuotaService = storageQuotaService;
+        this.storageDeletionService = storageDeletionService;
+        this.avatarRenderer = avatarRenderer;
+    }
+
+    /**
+     * 将文件以随机文件名存储到用户文件目录下的指定目录。
+     *
+     * @param file      需要存储的文件对象
+     * @param directory 相对于用户文件目录的目标目录，例如 {@code 1/avatar}
+     * @return 文件的访问路径
+     * @throws IOException 如果文件存储过程中发生IO异常
+     */
+    @Override
+    @Transactional(rollbackFor = {IOException.class})
+    public String storeFile(MultipartFile file, String directory) throws IOException {
+        String mimeType = inspectImage(file);
+        String fileName = UUID.randomUUID() + "." + FileConstants.IMAGE_EXTENSIONS.get(mimeType);
+        String filePath = normalize(directory + "/" + fileName);
+        String key = filePath == null ? null : userKey(filePath, false);
+        if (key == null) {
+            throw new FileStorageException("非法的存储目录");
+        }
+        Long userId = userIdOf(filePath);
+        storageQuotaService.checkQuota(userId, file.getSize());
+
+        try (InputStream input = file.getInputStream()) {
+            storageBackend.put(key, input, file.getSize());
+        }
+        storageQuotaService.record(userId, file.getSize(), 1);
+        return filePath;
+    }
+
+    /**
+     * 删除文件。对于内容寻址存储的日记图片，仅释放一个引用；对于头像，同时删除所有尺寸的文件。
+     * <p>
+     * 存储对象不在事务中删除，而是登记到发件箱，事务提交后由后台删除；事务回滚时文件保持不变。
+     *
+     * @param filePath 文件的访问路径
+     * @throws IOException 如果删除文件时发生IO异常
+     */
+    @Override
+    @Transactional(rollbackFor = {IOException.class})
+    public void deleteFile(String filePath) throws IOException {
+        for (String path : AvatarPaths.variantPaths(filePath)) {
+            deleteSingleFile(path);
+        }
+    }
+
+    /**
+     * 删除单个文件。
+     */
+    private void deleteSingleFile(String filePath) throws IOException {
+        String[] segments = filePath.split("/");
+        if (segments.length == 3 && BlobStorageService.BLOB_DIRECTORY.equals(segments[1])) {
+            long size = blobStorageService.release(segments[2]);
+            Long userId = userIdOf(filePath);
+            if (userId != null) {
+                storageQuotaService.record(userId, -size, -1);
+            }
+            return;
+        }
+
+        String normalized = normalize(filePath);
+        String key = normalized == null ? null : userKey(normalized, false);
+        if (key == null) {
+            throw new FileStorageException("非法的文件路径");
+        }
+        StorageObject stored = storageBackend.stat(key);
+        List<String> keys = new ArrayList<>(2);
+        if (storageLayout.isDualRead()) {
+            /* 迁移完成前文件可能仍位于旧布局下；先删除旧位置，避免文件在两次删除之间被迁移到新位置 */
+            String legacyKey = userKey(normalized, true);
+            if (stored == null) {
+                stored = storageBackend.stat(legacyKey);
+            }
+            keys.add(legacyKey);
+        }
+        keys.add(key);
+        storageDeletionService.deleteAfterCommit(keys);
+        if (stored != null) {
+            storageQuotaService.record(userIdOf(normalized), -stored.getSize(), -1);
+        }
+    }
+
+    /**
+     * 批量删除文件。内容寻址存储的文件按用户分组批量释放引用，其他文件逐个删除。
+     *
+     * @param filePaths 文件的访问路径
+     * @throws IOException 如果删除文件时发生IO异常
+     */
+    @Override
+    @Transactional(rollbackFor = {IOException.class})
+    public void deleteFiles(Collection<String> filePaths) throws IOException {
+        /* 用户ID -> 文件名 -> 释放的引用数 */
+        Map<Long, Map<String, Long>> blobsByUser = new HashMap<>();
+        for (String filePath : filePaths) {
+            String[] segments = filePath.split("/");
+            Long userId = userIdOf(filePath);
+            if (segments.length == 3 && BlobStorageService.BLOB_DIRECTORY.equals(segments[1]) && userId != null) {
+                blobsByUser.computeIfAbsent(userId, id -> new HashMap<>()).merge(segments[2], 1L, Long::sum);
+            } else {
+                /* 旧的非内容寻址文件很少，逐个删除 */
+                deleteFile(filePath);
+            }
+        }
+
+        for (Map.Entry<Long, Map<String, Long>> entry : blobsByUser.entrySet()) {
+            Map<String, Long> blobs = entry.getValue();
+            long size = blobStorageService.releaseAll(blobs);
+            long files = blobs.values().stream().mapToLong(Long::longValue).sum();
+            storageQuotaService.record(entry.getKey(), -size, -files);
+        }
+    }
+
+    /**
+     * 保存用户头像。
+     * <p>
+     * 上传的图片经过检查后居中裁剪为正方形，渲染为几种固定尺寸，以渲染结果的摘要命名后写入存储。
+     * 同一张图片重复上传时文件名不变，已存在的文件不会重复写入或重复计入配额。
+     *
+     * @param userId 用户标识符
+     * @param file   用户上传的头像文件
+     * @return 最大尺寸头像的访问路径，其他尺寸的路径由 {@link AvatarPaths} 推导
+     * @throws IOException 如果保存头像过程中发生IO异常
+     */
+    @Override
+    @Transactional(rollbackFor = {IOException.class})
+    public String saveUserAvatar(Long userId, MultipartFile file) throws IOException {
+        inspectImage(file);
+        RenderedAvatar avatar;
+        Path upload = Files.createTempFile("avatar-", ".upload");
+        try {
+            try (InputStream input = file.getInputStream()) {
+                Files.copy(input, upload, StandardCopyOption.REPLACE_EXISTING);
+            }
+            avatar = avatarRenderer.render(upload);
+        } finally {
+            Files.deleteIfExists(upload);
+        }
+        storageQuotaService.checkQuota(userId, avatar.getTotalBytes());
+
+        Map<String, byte[]> variants = new LinkedHashMap<>();
+        List<String> keys = new ArrayList<>();
+        for (Map.Entry<Integer, byte[]> variant : avatar.getVariants().entrySet()) {
+            String filePath = AvatarPaths.variantPath(userId, avatar.getHash(), variant.getKey(), avatar.getExtension());
+            String key = userKey(filePath, false);
+            variants.put(key, variant.getValue());
+            keys.add(key);
+            if (storageLayout.isDualRead()) {
+                keys.add(userKey(filePath, true));
+            }
+        }
+        /* 同一张图片此前的头像可能正等待删除，撤销删除后再判断文件是否存在；其用量在登记删除时已经扣除 */
+        boolean wasDeleted = storageDeletionService.cancel(keys) > 0;
+
+        long bytes = 0;
+        int files = 0;
+        for (Map.Entry<String, byte[]> variant : variants.entrySet()) {
+            StorageObject existing = storageBackend.stat(variant.getKey());
+            if (existing == null) {
+                byte[] data = variant.getValue();
+                storageBackend.put(variant.getKey(), new ByteArrayInputStream(data), data.length);
+                bytes += data.length;
+                files++;
+            } else if (wasDeleted) {
+                bytes += existing.getSize();
+                files++;
+            }
+        }
+        storageQuotaService.record(userId, bytes, files);
+        return AvatarPaths.variantPath(userId, avatar.getHash(), AvatarPaths.SIZES[AvatarPaths.SIZES.length - 1],
+                avatar.getExtension());
+    }
+
+    /**
+     * 保存日记图片。图片按内容去重存储，并在当前事务中登记一个引用。
+     *
+     * @param userId 用户标识符
+     * @param date   日记条目日期
+     * @param file   用户上传的图片文件
+     * @return 日记图片的访问路径及元数据
+     * @throws IOException 如果保存图片过程中发生IO异常
+     */
+    @Override
+    @Transactional(rollbackFor = {IOException.class})
+    public ImageMetadata saveDiaryImage(Long userId, LocalDateTime date, MultipartFile file) throws IOException {
+        validateImageFile(file);
+        storageQuotaService.checkQuota(userId, file.getSize());
+        try (InputStream input = file.getInputStream()) {
+            return ingestDiaryImage(userId, input);
+        }
+    }
+
+    /**
+     * 以流的方式保存日记图片，数据直接写入存储目录，不经过临时文件。
+     *
+     * @param userId 用户标识符
+     * @param date   日记条目日期
+     * @param input  图片数据输入流，调用方负责关闭
+     * @return 日记图片的访问路径及元数据
+     * @throws IOException 如果保存图片过程中发生IO异常
+     */
+    @Override
+    @Transactional(rollbackFor = {IOException.class})
+    public ImageMetadata saveDiaryImage(Long userId, LocalDateTime date, InputStream input) throws IOException {
+        return ingestDiaryImage(userId, input);
+    }
+
+    /**
+     * 暂存并检查一张日记图片，不写入数据库和存储后端。
+     * <p>
+     * 数据在一次读取中同时完成大小限制、摘要计算和文件头保留，写入与最终位置同一文件系统的暂存文件；
+     * 随后根据文件头识别真实类型并提取尺寸和方向。首次出现的内容在暂存文件中完成体积优化，
+     * 此时文件仍以原始内容的摘要寻址，相同的原图再次上传时可以直接去重。
+     *
+     * @param userId 用户标识符
+     * @param rawInput 图片数据输入流，调用方负责关闭
+     * @return 暂存的图片
+     * @throws IOException 如果读取或暂存图片时发生错误
+     */
+    @Override
+    public PreparedImage prepareDiaryImage(Long userId, InputStream rawInput) throws IOException {
+        /* 流式上传事先不知道大小，先拒绝已经用满配额的用户，暂存后再按实际大小检查 */
+        storageQuotaService.checkQuota(userId, 0);
+        HeaderCapturingInputStream input = new HeaderCapturingInputStream(
+                new SizeLimitedInputStream(rawInput, FileConstants.MAX_FILE_SIZE), HEADER_CAPTURE_SIZE);
+        BlobStorageService.StagedBlob staged = blobStorageService.stage(input);
+        try {
+            byte[] header = input.getHeader();
+            String mimeType = ImageHeaderParser.detectMimeType(header);
+            if (mimeType == null || !FileConstants.ALLOWED_IMAGE_TYPES.contains(mimeType)) {
+                throw new FileStorageException("不支持的文件类型");
+            }
+
+            Dimension dimension = ImageHeaderParser.readDimensions(header);
+            if (dimension == null) {
+                /* 尺寸信息位于捕获范围之外（例如EXIF过大），退回读取暂存文件的文件头 */
+                try {
+                    dimension = imageUtils.readDimensions(staged.getPath());
+                } catch (IOException e) {
+                    logger.warn("Failed to read image dimensions: {}", staged.getHash(), e);
+                    throw new FileStorageException("无法识别图片尺寸");
+                }
+            }
+            /* 在提交之前拒绝超出像素预算的图片，之后的任何处理都不会解码它 */
+            imageUtils.checkPixelBudget(dimension);
+
+            String extension = FileConstants.IMAGE_EXTENSIONS.get(mimeType);
+            int orientation = ImageHeaderParser.readOrientation(header);
+            long byteSize = staged.getSize();
+            byte[] storedHeader = null;
+            StorageObject existing = blobStorageService.find(staged.getHash() + "." + extension);
+            if (existing != null) {
+                /* 已存储的文件可能经过优化，元数据以其为准 */
+                try (InputStream stored = storageBackend.get(existing.getKey(), 0, HEADER_CAPTURE_SIZE)) {
+                    storedHeader = stored.readNBytes(HEADER_CAPTURE_SIZE);
+                }
+                byteSize = existing.getSize();
+            } else if (imageOptimizer.optimize(staged.getPath(), mimeType, orientation)) {
+                staged = new BlobStorageService.StagedBlob(staged.getPath(), staged.getHash(),
+                        Files.size(staged.getPath()));
+                storedHeader = readHeader(staged.getPath());
+                byteSize = staged.getSize();
+            }
+            if (storedHeader != null) {
+                Dimension storedDimension = ImageHeaderParser.readDimensions(storedHeader);
+                if (storedDimension != null) {
+                    dimension = storedDimension;
+                }
+                orientation = ImageHeaderParser.readOrientation(storedHeader);
+            }
+
+            /* 暂存文件尚未写入存储，超出配额时直接丢弃 */
+            storageQuotaService.checkQuota(userId, byteSize);
+            return new PreparedImage(staged, extension, mimeType, byteSize, orientation,
+                    dimension.width, dimension.height);
+        } catch (IOException | RuntimeException e) {
+            blobStorageService.discard(staged);
+            throw e;
+        }
+    }
+
+    /**
+     * 在当前事务中提交暂存的图片：登记内容寻址文件的引用、写入存储并累加用量。
+     * 所有图片合计后再检查一次配额，事务回滚时引用和用量一同回滚。
+     *
+     * @param userId 用户标识符
+     * @param images 暂存的图片
+     * @return 各图片的访问路径及元数据，顺序与参数一致
+     * @throws IOException 如果写入存储时发生错误
+     */
+    @Override
+    @Transactional(rollbackFor = {IOException.class})
+    public List<ImageMetadata> commitDiaryImages(Long userId, List<PreparedImage> images) throws IOException {
+        long totalBytes = 0;
+        for (PreparedImage image : images) {
+            totalBytes += image.getByteSize();
+        }
+        storageQuotaService.checkQuota(userId, totalBytes, images.size());
+
+        List<ImageMetadata> result = new ArrayList<>(images.size());
+        for (PreparedImage image : images) {
+            StoredBlob blob = blobStorageService.commit(image.getStaged(), image.getExtension());
+            storageQuotaService.record(userId, image.getByteSize(), 1);
+
+            ImageMetadata metadata = new ImageMetadata();
+            metadata.setPath(userId + "/" + BlobStorageService.BLOB_DIRECTORY + "/"
+                    + blob.getHash() + "." + blob.getExtension());
+            metadata.setContentHash(blob.getHash());
+            metadata.setByteSize(image.getByteSize());
+            metadata.setMimeType(image.getMimeType());
+            metadata.setOrientation(image.getOrientation());
+            metadata.setWidth(image.getWidth());
+            metadata.setHeight(image.getHeight());
+            contentTypeCache.put(blob.getHash(), image.getMimeType());
+            result.add(metadata);
+        }
+        return result;
+    }
+
+    /**
+     * 丢弃暂存的图片，已提交的图片没有暂存文件，调用无副作用。
+     *
+     * @param image 暂存的图片
+     * @throws IOException 如果删除暂存文件时发生错误
+     */
+    @Override
+    public void discard(PreparedImage image) throws IOException {
+        blobStorageService.discard(image.getStaged());
+    }
+
+    /**
+     * 日记图片的写入流程：暂存并检查后立即在当前事务中提交。
+     */
+    private ImageMetadata ingestDiaryImage(Long userId, InputStream input) throws IOException {
+        PreparedImage image = prepareDiaryImage(userId, input);
+        try {
+            return commitDiaryImages(userId, List.of(image)).get(0);
+        } finally {
+            discard(image);
+        }
+    }
+
+    /**
+     * 读取文件开头的字节，长度与上传时保留的文件头相同。
+     */
+    private byte[] readHeader(Path file) throws IOException {
+        try (InputStream input = Files.newInputStream(file)) {
+            return input.readNBytes(HEADER_CAPTURE_SIZE);
+        }
+    }
+
+    /**
+     * 将用户文件的访问路径解析为存储后端中的对象键，内容寻址文件解析到共享的存储目录。
+     *
+     * @param userId   用户标识符
+     * @param filePath 相对于该用户的文件路径
+     * @return 对象键，如果路径非法则返回 {@code null}
+     */
+    @Override
+    public String resolveKey(Long userId, String filePath) {
+        String blobPrefix = BlobStorageService.BLOB_DIRECTORY + "/";
+        if (filePath.startsWith(blobPrefix)) {
+            return isContentAddressed(filePath)
+                    ? blobStorageService.keyOf(filePath.substring(blobPrefix.length())) : null;
+        }
+
+        String normalized = normalize(userId + "/" + filePath);
+        return normalized != null && normalized.startsWith(userId + "/") ? userKey(normalized, false) : null;
+    }
+
+    /**
+     * 将用户文件的访问路径解析为旧布局下的对象键，用于迁移完成前的兼容读取。
+     *
+     * @param userId   用户标识符
+     * @param filePath 相对于该用户的文件路径
+     * @return 旧布局下的对象键，如果路径非法或已关闭兼容读取则返回 {@code null}
+     */
+    @Override
+    public String resolveLegacyKey(Long userId, String filePath) {
+        if (!storageLayout.isDualRead()) {
+            return null;
+        }
+        String blobPrefix = BlobStorageService.BLOB_DIRECTORY + "/";
+        if (filePath.startsWith(blobPrefix)) {
+            return isContentAddressed(filePath)
+                    ? storageLayout.legacyBlobKey(filePath.substring(blobPrefix.length())) : null;
+        }
+
+        String normalized = normalize(userId + "/" + filePath);
+        return normalized != null && normalized.startsWith(userId + "/") ? userKey(normalized, true) : null;
+    }
+
+    /**
+     * 将以用户ID开头的规范化访问路径映射为对象键。
+     *
+     * @param filePath 规范化的访问路径，例如 {@code 1/avatar/xxx.jpg}
+     * @param legacy   是否映射为旧布局下的对象键
+     * @return 对象键，路径不以用户ID开头时返回 {@code null}
+     */
+    private String userKey(String filePath, boolean legacy) {
+        Long userId = userIdOf(filePath);
+        int slash = filePath.indexOf('/');
+        if (userId == null || slash == filePath.length() - 1) {
+            return null;
+        }
+        String relativePath = filePath.substring(slash + 1);
+        return legacy ? storageLayout.legacyUserKey(userId, relativePath) : storageLayout.userKey(userId, relativePath);
+    }
+
+    /**
+     * 从以用户ID开头的访问路径中解析用户ID。
+     *
+     * @param filePath 访问路径，例如 {@code 1/avatar/xxx.jpg}
+     * @return 用户ID，路径不以用户ID开头时返回 {@code null}
+     */
+    private Long userIdOf(String filePath) {
+        int slash = filePath.indexOf('/');
+        if (slash <= 0) {
+            return null;
+        }
+        try {
+            return Long.valueOf(filePath.substring(0, slash));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 规范化相对路径，拒绝绝对路径和指向上级目录之外的路径。
+     *
+     * @return 以 {@code /} 分隔的规范化路径，非法时返回 {@code null}
+     */
+    private String normalize(String relativePath) {
+        Path path = Paths.get(relativePath).normalize();
+        if (path.isAbsolute() || path.startsWith("..") || path.toString().isEmpty()) {
+            return null;
+        }
+        return path.toString().replace('\\', '/');
+    }
+
+    /**
+     * 判断访问路径是否指向内容寻址存储的文件。
+     *
+     * @param filePath 相对于用户的文件路径
+     * @return 如果是内容寻址文件则返回 {@code true}
+     */
+    @Override
+    public boolean isContentAddressed(String filePath) {
+        String blobPrefix = BlobStorageService.BLOB_DIRECTORY + "/";
+        return filePath.startsWith(blobPrefix)
+                && blobStorageService.isBlobName(filePath.substring(blobPrefix.length()));
+    }
+
+    /**
+     * 获取文件的MIME类型。内容寻址文件查询上传时记录的元数据，其他文件根据扩展名判断。
+     *
+     * @param filePath 相对于用户的文件路径
+     * @return MIME类型
+     */
+    @Override
+    public String getContentType(String filePath) {
+        String fileName = filePath.substring(filePath.lastIndexOf('/') + 1);
+        if (isContentAddressed(filePath)) {
+            String hash = fileName.substring(0, fileName.indexOf('.'));
+            String cached = contentTypeCache.get(hash);
+            if (cached != null) {
+                return cached;
+            }
+            List<String> mimeTypes = diaryImageRepository.findMimeTypesByContentHash(hash, Pageable.ofSize(1));
+            if (!mimeTypes.isEmpty()) {
+                contentTypeCache.put(hash, mimeTypes.get(0));
+                return mimeTypes.get(0);
+            }
+        }
+
+        String extension = fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+        for (Map.Entry<String, String> entry : FileConstants.IMAGE_EXTENSIONS.entrySet()) {
+            if (entry.getValue().equals(extension) || ("jpeg".equals(extension) && "jpg".equals(entry.getValue()))) {
+                return entry.getKey();
+            }
+        }
+        return "application/octet-stream";
+    }
+
+    /**
+     * 验证文件是否为允许上传的图片。
+     * <p>
+     * 图片类型根据文件头的魔数识别，尺寸通过 {@link javax.imageio.ImageReader} 从文件头读取，
+     * 整个过程只读取文件开头的少量数据，不会解码像素。
+     *
+     * @param file 需要验证的文件对象
+     * @throws FileStorageException 如果文件为空、过大、文件名过长、类型不受支持或像素数超过限制
+     */
+    @Override
+    public void validateImageFile(MultipartFile file) {
+        inspectImage(file);
+    }
+
+    /**
+     * 检查上传的图片并返回根据文件头识别出的MIME类型。
+     */
+    private String inspectImage(MultipartFile file) {
+        if (file == null || file.isEmpty()) {
+            throw new FileStorageException("文件不能为空");
+        }
+        if (file.getSize() > FileConstants.MAX_FILE_SIZE) {
+            throw new FileStorageException("文件大小超过限制");
+        }
+        String originalName = file.getOriginalFilename();
+        if (originalName != null && originalName.length() > FileConstants.MAX_FILENAME_LENGTH) {
+            throw new FileStorageException("文件名过长");
+        }
+
+        try (BufferedInputStream input = new BufferedInputStream(file.getInputStream())) {
+            input.mark(MAGIC_SIZE);
+            String mimeType = ImageHeaderParser.detectMimeType(input.readNBytes(MAGIC_SIZE));
+            if (mimeType == null || !FileConstants.ALLOWED_IMAGE_TYPES.contains(mimeType)) {
+                throw new FileStorageException("不支持的文件类型");
+            }
+            input.reset();
+
+            Dimension dimension = ImageHeaderParser.readDimensions(input);
+            if (dimension == null) {
+                throw new FileStorageException("无法识别图片尺寸");
+            }
+            imageUtils.checkPixelBudget(dimension);
+            return mimeType;
+        } catch (IOException e) {
+            throw new FileStorageException("读取文件失败", e);
+        }
+    }
+}
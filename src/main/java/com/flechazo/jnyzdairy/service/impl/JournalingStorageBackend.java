@@ -0,0 +1,136 @@
+package com.flechazo.jnyzdairy.service.impl;
+
+import com.flechazo.jnyzdairy.dto.StorageChangedEvent;
+import com.flechazo.jnyzdairy.dto.StorageObject;
+import com.flechazo.jnyzdairy.entity.StorageOperation;
+import com.flechazo.jnyzdairy.service.StorageBackend;
+import com.flechazo.jnyzdairy.service.StorageJournalService;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.stream.Stream;
+
+/**
+ * 记录变更日志的存储后端，将所有操作委托给具体的存储后端，并在对象被创建、覆盖或删除后
+ * 追加存储变更日志、发布 {@link StorageChangedEvent}。
+ * <p>
+ * 日志在操作成功之后才记录；操作失败时不记录，进程在两者之间崩溃时由日志服务的恢复机制处理。
+ *
+ * @author Flechazo
+ */
+public class JournalingStorageBackend implements StorageBackend, AutoCloseable {
+
+    private final StorageBackend delegate;
+    private final StorageJournalService storageJournalService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    /**
+     * 构造函数，由 {@link com.flechazo.jnyzdairy.config.StorageBackendConfig} 创建。
+     *
+     * @param delegate              具体的存储后端
+     * @param storageJournalService 存储变更日志服务
+     * @param eventPublisher        应用事件发布器
+     */
+    public JournalingStorageBackend(StorageBackend delegate,
+                                    StorageJournalService storageJournalService,
+                                    ApplicationEventPublisher eventPublisher) {
+        this.delegate = delegate;
+        this.storageJournalService = storageJournalService;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * 关闭具体的存储后端，释放其持有的连接等资源。
+     *
+     * @throws Exception 如果关闭时发生错误
+     */
+    @Override
+    public void close() throws Exception {
+        if (delegate instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        boolean exists = delegate.stat(key) != null;
+        /* 写入后源文件可能已被移走，需要事先获取大小 */
+        long size = Files.size(source);
+        delegate.put(key, source);
+        changed(exists ? StorageOperation.REPLACE : StorageOperation.CREATE, key, size);
+    }
+
+    @Override
+    public void put(String key, InputStream input, long length) throws IOException {
+        boolean exists = delegate.stat(key) != null;
+        delegate.put(key, input, length);
+        changed(exists ? StorageOperation.REPLACE : StorageOperation.CREATE, key, length);
+    }
+
+    @Override
+    public StorageObject stat(String key) throws IOException {
+        return delegate.stat(key);
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        return delegate.get(key);
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        return delegate.get(key, offset, length);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        if (delegate.stat(key) == null) {
+            return;
+        }
+        delegate.delete(key);
+        changed(StorageOperation.DELETE, key, 0);
+    }
+
+    /**
+     * 批量删除时不逐个检查对象是否存在，每个键都记录一条删除日志；对不存在的对象，日志的消费者会发现它已不存在而忽略。
+     */
+    @Override
+    public void deleteAll(Collection<String> keys) throws IOException {
+        delegate.deleteAll(keys);
+        for (String key : keys) {
+            changed(StorageOperation.DELETE, key, 0);
+        }
+    }
+
+    @Override
+    public boolean move(String sourceKey, String targetKey) throws IOException {
+        boolean exists = delegate.stat(targetKey) != null;
+        if (!delegate.move(sourceKey, targetKey)) {
+            return false;
+        }
+        StorageObject target = delegate.stat(targetKey);
+        changed(StorageOperation.DELETE, sourceKey, 0);
+        changed(exists ? StorageOperation.REPLACE : StorageOperation.CREATE, targetKey,
+                target == null ? 0 : target.getSize());
+        return true;
+    }
+
+    @Override
+    public Stream<StorageObject> list(String prefix) throws IOException {
+        return delegate.list(prefix);
+    }
+
+    @Override
+    public Path localPath(String key) {
+        return delegate.localPath(key);
+    }
+
+    private void changed(StorageOperation operation, String key, long size) {
+        storageJournalService.record(operation, key, size);
+        eventPublisher.publishEvent(new StorageChangedEvent(operation, key));
+    }
+}
@@ -0,0 +1,172 @@
+package com.flechazo.jnyzdairy.service.impl;
+
+import com.flechazo.jnyzdairy.config.StorageConfig;
+import com.flechazo.jnyzdairy.dto.StorageObject;
+import com.flechazo.jnyzdairy.service.StorageBackend;
+import com.flechazo.jnyzdairy.util.BoundedInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * 本地文件系统存储后端，对象键直接映射为存储根路径下的相对路径。
+ * <p>
+ * 写入时先写临时文件再原子地重命名，读取者不会看到写了一半的文件。
+ * 以 {@code .} 开头的文件和目录（例如上传暂存目录）不属于存储对象，不会被列出。
+ *
+ * @author Flechazo
+ */
+public class LocalStorageBackend implements StorageBackend {
+
+    private final Path root;
+
+    /**
+     * 构造函数，由 {@link com.flechazo.jnyzdairy.config.StorageBackendConfig} 创建。
+     *
+     * @param storageConfig 存储配置
+     */
+    public LocalStorageBackend(StorageConfig storageConfig) {
+        this.root = Paths.get(storageConfig.getRootPath()).toAbsolutePath().normalize();
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            /* 源文件位于其他文件系统，先复制到目标目录再重命名 */
+            try (InputStream input = Files.newInputStream(source)) {
+                put(key, input, Files.size(source));
+            }
+            Files.deleteIfExists(source);
+        }
+    }
+
+    @Override
+    public void put(String key, InputStream input, long length) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp-" + UUID.randomUUID());
+        try {
+            Files.copy(input, temp);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public StorageObject stat(String key) throws IOException {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(resolve(key), BasicFileAttributes.class);
+            return attrs.isRegularFile() ? toObject(key, attrs) : null;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        return Files.newInputStream(resolve(key));
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        FileChannel channel = FileChannel.open(resolve(key), StandardOpenOption.READ);
+        try {
+            channel.position(offset);
+            return new BoundedInputStream(Channels.newInputStream(channel), length);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+    }
+
+    @Override
+    public boolean move(String sourceKey, String targetKey) throws IOException {
+        Path source = resolve(sourceKey);
+        Path target = resolve(targetKey);
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        pruneEmptyParents(source.getParent());
+        return true;
+    }
+
+    @Override
+    public Stream<StorageObject> list(String prefix) throws IOException {
+        /* 从前缀中最后一个完整的目录开始遍历 */
+        int slash = prefix.lastIndexOf('/');
+        Path start = slash < 0 ? root : resolve(prefix.substring(0, slash));
+        if (!Files.isDirectory(start)) {
+            return Stream.empty();
+        }
+        return Files.walk(start)
+                .filter(Files::isRegularFile)
+                .map(path -> root.relativize(path).toString().replace('\\', '/'))
+                .filter(key -> key.startsWith(prefix) && !key.startsWith(".") && !key.contains("/.")
+                        && !key.contains(".tmp-"))
+                .map(key -> {
+                    try {
+                        return stat(key);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .filter(Objects::nonNull);
+    }
+
+    @Override
+    public Path localPath(String key) {
+        return resolve(key);
+    }
+
+    /**
+     * 将对象键解析为本地路径，拒绝指向根路径之外的键。
+     */
+    private Path resolve(String key) {
+        Path path = root.resolve(key).normalize();
+        if (!path.startsWith(root) || path.equals(root)) {
+            throw new IllegalArgumentException("Invalid storage key: " + key);
+        }
+        return path;
+    }
+
+    /**
+     * 自下而上删除已经为空的目录，直到遇到非空目录或根路径为止。
+     */
+    private void pruneEmptyParents(Path directory) {
+        Path current = directory;
+        while (current != null && current.startsWith(root) && !current.equals(root)) {
+            try {
+                Files.delete(current);
+            } catch (IOException e) {
+                /* 目录非空或已被删除 */
+                return;
+            }
+            current = current.getParent();
+        }
+    }
+
+    private StorageObject toObject(String key, BasicFileAttributes attrs) {
+        return new StorageObject(key, attrs.size(), attrs.lastModifiedTime().toMillis());
+    }
+}
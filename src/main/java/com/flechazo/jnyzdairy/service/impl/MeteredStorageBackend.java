@@ -0,0 +1,171 @@
+package com.flechazo.jnyzdairy.service.impl;
+
+import com.flechazo.jnyzdairy.dto.StorageObject;
+import com.flechazo.jnyzdairy.service.StorageBackend;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 记录耗时指标的存储后端，将所有操作委托给内层的存储后端，并按操作类型记录到计时器 {@code storage.operation}。
+ * <p>
+ * 读取操作只计入打开对象的耗时（首字节延迟），列出操作只计入获取第一页结果的耗时，数据传输的时间由调用方决定，不在此记录。
+ *
+ * @author Flechazo
+ */
+public class MeteredStorageBackend implements StorageBackend, AutoCloseable {
+
+    private static final String METRIC_NAME = "storage.operation";
+
+    private final StorageBackend delegate;
+    private final Timer putTimer;
+    private final Timer statTimer;
+    private final Timer getTimer;
+    private final Timer deleteTimer;
+    private final Timer deleteAllTimer;
+    private final Timer moveTimer;
+    private final Timer listTimer;
+
+    /**
+     * 构造函数，由 {@link com.flechazo.jnyzdairy.config.StorageBackendConfig} 创建。
+     *
+     * @param delegate      内层的存储后端
+     * @param backend       存储后端类型，作为指标的 {@code backend} 标签
+     * @param meterRegistry 指标注册表
+     */
+    public MeteredStorageBackend(StorageBackend delegate, String backend, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.putTimer = timer("put", backend, meterRegistry);
+        this.statTimer = timer("stat", backend, meterRegistry);
+        this.getTimer = timer("get", backend, meterRegistry);
+        this.deleteTimer = timer("delete", backend, meterRegistry);
+        this.deleteAllTimer = timer("delete-all", backend, meterRegistry);
+        this.moveTimer = timer("move", backend, meterRegistry);
+        this.listTimer = timer("list", backend, meterRegistry);
+    }
+
+    /**
+     * 关闭内层的存储后端，释放其持有的连接等资源。
+     *
+     * @throws Exception 如果关闭时发生错误
+     */
+    @Override
+    public void close() throws Exception {
+        if (delegate instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        long start = System.nanoTime();
+        try {
+            delegate.put(key, source);
+        } finally {
+            record(putTimer, start);
+        }
+    }
+
+    @Override
+    public void put(String key, InputStream input, long length) throws IOException {
+        long start = System.nanoTime();
+        try {
+            delegate.put(key, input, length);
+        } finally {
+            record(putTimer, start);
+        }
+    }
+
+    @Override
+    public StorageObject stat(String key) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return delegate.stat(key);
+        } finally {
+            record(statTimer, start);
+        }
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return delegate.get(key);
+        } finally {
+            record(getTimer, start);
+        }
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return delegate.get(key, offset, length);
+        } finally {
+            record(getTimer, start);
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        long start = System.nanoTime();
+        try {
+            delegate.delete(key);
+        } finally {
+            record(deleteTimer, start);
+        }
+    }
+
+    @Override
+    public void deleteAll(Collection<String> keys) throws IOException {
+        long start = System.nanoTime();
+        try {
+            delegate.deleteAll(keys);
+        } finally {
+            record(deleteAllTimer, start);
+        }
+    }
+
+    @Override
+    public boolean move(String sourceKey, String targetKey) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return delegate.move(sourceKey, targetKey);
+        } finally {
+            record(moveTimer, start);
+        }
+    }
+
+    @Override
+    public Stream<StorageObject> list(String prefix) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return delegate.list(prefix);
+        } finally {
+            record(listTimer, start);
+        }
+    }
+
+    @Override
+    public Path localPath(String key) {
+        return delegate.localPath(key);
+    }
+
+    private static Timer timer(String operation, String backend, MeterRegistry meterRegistry) {
+        return Timer.builder(METRIC_NAME)
+                .description("Latency of storage backend operations")
+                .tag("operation", operation)
+                .tag("backend", backend)
+                .register(meterRegistry);
+    }
+
+    private static void record(Timer timer, long start) {
+        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+}
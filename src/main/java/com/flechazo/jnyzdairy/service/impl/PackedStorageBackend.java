@@ -0,0 +1,140 @@
+package com.flechazo.jnyzdairy.service.impl;
+
+import com.flechazo.jnyzdairy.dto.StorageObject;
+import com.flechazo.jnyzdairy.service.SegmentStore;
+import com.flechazo.jnyzdairy.service.StorageBackend;
+import com.flechazo.jnyzdairy.util.ByteBufferInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.stream.Stream;
+
+/**
+ * 小文件打包存储后端，将不超过阈值的对象写入 {@link SegmentStore} 的段文件，其余对象委托给具体的存储后端。
+ * <p>
+ * 查询时先查找段文件的内存索引，再查找具体的存储后端。同一个键只会位于其中一处：
+ * 写入一处后删除另一处的旧对象。位于段文件中的对象没有本地文件路径，读取时直接使用段文件的内存映射。
+ *
+ * @author Flechazo
+ */
+public class PackedStorageBackend implements StorageBackend, AutoCloseable {
+
+    private final StorageBackend delegate;
+    private final SegmentStore segmentStore;
+
+    /**
+     * 构造函数，由 {@link com.flechazo.jnyzdairy.config.StorageBackendConfig} 创建。
+     *
+     * @param delegate     存储大文件的具体存储后端
+     * @param segmentStore 段文件存储
+     */
+    public PackedStorageBackend(StorageBackend delegate, SegmentStore segmentStore) {
+        this.delegate = delegate;
+        this.segmentStore = segmentStore;
+    }
+
+    /**
+     * 关闭具体的存储后端。段文件存储是单独的Bean，由容器关闭。
+     *
+     * @throws Exception 如果关闭时发生错误
+     */
+    @Override
+    public void close() throws Exception {
+        if (delegate instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        if (!segmentStore.accepts(Files.size(source))) {
+            delegate.put(key, source);
+            segmentStore.delete(key);
+            return;
+        }
+        segmentStore.put(key, Files.readAllBytes(source));
+        Files.deleteIfExists(source);
+        delegate.delete(key);
+    }
+
+    @Override
+    public void put(String key, InputStream input, long length) throws IOException {
+        if (!segmentStore.accepts(length)) {
+            delegate.put(key, input, length);
+            segmentStore.delete(key);
+            return;
+        }
+        segmentStore.put(key, input.readNBytes((int) length));
+        delegate.delete(key);
+    }
+
+    @Override
+    public StorageObject stat(String key) throws IOException {
+        StorageObject packed = segmentStore.stat(key);
+        return packed != null ? packed : delegate.stat(key);
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        ByteBuffer packed = segmentStore.read(key);
+        return packed != null ? new ByteBufferInputStream(packed) : delegate.get(key);
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        ByteBuffer packed = segmentStore.read(key);
+        if (packed == null) {
+            return delegate.get(key, offset, length);
+        }
+        int start = (int) Math.min(offset, packed.remaining());
+        int count = (int) Math.min(length, packed.remaining() - start);
+        return new ByteBufferInputStream(packed.slice(start, count));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        segmentStore.delete(key);
+        delegate.delete(key);
+    }
+
+    @Override
+    public void deleteAll(Collection<String> keys) throws IOException {
+        for (String key : keys) {
+            segmentStore.delete(key);
+        }
+        delegate.deleteAll(keys);
+    }
+
+    @Override
+    public boolean move(String sourceKey, String targetKey) throws IOException {
+        ByteBuffer packed = segmentStore.read(sourceKey);
+        if (packed == null) {
+            if (!delegate.move(sourceKey, targetKey)) {
+                return false;
+            }
+            segmentStore.delete(targetKey);
+            return true;
+        }
+        byte[] data = new byte[packed.remaining()];
+        packed.get(data);
+        segmentStore.put(targetKey, data);
+        delegate.delete(targetKey);
+        segmentStore.delete(sourceKey);
+        return true;
+    }
+
+    @Override
+    public Stream<StorageObject> list(String prefix) throws IOException {
+        return Stream.concat(segmentStore.list(prefix), delegate.list(prefix));
+    }
+
+    @Override
+    public Path localPath(String key) {
+        return segmentStore.contains(key) ? null : delegate.localPath(key);
+    }
+}
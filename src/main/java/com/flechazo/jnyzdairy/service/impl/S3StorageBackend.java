@@ -0,0 +1,376 @@
+package com.flechazo.jnyzdairy.service.impl;
+
+import com.flechazo.jnyzdairy.config.StorageConfig;
+import com.flechazo.jnyzdairy.dto.StorageObject;
+import com.flechazo.jnyzdairy.service.StorageBackend;
+import com.flechazo.jnyzdairy.util.BoundedInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * S3兼容对象存储后端，适用于AWS S3以及MinIO等兼容实现。
+ * <p>
+ * 客户端使用带连接池的Apache HTTP客户端；超过阈值的文件以分片方式上传，
+ * 任一分片失败时中止整个上传，不会留下不完整的对象。
+ *
+ * @author Flechazo
+ */
+public class S3StorageBackend implements StorageBackend, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(S3StorageBackend.class);
+
+    /**
+     * S3要求除最后一个分片外，每个分片至少5MB。
+     */
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+
+    /**
+     * 一次批量删除请求最多包含的对象数，由S3协议规定。
+     */
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    private final StorageConfig.S3 config;
+    private final S3Client client;
+    private final Path stagingRoot;
+
+    /**
+     * 构造函数，由 {@link com.flechazo.jnyzdairy.config.StorageBackendConfig} 创建。
+     *
+     * @param storageConfig 存储配置
+     */
+    public S3StorageBackend(StorageConfig storageConfig) {
+        this.config = storageConfig.getS3();
+        this.stagingRoot = Path.of(storageConfig.getRootPath(), ".staging").toAbsolutePath().normalize();
+        if (config.getBucket() == null || config.getBucket().isBlank()) {
+            throw new IllegalStateException("app.storage.s3.bucket must be set when using the s3 backend");
+        }
+
+        ApacheHttpClient.Builder httpClient = ApacheHttpClient.builder()
+                .maxConnections(config.getMaxConnections())
+                .connectionTimeout(Duration.ofMillis(config.getConnectionTimeout()));
+        S3ClientBuilder builder = S3Client.builder()
+                .httpClientBuilder(httpClient)
+                .region(Region.of(config.getRegion()))
+                .credentialsProvider(credentialsProvider())
+                .serviceConfiguration(S3Configuration.builder()
+                        .pathStyleAccessEnabled(config.isPathStyleAccess())
+                        .build());
+        if (config.getEndpoint() != null && !config.getEndpoint().isBlank()) {
+            builder.endpointOverride(URI.create(config.getEndpoint()));
+        }
+        this.client = builder.build();
+        logger.info("Using S3 storage backend: bucket={}, endpoint={}", config.getBucket(),
+                config.getEndpoint() == null ? "default" : config.getEndpoint());
+    }
+
+    /**
+     * 应用关闭时释放连接池。
+     */
+    @Override
+    public void close() {
+        client.close();
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        long size = Files.size(source);
+        try {
+            if (size < config.getMultipartThreshold()) {
+                client.putObject(PutObjectRequest.builder()
+                        .bucket(config.getBucket())
+                        .key(objectKey(key))
+                        .contentLength(size)
+                        .build(), RequestBody.fromFile(source));
+            } else {
+                multipartUpload(key, source, size);
+            }
+        } catch (SdkException e) {
+            throw new IOException("Failed to upload object: " + key, e);
+        }
+        Files.deleteIfExists(source);
+    }
+
+    @Override
+    public void put(String key, InputStream input, long length) throws IOException {
+        if (length < config.getMultipartThreshold()) {
+            try {
+                client.putObject(PutObjectRequest.builder()
+                        .bucket(config.getBucket())
+                        .key(objectKey(key))
+                        .contentLength(length)
+                        .build(), RequestBody.fromInputStream(input, length));
+            } catch (SdkException e) {
+                throw new IOException("Failed to upload object: " + key, e);
+            }
+            return;
+        }
+
+        /* 大文件先暂存到本地，分片上传失败时可以重试单个分片而无需重新读取输入流 */
+        Files.createDirectories(stagingRoot);
+        Path staged = Files.createTempFile(stagingRoot, "s3-", ".tmp");
+        try {
+            Files.copy(input, staged, StandardCopyOption.REPLACE_EXISTING);
+            put(key, staged);
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+    }
+
+    @Override
+    public StorageObject stat(String key) throws IOException {
+        try {
+            HeadObjectResponse response = client.headObject(HeadObjectRequest.builder()
+                    .bucket(config.getBucket())
+                    .key(objectKey(key))
+                    .build());
+            return new StorageObject(key, response.contentLength(), response.lastModified().toEpochMilli());
+        } catch (NoSuchKeyException e) {
+            return null;
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return null;
+            }
+            throw new IOException("Failed to stat object: " + key, e);
+        } catch (SdkException e) {
+            throw new IOException("Failed to stat object: " + key, e);
+        }
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        return getObject(key, GetObjectRequest.builder()
+                .bucket(config.getBucket())
+                .key(objectKey(key))
+                .build());
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        if (length <= 0) {
+            return InputStream.nullInputStream();
+        }
+        return getObject(key, GetObjectRequest.builder()
+                .bucket(config.getBucket())
+                .key(objectKey(key))
+                .range("bytes=" + offset + "-" + (offset + length - 1))
+                .build());
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        try {
+            client.deleteObject(DeleteObjectRequest.builder()
+                    .bucket(config.getBucket())
+                    .key(objectKey(key))
+                    .build());
+        } catch (SdkException e) {
+            throw new IOException("Failed to delete object: " + key, e);
+        }
+    }
+
+    @Override
+    public void deleteAll(Collection<String> keys) throws IOException {
+        /* 每次请求最多删除1000个对象 */
+        List<ObjectIdentifier> batch = new ArrayList<>(Math.min(keys.size(), DELETE_BATCH_SIZE));
+        for (String key : keys) {
+            batch.add(ObjectIdentifier.builder().key(objectKey(key)).build());
+            if (batch.size() == DELETE_BATCH_SIZE) {
+                deleteObjects(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            deleteObjects(batch);
+        }
+    }
+
+    @Override
+    public boolean move(String sourceKey, String targetKey) throws IOException {
+        /* 服务端复制，内容不经过本机 */
+        try {
+            client.copyObject(CopyObjectRequest.builder()
+                    .sourceBucket(config.getBucket())
+                    .sourceKey(objectKey(sourceKey))
+                    .destinationBucket(config.getBucket())
+                    .destinationKey(objectKey(targetKey))
+                    .build());
+        } catch (NoSuchKeyException e) {
+            return false;
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return false;
+            }
+            throw new IOException("Failed to copy object: " + sourceKey, e);
+        } catch (SdkException e) {
+            throw new IOException("Failed to copy object: " + sourceKey, e);
+        }
+        delete(sourceKey);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * 分页在遍历流时才逐页请求，之后的分页请求失败时抛出 {@link UncheckedIOException}，原因为 {@link IOException}。
+     */
+    @Override
+    public Stream<StorageObject> list(String prefix) throws IOException {
+        Iterator<ListObjectsV2Response> pages;
+        try {
+            pages = client.listObjectsV2Paginator(ListObjectsV2Request.builder()
+                            .bucket(config.getBucket())
+                            .prefix(objectKey(prefix))
+                            .build())
+                    .iterator();
+        } catch (SdkException e) {
+            throw new IOException("Failed to list objects: " + prefix, e);
+        }
+        Iterator<ListObjectsV2Response> checked = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                try {
+                    return pages.hasNext();
+                } catch (SdkException e) {
+                    throw new UncheckedIOException(new IOException("Failed to list objects: " + prefix, e));
+                }
+            }
+
+            @Override
+            public ListObjectsV2Response next() {
+                try {
+                    return pages.next();
+                } catch (SdkException e) {
+                    throw new UncheckedIOException(new IOException("Failed to list objects: " + prefix, e));
+                }
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(checked, Spliterator.ORDERED), false)
+                .flatMap(page -> page.contents().stream())
+                .map(object -> new StorageObject(object.key().substring(config.getPrefix().length()),
+                        object.size(), object.lastModified().toEpochMilli()));
+    }
+
+    /**
+     * 分片上传本地文件，每个分片直接从文件的对应区间读取，不在内存中缓冲整个分片。
+     */
+    private void multipartUpload(String key, Path source, long size) {
+        String objectKey = objectKey(key);
+        String uploadId = client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(config.getBucket())
+                .key(objectKey)
+                .build()).uploadId();
+        try {
+            long partSize = Math.max(MIN_PART_SIZE, config.getPartSize());
+            List<CompletedPart> parts = new ArrayList<>();
+            int partNumber = 1;
+            for (long offset = 0; offset < size; offset += partSize, partNumber++) {
+                long length = Math.min(partSize, size - offset);
+                String etag;
+                try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+                    channel.position(offset);
+                    InputStream part = new BoundedInputStream(Channels.newInputStream(channel), length);
+                    etag = client.uploadPart(UploadPartRequest.builder()
+                            .bucket(config.getBucket())
+                            .key(objectKey)
+                            .uploadId(uploadId)
+                            .partNumber(partNumber)
+                            .contentLength(length)
+                            .build(), RequestBody.fromInputStream(part, length)).eTag();
+                } catch (IOException e) {
+                    throw SdkException.create("Failed to read part " + partNumber + " of " + source, e);
+                }
+                parts.add(CompletedPart.builder().partNumber(partNumber).eTag(etag).build());
+            }
+            client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(config.getBucket())
+                    .key(objectKey)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build());
+            logger.debug("Uploaded {} in {} parts", key, parts.size());
+        } catch (RuntimeException e) {
+            try {
+                client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                        .bucket(config.getBucket())
+                        .key(objectKey)
+                        .uploadId(uploadId)
+                        .build());
+            } catch (SdkException abortError) {
+                logger.warn("Failed to abort multipart upload {} for {}", uploadId, key, abortError);
+            }
+            throw e;
+        }
+    }
+
+    private InputStream getObject(String key, GetObjectRequest request) throws IOException {
+        try {
+            return client.getObject(request);
+        } catch (NoSuchKeyException e) {
+            throw new NoSuchFileException(key);
+        } catch (SdkException e) {
+            throw new IOException("Failed to read object: " + key, e);
+        }
+    }
+
+    private AwsCredentialsProvider credentialsProvider() {
+        if (config.getAccessKey() == null || config.getAccessKey().isBlank()) {
+            return DefaultCredentialsProvider.create();
+        }
+        return StaticCredentialsProvider.create(
+                AwsBasicCredentials.create(config.getAccessKey(), config.getSecretKey()));
+    }
+
+    private void deleteObjects(List<ObjectIdentifier> objects) throws IOException {
+        DeleteObjectsResponse response;
+        try {
+            response = client.deleteObjects(DeleteObjectsRequest.builder()
+                    .bucket(config.getBucket())
+                    .delete(Delete.builder().objects(objects).quiet(true).build())
+                    .build());
+        } catch (SdkException e) {
+            throw new IOException("Failed to delete " + objects.size() + " objects", e);
+        }
+        if (response.hasErrors() && !response.errors().isEmpty()) {
+            S3Error error = response.errors().get(0);
+            throw new IOException("Failed to delete " + response.errors().size() + " of " + objects.size()
+                    + " objects, first: " + error.key() + " (" + error.code() + ")");
+        }
+    }
+
+    private String objectKey(String key) {
+        return config.getPrefix() + key;
+    }
+}
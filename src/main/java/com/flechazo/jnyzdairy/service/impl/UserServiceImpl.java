@@ -1,18 +1,31 @@
 package com.flechazo.jnyzdairy.service.impl;
 
 import com.flechazo.jnyzdairy.dto.RegisterRequest;
+import com.flechazo.jnyzdairy.dto.UserFilter;
+import com.flechazo.jnyzdairy.dto.UserPage;
+import com.flechazo.jnyzdairy.dto.UserSummary;
 import com.flechazo.jnyzdairy.entity.User;
 import com.flechazo.jnyzdairy.entity.UserRole;
 import com.flechazo.jnyzdairy.entity.UserStatus;
+import com.flechazo.jnyzdairy.exception.FileDeletionException;
 import com.flechazo.jnyzdairy.exception.ResourceNotFoundException;
 import com.flechazo.jnyzdairy.exception.UserAlreadyExistsException;
 import com.flechazo.jnyzdairy.repository.UserRepository;
+import com.flechazo.jnyzdairy.service.FileStorageService;
 import com.flechazo.jnyzdairy.service.UserService;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
 
 /**
  * 用户服务实现类，提供用户管理相关功能。
@@ -22,18 +35,28 @@ import java.util.List;
 @Service
 public class UserServiceImpl implements UserService {
 
+    /**
+     * 导出CSV的表头。
+     */
+    private static final String CSV_HEADER =
+            "id,username,email,display_name,role,status,last_login,created_at\r\n";
+
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final FileStorageService fileStorageService;
 
     /**
      * 构造函数，用于依赖注入。
      *
      * @param userRepository 用户仓库接口，用于与数据库交互
      * @param passwordEncoder 密码加密器，用于对用户密码进行加密处理
+     * @param fileStorageService 文件存储服务，用于保存新头像和删除原头像
      */
-    public UserServiceImpl(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public UserServiceImpl(UserRepository userRepository, PasswordEncoder passwordEncoder,
+                           FileStorageService fileStorageService) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.fileStorageService = fileStorageService;
     }
 
     /**
@@ -133,7 +156,7 @@ public class UserServiceImpl implements UserService {
     }
 
     /**
-     * 删除指定用户，实际上是将用户状态设置为删除。
+     * 删除指定用户，实际上是将用户状态设置为删除。用户的数据在保留期过后由后台清理。
      *
      * @param id 用户ID
      * @throws ResourceNotFoundException 如果未找到对应的用户
@@ -142,36 +165,114 @@ public class UserServiceImpl implements UserService {
     @Transactional(rollbackFor = {RuntimeException.class})
     public void deleteUser(Long id) {
         User user = findById(id);
-        user.setStatus(UserStatus.DELETED);
+        if (user.getStatus() != UserStatus.DELETED) {
+            user.setStatus(UserStatus.DELETED);
+            user.setDeletedAt(LocalDateTime.now());
+        }
         userRepository.save(user);
     }
 
     /**
-     * 获取所有用户列表。
+     * 分页查询用户列表。
+     *
+     * @param filter 过滤条件
+     * @param cursor 上一页返回的游标，第一页传入 {@code null}
+     * @param limit  每页大小
+     * @return 包含用户摘要和下一页游标的分页结果
+     */
+    @Override
+    public UserPage findUsers(UserFilter filter, Long cursor, int limit) {
+        List<UserSummary> items = userRepository.findSummaries(cursor == null ? Long.MAX_VALUE : cursor,
+                filter.getStatus(), filter.getRole(), filter.getCreatedFrom(), filter.getCreatedTo(),
+                filter.getLastLoginFrom(), filter.getLastLoginTo(), prefixPattern(filter.getQ()),
+                PageRequest.ofSize(limit));
+        /* 本页不满时没有更多数据；恰好满页时下一页可能为空 */
+        Long nextCursor = items.size() < limit ? null : items.get(items.size() - 1).getId();
+        return new UserPage(items, nextCursor);
+    }
+
+    /**
+     * 以CSV格式导出满足过滤条件的用户。
+     * <p>
+     * 在只读事务中使用数据库游标逐批读取，写出一行后即可回收，适合导出全部用户。
      *
-     * @return 用户对象列表
+     * @param filter 过滤条件
+     * @param writer CSV写出目标，由调用方负责刷新和关闭
+     * @throws IOException 如果写出失败
      */
     @Override
-    public List<User> findAllUsers() {
-        return userRepository.findAll();
+    @Transactional(readOnly = true)
+    public void exportUsers(UserFilter filter, Writer writer) throws IOException {
+        /* 写出BOM，以便电子表格软件按UTF-8识别中文 */
+        writer.write('\uFEFF');
+        writer.write(CSV_HEADER);
+        try (Stream<UserSummary> users = userRepository.streamSummaries(Long.MAX_VALUE,
+                filter.getStatus(), filter.getRole(), filter.getCreatedFrom(), filter.getCreatedTo(),
+                filter.getLastLoginFrom(), filter.getLastLoginTo(), prefixPattern(filter.getQ()))) {
+            Iterator<UserSummary> iterator = users.iterator();
+            while (iterator.hasNext()) {
+                UserSummary user = iterator.next();
+                writer.write(String.valueOf(user.getId()));
+                writer.write(',');
+                writer.write(csv(user.getUsername()));
+                writer.write(',');
+                writer.write(csv(user.getEmail()));
+                writer.write(',');
+                writer.write(csv(user.getDisplayName()));
+                writer.write(',');
+                writer.write(user.getRole().name());
+                writer.write(',');
+                writer.write(user.getStatus().name());
+                writer.write(',');
+                writer.write(format(user.getLastLogin()));
+                writer.write(',');
+                writer.write(format(user.getCreatedAt()));
+                writer.write("\r\n");
+            }
+        }
     }
 
     /**
-     * 更新用户的头像路径。
+     * 更新用户的头像路径，原头像与新头像不同时删除原头像的所有尺寸的文件。
      *
      * @param id 用户ID
      * @param avatarPath 新的头像文件路径
      * @return 更新后的用户对象
      * @throws ResourceNotFoundException 如果未找到对应的用户
+     * @throws FileDeletionException 如果删除原头像失败
      */
     @Override
     @Transactional(rollbackFor = {RuntimeException.class})
     public User updateAvatar(Long id, String avatarPath) {
         User user = findById(id);
+        String previous = user.getAvatarPath();
         user.setAvatarPath(avatarPath);
+        if (previous != null && !previous.isEmpty() && !previous.equals(avatarPath)) {
+            try {
+                fileStorageService.deleteFile(previous);
+            } catch (IOException e) {
+                throw new FileDeletionException("Failed to delete previous avatar", e);
+            }
+        }
         return userRepository.save(user);
     }
 
+    /**
+     * 上传并更新用户头像。
+     *
+     * @param id 用户ID
+     * @param file 用户上传的头像图片
+     * @return 更新后的用户对象
+     * @throws ResourceNotFoundException 如果未找到对应的用户
+     * @throws IOException 如果保存头像过程中发生IO异常
+     */
+    @Override
+    @Transactional(rollbackFor = {RuntimeException.class, IOException.class})
+    public User updateAvatar(Long id, MultipartFile file) throws IOException {
+        findById(id);
+        return updateAvatar(id, fileStorageService.saveUserAvatar(id, file));
+    }
+
     /**
      * 检查用户名是否可用。
      *
@@ -193,4 +294,49 @@ public class UserServiceImpl implements UserService {
     public boolean isEmailAvailable(String email) {
         return !userRepository.existsByEmail(email);
     }
-}
\ No newline at end of file
+
+    /**
+     * 将搜索词转换为不区分大小写的前缀匹配模式，转义其中的通配符。
+     *
+     * @param q 搜索词
+     * @return 匹配模式，搜索词为空时返回 {@code null}
+     */
+    private static String prefixPattern(String q) {
+        if (q == null || q.isBlank()) {
+            return null;
+        }
+        String prefix = q.trim().toLowerCase(Locale.ROOT)
+                .replace("!", "!!")
+                .replace("%", "!%")
+                .replace("_", "!_");
+        return prefix + "%";
+    }
+
+    /**
+     * 按CSV规则转义字段。以公式字符开头的字段加上单引号，防止被电子表格软件当作公式执行。
+     *
+     * @param value 字段值
+     * @return 转义后的字段
+     */
+    private static String csv(String value) {
+        if (value == null || value.isEmpty()) {
+            return "";
+        }
+        char first = value.charAt(0);
+        if (first == '=' || first == '+' || first == '-' || first == '@' || first == '\t' || first == '\r') {
+            value = "'" + value;
+        }
+        if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
+
+    /**
+     * 按ISO-8601格式输出时间，为空时输出空字段。
+     */
+    private static String format(LocalDateTime time) {
+        return time == null ? "" : time.toString();
+    }
+}
@@ -0,0 +1,53 @@
+package com.flechazo.jnyzdairy.task;
+
+import com.flechazo.jnyzdairy.config.StorageConfig;
+import com.flechazo.jnyzdairy.service.UserPurgeService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 已删除用户数据清理任务，定期删除超过保留期的已删除用户的日记、图片和头像。
+ * <p>
+ * 默认每天凌晨1点执行，执行时间由配置项 {@code app.storage.purge.cron} 决定。
+ * 清理分批进行并限速，多个节点可以同时执行。
+ *
+ * @author Flechazo
+ */
+@Component
+public class DeletedUserPurgeTask {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeletedUserPurgeTask.class);
+
+    private final StorageConfig.Purge config;
+    private final UserPurgeService userPurgeService;
+
+    /**
+     * 构造函数，用于依赖注入。
+     *
+     * @param storageConfig    存储配置
+     * @param userPurgeService 已删除用户的数据清理服务
+     */
+    public DeletedUserPurgeTask(StorageConfig storageConfig, UserPurgeService userPurgeService) {
+        this.config = storageConfig.getPurge();
+        this.userPurgeService = userPurgeService;
+    }
+
+    /**
+     * 定时任务方法，清理所有超过保留期的已删除用户的数据。失败时记录日志，下次执行时从剩余的数据继续。
+     */
+    @Scheduled(cron = "${app.storage.purge.cron:0 0 1 * * ?}")
+    public void purgeDeletedUsers() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        try {
+            userPurgeService.purge();
+        } catch (RuntimeException e) {
+            logger.error("Failed to purge data of deleted users", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.flechazo.jnyzdairy.task;
+
+import com.flechazo.jnyzdairy.service.SegmentStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * 段文件压缩任务，定期回收段文件中已删除或被覆盖的对象所占的空间。
+ * <p>
+ * 默认每天凌晨5点执行，执行时间由配置项 {@code app.storage.packed.compaction-cron} 决定。
+ *
+ * @author Flechazo
+ */
+@Component
+public class SegmentCompactionTask {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentCompactionTask.class);
+
+    private final SegmentStore segmentStore;
+
+    /**
+     * 构造函数，用于依赖注入。
+     *
+     * @param segmentStore 段文件存储
+     */
+    public SegmentCompactionTask(SegmentStore segmentStore) {
+        this.segmentStore = segmentStore;
+    }
+
+    /**
+     * 定时任务方法，压缩无效数据比例超过阈值的段文件。
+     */
+    @Scheduled(cron = "${app.storage.packed.compaction-cron:0 0 5 * * ?}")
+    public void compactSegments() {
+        if (!segmentStore.isEnabled()) {
+            return;
+        }
+        try {
+            segmentStore.compact();
+        } catch (IOException e) {
+            logger.error("Storage segment compaction failed", e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.flechazo.jnyzdairy.task;
+
+import com.flechazo.jnyzdairy.config.StorageConfig;
+import com.flechazo.jnyzdairy.service.StorageGcService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 孤儿文件回收任务，定期删除存储中没有任何数据库记录引用的文件。
+ * <p>
+ * 默认每天凌晨2点执行，执行时间由配置项 {@code app.storage.gc.cron} 决定。
+ * 存储变更日志完整时只检查上次回收以来变更过的对象，否则全量回收。配置为试运行时只生成报告，报告可通过管理接口查看。
+ *
+ * @author Flechazo
+ */
+@Component
+public class StorageGcTask {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageGcTask.class);
+
+    private final StorageConfig.Gc config;
+    private final StorageGcService storageGcService;
+
+    /**
+     * 构造函数，用于依赖注入。
+     *
+     * @param storageConfig    存储配置
+     * @param storageGcService 孤儿文件回收服务
+     */
+    public StorageGcTask(StorageConfig storageConfig, StorageGcService storageGcService) {
+        this.config = storageConfig.getGc();
+        this.storageGcService = storageGcService;
+    }
+
+    /**
+     * 定时任务方法，执行一次孤儿文件回收。
+     */
+    @Scheduled(cron = "${app.storage.gc.cron:0 0 2 * * ?}")
+    public void collectOrphans() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        if (storageGcService.run(config.isDryRun(), false) == null) {
+            logger.info("Skipping scheduled storage GC, another run is in progress");
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.flechazo.jnyzdairy.task;
+
+import com.flechazo.jnyzdairy.config.StorageConfig;
+import com.flechazo.jnyzdairy.dto.StorageObject;
+import com.flechazo.jnyzdairy.entity.JobCheckpoint;
+import com.flechazo.jnyzdairy.repository.JobCheckpointRepository;
+import com.flechazo.jnyzdairy.repository.UserRepository;
+import com.flechazo.jnyzdairy.service.BlobStorageService;
+import com.flechazo.jnyzdairy.service.StorageBackend;
+import com.flechazo.jnyzdairy.util.StorageLayout;
+import com.flechazo.jnyzdairy.util.Throttle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 存储布局迁移任务，将旧布局下的文件逐批移动到分层布局下。
+ * <p>
+ * 迁移分两个阶段：先按旧布局的摘要前缀目录（{@code 00} 到 {@code ff}）逐个迁移内容寻址文件，
+ * 再按用户ID升序逐批迁移用户文件。每批完成后更新检查点，应用重启后从检查点继续，
+ * 已经移动过的文件不会被重复处理。文件移动速度受 {@code max-files-per-second} 限制。
+ * <p>
+ * 数据库中保存的 {@code DiaryImage.path} 和 {@code User.avatarPath} 是与存储布局无关的访问路径，
+ * 迁移过程中无需改写；迁移期间读取时会同时查找新旧两个位置。全部完成后即可关闭
+ * {@code app.storage.layout.dual-read}。
+ *
+ * @author Flechazo
+ */
+@Component
+public class StorageLayoutMigrationTask {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageLayoutMigrationTask.class);
+
+    /**
+     * 内容寻址文件迁移阶段的检查点名称，位置为最后完成的摘要前缀目录。
+     */
+    private static final String BLOB_CHECKPOINT = "storage-layout-blobs";
+
+    /**
+     * 用户文件迁移阶段的检查点名称，位置为最后完成的用户ID。
+     */
+    private static final String USER_CHECKPOINT = "storage-layout-users";
+
+    /**
+     * 旧布局下内容寻址文件的摘要前缀目录数。
+     */
+    private static final int LEGACY_BLOB_PREFIXES = 256;
+
+    private final StorageConfig.Migration config;
+    private final StorageBackend storageBackend;
+    private final StorageLayout storageLayout;
+    private final BlobStorageService blobStorageService;
+    private final UserRepository userRepository;
+    private final JobCheckpointRepository jobCheckpointRepository;
+
+    /**
+     * 文件移动的速率限制器。
+     */
+    private final Throttle throttle;
+
+    /**
+     * 迁移是否已经全部完成，完成后不再查询检查点。
+     */
+    private volatile boolean completed;
+
+    /**
+     * 构造函数，用于依赖注入。
+     *
+     * @param storageConfig           存储配置
+     * @param storageBackend          存储后端
+     * @param storageLayout           存储布局
+     * @param blobStorageService      内容寻址存储服务
+     * @param userRepository          用户仓库接口
+     * @param jobCheckpointRepository 任务检查点仓库接口
+     */
+    public StorageLayoutMigrationTask(StorageConfig storageConfig,
+                                      StorageBackend storageBackend,
+                                      StorageLayout storageLayout,
+                                      BlobStorageService blobStorageService,
+                                      UserRepository userRepository,
+                                      JobCheckpointRepository jobCheckpointRepository) {
+        this.config = storageConfig.getLayout().getMigration();
+        this.storageBackend = storageBackend;
+        this.storageLayout = storageLayout;
+        this.blobStorageService = blobStorageService;
+        this.userRepository = userRepository;
+        this.jobCheckpointRepository = jobCheckpointRepository;
+        this.throttle = new Throttle(config.getMaxFilesPerSecond());
+    }
+
+    /**
+     * 定时任务方法，每次执行迁移一批文件：内容寻址文件阶段为一个前缀目录，用户文件阶段为一批用户。
+     */
+    @Scheduled(fixedDelayString = "${app.storage.layout.migration.interval:1000}")
+    public void migrateBatch() {
+        if (!config.isEnabled() || completed) {
+            return;
+        }
+
+        try {
+            JobCheckpoint blobs = checkpoint(BLOB_CHECKPOINT, "-1");
+            if (!blobs.isCompleted()) {
+                migrateBlobPrefix(blobs);
+                return;
+            }
+
+            JobCheckpoint users = checkpoint(USER_CHECKPOINT, "0");
+            if (!users.isCompleted()) {
+                migrateUsers(users);
+                return;
+            }
+
+            completed = true;
+            logger.info("Storage layout migration completed, app.storage.layout.dual-read can be disabled");
+        } catch (IOException | RuntimeException e) {
+            /* 下一次执行时从检查点重试 */
+            logger.error("Storage layout migration batch failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 迁移旧布局下一个摘要前缀目录中的内容寻址文件。
+     */
+    private void migrateBlobPrefix(JobCheckpoint checkpoint) throws IOException, InterruptedException {
+        int index = Integer.parseInt(checkpoint.getPosition()) + 1;
+        if (index >= LEGACY_BLOB_PREFIXES) {
+            complete(checkpoint);
+            return;
+        }
+
+        String prefix = BlobStorageService.BLOB_DIRECTORY + "/" + String.format("%02x", index) + "/";
+        List<String> blobNames;
+        try (Stream<StorageObject> objects = storageBackend.list(prefix)) {
+            /* 旧布局的文件直接位于前缀目录下，分层布局的文件位于更深的子目录中 */
+            blobNames = objects.map(StorageObject::getKey)
+                    .map(key -> key.substring(prefix.length()))
+                    .filter(blobStorageService::isBlobName)
+                    .toList();
+        }
+
+        int moved = 0;
+        for (String blobName : blobNames) {
+            String source = storageLayout.legacyBlobKey(blobName);
+            String target = storageLayout.blobKey(blobName);
+            if (!source.equals(target) && move(source, target)) {
+                moved++;
+            }
+        }
+
+        checkpoint.setPosition(Integer.toString(index));
+        jobCheckpointRepository.save(checkpoint);
+        logger.info("Migrated {} blobs under {}", moved, prefix);
+    }
+
+    /**
+     * 迁移一批用户在旧布局下的文件。
+     */
+    private void migrateUsers(JobCheckpoint checkpoint) throws IOException, InterruptedException {
+        long afterId = Long.parseLong(checkpoint.getPosition());
+        List<Long> userIds = userRepository.findIdsAfter(afterId, PageRequest.of(0, Math.max(1, config.getBatchSize())));
+        if (userIds.isEmpty()) {
+            complete(checkpoint);
+            return;
+        }
+
+        int moved = 0;
+        for (Long userId : userIds) {
+            String prefix = storageLayout.legacyUserKey(userId, "");
+            List<String> relativePaths;
+            try (Stream<StorageObject> objects = storageBackend.list(prefix)) {
+                relativePaths = objects.map(object -> object.getKey().substring(prefix.length())).toList();
+            }
+            for (String relativePath : relativePaths) {
+                if (move(storageLayout.legacyUserKey(userId, relativePath),
+                        storageLayout.userKey(userId, relativePath))) {
+                    moved++;
+                }
+            }
+        }
+
+        long lastId = userIds.get(userIds.size() - 1);
+        checkpoint.setPosition(Long.toString(lastId));
+        jobCheckpointRepository.save(checkpoint);
+        logger.info("Migrated {} user files for users {} to {}", moved, userIds.get(0), lastId);
+    }
+
+    /**
+     * 按限速移动一个文件。
+     */
+    private boolean move(String source, String target) throws IOException, InterruptedException {
+        throttle.acquire();
+        return storageBackend.move(source, target);
+    }
+
+    private JobCheckpoint checkpoint(String name, String initialPosition) {
+        return jobCheckpointRepository.findById(name).orElseGet(() -> new JobCheckpoint(name, initialPosition));
+    }
+
+    private void complete(JobCheckpoint checkpoint) {
+        checkpoint.setCompleted(true);
+        jobCheckpointRepository.save(checkpoint);
+        logger.info("Storage layout migration phase {} completed", checkpoint.getName());
+    }
+}
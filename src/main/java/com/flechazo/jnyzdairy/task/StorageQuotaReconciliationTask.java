@@ -0,0 +1,73 @@
+package com.flechazo.jnyzdairy.task;
+
+import com.flechazo.jnyzdairy.config.StorageConfig;
+import com.flechazo.jnyzdairy.repository.UserRepository;
+import com.flechazo.jnyzdairy.service.StorageQuotaService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 存储用量核对任务，定期以实际数据校正每个用户的存储用量。
+ * <p>
+ * 用量平时由上传和删除增量更新，该任务用于校正异常情况下（例如文件写入后进程崩溃）的累计误差。
+ * 默认每天凌晨4点执行，按用户ID升序分批处理，执行时间由配置项 {@code app.storage.quota.reconcile-cron} 决定。
+ *
+ * @author Flechazo
+ */
+@Component
+public class StorageQuotaReconciliationTask {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageQuotaReconciliationTask.class);
+
+    private final StorageConfig.Quota config;
+    private final StorageQuotaService storageQuotaService;
+    private final UserRepository userRepository;
+
+    /**
+     * 构造函数，用于依赖注入。
+     *
+     * @param storageConfig       存储配置
+     * @param storageQuotaService 用户存储配额服务
+     * @param userRepository      用户仓库接口
+     */
+    public StorageQuotaReconciliationTask(StorageConfig storageConfig,
+                                          StorageQuotaService storageQuotaService,
+                                          UserRepository userRepository) {
+        this.config = storageConfig.getQuota();
+        this.storageQuotaService = storageQuotaService;
+        this.userRepository = userRepository;
+    }
+
+    /**
+     * 定时任务方法，核对所有用户的存储用量。单个用户核对失败时记录日志并继续处理下一个用户。
+     */
+    @Scheduled(cron = "${app.storage.quota.reconcile-cron:0 0 4 * * ?}")
+    public void reconcileUsage() {
+        long afterId = 0;
+        int checked = 0;
+        int corrected = 0;
+        int failed = 0;
+        List<Long> userIds;
+        do {
+            userIds = userRepository.findIdsAfter(afterId, PageRequest.of(0, Math.max(1, config.getReconcileBatchSize())));
+            for (Long userId : userIds) {
+                try {
+                    if (storageQuotaService.reconcile(userId)) {
+                        corrected++;
+                    }
+                } catch (RuntimeException e) {
+                    failed++;
+                    logger.error("Failed to reconcile storage usage of user {}", userId, e);
+                }
+                checked++;
+                afterId = userId;
+            }
+        } while (!userIds.isEmpty());
+        logger.info("Reconciled storage usage of {} users: {} corrected, {} failed", checked, corrected, failed);
+    }
+}
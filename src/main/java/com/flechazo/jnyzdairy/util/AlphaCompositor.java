@@ -0,0 +1,32 @@
+package com.flechazo.jnyzdairy.util;
+
+/**
+ * 像素级Alpha合成接口，直接在int数组形式的像素数据上执行SrcOver合成。
+ * <p>
+ * 源像素为非预乘的ARGB格式，目标像素为不透明的RGB格式（{@code TYPE_INT_RGB}），合成结果写回目标数组。
+ *
+ * @author Flechazo
+ */
+interface AlphaCompositor {
+
+    /**
+     * 将源区域以SrcOver方式合成到目标区域。
+     *
+     * @param dst       目标像素数组
+     * @param dstOffset 目标区域第一个像素在数组中的下标
+     * @param dstScan   目标图片每行的像素数
+     * @param src       源像素数组
+     * @param srcOffset 源区域第一个像素在数组中的下标
+     * @param srcScan   源图片每行的像素数
+     * @param width     合成区域宽度
+     * @param height    合成区域高度
+     */
+    void blend(int[] dst, int dstOffset, int dstScan, int[] src, int srcOffset, int srcScan, int width, int height);
+
+    /**
+     * 实现名称，用于日志输出。
+     *
+     * @return 实现名称
+     */
+    String name();
+}
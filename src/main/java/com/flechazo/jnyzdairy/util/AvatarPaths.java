@@ -0,0 +1,124 @@
+package com.flechazo.jnyzdairy.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 头像文件路径工具类。
+ * <p>
+ * 每次上传的头像渲染为几种固定尺寸的正方形图片，文件名由渲染结果的摘要和尺寸组成，
+ * 例如 {@code 1/avatar/0123456789abcdef-128.jpg}。文件内容与文件名一一对应，URL可以被客户端永久缓存。
+ * 用户记录中只保存最大尺寸的路径，其他尺寸的路径由它推导。
+ *
+ * @author Flechazo
+ */
+public class AvatarPaths {
+
+    /**
+     * 头像的渲染尺寸（像素），按升序排列。
+     */
+    public static final int[] SIZES = {48, 128, 512};
+
+    /**
+     * 头像变体路径，可以带或不带开头的用户ID。
+     */
+    private static final Pattern VARIANT = Pattern.compile("^((?:\\d+/)?avatar/[0-9a-f]{16})-(\\d+)\\.(jpg|png)$");
+
+    private AvatarPaths() {
+    }
+
+    /**
+     * 生成头像变体的访问路径。
+     *
+     * @param userId    用户ID
+     * @param hash      渲染结果的摘要
+     * @param size      尺寸
+     * @param extension 扩展名
+     * @return 访问路径
+     */
+    public static String variantPath(Long userId, String hash, int size, String extension) {
+        return userId + "/avatar/" + hash + "-" + size + "." + extension;
+    }
+
+    /**
+     * 判断路径是否为头像变体。
+     *
+     * @param path 访问路径或相对于用户的路径
+     * @return 是头像变体时返回 {@code true}
+     */
+    public static boolean isVariant(String path) {
+        return match(path) != null;
+    }
+
+    /**
+     * 将头像变体的路径映射为用户记录中保存的最大尺寸的路径，其他路径原样返回。
+     *
+     * @param path 访问路径或相对于用户的路径
+     * @return 最大尺寸的路径
+     */
+    public static String canonical(String path) {
+        Matcher matcher = match(path);
+        return matcher == null ? path : format(matcher, SIZES[SIZES.length - 1]);
+    }
+
+    /**
+     * 列出同一头像的所有尺寸的路径。
+     *
+     * @param path 任一尺寸的路径
+     * @return 所有尺寸的路径，不是头像变体时只包含该路径本身
+     */
+    public static List<String> variantPaths(String path) {
+        Matcher matcher = match(path);
+        if (matcher == null) {
+            return List.of(path);
+        }
+        List<String> paths = new ArrayList<>(SIZES.length);
+        for (int size : SIZES) {
+            paths.add(format(matcher, size));
+        }
+        return paths;
+    }
+
+    /**
+     * 选择不小于请求尺寸的最小变体，请求尺寸超过最大尺寸时返回最大尺寸。
+     *
+     * @param path      任一尺寸的路径
+     * @param requested 请求的边长
+     * @return 选中的变体路径，不是头像变体时返回 {@code null}
+     */
+    public static String smallestCovering(String path, int requested) {
+        Matcher matcher = match(path);
+        if (matcher == null) {
+            return null;
+        }
+        for (int size : SIZES) {
+            if (size >= requested) {
+                return format(matcher, size);
+            }
+        }
+        return format(matcher, SIZES[SIZES.length - 1]);
+    }
+
+    private static Matcher match(String path) {
+        if (path == null) {
+            return null;
+        }
+        Matcher matcher = VARIANT.matcher(path);
+        if (!matcher.matches()) {
+            return null;
+        }
+        int size = Integer.parseInt(matcher.group(2));
+        for (int candidate : SIZES) {
+            if (candidate == size) {
+                return matcher;
+            }
+        }
+        return null;
+    }
+
+    private static String format(Matcher matcher, int size) {
+        return matcher.group(1) + "-" + size + "." + matcher.group(3);
+    }
+}
@@ -0,0 +1,113 @@
+package com.flechazo.jnyzdairy.util;
+
+import com.flechazo.jnyzdairy.dto.RenderedAvatar;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import net.coobird.thumbnailator.Thumbnails;
+import net.coobird.thumbnailator.geometry.Positions;
+import org.springframework.stereotype.Component;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 头像渲染工具类，将上传的图片居中裁剪为正方形，并渲染为 {@link AvatarPaths#SIZES} 中的各个尺寸。
+ * <p>
+ * 渲染只在上传时进行一次，之后的请求直接读取对应尺寸的文件，不再解码原图。
+ *
+ * @author Flechazo
+ */
+@Component
+public class AvatarRenderer {
+
+    /**
+     * 读取EXIF方向所需的文件头字节数。
+     */
+    private static final int HEADER_SIZE = 128 * 1024;
+
+    /**
+     * 文件名中摘要的长度（十六进制字符数）。
+     */
+    private static final int HASH_LENGTH = 16;
+
+    private final ImageCodec imageCodec;
+    private final ImageUtils imageUtils;
+    private final Timer renderTimer;
+
+    /**
+     * 构造函数，用于依赖注入。
+     *
+     * @param imageCodec    图片编解码工具类
+     * @param imageUtils    图片处理工具类，用于检查像素预算和调整方向
+     * @param meterRegistry 指标注册表，用于记录渲染耗时
+     */
+    public AvatarRenderer(ImageCodec imageCodec, ImageUtils imageUtils, MeterRegistry meterRegistry) {
+        this.imageCodec = imageCodec;
+        this.imageUtils = imageUtils;
+        this.renderTimer = ImageUtils.operationTimer("avatar", meterRegistry);
+    }
+
+    /**
+     * 渲染头像。
+     * <p>
+     * 解码时按最大尺寸子采样，使短边仍不小于最大尺寸；按EXIF方向调整后居中裁剪，
+     * 带透明通道的图片输出PNG，其他输出JPEG。
+     *
+     * @param source 上传的图片文件
+     * @return 各个尺寸的编码数据
+     * @throws IOException 如果图片无法解码或编码
+     */
+    public RenderedAvatar render(Path source) throws IOException {
+        long start = System.nanoTime();
+        Dimension dimension = imageUtils.ensureDecodable(source);
+        int largest = AvatarPaths.SIZES[AvatarPaths.SIZES.length - 1];
+        int shortSide = Math.min(dimension.width, dimension.height);
+        BufferedImage decoded = shortSide > largest
+                ? imageCodec.read(source, (int) ((long) dimension.width * largest / shortSide),
+                (int) ((long) dimension.height * largest / shortSide))
+                : imageCodec.read(source);
+        BufferedImage image = imageUtils.applyOrientation(decoded, readOrientation(source));
+
+        boolean alpha = image.getColorModel().hasAlpha();
+        String format = alpha ? "png" : "jpeg";
+        Map<Integer, byte[]> variants = new LinkedHashMap<>();
+        for (int size : AvatarPaths.SIZES) {
+            BufferedImage variant = Thumbnails.of(image)
+                    .size(size, size)
+                    .crop(Positions.CENTER)
+                    .imageType(alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB)
+                    .asBufferedImage();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            imageCodec.write(variant, format, out);
+            variants.put(size, out.toByteArray());
+        }
+        renderTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return new RenderedAvatar(hash(variants.get(largest)), alpha ? "png" : "jpg", variants);
+    }
+
+    private int readOrientation(Path source) throws IOException {
+        try (InputStream input = Files.newInputStream(source)) {
+            return ImageHeaderParser.readOrientation(input.readNBytes(HEADER_SIZE));
+        }
+    }
+
+    private String hash(byte[] data) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(data)).substring(0, HASH_LENGTH);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
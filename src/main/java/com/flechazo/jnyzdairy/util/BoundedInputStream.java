@@ -0,0 +1,69 @@
+package com.flechazo.jnyzdairy.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 长度受限的输入流，读取到指定字节数后即视为流结束。
+ * <p>
+ * 与 {@link SizeLimitedInputStream} 不同，超过长度的数据不会引发异常，而是不再读取，用于读取文件中的一段。
+ *
+ * @author Flechazo
+ */
+public class BoundedInputStream extends FilterInputStream {
+
+    private long remaining;
+
+    /**
+     * 构造函数，包装给定的输入流。
+     *
+     * @param in     被包装的输入流
+     * @param length 允许读取的字节数
+     */
+    public BoundedInputStream(InputStream in, long length) {
+        super(in);
+        this.remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+        int b = super.read();
+        if (b >= 0) {
+            remaining--;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+        int n = super.read(b, off, (int) Math.min(len, remaining));
+        if (n > 0) {
+            remaining -= n;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(Math.min(n, remaining));
+        remaining -= skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(super.available(), remaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
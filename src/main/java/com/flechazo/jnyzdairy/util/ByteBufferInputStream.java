@@ -0,0 +1,53 @@
+package com.flechazo.jnyzdairy.util;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * 读取 {@link ByteBuffer} 内容的输入流，用于直接读取内存映射文件中的一段，不复制到堆内存。
+ *
+ * @author Flechazo
+ */
+public class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    /**
+     * 构造函数，读取缓冲区中从当前位置到上限之间的内容。
+     *
+     * @param buffer 缓冲区，读取时会改变其位置，调用方不应再使用
+     */
+    public ByteBufferInputStream(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+        return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) {
+        int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+}
@@ -0,0 +1,395 @@
+package com.flechazo.jnyzdairy.util;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 文件响应写出工具类，负责将磁盘文件高效地写入HTTP响应。
+ * <p>
+ * 支持单个及多个Range请求、强ETag与Last-Modified校验（匹配时返回304），
+ * 以及针对内容寻址文件的长期缓存头。本地文件的内容优先交给Tomcat的sendfile发送，不经过JVM；
+ * 不支持sendfile或需要分段（multipart/byteranges）发送时，通过 {@link FileChannel#transferTo} 写入响应流，
+ * 此时JDK内部仍会经由堆缓冲区复制；不在本地的内容（例如对象存储中的文件）通过 {@link RangeSource} 按区间读取。
+ *
+ * @author Flechazo
+ */
+@Component
+public class FileResponseWriter {
+
+    /**
+     * 内容寻址文件的缓存策略：内容永不改变，可长期缓存。
+     */
+    private static final String IMMUTABLE_CACHE_CONTROL = "private, max-age=31536000, immutable";
+
+    /**
+     * 普通文件的缓存策略：可以缓存，但每次使用前必须重新验证。
+     */
+    private static final String REVALIDATE_CACHE_CONTROL = "private, no-cache";
+
+    /**
+     * 单个请求允许的最大Range数量，超过时忽略Range返回完整内容。
+     */
+    private static final int MAX_RANGES = 16;
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    /**
+     * 将文件写入HTTP响应。
+     *
+     * @param request     HTTP请求对象
+     * @param response    HTTP响应对象
+     * @param file        要发送的文件
+     * @param contentType 文件的MIME类型
+     * @param etag        强ETag（含双引号），为 {@code null} 时根据文件大小和修改时间生成
+     * @param immutable   文件内容是否永不改变（内容寻址文件）
+     * @throws IOException 如果读取文件或写出响应时发生错误
+     */
+    public void write(HttpServletRequest request, HttpServletResponse response, Path file,
+                      String contentType, String etag, boolean immutable) throws IOException {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (!attrs.isRegularFile()) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        RangeSource source = (start, count, out) -> {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                transferFully(channel, start, count, Channels.newChannel(out));
+            }
+        };
+        write(request, response, file.getFileName().toString(), attrs.size(), attrs.lastModifiedTime().toMillis(),
+                contentType, etag, immutable, source, file);
+    }
+
+    /**
+     * 将任意来源的内容写入HTTP响应，用于不在本地文件系统中的对象（例如对象存储）。
+     *
+     * @param request      HTTP请求对象
+     * @param response     HTTP响应对象
+     * @param fileName     响应中使用的文件名
+     * @param length       内容总长度
+     * @param lastModified 最后修改时间（毫秒）
+     * @param contentType  内容的MIME类型
+     * @param etag         强ETag（含双引号），为 {@code null} 时根据长度和修改时间生成
+     * @param immutable    内容是否永不改变（内容寻址文件）
+     * @param source       按区间读取内容的数据源
+     * @throws IOException 如果读取内容或写出响应时发生错误
+     */
+    public void write(HttpServletRequest request, HttpServletResponse response, String fileName, long length,
+                      long lastModified, String contentType, String etag, boolean immutable,
+                      RangeSource source) throws IOException {
+        write(request, response, fileName, length, lastModified, contentType, etag, immutable, source, null);
+    }
+
+    /**
+     * 写出响应头和内容。
+     *
+     * @param sendfile 本地文件路径，存在时单区间内容优先交给容器的sendfile发送
+     */
+    private void write(HttpServletRequest request, HttpServletResponse response, String fileName, long length,
+                       long lastModified, String contentType, String etag, boolean immutable,
+                       RangeSource source, Path sendfile) throws IOException {
+        lastModified = lastModified / 1000 * 1000;
+        if (etag == null) {
+            etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+        }
+
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, immutable ? IMMUTABLE_CACHE_CONTROL : REVALIDATE_CACHE_CONTROL);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        /* 条件请求：资源未改变时返回304 */
+        if (isNotModified(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + fileName + "\"");
+        boolean head = "HEAD".equalsIgnoreCase(request.getMethod());
+
+        List<long[]> ranges = null;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && isIfRangeSatisfied(request, etag, lastModified)) {
+            ranges = mergeRanges(parseRanges(rangeHeader, length), length);
+            if (ranges != null && ranges.isEmpty()) {
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                return;
+            }
+        }
+
+        if (ranges == null) {
+            /* 完整内容 */
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(contentType);
+            response.setContentLengthLong(length);
+            if (!head) {
+                transfer(request, response, source, sendfile, 0, length);
+            }
+        } else if (ranges.size() == 1) {
+            /* 单个Range */
+            long[] range = ranges.get(0);
+            long rangeLength = range[1] - range[0] + 1;
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setContentType(contentType);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + range[0] + "-" + range[1] + "/" + length);
+            response.setContentLengthLong(rangeLength);
+            if (!head) {
+                transfer(request, response, source, sendfile, range[0], rangeLength);
+            }
+        } else {
+            /* 多个Range，使用multipart/byteranges */
+            writeMultipart(response, source, contentType, ranges, length, head);
+        }
+    }
+
+    /**
+     * 判断条件请求是否表明客户端缓存仍然有效。If-None-Match存在时优先于If-Modified-Since。
+     */
+    private boolean isNotModified(HttpServletRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            return matchesEtag(ifNoneMatch, etag, true);
+        }
+        long ifModifiedSince = parseDateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+        return ifModifiedSince != -1 && lastModified <= ifModifiedSince;
+    }
+
+    /**
+     * 判断If-Range条件是否满足；不满足时应忽略Range返回完整内容。
+     */
+    private boolean isIfRangeSatisfied(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return matchesEtag(ifRange, etag, false);
+        }
+        long date = parseDateHeader(request, HttpHeaders.IF_RANGE);
+        return date != -1 && lastModified <= date;
+    }
+
+    /**
+     * 比较ETag列表。弱比较用于If-None-Match，强比较用于If-Range。
+     */
+    private boolean matchesEtag(String header, String etag, boolean weak) {
+        for (String candidate : header.split(",")) {
+            String tag = candidate.trim();
+            if ("*".equals(tag)) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                if (!weak) {
+                    continue;
+                }
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long parseDateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 解析Range头。
+     *
+     * @return 闭区间列表；头格式不受支持或Range过多时返回 {@code null}（按完整内容处理），
+     * 全部Range都无法满足时返回空列表
+     */
+    private List<long[]> parseRanges(String header, long length) {
+        if (!header.startsWith("bytes=")) {
+            return null;
+        }
+        String[] specs = header.substring("bytes=".length()).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+
+        List<long[]> ranges = new ArrayList<>(specs.length);
+        for (String spec : specs) {
+            String value = spec.trim();
+            int dash = value.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            try {
+                long start;
+                long end;
+                if (dash == 0) {
+                    /* 后缀形式：最后N个字节 */
+                    long suffix = Long.parseLong(value.substring(1));
+                    if (suffix <= 0) {
+                        continue;
+                    }
+                    start = Math.max(0, length - suffix);
+                    end = length - 1;
+                } else {
+                    start = Long.parseLong(value.substring(0, dash));
+                    end = dash == value.length() - 1 ? length - 1 : Long.parseLong(value.substring(dash + 1));
+                    if (end < start) {
+                        return null;
+                    }
+                    end = Math.min(end, length - 1);
+                }
+                if (start < length) {
+                    ranges.add(new long[]{start, end});
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * 按起始位置排序并合并重叠或相邻的Range，防止重复的Range使一个请求多次发送同一段内容。
+     * <p>
+     * 多个Range合并后覆盖了整个内容时，按RFC 9110 §14.2 忽略Range，返回完整内容。
+     *
+     * @param ranges {@link #parseRanges} 的结果
+     * @param length 内容总长度
+     * @return 合并后的闭区间列表；需要返回完整内容时为 {@code null}，全部Range都无法满足时为空列表
+     */
+    private List<long[]> mergeRanges(List<long[]> ranges, long length) {
+        if (ranges == null || ranges.size() <= 1) {
+            return ranges;
+        }
+        ranges.sort(Comparator.comparingLong(range -> range[0]));
+        List<long[]> merged = new ArrayList<>(ranges.size());
+        long[] current = ranges.get(0);
+        for (int i = 1; i < ranges.size(); i++) {
+            long[] next = ranges.get(i);
+            if (next[0] <= current[1] + 1) {
+                current = new long[]{current[0], Math.max(current[1], next[1])};
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+
+        long total = 0;
+        for (long[] range : merged) {
+            total += range[1] - range[0] + 1;
+        }
+        return total >= length ? null : merged;
+    }
+
+    /**
+     * 以multipart/byteranges格式写出多个Range。
+     */
+    private void writeMultipart(HttpServletResponse response, RangeSource source, String contentType,
+                                List<long[]> ranges, long length, boolean head) throws IOException {
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        long contentLength = 0;
+        for (long[] range : ranges) {
+            byte[] partHeader = ("\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": bytes " + range[0] + "-" + range[1] + "/" + length + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(partHeader);
+            contentLength += partHeader.length + range[1] - range[0] + 1;
+        }
+        byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        contentLength += closing.length;
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        if (head) {
+            return;
+        }
+
+        OutputStream out = response.getOutputStream();
+        for (int i = 0; i < ranges.size(); i++) {
+            long[] range = ranges.get(i);
+            out.write(partHeaders.get(i));
+            source.copy(range[0], range[1] - range[0] + 1, out);
+        }
+        out.write(closing);
+    }
+
+    /**
+     * 发送内容的一段：本地文件优先使用Tomcat的sendfile，否则交给数据源写出。
+     */
+    private void transfer(HttpServletRequest request, HttpServletResponse response, RangeSource source,
+                          Path file, long start, long count) throws IOException {
+        if (file != null && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            /* 由容器在请求处理完成后通过sendfile直接发送文件 */
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, start + count);
+            return;
+        }
+
+        source.copy(start, count, response.getOutputStream());
+    }
+
+    private void transferFully(FileChannel channel, long position, long count, WritableByteChannel out)
+            throws IOException {
+        long end = position + count;
+        while (position < end) {
+            long sent = channel.transferTo(position, end - position, out);
+            if (sent <= 0) {
+                throw new IOException("File truncated while sending");
+            }
+            position += sent;
+        }
+    }
+
+    /**
+     * 按区间读取内容的数据源。
+     */
+    @FunctionalInterface
+    public interface RangeSource {
+
+        /**
+         * 将内容中的一段写入输出流。
+         *
+         * @param start 起始位置
+         * @param count 字节数
+         * @param out   输出流，实现不应关闭该流
+         * @throws IOException 如果读取或写出时发生错误
+         */
+        void copy(long start, long count, OutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,95 @@
+package com.flechazo.jnyzdairy.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * 文件头捕获输入流，在数据流经时保留开头的若干字节并统计总字节数。
+ * <p>
+ * 用于在一次读取上传数据的过程中同时获得解析文件头所需的数据，而无需再次读取文件。
+ *
+ * @author Flechazo
+ */
+public class HeaderCapturingInputStream extends FilterInputStream {
+
+    private final byte[] header;
+    private int captured;
+    private long count;
+
+    /**
+     * 构造函数，包装给定的输入流。
+     *
+     * @param in       被包装的输入流
+     * @param capacity 最多保留的开头字节数
+     */
+    public HeaderCapturingInputStream(InputStream in, int capacity) {
+        super(in);
+        this.header = new byte[capacity];
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            if (captured < header.length) {
+                header[captured++] = (byte) b;
+            }
+            count++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            int copy = Math.min(n, header.length - captured);
+            if (copy > 0) {
+                System.arraycopy(b, off, header, captured, copy);
+                captured += copy;
+            }
+            count += n;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        /* 跳过的数据无法被捕获，这里改为读取并丢弃 */
+        byte[] buffer = new byte[8192];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * 获取已捕获的文件头数据。
+     *
+     * @return 已捕获字节的副本
+     */
+    public byte[] getHeader() {
+        return Arrays.copyOf(header, captured);
+    }
+
+    /**
+     * 获取已读取的总字节数。
+     *
+     * @return 总字节数
+     */
+    public long getCount() {
+        return count;
+    }
+}
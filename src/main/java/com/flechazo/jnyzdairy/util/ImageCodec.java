@@ -0,0 +1,258 @@
+package com.flechazo.jnyzdairy.util;
+
+import com.flechazo.jnyzdairy.config.ImageConfig;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.*;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 图片编解码工具类，统一管理ImageIO读取器和写入器的使用方式。
+ * <p>
+ * 解码时根据目标尺寸设置源图像子采样，只解码生成目标图片所需的像素，缩略图场景下的内存占用约为完整解码的
+ * 1/(缩小倍数²)。读取器和写入器按线程复用，避免每次调用都重新查找和创建；ImageIO的磁盘缓存被关闭，
+ * 流数据只缓存在内存中。
+ *
+ * @author Flechazo
+ */
+@Component
+public class ImageCodec {
+
+    static {
+        /* 关闭ImageIO的临时文件缓存，避免每次读写都在临时目录中创建文件 */
+        ImageIO.setUseCache(false);
+    }
+
+    /**
+     * 每个线程复用的读取器，按格式名索引。
+     */
+    private static final ThreadLocal<Map<String, ImageReader>> READERS = ThreadLocal.withInitial(HashMap::new);
+
+    /**
+     * 每个线程复用的写入器，按格式名索引。
+     */
+    private static final ThreadLocal<Map<String, ImageWriter>> WRITERS = ThreadLocal.withInitial(HashMap::new);
+
+    /**
+     * 识别图片格式所需的文件头字节数。
+     */
+    private static final int MAGIC_SIZE = 16;
+
+    /**
+     * PNG的最高deflate压缩级别，对应ImageIO的压缩质量0。
+     */
+    private static final float PNG_MAX_DEFLATE = 0.0f;
+
+    private final ImageConfig.Jpeg jpegConfig;
+
+    /**
+     * 构造函数，用于依赖注入。
+     *
+     * @param imageConfig 图片处理配置
+     */
+    public ImageCodec(ImageConfig imageConfig) {
+        this.jpegConfig = imageConfig.getJpeg();
+    }
+
+    /**
+     * 完整解码图片。
+     *
+     * @param source 图片的路径
+     * @return 解码后的图片
+     * @throws IOException 如果文件无法读取或不是受支持的图片格式
+     */
+    public BufferedImage read(Path source) throws IOException {
+        return read(source, 0, 0);
+    }
+
+    /**
+     * 解码图片，并根据目标尺寸进行源图像子采样。
+     * <p>
+     * 目标尺寸按保持纵横比缩放到目标框内的方式理解。子采样步长取最大的整数，使解码结果缩放到目标框内时
+     * 仍然只需缩小而不需要放大；解码结果还需再缩放到精确尺寸。
+     *
+     * @param source       图片的路径
+     * @param targetWidth  目标宽度，不大于0表示不限制
+     * @param targetHeight 目标高度，不大于0表示不限制
+     * @return 解码后的图片
+     * @throws IOException 如果文件无法读取或不是受支持的图片格式
+     */
+    public BufferedImage read(Path source, int targetWidth, int targetHeight) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            if (input == null) {
+                throw new IOException("Cannot open image: " + source);
+            }
+            ImageReader reader = getReader(detectFormat(input, source));
+            try {
+                reader.setInput(input, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = subsampling(reader.getWidth(0), reader.getHeight(0), targetWidth, targetHeight);
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.reset();
+            }
+        }
+    }
+
+    /**
+     * 将图片编码写入文件，文件已存在时覆盖。
+     *
+     * @param image  图片
+     * @param format 输出格式名，例如 {@code jpeg}、{@code png}
+     * @param target 目标文件路径
+     * @throws IOException 如果编码或写入时发生错误
+     */
+    public void write(BufferedImage image, String format, Path target) throws IOException {
+        try (OutputStream out = Files.newOutputStream(target)) {
+            write(image, format, out);
+        }
+    }
+
+    /**
+     * 将图片编码写入输出流。JPEG使用配置的压缩质量和渐进式设置。
+     *
+     * @param image  图片
+     * @param format 输出格式名，例如 {@code jpeg}、{@code png}
+     * @param out    输出流，调用方负责关闭
+     * @throws IOException 如果编码或写入时发生错误
+     */
+    public void write(BufferedImage image, String format, OutputStream out) throws IOException {
+        encode(image, format, out, jpegConfig.getQuality(), jpegConfig.isProgressive(), false);
+    }
+
+    /**
+     * 以尽可能小的体积将图片编码为JPEG：使用渐进式编码和优化的霍夫曼表。
+     *
+     * @param image   图片
+     * @param out     输出流，调用方负责关闭
+     * @param quality 压缩质量，取值范围0.0-1.0
+     * @throws IOException 如果编码或写入时发生错误
+     */
+    public void writeCompactJpeg(BufferedImage image, OutputStream out, float quality) throws IOException {
+        encode(image, "jpeg", out, quality, true, true);
+    }
+
+    /**
+     * 以尽可能小的体积将图片编码为PNG：使用最高的deflate压缩级别。
+     *
+     * @param image 图片
+     * @param out   输出流，调用方负责关闭
+     * @throws IOException 如果编码或写入时发生错误
+     */
+    public void writeCompactPng(BufferedImage image, OutputStream out) throws IOException {
+        encode(image, "png", out, PNG_MAX_DEFLATE, false, true);
+    }
+
+    /**
+     * 按格式设置写入参数并编码。{@code quality} 对JPEG是压缩质量，对紧凑编码的PNG是压缩级别。
+     */
+    private void encode(BufferedImage image, String format, OutputStream out, float quality,
+                        boolean progressive, boolean compact) throws IOException {
+        String name = normalizeFormat(format);
+        ImageWriter writer = getWriter(name);
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if ("jpeg".equals(name)) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            param.setProgressiveMode(progressive ? ImageWriteParam.MODE_DEFAULT : ImageWriteParam.MODE_DISABLED);
+            if (param instanceof JPEGImageWriteParam jpegParam) {
+                jpegParam.setOptimizeHuffmanTables(true);
+            }
+        } else if (compact && "png".equals(name) && param.canWriteCompressed()) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+        }
+
+        try (ImageOutputStream output = new MemoryCacheImageOutputStream(out)) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.reset();
+        }
+    }
+
+    /**
+     * 判断运行环境中是否存在指定格式的写入器。
+     *
+     * @param format 格式名
+     * @return 存在写入器时返回 {@code true}
+     */
+    public boolean canWrite(String format) {
+        return ImageIO.getImageWritersByFormatName(normalizeFormat(format)).hasNext();
+    }
+
+    /**
+     * 计算子采样步长：缩放比例由受限最严格的一边决定，步长不超过该比例的倒数。
+     */
+    private int subsampling(int width, int height, int targetWidth, int targetHeight) {
+        int byWidth = targetWidth > 0 ? width / targetWidth : 0;
+        int byHeight = targetHeight > 0 ? height / targetHeight : 0;
+        return Math.max(1, Math.max(byWidth, byHeight));
+    }
+
+    /**
+     * 根据文件头的魔数识别格式，不创建新的读取器实例；无法识别时退回ImageIO的探测机制。
+     */
+    private String detectFormat(ImageInputStream input, Path source) throws IOException {
+        byte[] magic = new byte[MAGIC_SIZE];
+        input.mark();
+        int read = input.read(magic);
+        input.reset();
+        String mimeType = read > 0 ? ImageHeaderParser.detectMimeType(magic) : null;
+        if (mimeType != null) {
+            return mimeType.substring("image/".length());
+        }
+        Iterator<ImageReader> candidates = ImageIO.getImageReaders(input);
+        if (!candidates.hasNext()) {
+            throw new IOException("Unsupported image format: " + source);
+        }
+        return candidates.next().getFormatName();
+    }
+
+    private ImageReader getReader(String format) throws IOException {
+        String name = normalizeFormat(format);
+        ImageReader reader = READERS.get().get(name);
+        if (reader == null) {
+            Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName(name);
+            if (!readers.hasNext()) {
+                throw new IOException("No image reader for format: " + name);
+            }
+            reader = readers.next();
+            READERS.get().put(name, reader);
+        }
+        return reader;
+    }
+
+    private ImageWriter getWriter(String name) throws IOException {
+        ImageWriter writer = WRITERS.get().get(name);
+        if (writer == null) {
+            Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(name);
+            if (!writers.hasNext()) {
+                throw new IOException("No image writer for format: " + name);
+            }
+            writer = writers.next();
+            WRITERS.get().put(name, writer);
+        }
+        return writer;
+    }
+
+    private String normalizeFormat(String format) {
+        String lower = format.toLowerCase(Locale.ROOT);
+        return "jpg".equals(lower) ? "jpeg" : lower;
+    }
+}
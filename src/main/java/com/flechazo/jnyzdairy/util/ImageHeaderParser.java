@@ -0,0 +1,181 @@
+package com.flechazo.jnyzdairy.util;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.Dimension;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+/**
+ * 图片文件头解析工具类，从图片开头的若干字节中识别格式、读取尺寸和EXIF方向。
+ * <p>
+ * 所有方法都只解析文件头，不会解码像素数据。
+ *
+ * @author Flechazo
+ */
+public class ImageHeaderParser {
+
+    /**
+     * EXIF中方向信息的标签号。
+     */
+    private static final int ORIENTATION_TAG = 0x0112;
+
+    private ImageHeaderParser() {
+    }
+
+    /**
+     * 根据文件头的魔数识别图片的MIME类型。
+     *
+     * @param header 文件开头的字节
+     * @return 识别出的MIME类型，无法识别时返回 {@code null}
+     */
+    public static String detectMimeType(byte[] header) {
+        if (startsWith(header, 0, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(header, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return "image/png";
+        }
+        if (startsWith(header, 0, 'G', 'I', 'F', '8')) {
+            return "image/gif";
+        }
+        if (startsWith(header, 0, 'R', 'I', 'F', 'F') && startsWith(header, 8, 'W', 'E', 'B', 'P')) {
+            return "image/webp";
+        }
+        return null;
+    }
+
+    /**
+     * 从文件头中读取图片尺寸。
+     *
+     * @param header 文件开头的字节
+     * @return 图片宽高，文件头不完整或格式不受支持时返回 {@code null}
+     */
+    public static Dimension readDimensions(byte[] header) {
+        return readDimensions(new ByteArrayInputStream(header));
+    }
+
+    /**
+     * 从输入流中读取图片尺寸。
+     * <p>
+     * 只读取到尺寸信息所在的位置为止，读取过的数据缓存在内存中而不是临时文件中。
+     *
+     * @param stream 从文件开头开始的输入流，调用方负责关闭
+     * @return 图片宽高，数据不完整或格式不受支持时返回 {@code null}
+     */
+    public static Dimension readDimensions(InputStream stream) {
+        try (ImageInputStream input = new MemoryCacheImageInputStream(stream)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            /* 捕获的文件头不足以解析尺寸 */
+            return null;
+        }
+    }
+
+    /**
+     * 从JPEG文件头的EXIF段中读取方向值。
+     *
+     * @param header 文件开头的字节
+     * @return EXIF方向值（1-8），不存在或无法解析时返回1
+     */
+    public static int readOrientation(byte[] header) {
+        if (!startsWith(header, 0, 0xFF, 0xD8)) {
+            return 1;
+        }
+        int offset = 2;
+        while (offset + 4 <= header.length) {
+            if ((header[offset] & 0xFF) != 0xFF) {
+                return 1;
+            }
+            int marker = header[offset + 1] & 0xFF;
+            if (marker == 0xD9 || marker == 0xDA) {
+                /* 图像数据开始，之后不会再有EXIF段 */
+                return 1;
+            }
+            int segmentLength = readUnsignedShort(header, offset + 2, false);
+            int segmentStart = offset + 4;
+            if (marker == 0xE1 && startsWith(header, segmentStart, 'E', 'x', 'i', 'f', 0, 0)) {
+                return readTiffOrientation(header, segmentStart + 6, offset + 2 + segmentLength);
+            }
+            offset += 2 + segmentLength;
+        }
+        return 1;
+    }
+
+    /**
+     * 解析TIFF结构的第0个IFD，查找方向标签。
+     */
+    private static int readTiffOrientation(byte[] data, int tiffStart, int limit) {
+        limit = Math.min(limit, data.length);
+        if (tiffStart + 8 > limit) {
+            return 1;
+        }
+        boolean littleEndian;
+        if (data[tiffStart] == 'I' && data[tiffStart + 1] == 'I') {
+            littleEndian = true;
+        } else if (data[tiffStart] == 'M' && data[tiffStart + 1] == 'M') {
+            littleEndian = false;
+        } else {
+            return 1;
+        }
+
+        long ifdOffset = readUnsignedInt(data, tiffStart + 4, littleEndian);
+        int ifd = tiffStart + (int) Math.min(ifdOffset, Integer.MAX_VALUE - tiffStart);
+        if (ifdOffset < 8 || ifd + 2 > limit) {
+            return 1;
+        }
+        int entries = readUnsignedShort(data, ifd, littleEndian);
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > limit) {
+                return 1;
+            }
+            if (readUnsignedShort(data, entry, littleEndian) == ORIENTATION_TAG) {
+                int value = readUnsignedShort(data, entry + 8, littleEndian);
+                return value >= 1 && value <= 8 ? value : 1;
+            }
+        }
+        return 1;
+    }
+
+    private static boolean startsWith(byte[] data, int offset, int... prefix) {
+        if (offset + prefix.length > data.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if ((data[offset + i] & 0xFF) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readUnsignedShort(byte[] data, int offset, boolean littleEndian) {
+        int b0 = data[offset] & 0xFF;
+        int b1 = data[offset + 1] & 0xFF;
+        return littleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    private static long readUnsignedInt(byte[] data, int offset, boolean littleEndian) {
+        long value = 0;
+        for (int i = 0; i < 4; i++) {
+            int shift = littleEndian ? i * 8 : (3 - i) * 8;
+            value |= (long) (data[offset + i] & 0xFF) << shift;
+        }
+        return value;
+    }
+}
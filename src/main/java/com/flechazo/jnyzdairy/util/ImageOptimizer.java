@@ -0,0 +1,277 @@
+package com.flechazo.jnyzdairy.util;
+
+import com.flechazo.jnyzdairy.config.ImageConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 图片体积优化工具类，在上传的原图保存之前减小其体积。
+ * <p>
+ * JPEG图片会去除EXIF、XMP、注释等非必要的元数据段（保留色彩相关的JFIF、ICC和Adobe段），扫描数据原样复制，
+ * 不涉及重新编码；带有EXIF方向信息的图片保留只含方向标签的最小EXIF段。有损的重新编码默认关闭，
+ * 开启后按方向旋转并以渐进式编码和优化的霍夫曼表重新编码，同时带上原图的ICC配置。
+ * PNG图片以最高的deflate压缩级别重新编码。只有当优化后的文件比原文件更小时才会替换原文件。
+ *
+ * @author Flechazo
+ */
+@Component
+public class ImageOptimizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageOptimizer.class);
+
+    /**
+     * JPEG标记：图像开始、图像结束、扫描开始。
+     */
+    private static final int SOI = 0xD8;
+    private static final int EOI = 0xD9;
+    private static final int SOS = 0xDA;
+
+    /**
+     * JPEG标记：APP0（JFIF）、APP1（EXIF）、APP2（ICC配置）、APP14（Adobe色彩变换）、注释。
+     */
+    private static final int APP0 = 0xE0;
+    private static final int APP1 = 0xE1;
+    private static final int APP2 = 0xE2;
+    private static final int APP14 = 0xEE;
+    private static final int COM = 0xFE;
+
+    private static final byte[] ICC_PROFILE = "ICC_PROFILE\0".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * 只含方向标签的EXIF段：EXIF标识、大端TIFF头、含一个条目的第0个IFD，方向值位于 {@link #ORIENTATION_OFFSET}。
+     */
+    private static final byte[] ORIENTATION_EXIF = {
+            'E', 'x', 'i', 'f', 0, 0,
+            'M', 'M', 0, 0x2A, 0, 0, 0, 8,
+            0, 1,
+            0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, 0, 0, 0,
+            0, 0, 0, 0
+    };
+    private static final int ORIENTATION_OFFSET = 25;
+
+    private final ImageConfig.Optimize config;
+    private final ImageCodec imageCodec;
+    private final ImageUtils imageUtils;
+
+    /**
+     * 构造函数，用于依赖注入。
+     *
+     * @param imageConfig 图片处理配置
+     * @param imageCodec  图片编解码工具类
+     * @param imageUtils  图片处理工具类
+     */
+    public ImageOptimizer(ImageConfig imageConfig, ImageCodec imageCodec, ImageUtils imageUtils) {
+        this.config = imageConfig.getOptimize();
+        this.imageCodec = imageCodec;
+        this.imageUtils = imageUtils;
+    }
+
+    /**
+     * 优化图片文件，优化结果更小时原地替换该文件。
+     * <p>
+     * 优化失败（例如ImageIO不支持的CMYK JPEG）时保留原文件，不会抛出异常。
+     *
+     * @param file        图片文件，调用方需保证该文件未被其他地方引用
+     * @param mimeType    根据文件头识别出的MIME类型
+     * @param orientation 图片的EXIF方向值
+     * @return 文件被替换时返回 {@code true}
+     */
+    public boolean optimize(Path file, String mimeType, int orientation) {
+        if (!config.isEnabled()) {
+            return false;
+        }
+        List<Path> candidates = new ArrayList<>();
+        try {
+            if ("image/jpeg".equals(mimeType)) {
+                optimizeJpeg(file, orientation, candidates);
+            } else if ("image/png".equals(mimeType)) {
+                Path encoded = sibling(file, candidates);
+                try (OutputStream out = Files.newOutputStream(encoded)) {
+                    imageCodec.writeCompactPng(imageCodec.read(file), out);
+                }
+            }
+
+            long originalSize = Files.size(file);
+            Path best = null;
+            long bestSize = originalSize;
+            for (Path candidate : candidates) {
+                long size = Files.size(candidate);
+                if (size < bestSize) {
+                    best = candidate;
+                    bestSize = size;
+                }
+            }
+            if (best == null) {
+                return false;
+            }
+            Files.move(best, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.debug("Optimized image {} from {} to {} bytes", file.getFileName(), originalSize, bestSize);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Skipped optimizing image {}", file.getFileName(), e);
+            return false;
+        } finally {
+            for (Path candidate : candidates) {
+                try {
+                    Files.deleteIfExists(candidate);
+                } catch (IOException e) {
+                    logger.warn("Failed to delete temporary file: {}", candidate, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 生成JPEG的候选文件。
+     * <p>
+     * 默认只生成去除元数据的无损副本，方向值不为1时保留只含方向标签的EXIF段，显示效果与原图一致。
+     * 开启重新编码时另外生成按方向旋转后重新编码的有损副本，并插入原图的ICC配置段，避免广色域图片偏色。
+     */
+    private void optimizeJpeg(Path file, int orientation, List<Path> candidates) throws IOException {
+        Path stripped = sibling(file, candidates);
+        List<byte[]> iccSegments = stripJpegMetadata(file, stripped, orientation);
+        if (!config.isReencodeJpeg()) {
+            return;
+        }
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try {
+            BufferedImage image = imageUtils.applyOrientation(imageCodec.read(file), orientation);
+            imageCodec.writeCompactJpeg(image, encoded, config.getJpegQuality());
+        } catch (IOException | RuntimeException e) {
+            /* ImageIO无法解码的JPEG（例如CMYK）仍可使用无损副本 */
+            logger.debug("Skipped re-encoding image {}", file.getFileName(), e);
+            return;
+        }
+        writeWithSegments(encoded.toByteArray(), APP2, iccSegments, sibling(file, candidates));
+    }
+
+    /**
+     * 逐段复制JPEG文件，丢弃非必要的APPn段和注释段，扫描数据原样复制，不涉及重新编码。
+     * 方向值不为1时在JFIF段之后写入只含方向标签的EXIF段。
+     *
+     * @return 原图中的ICC配置段
+     */
+    private List<byte[]> stripJpegMetadata(Path source, Path target, int orientation) throws IOException {
+        List<byte[]> iccSegments = new ArrayList<>();
+        byte[] exif = orientation == 1 ? null : orientationExif(orientation);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source)));
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(target))) {
+            if (in.readUnsignedByte() != 0xFF || in.readUnsignedByte() != SOI) {
+                throw new IOException("Not a JPEG file");
+            }
+            out.write(0xFF);
+            out.write(SOI);
+
+            while (true) {
+                if (in.readUnsignedByte() != 0xFF) {
+                    throw new IOException("Invalid JPEG marker");
+                }
+                int marker = in.readUnsignedByte();
+                while (marker == 0xFF) {
+                    /* 填充字节 */
+                    marker = in.readUnsignedByte();
+                }
+                if (marker == EOI) {
+                    out.write(0xFF);
+                    out.write(EOI);
+                    return iccSegments;
+                }
+                if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                    /* 无数据段的标记 */
+                    out.write(0xFF);
+                    out.write(marker);
+                    continue;
+                }
+
+                int length = in.readUnsignedShort();
+                byte[] payload = new byte[length - 2];
+                in.readFully(payload);
+                if (isEssentialSegment(marker, payload)) {
+                    if (exif != null && marker != APP0) {
+                        /* 扫描开始段一定会被保留，EXIF段最迟在它之前写入 */
+                        writeSegment(out, APP1, exif);
+                        exif = null;
+                    }
+                    writeSegment(out, marker, payload);
+                    if (marker == APP2) {
+                        iccSegments.add(payload);
+                    }
+                }
+                if (marker == SOS) {
+                    /* 扫描数据及之后的内容原样复制 */
+                    in.transferTo(out);
+                    return iccSegments;
+                }
+            }
+        }
+    }
+
+    /**
+     * 将编码好的JPEG写入文件，并在开头的JFIF段之后插入指定的段。
+     */
+    private void writeWithSegments(byte[] jpeg, int marker, List<byte[]> payloads, Path target) throws IOException {
+        if (jpeg.length < 4 || (jpeg[0] & 0xFF) != 0xFF || (jpeg[1] & 0xFF) != SOI) {
+            throw new IOException("Not a JPEG file");
+        }
+        int offset = 2;
+        if (jpeg.length >= 6 && (jpeg[2] & 0xFF) == 0xFF && (jpeg[3] & 0xFF) == APP0) {
+            offset = 4 + (((jpeg[4] & 0xFF) << 8) | (jpeg[5] & 0xFF));
+        }
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target))) {
+            out.write(jpeg, 0, offset);
+            for (byte[] payload : payloads) {
+                writeSegment(out, marker, payload);
+            }
+            out.write(jpeg, offset, jpeg.length - offset);
+        }
+    }
+
+    private void writeSegment(OutputStream out, int marker, byte[] payload) throws IOException {
+        int length = payload.length + 2;
+        out.write(0xFF);
+        out.write(marker);
+        out.write(length >> 8);
+        out.write(length & 0xFF);
+        out.write(payload);
+    }
+
+    private byte[] orientationExif(int orientation) {
+        byte[] exif = ORIENTATION_EXIF.clone();
+        exif[ORIENTATION_OFFSET] = (byte) orientation;
+        return exif;
+    }
+
+    /**
+     * 判断段是否需要保留：所有非APPn、非注释段都是解码所需的，APPn中只保留与色彩相关的段。
+     */
+    private boolean isEssentialSegment(int marker, byte[] payload) {
+        if (marker == COM) {
+            return false;
+        }
+        if (marker < APP0 || marker > 0xEF) {
+            return true;
+        }
+        if (marker == APP0 || marker == APP14) {
+            return true;
+        }
+        return marker == APP2 && payload.length >= ICC_PROFILE.length
+                && Arrays.equals(payload, 0, ICC_PROFILE.length, ICC_PROFILE, 0, ICC_PROFILE.length);
+    }
+
+    private Path sibling(Path file, List<Path> candidates) {
+        Path candidate = file.resolveSibling(file.getFileName() + "." + candidates.size() + ".opt");
+        candidates.add(candidate);
+        return candidate;
+    }
+}
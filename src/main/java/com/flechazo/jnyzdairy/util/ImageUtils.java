@@ -1,93 +1,136 @@
 package com.flechazo.jnyzdairy.util;
 
+import com.flechazo.jnyzdairy.config.ImageConfig;
+import com.flechazo.jnyzdairy.exception.FileStorageException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import net.coobird.thumbnailator.Thumbnails;
-import net.coobird.thumbnailator.geometry.Positions;
-import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Component;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 图片处理工具类，提供图片水印添加、压缩等功能。
+ * <p>
+ * 所有需要解码像素的操作都会先根据文件头中的尺寸检查像素预算，超出预算的图片不会被解码。
  *
  * @author Flechazo
  */
 @Component
 public class ImageUtils {
 
+    private final ImageConfig imageConfig;
+    private final ImageCodec imageCodec;
+    private final WatermarkEngine watermarkEngine;
+
+    /**
+     * 各图片处理操作的耗时计时器，包括解码、处理和编码写回的全部时间。
+     */
+    private final Timer textWatermarkTimer;
+    private final Timer imageWatermarkTimer;
+    private final Timer compressTimer;
+
+    /**
+     * 构造函数，用于依赖注入。
+     *
+     * @param imageConfig     图片处理配置
+     * @param imageCodec      图片编解码工具类
+     * @param watermarkEngine 水印引擎
+     * @param meterRegistry   指标注册表，用于记录图片处理的耗时
+     */
+    public ImageUtils(ImageConfig imageConfig, ImageCodec imageCodec, WatermarkEngine watermarkEngine,
+                      MeterRegistry meterRegistry) {
+        this.imageConfig = imageConfig;
+        this.imageCodec = imageCodec;
+        this.watermarkEngine = watermarkEngine;
+        this.textWatermarkTimer = operationTimer("text-watermark", meterRegistry);
+        this.imageWatermarkTimer = operationTimer("image-watermark", meterRegistry);
+        this.compressTimer = operationTimer("compress", meterRegistry);
+    }
+
+    /**
+     * 创建图片处理操作的计时器 {@code image.operation}，其他图片组件也使用同一名称按操作区分。
+     *
+     * @param operation     操作名称
+     * @param meterRegistry 指标注册表
+     * @return 计时器
+     */
+    public static Timer operationTimer(String operation, MeterRegistry meterRegistry) {
+        return Timer.builder("image.operation")
+                .description("Latency of image processing operations")
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+
     /**
      * 添加文字水印到图片上。
      * <p>
-     * 该方法读取原始图片文件，创建一个新的带有指定文字水印的图片，并保存覆盖原文件。
-     * 水印将被放置在图片的右下角，使用半透明白色字体显示。
+     * 该方法读取原始图片文件，将预先渲染好的文字水印图层叠加到图片右下角，并保存覆盖原文件。
+     * 水印使用半透明白色字体显示。
      *
      * @param sourcePath 原始图片的路径
      * @param text       要添加的文字水印内容
      * @throws IOException 如果读取或写入图片时发生错误
      */
     public void addTextWatermark(Path sourcePath, String text) throws IOException {
-        /* 读取原图片 */
-        BufferedImage sourceImage = ImageIO.read(sourcePath.toFile());
-
-        /* 创建图片缓存对象 */
-        BufferedImage resultImage = new BufferedImage(
-                sourceImage.getWidth(),
-                sourceImage.getHeight(),
-                BufferedImage.TYPE_INT_RGB);
-
-        /* 获取Graphics2D对象 */
-        Graphics2D graphics = resultImage.createGraphics();
-
-        /* 绘制原图 */
-        graphics.drawImage(sourceImage, 0, 0, null);
-
-        /* 设置水印文字样式 */
-        graphics.setFont(new Font("Arial", Font.BOLD, 30));
-        // 半透明白色
-        graphics.setColor(new Color(255, 255, 255, 128));
-
-        /* 计算水印位置（右下角） */
-        FontMetrics fontMetrics = graphics.getFontMetrics();
-        int x = sourceImage.getWidth() - fontMetrics.stringWidth(text) - 10;
-        int y = sourceImage.getHeight() - fontMetrics.getHeight() + 10;
-
-        /* 绘制水印 */
-        graphics.drawString(text, x, y);
-        graphics.dispose();
-
-        /* 保存图片 */
-        String format = getImageFormat(sourcePath.toString());
-        ImageIO.write(resultImage, format, sourcePath.toFile());
+        long start = System.nanoTime();
+        try {
+            ensureDecodable(sourcePath);
+
+            /* 读取原图片 */
+            BufferedImage image = toIntRaster(imageCodec.read(sourcePath));
+
+            /* 叠加缓存的水印图层 */
+            watermarkEngine.composite(image, watermarkEngine.textOverlay(text, image.getWidth()));
+
+            /* 保存图片 */
+            imageCodec.write(image, getImageFormat(sourcePath.toString()), sourcePath);
+        } finally {
+            textWatermarkTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
     }
 
     /**
      * 添加图片水印到图片上。
      * <p>
-     * 该方法读取一个水印图片，并将其以一定的透明度添加到目标图片的右下角。
+     * 该方法将水印图片以一定的透明度添加到目标图片的右下角。水印图片只解码一次，缩放后的图层会被缓存。
      *
-     * @param sourcePath   原始图片的路径
+     * @param sourcePath    原始图片的路径
      * @param watermarkPath 水印图片的路径（相对于classpath）
      * @throws IOException 如果读取或写入图片时发生错误
      */
     public void addImageWatermark(Path sourcePath, String watermarkPath) throws IOException {
-        /* 读取水印图片 */
-        BufferedImage watermark = ImageIO.read(new ClassPathResource(watermarkPath).getInputStream());
-
-        /* 添加水印 */
-        Thumbnails.of(sourcePath.toFile())
-                .scale(1.0)
-                .watermark(Positions.BOTTOM_RIGHT, watermark, 0.5f)
-                .toFile(sourcePath.toFile());
+        long start = System.nanoTime();
+        try {
+            ensureDecodable(sourcePath);
+
+            /* 读取原图片 */
+            BufferedImage image = toIntRaster(imageCodec.read(sourcePath));
+
+            /* 叠加缓存的水印图层 */
+            watermarkEngine.composite(image, watermarkEngine.imageOverlay(watermarkPath, image.getWidth()));
+
+            /* 保存图片 */
+            imageCodec.write(image, getImageFormat(sourcePath.toString()), sourcePath);
+        } finally {
+            imageWatermarkTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
     }
 
     /**
      * 压缩图片。
      * <p>
      * 该方法根据给定的宽度和高度调整图片大小，并保持纵横比不变。压缩后的图片会覆盖原文件。
+     * 原图按目标尺寸子采样解码，不会在内存中展开完整分辨率的像素。
      *
      * @param sourcePath 原始图片的路径
      * @param width      目标宽度
@@ -95,10 +138,134 @@ public class ImageUtils {
      * @throws IOException 如果读取或写入图片时发生错误
      */
     public void compressImage(Path sourcePath, int width, int height) throws IOException {
-        Thumbnails.of(sourcePath.toFile())
-                .size(width, height)
-                .keepAspectRatio(true)
-                .toFile(sourcePath.toFile());
+        long start = System.nanoTime();
+        try {
+            ensureDecodable(sourcePath);
+            BufferedImage result = Thumbnails.of(imageCodec.read(sourcePath, width, height))
+                    .size(width, height)
+                    .keepAspectRatio(true)
+                    .asBufferedImage();
+            imageCodec.write(result, getImageFormat(sourcePath.toString()), sourcePath);
+        } finally {
+            compressTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 读取图片尺寸。
+     * <p>
+     * 该方法仅解析图片文件头中的尺寸信息，不会解码像素数据，因此开销与图片大小无关。
+     *
+     * @param sourcePath 图片的路径
+     * @return 图片的宽高
+     * @throws IOException 如果文件无法读取或不是受支持的图片格式
+     */
+    public Dimension readDimensions(Path sourcePath) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(sourcePath.toFile())) {
+            if (input == null) {
+                throw new IOException("Cannot open image: " + sourcePath);
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format: " + sourcePath);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * 检查图片尺寸是否在像素预算之内。
+     * <p>
+     * 解码后的图片每个像素至少占用4字节堆内存，文件很小的图片也可能声明极大的尺寸，
+     * 因此必须在解码前根据文件头中的尺寸拒绝超出预算的图片。
+     *
+     * @param dimension 图片的宽高
+     * @throws FileStorageException 如果尺寸非法或像素数超过配置的上限
+     */
+    public void checkPixelBudget(Dimension dimension) {
+        if (dimension.width <= 0 || dimension.height <= 0) {
+            throw new FileStorageException("无法识别图片尺寸");
+        }
+        if ((long) dimension.width * dimension.height > imageConfig.getMaxPixels()) {
+            throw new FileStorageException("图片尺寸超过限制");
+        }
+    }
+
+    /**
+     * 读取图片文件头并检查像素预算，在解码像素之前调用。
+     *
+     * @param sourcePath 图片的路径
+     * @return 图片的宽高
+     * @throws IOException 如果文件无法读取或不是受支持的图片格式
+     */
+    public Dimension ensureDecodable(Path sourcePath) throws IOException {
+        Dimension dimension = readDimensions(sourcePath);
+        checkPixelBudget(dimension);
+        return dimension;
+    }
+
+    /**
+     * 按EXIF方向值旋转或翻转图片，使其以正确的方向显示。
+     *
+     * @param image       图片
+     * @param orientation EXIF方向值（1-8）
+     * @return 调整方向后的图片，方向值为1或非法时返回原图片
+     */
+    public BufferedImage applyOrientation(BufferedImage image, int orientation) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        AffineTransform transform = switch (orientation) {
+            case 2 -> new AffineTransform(-1, 0, 0, 1, w, 0);
+            case 3 -> new AffineTransform(-1, 0, 0, -1, w, h);
+            case 4 -> new AffineTransform(1, 0, 0, -1, 0, h);
+            case 5 -> new AffineTransform(0, 1, 1, 0, 0, 0);
+            case 6 -> new AffineTransform(0, 1, -1, 0, h, 0);
+            case 7 -> new AffineTransform(0, -1, -1, 0, h, w);
+            case 8 -> new AffineTransform(0, -1, 1, 0, 0, w);
+            default -> null;
+        };
+        if (transform == null) {
+            return image;
+        }
+
+        /* 方向值5-8需要交换宽高 */
+        boolean swap = orientation >= 5;
+        int type = image.getType() == BufferedImage.TYPE_CUSTOM || image.getType() == BufferedImage.TYPE_BYTE_INDEXED
+                ? (image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB)
+                : image.getType();
+        BufferedImage result = new BufferedImage(swap ? h : w, swap ? w : h, type);
+        Graphics2D graphics = result.createGraphics();
+        try {
+            graphics.drawImage(image, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+        return result;
+    }
+
+    /**
+     * 将图片转换为以int数组存储像素的RGB或ARGB图片，已是这两种类型时直接返回。
+     */
+    private BufferedImage toIntRaster(BufferedImage image) {
+        int type = image.getType();
+        if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) {
+            return image;
+        }
+        BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(),
+                image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = converted.createGraphics();
+        try {
+            graphics.drawImage(image, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return converted;
     }
 
     /**
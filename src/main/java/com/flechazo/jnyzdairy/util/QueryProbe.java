@@ -0,0 +1,126 @@
+package com.flechazo.jnyzdairy.util;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 单次仓库方法调用期间的数据库访问计数，保存在当前线程中。
+ * <p>
+ * Hibernate的钩子（{@link QueryProbeStatementInspector}、{@link QueryProbeStatistics}）不由Spring创建，
+ * 通过本类的静态方法将事件记入当前线程正在执行的调用；没有正在执行的调用时事件被忽略。
+ * 仓库方法嵌套调用时，内层调用结束后其计数累加到外层调用中。
+ *
+ * @author Flechazo
+ */
+public final class QueryProbe {
+
+    private static final ThreadLocal<QueryProbe> CURRENT = new ThreadLocal<>();
+
+    private final QueryProbe parent;
+    private final int maxStatements;
+
+    /**
+     * 执行的SQL语句（以 {@code ?} 表示参数）及其执行次数，最多记录 {@link #maxStatements} 条不同的语句。
+     */
+    private final Map<String, Integer> sql = new LinkedHashMap<>();
+
+    private int statements;
+    private int entityLoads;
+    private int collectionFetches;
+
+    private QueryProbe(QueryProbe parent, int maxStatements) {
+        this.parent = parent;
+        this.maxStatements = maxStatements;
+    }
+
+    /**
+     * 在当前线程上开始记录一次调用。
+     *
+     * @param maxStatements 最多记录的不同SQL语句数
+     * @return 本次调用的计数，调用结束时必须传给 {@link #end(QueryProbe)}
+     */
+    public static QueryProbe begin(int maxStatements) {
+        QueryProbe probe = new QueryProbe(CURRENT.get(), maxStatements);
+        CURRENT.set(probe);
+        return probe;
+    }
+
+    /**
+     * 结束记录，恢复外层调用并将本次计数累加到外层。
+     *
+     * @param probe {@link #begin(int)} 返回的计数
+     */
+    public static void end(QueryProbe probe) {
+        QueryProbe parent = probe.parent;
+        if (parent == null) {
+            CURRENT.remove();
+            return;
+        }
+        parent.statements += probe.statements;
+        parent.entityLoads += probe.entityLoads;
+        parent.collectionFetches += probe.collectionFetches;
+        probe.sql.forEach(parent::addSql);
+        CURRENT.set(parent);
+    }
+
+    /**
+     * 记录一条即将执行的SQL语句。
+     *
+     * @param statement SQL语句
+     */
+    static void onStatement(String statement) {
+        QueryProbe probe = CURRENT.get();
+        if (probe != null) {
+            probe.statements++;
+            probe.addSql(statement, 1);
+        }
+    }
+
+    /**
+     * 记录一次实体加载。
+     */
+    static void onEntityLoad() {
+        QueryProbe probe = CURRENT.get();
+        if (probe != null) {
+            probe.entityLoads++;
+        }
+    }
+
+    /**
+     * 记录一次集合抓取。
+     */
+    static void onCollectionFetch() {
+        QueryProbe probe = CURRENT.get();
+        if (probe != null) {
+            probe.collectionFetches++;
+        }
+    }
+
+    private void addSql(String statement, int count) {
+        if (sql.containsKey(statement) || sql.size() < maxStatements) {
+            sql.merge(statement, count, Integer::sum);
+        }
+    }
+
+    public int getStatements() {
+        return statements;
+    }
+
+    public int getEntityLoads() {
+        return entityLoads;
+    }
+
+    public int getCollectionFetches() {
+        return collectionFetches;
+    }
+
+    /**
+     * 获取执行的SQL语句及其执行次数，按首次执行的顺序排列。
+     *
+     * @return 不可修改的映射
+     */
+    public Map<String, Integer> getSql() {
+        return Collections.unmodifiableMap(sql);
+    }
+}
@@ -0,0 +1,19 @@
+package com.flechazo.jnyzdairy.util;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Hibernate语句检查器，在每条SQL语句准备执行前将其记入 {@link QueryProbe}，语句本身不做修改。
+ * <p>
+ * 此时参数尚未绑定，语句中的参数以 {@code ?} 表示，记录的只是语句的形状，不包含用户数据。
+ *
+ * @author Flechazo
+ */
+public class QueryProbeStatementInspector implements StatementInspector {
+
+    @Override
+    public String inspect(String sql) {
+        QueryProbe.onStatement(sql);
+        return sql;
+    }
+}
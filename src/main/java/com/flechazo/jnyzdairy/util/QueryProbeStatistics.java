@@ -0,0 +1,42 @@
+package com.flechazo.jnyzdairy.util;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.stat.internal.StatisticsImpl;
+import org.hibernate.stat.spi.StatisticsFactory;
+
+/**
+ * Hibernate统计信息实现，在收集全局统计的同时将实体加载（包括延迟代理的初始化）和集合抓取记入 {@link QueryProbe}，
+ * 用于按仓库方法发现N+1查询。
+ * <p>
+ * 只有启用了 {@code hibernate.generate_statistics} 时Hibernate才会上报这些事件。
+ *
+ * @author Flechazo
+ */
+public class QueryProbeStatistics extends StatisticsImpl {
+
+    /**
+     * 统计信息工厂，通过配置项 {@code hibernate.stats.factory} 注册。
+     */
+    public static final StatisticsFactory FACTORY = QueryProbeStatistics::new;
+
+    /**
+     * 构造函数，由 {@link #FACTORY} 创建。
+     *
+     * @param sessionFactory 会话工厂
+     */
+    public QueryProbeStatistics(SessionFactoryImplementor sessionFactory) {
+        super(sessionFactory);
+    }
+
+    @Override
+    public void loadEntity(String entityName) {
+        super.loadEntity(entityName);
+        QueryProbe.onEntityLoad();
+    }
+
+    @Override
+    public void fetchCollection(String role) {
+        super.fetchCollection(role);
+        QueryProbe.onCollectionFetch();
+    }
+}
@@ -0,0 +1,56 @@
+package com.flechazo.jnyzdairy.util;
+
+import com.flechazo.jnyzdairy.service.QueryStatsService;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+
+/**
+ * 仓库方法拦截器，由 {@link com.flechazo.jnyzdairy.config.HibernateStatsConfig} 添加到每个Spring Data仓库代理上，
+ * 记录每次调用的执行时间和数据库访问次数。
+ * <p>
+ * 仓库在启动早期创建，此时查询统计服务及其依赖的指标注册表可能尚未就绪，因此在第一次调用时才获取服务。
+ *
+ * @author Flechazo
+ */
+public class RepositoryStatsInterceptor implements MethodInterceptor {
+
+    private final String repository;
+    private final ObjectProvider<QueryStatsService> queryStatsServiceProvider;
+    private volatile QueryStatsService queryStatsService;
+
+    /**
+     * 构造函数，为一个仓库接口创建拦截器。
+     *
+     * @param repository                仓库接口名
+     * @param queryStatsServiceProvider 查询统计服务的提供者
+     */
+    public RepositoryStatsInterceptor(String repository, ObjectProvider<QueryStatsService> queryStatsServiceProvider) {
+        this.repository = repository;
+        this.queryStatsServiceProvider = queryStatsServiceProvider;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        QueryStatsService service = queryStatsService;
+        if (service == null) {
+            service = queryStatsServiceProvider.getIfAvailable();
+            if (service == null) {
+                return invocation.proceed();
+            }
+            queryStatsService = service;
+        }
+        if (!service.isEnabled() || invocation.getMethod().getDeclaringClass() == Object.class) {
+            return invocation.proceed();
+        }
+
+        QueryProbe probe = service.begin();
+        long start = System.nanoTime();
+        try {
+            return invocation.proceed();
+        } finally {
+            service.record(repository, invocation.getMethod().getName(), invocation.getArguments(), probe,
+                    System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.flechazo.jnyzdairy.util;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.annotation.RequestScope;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * 请求范围内的所有权缓存，记录本次请求中已经查询过的日记和图片的所有者ID。
+ * <p>
+ * 权限检查和服务层在同一请求中多次需要同一资源的所有者时，只查询一次数据库。
+ * 每个请求有独立的实例，请求结束后即丢弃，不存在缓存过期的问题。
+ *
+ * @author Flechazo
+ */
+@Component
+@RequestScope
+public class RequestOwnershipCache {
+
+    private final Map<Long, Optional<Long>> diaryOwners = new HashMap<>();
+    private final Map<Long, Optional<Long>> imageOwners = new HashMap<>();
+
+    /**
+     * 获取日记的所有者ID，本次请求中尚未查询过时通过 {@code loader} 查询。
+     *
+     * @param diaryId 日记ID
+     * @param loader  查询所有者ID的函数
+     * @return 所有者ID，日记不存在时为空
+     */
+    public Optional<Long> getDiaryOwner(Long diaryId, Function<Long, Optional<Long>> loader) {
+        return diaryOwners.computeIfAbsent(diaryId, loader);
+    }
+
+    /**
+     * 获取日记图片的所有者ID，本次请求中尚未查询过时通过 {@code loader} 查询。
+     *
+     * @param imageId 图片ID
+     * @param loader  查询所有者ID的函数
+     * @return 所有者ID，图片不存在时为空
+     */
+    public Optional<Long> getImageOwner(Long imageId, Function<Long, Optional<Long>> loader) {
+        return imageOwners.computeIfAbsent(imageId, loader);
+    }
+}
@@ -0,0 +1,53 @@
+package com.flechazo.jnyzdairy.util;
+
+/**
+ * 逐像素的标量Alpha合成实现，在Vector API不可用时使用。
+ *
+ * @author Flechazo
+ */
+class ScalarAlphaCompositor implements AlphaCompositor {
+
+    @Override
+    public void blend(int[] dst, int dstOffset, int dstScan, int[] src, int srcOffset, int srcScan,
+                      int width, int height) {
+        for (int row = 0; row < height; row++) {
+            blendRow(dst, dstOffset + row * dstScan, src, srcOffset + row * srcScan, width);
+        }
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+
+    /**
+     * 合成一行像素，也用于向量实现处理每行末尾不足一个向量宽度的像素。
+     */
+    static void blendRow(int[] dst, int dstIndex, int[] src, int srcIndex, int length) {
+        for (int i = 0; i < length; i++) {
+            int s = src[srcIndex + i];
+            int a = s >>> 24;
+            if (a == 0) {
+                continue;
+            }
+            int d = dst[dstIndex + i];
+            if (a == 255) {
+                dst[dstIndex + i] = s;
+                continue;
+            }
+            int ia = 255 - a;
+            int r = div255(((s >>> 16) & 0xFF) * a + ((d >>> 16) & 0xFF) * ia);
+            int g = div255(((s >>> 8) & 0xFF) * a + ((d >>> 8) & 0xFF) * ia);
+            int b = div255((s & 0xFF) * a + (d & 0xFF) * ia);
+            dst[dstIndex + i] = 0xFF000000 | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    /**
+     * 对 [0, 255*255] 范围内的值做四舍五入的除以255运算。
+     */
+    static int div255(int value) {
+        int t = value + 128;
+        return (t + (t >>> 8)) >>> 8;
+    }
+}
@@ -0,0 +1,61 @@
+package com.flechazo.jnyzdairy.util;
+
+import com.flechazo.jnyzdairy.exception.FileStorageException;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 大小受限的输入流，读取的数据量超过上限时立即抛出异常。
+ * <p>
+ * 用于在流式写入上传数据时执行大小限制，无需预先知道数据的总长度。
+ *
+ * @author Flechazo
+ */
+public class SizeLimitedInputStream extends FilterInputStream {
+
+    private final long limit;
+    private long count;
+
+    /**
+     * 构造函数，包装给定的输入流。
+     *
+     * @param in    被包装的输入流
+     * @param limit 允许读取的最大字节数
+     */
+    public SizeLimitedInputStream(InputStream in, long limit) {
+        super(in);
+        this.limit = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            checkLimit(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            checkLimit(n);
+        }
+        return n;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void checkLimit(long read) {
+        count += read;
+        if (count > limit) {
+            throw new FileStorageException("文件大小超过限制");
+        }
+    }
+}
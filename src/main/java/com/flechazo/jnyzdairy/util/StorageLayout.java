@@ -0,0 +1,205 @@
+package com.flechazo.jnyzdairy.util;
+
+import com.flechazo.jnyzdairy.config.StorageConfig;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * 存储布局，负责将用户文件和内容寻址文件映射为存储后端中的对象键。
+ * <p>
+ * 用户文件按用户ID的SHA-256摘要分层，例如 {@code userdata/3f/a2/1/avatar/xxx.jpg}；
+ * 内容寻址文件按内容摘要分层，例如 {@code blobs/ab/cd/<摘要>.jpg}。分层的级数和每级的宽度可配置。
+ * <p>
+ * 旧布局下用户文件位于 {@code users/1/...}，内容寻址文件位于 {@code blobs/ab/<摘要>.jpg}。
+ * 新旧用户文件位于不同的顶层目录，避免数字用户ID与十六进制目录名混淆；
+ * 旧布局的内容寻址文件比新布局少一级目录，可按层级区分。
+ *
+ * @author Flechazo
+ */
+@Component
+public class StorageLayout {
+
+    /**
+     * 旧布局下用户文件的顶层目录。
+     */
+    public static final String LEGACY_USER_DIRECTORY = "users";
+
+    /**
+     * 分层布局下用户文件的顶层目录。
+     */
+    public static final String USER_DIRECTORY = "userdata";
+
+    /**
+     * 内容寻址文件的顶层目录。
+     */
+    private static final String BLOB_DIRECTORY = "blobs";
+
+    private final StorageConfig.Layout config;
+
+    /**
+     * 构造函数，用于依赖注入。
+     *
+     * @param storageConfig 存储配置
+     */
+    public StorageLayout(StorageConfig storageConfig) {
+        this.config = storageConfig.getLayout();
+        if (config.getLevels() < 1 || config.getLevels() > 4 || config.getWidth() < 1 || config.getWidth() > 2) {
+            throw new IllegalStateException(
+                    "app.storage.layout.levels must be between 1 and 4 and width between 1 and 2");
+        }
+    }
+
+    /**
+     * 获取用户文件的对象键。
+     *
+     * @param userId       用户标识符
+     * @param relativePath 相对于该用户的规范化路径，例如 {@code avatar/xxx.jpg}
+     * @return 对象键
+     */
+    public String userKey(Long userId, String relativePath) {
+        return USER_DIRECTORY + "/" + shard(sha256(userId.toString())) + userId + "/" + relativePath;
+    }
+
+    /**
+     * 获取用户文件在旧布局下的对象键。
+     *
+     * @param userId       用户标识符
+     * @param relativePath 相对于该用户的规范化路径
+     * @return 对象键
+     */
+    public String legacyUserKey(Long userId, String relativePath) {
+        return LEGACY_USER_DIRECTORY + "/" + userId + "/" + relativePath;
+    }
+
+    /**
+     * 获取内容寻址文件的对象键。
+     *
+     * @param blobName 文件名，格式为 {@code <摘要>.<扩展名>}
+     * @return 对象键
+     */
+    public String blobKey(String blobName) {
+        return BLOB_DIRECTORY + "/" + shard(blobName) + blobName;
+    }
+
+    /**
+     * 获取内容寻址文件在旧布局下的对象键。
+     *
+     * @param blobName 文件名，格式为 {@code <摘要>.<扩展名>}
+     * @return 对象键
+     */
+    public String legacyBlobKey(String blobName) {
+        return BLOB_DIRECTORY + "/" + blobName.substring(0, 2) + "/" + blobName;
+    }
+
+    /**
+     * 从分层布局下用户文件的对象键中还原访问路径。
+     *
+     * @param key 对象键
+     * @return 以用户ID开头的访问路径，例如 {@code 1/avatar/xxx.jpg}；对象键不是分层布局下合法的用户文件位置时返回 {@code null}
+     */
+    public String userPathOf(String key) {
+        if (!key.startsWith(USER_DIRECTORY + "/")) {
+            return null;
+        }
+        String[] segments = key.split("/", config.getLevels() + 3);
+        if (segments.length != config.getLevels() + 3) {
+            return null;
+        }
+        Long userId;
+        try {
+            userId = Long.valueOf(segments[config.getLevels() + 1]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        String relativePath = segments[config.getLevels() + 2];
+        /* 分层目录必须与用户ID的摘要一致，放错位置的文件无法被访问到 */
+        return key.equals(userKey(userId, relativePath)) ? userId + "/" + relativePath : null;
+    }
+
+    /**
+     * 列出第一级分层目录的所有名称，例如 {@code 00} 到 {@code ff}，可作为按目录分片处理的分片。
+     *
+     * @return 按字典序排列的目录名
+     */
+    public List<String> shards() {
+        int count = 1 << (4 * config.getWidth());
+        List<String> shards = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            shards.add(HexFormat.of().toHexDigits(i).substring(8 - config.getWidth()));
+        }
+        return shards;
+    }
+
+    /**
+     * 获取分片下内容寻址文件的键前缀。
+     *
+     * @param shard 第一级目录名
+     * @return 键前缀，例如 {@code blobs/ab/}
+     */
+    public String blobShardPrefix(String shard) {
+        return BLOB_DIRECTORY + "/" + shard + "/";
+    }
+
+    /**
+     * 获取分片在旧布局下对应的内容寻址文件键前缀。旧布局按摘要前两位分目录。
+     *
+     * @param shard 第一级目录名
+     * @return 键前缀列表
+     */
+    public List<String> legacyBlobShardPrefixes(String shard) {
+        if (shard.length() == 2) {
+            return List.of(blobShardPrefix(shard));
+        }
+        List<String> prefixes = new ArrayList<>(16);
+        for (int i = 0; i < 16; i++) {
+            prefixes.add(blobShardPrefix(shard + Character.forDigit(i, 16)));
+        }
+        return prefixes;
+    }
+
+    /**
+     * 获取分片下用户文件的键前缀。
+     *
+     * @param shard 第一级目录名
+     * @return 键前缀，例如 {@code userdata/ab/}
+     */
+    public String userShardPrefix(String shard) {
+        return USER_DIRECTORY + "/" + shard + "/";
+    }
+
+    /**
+     * 判断读取时是否需要在旧布局下查找。
+     *
+     * @return 迁移尚未完成时返回 {@code true}
+     */
+    public boolean isDualRead() {
+        return config.isDualRead();
+    }
+
+    /**
+     * 由十六进制字符串的前缀生成分层目录，例如 {@code 3f/a2/}。
+     */
+    private String shard(String hex) {
+        StringBuilder builder = new StringBuilder(config.getLevels() * (config.getWidth() + 1));
+        for (int level = 0; level < config.getLevels(); level++) {
+            int start = level * config.getWidth();
+            builder.append(hex, start, start + config.getWidth()).append('/');
+        }
+        return builder.toString();
+    }
+
+    private String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.flechazo.jnyzdairy.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 简单的速率限制器，按固定间隔发放许可，用于限制后台任务对存储的读写速度。
+ * <p>
+ * 多个线程共享同一个实例时，总速率不超过配置的上限。
+ *
+ * @author Flechazo
+ */
+public class Throttle {
+
+    /**
+     * 相邻两个许可之间的间隔（纳秒），为0时不限速。
+     */
+    private final long intervalNanos;
+
+    /**
+     * 下一个许可的发放时间（纳秒）。
+     */
+    private long nextPermitAt;
+
+    /**
+     * 构造函数，创建速率限制器。
+     *
+     * @param permitsPerSecond 每秒发放的许可数，不大于0时不限速
+     */
+    public Throttle(int permitsPerSecond) {
+        this.intervalNanos = permitsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / permitsPerSecond : 0;
+    }
+
+    /**
+     * 获取一个许可，必要时等待。
+     *
+     * @throws InterruptedException 如果等待时线程被中断
+     */
+    public void acquire() throws InterruptedException {
+        acquire(1);
+    }
+
+    /**
+     * 获取多个许可，必要时等待。用于一次处理一批数据的场景，按批次的大小计算等待时间。
+     *
+     * @param permits 许可数
+     * @throws InterruptedException 如果等待时线程被中断
+     */
+    public void acquire(int permits) throws InterruptedException {
+        if (intervalNanos == 0 || permits <= 0) {
+            return;
+        }
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            wait = nextPermitAt - now;
+            nextPermitAt = Math.max(now, nextPermitAt) + intervalNanos * permits;
+        }
+        /* 在锁外等待，其他线程可以同时预约后续的许可 */
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.flechazo.jnyzdairy.util;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 记录耗时指标的密码编码器，将加密和校验委托给内层的编码器，并记录到计时器 {@code security.password.hash}。
+ * <p>
+ * BCrypt 的计算量随强度参数成倍增长，登录和注册的延迟主要来自这里，单独记录便于调整强度参数。
+ *
+ * @author Flechazo
+ */
+public class TimedPasswordEncoder implements PasswordEncoder {
+
+    private final PasswordEncoder delegate;
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+
+    /**
+     * 构造函数，由 {@link com.flechazo.jnyzdairy.config.SecurityConfig} 创建。
+     *
+     * @param delegate      内层的密码编码器
+     * @param meterRegistry 指标注册表
+     */
+    public TimedPasswordEncoder(PasswordEncoder delegate, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.encodeTimer = timer("encode", meterRegistry);
+        this.matchesTimer = timer("matches", meterRegistry);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        long start = System.nanoTime();
+        try {
+            return delegate.encode(rawPassword);
+        } finally {
+            encodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        long start = System.nanoTime();
+        try {
+            return delegate.matches(rawPassword, encodedPassword);
+        } finally {
+            matchesTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    private static Timer timer(String operation, MeterRegistry meterRegistry) {
+        return Timer.builder("security.password.hash")
+                .description("Latency of password hashing")
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+}
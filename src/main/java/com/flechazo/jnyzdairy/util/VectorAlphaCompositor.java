@@ -0,0 +1,61 @@
+package com.flechazo.jnyzdairy.util;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 基于Vector API的Alpha合成实现，每次处理一个向量宽度的像素。
+ * <p>
+ * 该类依赖孵化模块 {@code jdk.incubator.vector}，只在 {@code vector} 配置（{@code mvn -Pvector}）下编译，
+ * 由 {@link WatermarkEngine} 在运行时加载了该模块时通过反射实例化。
+ * 每行末尾不足一个向量宽度的像素交给标量实现处理。
+ *
+ * @author Flechazo
+ */
+class VectorAlphaCompositor implements AlphaCompositor {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    public void blend(int[] dst, int dstOffset, int dstScan, int[] src, int srcOffset, int srcScan,
+                      int width, int height) {
+        int bound = SPECIES.loopBound(width);
+        for (int row = 0; row < height; row++) {
+            int dstRow = dstOffset + row * dstScan;
+            int srcRow = srcOffset + row * srcScan;
+            int i = 0;
+            for (; i < bound; i += SPECIES.length()) {
+                IntVector s = IntVector.fromArray(SPECIES, src, srcRow + i);
+                IntVector d = IntVector.fromArray(SPECIES, dst, dstRow + i);
+                IntVector a = s.lanewise(VectorOperators.LSHR, 24);
+                IntVector ia = a.neg().add(255);
+
+                IntVector r = channel(s, d, a, ia, 16);
+                IntVector g = channel(s, d, a, ia, 8);
+                IntVector b = channel(s, d, a, ia, 0);
+                r.lanewise(VectorOperators.LSHL, 16)
+                        .or(g.lanewise(VectorOperators.LSHL, 8))
+                        .or(b)
+                        .or(0xFF000000)
+                        .intoArray(dst, dstRow + i);
+            }
+            ScalarAlphaCompositor.blendRow(dst, dstRow + i, src, srcRow + i, width - i);
+        }
+    }
+
+    @Override
+    public String name() {
+        return "vector(" + SPECIES.length() * Integer.SIZE + "-bit)";
+    }
+
+    /**
+     * 计算单个颜色通道：(源 × a + 目标 × (255 - a)) / 255，四舍五入。
+     */
+    private static IntVector channel(IntVector s, IntVector d, IntVector a, IntVector ia, int shift) {
+        IntVector sc = s.lanewise(VectorOperators.LSHR, shift).and(0xFF);
+        IntVector dc = d.lanewise(VectorOperators.LSHR, shift).and(0xFF);
+        IntVector t = sc.mul(a).add(dc.mul(ia)).add(128);
+        return t.add(t.lanewise(VectorOperators.LSHR, 8)).lanewise(VectorOperators.LSHR, 8);
+    }
+}
@@ -0,0 +1,314 @@
+package com.flechazo.jnyzdairy.util;
+
+import com.flechazo.jnyzdairy.config.ImageConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 水印引擎，负责生成并缓存水印图层，将水印叠加到图片上。
+ * <p>
+ * 图片水印资源只解码一次，文字水印预先渲染为ARGB图层。图层按目标图片的宽度分档缩放，
+ * 缩放后的图层按（水印，尺寸档位）缓存，叠加水印只需一次Alpha合成。
+ * 缓存容量受限，并在水印配置发生变化时整体失效。
+ * <p>
+ * 合成默认使用Java2D；配置为 {@code raster} 时直接在int数组像素上进行合成，
+ * 以 {@code vector} 配置构建、且运行时加载了 {@code jdk.incubator.vector} 模块时使用向量实现，否则使用标量实现。
+ *
+ * @author Flechazo
+ */
+@Component
+public class WatermarkEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(WatermarkEngine.class);
+
+    /**
+     * 向量实现的类名，只在 {@code vector} 配置下编译。
+     */
+    private static final String VECTOR_COMPOSITOR_CLASS = "com.flechazo.jnyzdairy.util.VectorAlphaCompositor";
+
+    /**
+     * 在int数组像素上直接合成的后端名称。
+     */
+    private static final String RASTER_COMPOSITOR = "raster";
+
+    private final ImageConfig imageConfig;
+    private final AlphaCompositor rasterCompositor;
+
+    /**
+     * 已解码的水印图片资源，按classpath路径索引。
+     */
+    private final Map<String, BufferedImage> assets = new ConcurrentHashMap<>();
+
+    /**
+     * 缩放后的水印图层的LRU缓存，按（水印，尺寸档位）索引。
+     */
+    private final Map<String, BufferedImage> overlays;
+
+    /**
+     * 生成当前缓存内容时使用的水印配置，配置变化时清空缓存。
+     */
+    private ImageConfig.Watermark snapshot;
+
+    /**
+     * 构造函数，用于依赖注入。
+     *
+     * @param imageConfig 图片处理配置
+     */
+    public WatermarkEngine(ImageConfig imageConfig) {
+        this.imageConfig = imageConfig;
+        this.rasterCompositor = createRasterCompositor();
+        this.overlays = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, BufferedImage> eldest) {
+                return size() > Math.max(1, imageConfig.getWatermark().getCacheSize());
+            }
+        };
+    }
+
+    /**
+     * 获取文字水印图层。
+     *
+     * @param text        水印文字
+     * @param targetWidth 目标图片宽度
+     * @return 预先渲染好的ARGB图层
+     */
+    public BufferedImage textOverlay(String text, int targetWidth) {
+        ImageConfig.Watermark config = currentConfig();
+        int bucket = bucket(config, targetWidth);
+        return overlay("text:" + text + "@" + bucket, () -> renderText(config, text, scale(config, bucket)));
+    }
+
+    /**
+     * 获取图片水印图层。水印的透明度已预先乘入图层的Alpha通道。
+     *
+     * @param watermarkPath 水印图片的路径（相对于classpath）
+     * @param targetWidth   目标图片宽度
+     * @return 缩放好的ARGB图层
+     * @throws IOException 如果水印图片无法读取
+     */
+    public BufferedImage imageOverlay(String watermarkPath, int targetWidth) throws IOException {
+        ImageConfig.Watermark config = currentConfig();
+        int bucket = bucket(config, targetWidth);
+        BufferedImage asset = loadAsset(watermarkPath);
+        return overlay("image:" + watermarkPath + "@" + bucket,
+                () -> renderImage(asset, scale(config, bucket), config.getOpacity()));
+    }
+
+    /**
+     * 将水印图层以Alpha合成的方式绘制到图片右下角。
+     *
+     * @param target  目标图片，直接在其上绘制
+     * @param overlay 水印图层
+     */
+    public void composite(BufferedImage target, BufferedImage overlay) {
+        ImageConfig.Watermark config = currentConfig();
+        int x = target.getWidth() - overlay.getWidth() - config.getMargin();
+        int y = target.getHeight() - overlay.getHeight() - config.getMargin();
+        if (RASTER_COMPOSITOR.equals(config.getCompositor())
+                && target.getType() == BufferedImage.TYPE_INT_RGB
+                && overlay.getType() == BufferedImage.TYPE_INT_ARGB) {
+            compositeRaster(target, overlay, x, y);
+            return;
+        }
+
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setComposite(AlphaComposite.SrcOver);
+            graphics.drawImage(overlay, x, y, null);
+        } finally {
+            graphics.dispose();
+        }
+    }
+
+    /**
+     * 在像素数组上直接合成，超出目标图片的部分被裁剪。
+     */
+    void compositeRaster(BufferedImage target, BufferedImage overlay, int x, int y) {
+        int srcX = Math.max(0, -x);
+        int srcY = Math.max(0, -y);
+        int dstX = Math.max(0, x);
+        int dstY = Math.max(0, y);
+        int width = Math.min(overlay.getWidth() - srcX, target.getWidth() - dstX);
+        int height = Math.min(overlay.getHeight() - srcY, target.getHeight() - dstY);
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        WritableRaster dstRaster = target.getRaster();
+        WritableRaster srcRaster = overlay.getRaster();
+        int dstScan = ((SinglePixelPackedSampleModel) dstRaster.getSampleModel()).getScanlineStride();
+        int srcScan = ((SinglePixelPackedSampleModel) srcRaster.getSampleModel()).getScanlineStride();
+        int[] dst = ((DataBufferInt) dstRaster.getDataBuffer()).getData();
+        int[] src = ((DataBufferInt) srcRaster.getDataBuffer()).getData();
+        int dstOffset = (dstY - dstRaster.getSampleModelTranslateY()) * dstScan
+                + dstX - dstRaster.getSampleModelTranslateX();
+        int srcOffset = (srcY - srcRaster.getSampleModelTranslateY()) * srcScan
+                + srcX - srcRaster.getSampleModelTranslateX();
+        rasterCompositor.blend(dst, dstOffset, dstScan, src, srcOffset, srcScan, width, height);
+    }
+
+    /**
+     * 选择像素数组合成的实现：孵化模块可用时使用向量实现，否则退回标量实现。
+     */
+    static AlphaCompositor createRasterCompositor() {
+        AlphaCompositor compositor = createVectorCompositor();
+        if (compositor != null) {
+            logger.info("Using {} alpha compositor", compositor.name());
+            return compositor;
+        }
+        return new ScalarAlphaCompositor();
+    }
+
+    /**
+     * 创建向量实现。
+     * <p>
+     * 向量实现只在 {@code vector} 配置下编译（孵化模块在编译期会产生无法关闭的警告），
+     * 因此通过反射加载；运行时未加载孵化模块或构建中不包含该类时返回 {@code null}。
+     */
+    static AlphaCompositor createVectorCompositor() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            return (AlphaCompositor) Class.forName(VECTOR_COMPOSITOR_CLASS)
+                    .getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            logger.info("Vector alpha compositor not included in this build, using scalar alpha compositor");
+        } catch (ReflectiveOperationException | LinkageError e) {
+            logger.warn("Vector API unavailable, falling back to scalar alpha compositor", e);
+        }
+        return null;
+    }
+
+    /**
+     * 返回当前的水印配置；配置与生成缓存时不同，则清空缓存。
+     */
+    private synchronized ImageConfig.Watermark currentConfig() {
+        ImageConfig.Watermark config = imageConfig.getWatermark();
+        if (!config.equals(snapshot)) {
+            if (snapshot != null) {
+                logger.info("Watermark configuration changed, clearing {} cached overlays", overlays.size());
+            }
+            overlays.clear();
+            assets.clear();
+            snapshot = copyOf(config);
+        }
+        return snapshot;
+    }
+
+    private BufferedImage overlay(String key, Supplier<BufferedImage> factory) {
+        synchronized (this) {
+            BufferedImage cached = overlays.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        /* 渲染在锁外进行，并发的重复渲染结果相同，只保留一份 */
+        BufferedImage rendered = factory.get();
+        synchronized (this) {
+            BufferedImage existing = overlays.putIfAbsent(key, rendered);
+            return existing != null ? existing : rendered;
+        }
+    }
+
+    private BufferedImage loadAsset(String watermarkPath) throws IOException {
+        BufferedImage asset = assets.get(watermarkPath);
+        if (asset == null) {
+            try (InputStream input = new ClassPathResource(watermarkPath).getInputStream()) {
+                asset = ImageIO.read(input);
+            }
+            if (asset == null) {
+                throw new IOException("Unsupported watermark image: " + watermarkPath);
+            }
+            assets.put(watermarkPath, asset);
+        }
+        return asset;
+    }
+
+    /**
+     * 将目标宽度向下取整到档位。
+     */
+    private int bucket(ImageConfig.Watermark config, int targetWidth) {
+        int step = Math.max(1, config.getBucketStep());
+        return Math.max(step, targetWidth / step * step);
+    }
+
+    /**
+     * 计算档位对应的水印缩放比例：不超过参考宽度的图片使用原始大小，更宽的图片等比放大水印。
+     */
+    private double scale(ImageConfig.Watermark config, int bucket) {
+        if (config.getReferenceWidth() <= 0) {
+            return 1.0;
+        }
+        return Math.max(1.0, (double) bucket / config.getReferenceWidth());
+    }
+
+    private BufferedImage renderText(ImageConfig.Watermark config, String text, double scale) {
+        Font font = new Font(config.getFontName(), Font.BOLD, (int) Math.round(config.getFontSize() * scale));
+
+        /* 先在临时画布上测量文字尺寸 */
+        BufferedImage probe = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D measure = probe.createGraphics();
+        FontMetrics metrics = measure.getFontMetrics(font);
+        measure.dispose();
+
+        int width = Math.max(1, metrics.stringWidth(text));
+        int height = Math.max(1, metrics.getHeight());
+        BufferedImage tile = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = tile.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            graphics.setFont(font);
+            // 半透明白色
+            graphics.setColor(new Color(255, 255, 255, Math.round(255 * config.getOpacity())));
+            graphics.drawString(text, 0, metrics.getAscent());
+        } finally {
+            graphics.dispose();
+        }
+        return tile;
+    }
+
+    private BufferedImage renderImage(BufferedImage asset, double scale, float opacity) {
+        int width = Math.max(1, (int) Math.round(asset.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(asset.getHeight() * scale));
+        BufferedImage tile = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = tile.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            /* 将透明度预先乘入图层，叠加时无需再设置合成透明度 */
+            graphics.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
+            graphics.drawImage(asset, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return tile;
+    }
+
+    private ImageConfig.Watermark copyOf(ImageConfig.Watermark config) {
+        ImageConfig.Watermark copy = new ImageConfig.Watermark();
+        copy.setFontName(config.getFontName());
+        copy.setFontSize(config.getFontSize());
+        copy.setOpacity(config.getOpacity());
+        copy.setMargin(config.getMargin());
+        copy.setReferenceWidth(config.getReferenceWidth());
+        copy.setBucketStep(config.getBucketStep());
+        copy.setCacheSize(config.getCacheSize());
+        copy.setCompositor(config.getCompositor());
+        return copy;
+    }
+}
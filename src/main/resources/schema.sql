@@ -0,0 +1,13 @@
+-- Indexes that cannot be declared through JPA annotations. Runs after Hibernate has updated the schema
+-- (spring.jpa.defer-datasource-initialization=true), so every statement must be idempotent.
+
+-- Case-insensitive prefix search on username and email in the admin user listing
+create index if not exists idx_users_username_prefix on users (lower(username) text_pattern_ops);
+create index if not exists idx_users_email_prefix on users (lower(email) text_pattern_ops);
+
+-- Users deleted before deleted_at existed start their retention period from their last update
+update users set deleted_at = updated_at where status = 'DELETED' and deleted_at is null;
+
+-- Candidates for the deleted-user purge job, kept small by excluding users that are active or already purged
+create index if not exists idx_users_purge_candidates on users (deleted_at, id)
+    where status = 'DELETED' and purged_at is null;
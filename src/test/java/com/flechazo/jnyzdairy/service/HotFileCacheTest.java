@@ -0,0 +1,243 @@
+package com.flechazo.jnyzdairy.service;
+
+import com.flechazo.jnyzdairy.config.StorageConfig;
+import com.flechazo.jnyzdairy.dto.HotCacheStats;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link HotFileCache} 的单元测试：按访问频率准入、分段LRU淘汰、失效以及多条带下的并发访问。
+ *
+ * @author Flechazo
+ */
+class HotFileCacheTest {
+
+    private static final int FILE_SIZE = 300;
+
+    @TempDir
+    Path root;
+
+    private final InMemoryStorageBackend backend = new InMemoryStorageBackend();
+    private StorageConfig config;
+    private HotFileCache cache;
+
+    @BeforeEach
+    void setUp() {
+        config = new StorageConfig();
+        config.getHotCache().setMaxBytes(1000);
+        config.getHotCache().setMaxObjectSize(400);
+        config.getHotCache().setMinFrequency(2);
+        /* 单个条带时容量和淘汰顺序都是确定的 */
+        config.getHotCache().setStripes(1);
+        cache = new HotFileCache(config, backend);
+    }
+
+    private static byte[] content(String key, int size) {
+        byte[] data = new byte[size];
+        Arrays.fill(data, (byte) key.hashCode());
+        return data;
+    }
+
+    private void store(String key) {
+        backend.add(key, content(key, FILE_SIZE), 1000L);
+    }
+
+    private static byte[] read(HotFileCache.CachedFile file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        file.copy(0, file.getSize(), out);
+        return out.toByteArray();
+    }
+
+    /**
+     * 从存储后端删除对象后仍能取到，说明文件在缓存中。
+     */
+    private boolean isCached(String key) throws IOException {
+        backend.delete(key);
+        return cache.getOrLoad(key) != null;
+    }
+
+    @Test
+    void loadsOnlyAfterMinimumFrequency() throws IOException {
+        store("a");
+
+        assertThat(cache.getOrLoad("a")).isNull();
+        HotFileCache.CachedFile loaded = cache.getOrLoad("a");
+
+        assertThat(loaded).isNotNull();
+        assertThat(read(loaded)).isEqualTo(content("a", FILE_SIZE));
+        assertThat(loaded.getLastModified()).isEqualTo(1000L);
+        HotCacheStats stats = cache.getStats();
+        assertThat(stats.getMisses()).isEqualTo(2);
+        assertThat(stats.getAdmissions()).isEqualTo(1);
+        assertThat(stats.getEntries()).isEqualTo(1);
+        assertThat(stats.getBytes()).isEqualTo(FILE_SIZE);
+
+        assertThat(isCached("a")).isTrue();
+        assertThat(cache.getStats().getHits()).isEqualTo(1);
+    }
+
+    @Test
+    void skipsObjectsAboveSizeLimit() throws IOException {
+        backend.add("big", content("big", 401), 1000L);
+
+        cache.getOrLoad("big");
+
+        assertThat(cache.getOrLoad("big")).isNull();
+        assertThat(cache.getStats().getEntries()).isZero();
+    }
+
+    @Test
+    void admitsNewFileOnlyWhenMoreFrequentThanVictim() throws IOException {
+        for (String key : List.of("a", "b", "c", "d")) {
+            store(key);
+        }
+        for (String key : List.of("a", "b", "c")) {
+            cache.getOrLoad(key);
+            assertThat(cache.getOrLoad(key)).as(key).isNotNull();
+        }
+
+        /* 缓存已满，d的访问频率与最久未使用的a相同，不会被加载 */
+        cache.getOrLoad("d");
+        assertThat(cache.getOrLoad("d")).isNull();
+        assertThat(cache.getStats().getEvictions()).isZero();
+
+        /* 再次访问后频率更高，淘汰a */
+        assertThat(cache.getOrLoad("d")).isNotNull();
+        HotCacheStats stats = cache.getStats();
+        assertThat(stats.getEvictions()).isEqualTo(1);
+        assertThat(stats.getBytes()).isEqualTo(3L * FILE_SIZE);
+        assertThat(isCached("a")).isFalse();
+        assertThat(isCached("b")).isTrue();
+        assertThat(isCached("d")).isTrue();
+    }
+
+    @Test
+    void protectedFileSurvivesScan() throws IOException {
+        store("hot");
+        cache.getOrLoad("hot");
+        cache.getOrLoad("hot");
+        /* 再次命中后晋升到保护段 */
+        assertThat(cache.getOrLoad("hot")).isNotNull();
+
+        for (int i = 0; i < 20; i++) {
+            String key = "scan" + i;
+            store(key);
+            cache.getOrLoad(key);
+            cache.getOrLoad(key);
+        }
+
+        assertThat(isCached("hot")).isTrue();
+        assertThat(cache.getStats().getBytes()).isLessThanOrEqualTo(config.getHotCache().getMaxBytes());
+    }
+
+    @Test
+    void invalidationDropsCachedFile() throws IOException {
+        store("a");
+        cache.getOrLoad("a");
+        cache.getOrLoad("a");
+
+        cache.invalidate("a");
+        backend.add("a", content("b", FILE_SIZE), 2000L);
+
+        HotFileCache.CachedFile reloaded = cache.getOrLoad("a");
+        assertThat(read(reloaded)).isEqualTo(content("b", FILE_SIZE));
+        assertThat(reloaded.getLastModified()).isEqualTo(2000L);
+        assertThat(cache.getStats().getInvalidations()).isEqualTo(1);
+    }
+
+    @Test
+    void doesNotAdmitFileInvalidatedWhileLoading() throws IOException {
+        InMemoryStorageBackend racing = new InMemoryStorageBackend() {
+            @Override
+            public synchronized InputStream get(String key) throws IOException {
+                /* 加载期间对象被覆盖 */
+                cache.invalidate(key);
+                return super.get(key);
+            }
+        };
+        racing.add("a", content("a", FILE_SIZE), 1000L);
+        cache = new HotFileCache(config, racing);
+
+        cache.getOrLoad("a");
+        HotFileCache.CachedFile loaded = cache.getOrLoad("a");
+
+        /* 本次请求仍可使用加载的内容，但不放入缓存 */
+        assertThat(loaded).isNotNull();
+        HotCacheStats stats = cache.getStats();
+        assertThat(stats.getRejections()).isEqualTo(1);
+        assertThat(stats.getEntries()).isZero();
+    }
+
+    @Test
+    void cachesLocalFiles() throws IOException {
+        Path file = root.resolve("variant.jpg");
+        Files.write(file, content("variant", FILE_SIZE));
+
+        cache.getOrLoad(file);
+        assertThat(cache.getOrLoad(file)).isNotNull();
+        Files.delete(file);
+
+        HotFileCache.CachedFile cached = cache.getOrLoad(file);
+        assertThat(cached).isNotNull();
+        assertThat(read(cached)).isEqualTo(content("variant", FILE_SIZE));
+        assertThat(cache.getOrLoad(root.resolve("missing.jpg"))).isNull();
+    }
+
+    @Test
+    void concurrentAccessAcrossStripesStaysWithinCapacity() throws Exception {
+        config.getHotCache().setStripes(8);
+        config.getHotCache().setMaxBytes(8 * 1000);
+        cache = new HotFileCache(config, backend);
+        for (int i = 0; i < 200; i++) {
+            store("k" + i);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int n = 0; n < 5000; n++) {
+                        /* 偏斜的访问分布：少数键被频繁访问 */
+                        int i = (int) Math.abs(ThreadLocalRandom.current().nextGaussian() * 20) % 200;
+                        String key = "k" + i;
+                        HotFileCache.CachedFile file = cache.getOrLoad(key);
+                        if (file != null) {
+                            assertThat(read(file)).isEqualTo(content(key, FILE_SIZE));
+                        }
+                        if (n % 500 == 0) {
+                            cache.invalidate(key);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        HotCacheStats stats = cache.getStats();
+        assertThat(stats.getHits() + stats.getMisses()).isEqualTo(8 * 5000);
+        assertThat(stats.getHits()).isPositive();
+        assertThat(stats.getBytes()).isLessThanOrEqualTo(8 * 1000).isEqualTo((long) stats.getEntries() * FILE_SIZE);
+    }
+}
@@ -0,0 +1,101 @@
+package com.flechazo.jnyzdairy.service;
+
+import com.flechazo.jnyzdairy.dto.StorageObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * 测试用的内存存储后端，按键的字典序保存对象，并记录列出和删除操作。
+ *
+ * @author Flechazo
+ */
+class InMemoryStorageBackend implements StorageBackend {
+
+    private final NavigableMap<String, byte[]> contents = new TreeMap<>();
+    private final Map<String, Long> lastModified = new HashMap<>();
+    private final List<String> deleted = new ArrayList<>();
+    private final AtomicInteger listCalls = new AtomicInteger();
+
+    /**
+     * 放入一个对象，并指定其最后修改时间。
+     */
+    synchronized void add(String key, byte[] content, long modifiedAt) {
+        contents.put(key, content);
+        lastModified.put(key, modifiedAt);
+    }
+
+    synchronized boolean contains(String key) {
+        return contents.containsKey(key);
+    }
+
+    synchronized List<String> deletedKeys() {
+        return new ArrayList<>(deleted);
+    }
+
+    int listCalls() {
+        return listCalls.get();
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        add(key, Files.readAllBytes(source), System.currentTimeMillis());
+    }
+
+    @Override
+    public void put(String key, InputStream input, long length) throws IOException {
+        add(key, input.readAllBytes(), System.currentTimeMillis());
+    }
+
+    @Override
+    public synchronized StorageObject stat(String key) {
+        byte[] content = contents.get(key);
+        return content == null ? null : new StorageObject(key, content.length, lastModified.get(key));
+    }
+
+    @Override
+    public synchronized InputStream get(String key) throws IOException {
+        byte[] content = contents.get(key);
+        if (content == null) {
+            throw new IOException("Not found: " + key);
+        }
+        return new ByteArrayInputStream(content);
+    }
+
+    @Override
+    public synchronized InputStream get(String key, long offset, long length) throws IOException {
+        byte[] content = contents.get(key);
+        if (content == null) {
+            throw new IOException("Not found: " + key);
+        }
+        int from = (int) Math.min(offset, content.length);
+        int to = (int) Math.min(content.length, offset + length);
+        return new ByteArrayInputStream(Arrays.copyOfRange(content, from, to));
+    }
+
+    @Override
+    public synchronized void delete(String key) {
+        contents.remove(key);
+        lastModified.remove(key);
+        deleted.add(key);
+    }
+
+    @Override
+    public synchronized Stream<StorageObject> list(String prefix) {
+        listCalls.incrementAndGet();
+        List<StorageObject> objects = new ArrayList<>();
+        for (String key : contents.tailMap(prefix, true).keySet()) {
+            if (!key.startsWith(prefix)) {
+                break;
+            }
+            objects.add(stat(key));
+        }
+        return objects.stream();
+    }
+}
@@ -0,0 +1,219 @@
+package com.flechazo.jnyzdairy.service;
+
+import com.flechazo.jnyzdairy.config.StorageConfig;
+import com.flechazo.jnyzdairy.dto.StorageObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link SegmentStore} 的单元测试：记录格式、启动时的崩溃恢复以及封存段的压缩。
+ *
+ * @author Flechazo
+ */
+class SegmentStoreTest {
+
+    /**
+     * 段大小取允许的最小值附近，1000字节的对象每段约能写入68条。
+     */
+    private static final int SEGMENT_SIZE = 70_000;
+    private static final int OBJECT_SIZE = 1000;
+
+    @TempDir
+    Path root;
+
+    private StorageConfig config;
+    private SegmentStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        config = new StorageConfig();
+        config.setRootPath(root.toString());
+        config.getPacked().setEnabled(true);
+        config.getPacked().setThreshold(1024);
+        config.getPacked().setSegmentSize(SEGMENT_SIZE);
+        store = open();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        store.close();
+    }
+
+    private SegmentStore open() throws IOException {
+        SegmentStore opened = new SegmentStore(config);
+        opened.open();
+        return opened;
+    }
+
+    private SegmentStore reopen() throws IOException {
+        store.close();
+        store = open();
+        return store;
+    }
+
+    private Path segment(int id) {
+        return root.resolve(".segments").resolve(String.format("%08d.seg", id));
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.remaining()];
+        buffer.duplicate().get(data);
+        return data;
+    }
+
+    private static byte[] object(int version, int index) {
+        byte[] data = new byte[OBJECT_SIZE];
+        Arrays.fill(data, (byte) (version * 31 + index));
+        return data;
+    }
+
+    @Test
+    void writesHeaderKeyDataAndChecksum() throws IOException {
+        byte[] data = "hello".getBytes(StandardCharsets.US_ASCII);
+        long before = System.currentTimeMillis();
+        store.put("a/b", data);
+        store.close();
+
+        ByteBuffer record = ByteBuffer.wrap(Files.readAllBytes(segment(1)));
+        assertThat(record.getInt(0)).isEqualTo(0x4A5A5347);
+        assertThat(record.get(4)).isEqualTo((byte) 1);
+        assertThat(record.getLong(5)).isBetween(before, System.currentTimeMillis());
+        assertThat(record.getShort(13)).isEqualTo((short) 3);
+        assertThat(record.getInt(15)).isEqualTo(5);
+        assertThat(new String(record.array(), 19, 3, StandardCharsets.UTF_8)).isEqualTo("a/b");
+        assertThat(new String(record.array(), 22, 5, StandardCharsets.US_ASCII)).isEqualTo("hello");
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, 19 - 4 + 3 + 5);
+        assertThat(record.getInt(27)).isEqualTo((int) crc.getValue());
+        /* 记录之后是活动段预先扩展出的空白 */
+        assertThat(record.getInt(31)).isZero();
+    }
+
+    @Test
+    void rebuildsIndexFromRecordsAndTombstones() throws IOException {
+        store.put("users/1/a", object(1, 1));
+        store.put("users/1/b", object(1, 2));
+        store.put("users/2/c", object(1, 3));
+        store.put("users/1/a", object(2, 1));
+        assertThat(store.delete("users/1/b")).isTrue();
+        assertThat(store.delete("users/1/missing")).isFalse();
+
+        reopen();
+
+        assertThat(bytes(store.read("users/1/a"))).isEqualTo(object(2, 1));
+        assertThat(store.read("users/1/b")).isNull();
+        assertThat(store.contains("users/1/b")).isFalse();
+        assertThat(store.stat("users/2/c").getSize()).isEqualTo(OBJECT_SIZE);
+        assertThat(store.list("users/1/").map(StorageObject::getKey)).containsExactly("users/1/a");
+    }
+
+    @Test
+    void ignoresIncompleteRecordAfterCrashAndOverwritesIt() throws IOException {
+        store.put("a", object(1, 1));
+        store.put("b", object(1, 2));
+        store.close();
+
+        /* 模拟写到一半时崩溃：第二条记录的后半部分（含校验和）没有落盘 */
+        long first = 19 + 1 + OBJECT_SIZE + 4;
+        try (FileChannel channel = FileChannel.open(segment(1), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(OBJECT_SIZE / 2 + 4), first + 19 + 1 + OBJECT_SIZE / 2);
+        }
+
+        store = open();
+        assertThat(bytes(store.read("a"))).isEqualTo(object(1, 1));
+        assertThat(store.contains("b")).isFalse();
+
+        /* 新记录覆盖未写完的记录，再次启动时可以正常读取 */
+        store.put("c", object(1, 3));
+        reopen();
+        assertThat(bytes(store.read("a"))).isEqualTo(object(1, 1));
+        assertThat(bytes(store.read("c"))).isEqualTo(object(1, 3));
+        assertThat(store.contains("b")).isFalse();
+    }
+
+    @Test
+    void ignoresRecordWithCorruptedData() throws IOException {
+        store.put("a", object(1, 1));
+        store.put("b", object(1, 2));
+        store.close();
+
+        long dataOffset = 19 + 1 + OBJECT_SIZE + 4 + 19 + 1;
+        try (FileChannel channel = FileChannel.open(segment(1), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) 0xFF}), dataOffset + 10);
+        }
+
+        store = open();
+        assertThat(store.contains("a")).isTrue();
+        assertThat(store.contains("b")).isFalse();
+    }
+
+    @Test
+    void compactsSealedSegmentAndKeepsLiveObjects() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            store.put(String.format("k%03d", i), object(1, i));
+        }
+        assertThat(Files.exists(segment(2))).isTrue();
+        /* 第一个段中的大部分对象被删除，无效数据比例超过阈值 */
+        for (int i = 0; i < 60; i++) {
+            store.delete(String.format("k%03d", i));
+        }
+
+        store.compact();
+
+        assertThat(Files.exists(segment(1))).isFalse();
+        for (int i = 0; i < 100; i++) {
+            String key = String.format("k%03d", i);
+            if (i < 60) {
+                assertThat(store.contains(key)).as(key).isFalse();
+            } else {
+                assertThat(bytes(store.read(key))).as(key).isEqualTo(object(1, i));
+            }
+        }
+
+        reopen();
+        assertThat(store.list("k").count()).isEqualTo(40);
+        assertThat(bytes(store.read("k060"))).isEqualTo(object(1, 60));
+    }
+
+    @Test
+    void compactionKeepsTombstonesShadowingOlderSegments() throws IOException {
+        /* 段1：68个对象，写满 */
+        for (int i = 0; i < 68; i++) {
+            store.put(String.format("a%03d", i), object(1, i));
+        }
+        /* 段2：b对象和a000的墓碑，随后b对象全部被覆盖到段3，段2只剩墓碑有效 */
+        for (int version = 1; version <= 3; version++) {
+            for (int i = 0; i < 40; i++) {
+                store.put(String.format("b%03d", i), object(version, i));
+            }
+            if (version == 1) {
+                store.delete("a000");
+            }
+        }
+        assertThat(Files.exists(segment(3))).isTrue();
+
+        store.compact();
+
+        assertThat(Files.exists(segment(1))).isTrue();
+        assertThat(Files.exists(segment(2))).isFalse();
+        reopen();
+        assertThat(store.contains("a000")).isFalse();
+        assertThat(bytes(store.read("a001"))).isEqualTo(object(1, 1));
+        assertThat(bytes(store.read("b000"))).isEqualTo(object(3, 0));
+        assertThat(store.list("b").count()).isEqualTo(40);
+    }
+}
@@ -0,0 +1,306 @@
+package com.flechazo.jnyzdairy.service;
+
+import com.flechazo.jnyzdairy.config.StorageConfig;
+import com.flechazo.jnyzdairy.entity.StorageDeletion;
+import com.flechazo.jnyzdairy.entity.StoredBlob;
+import com.flechazo.jnyzdairy.repository.StorageDeletionRepository;
+import com.flechazo.jnyzdairy.repository.StoredBlobRepository;
+import com.flechazo.jnyzdairy.util.StorageLayout;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * {@link StorageDeletionService} 的单元测试：发件箱的批量删除与失败退避，以及后台删除与内容寻址去重之间的竞争。
+ * <p>
+ * 发件箱表由内存模型代替，模拟 {@code FOR UPDATE SKIP LOCKED} 的行锁语义：被领取的记录在领取方的事务结束前保持锁定，
+ * 其他事务删除这些记录时等待，领取时跳过。
+ *
+ * @author Flechazo
+ */
+class StorageDeletionServiceTest {
+
+    private static final byte[] CONTENT = "same picture".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path root;
+
+    private final Outbox outbox = new Outbox();
+    private final AtomicInteger deleteAllCalls = new AtomicInteger();
+    private volatile Callable<Void> beforeDeleteAll = () -> null;
+
+    private final InMemoryStorageBackend backend = new InMemoryStorageBackend() {
+        @Override
+        public void deleteAll(Collection<String> keys) throws IOException {
+            deleteAllCalls.incrementAndGet();
+            try {
+                beforeDeleteAll.call();
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            super.deleteAll(keys);
+        }
+    };
+
+    private final StoredBlobRepository storedBlobRepository = mock(StoredBlobRepository.class);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private StorageLayout layout;
+    private StorageDeletionService deletionService;
+    private BlobStorageService blobStorageService;
+
+    @BeforeEach
+    void setUp() {
+        StorageConfig config = new StorageConfig();
+        config.setRootPath(root.toString());
+        layout = new StorageLayout(config);
+
+        StorageDeletionRepository repository = mock(StorageDeletionRepository.class);
+        when(repository.insertAll(anyString(), anyString(), any()))
+                .thenAnswer(invocation -> outbox.insertAll(invocation.getArgument(0), invocation.getArgument(1),
+                        invocation.getArgument(2)));
+        when(repository.claim(any(), anyInt()))
+                .thenAnswer(invocation -> outbox.claim(invocation.getArgument(0), invocation.getArgument(1)));
+        when(repository.deleteByObjectKeys(any()))
+                .thenAnswer(invocation -> outbox.deleteByObjectKeys(invocation.getArgument(0)));
+        doAnswer(invocation -> {
+            outbox.deleteAll(invocation.getArgument(0));
+            return null;
+        }).when(repository).deleteAllInBatch(any());
+
+        /* 事务结束时释放本线程持有的行锁 */
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        doAnswer(invocation -> {
+            outbox.endTransaction();
+            return null;
+        }).when(transactionManager).commit(any());
+        doAnswer(invocation -> {
+            outbox.endTransaction();
+            return null;
+        }).when(transactionManager).rollback(any());
+
+        when(storedBlobRepository.findExistingHashes(any())).thenReturn(Set.of());
+        when(storedBlobRepository.findById(anyString())).thenAnswer(invocation -> {
+            StoredBlob blob = new StoredBlob();
+            blob.setHash(invocation.getArgument(0));
+            blob.setExtension("jpg");
+            blob.setSize(CONTENT.length);
+            blob.setRefCount(1);
+            return Optional.of(blob);
+        });
+
+        deletionService = new StorageDeletionService(config, backend, layout, repository, storedBlobRepository,
+                transactionManager);
+        blobStorageService = new BlobStorageService(storedBlobRepository, backend, layout, deletionService,
+                root.toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private BlobStorageService.StagedBlob stage() throws IOException {
+        return blobStorageService.stage(new ByteArrayInputStream(CONTENT));
+    }
+
+    @Test
+    void drainDeletesObjectsAndRemovesRecords() {
+        backend.add("userdata/a/1/x.jpg", CONTENT, 0);
+        backend.add("userdata/a/1/y.jpg", CONTENT, 0);
+        deletionService.deleteAfterCommit(List.of("userdata/a/1/x.jpg", "userdata/a/1/y.jpg"));
+
+        deletionService.drain();
+
+        assertThat(backend.deletedKeys()).containsExactly("userdata/a/1/x.jpg", "userdata/a/1/y.jpg");
+        assertThat(outbox.size()).isZero();
+    }
+
+    @Test
+    void drainKeepsBlobsRegisteredAgainAfterRelease() throws IOException {
+        String blobName = stage().getHash() + ".jpg";
+        String hash = blobName.substring(0, 64);
+        backend.add(layout.blobKey(blobName), CONTENT, 0);
+        backend.add("userdata/a/1/x.jpg", CONTENT, 0);
+        deletionService.deleteBlobsAfterCommit(List.of(blobName));
+        deletionService.deleteAfterCommit(List.of("userdata/a/1/x.jpg"));
+        when(storedBlobRepository.findExistingHashes(any())).thenReturn(Set.of(hash));
+
+        deletionService.drain();
+
+        assertThat(backend.deletedKeys()).containsExactly("userdata/a/1/x.jpg");
+        assertThat(backend.contains(layout.blobKey(blobName))).isTrue();
+        assertThat(outbox.size()).isZero();
+    }
+
+    @Test
+    void failedDeletionIsRetriedWithBackoff() {
+        backend.add("userdata/a/1/x.jpg", CONTENT, 0);
+        deletionService.deleteAfterCommit(List.of("userdata/a/1/x.jpg"));
+        beforeDeleteAll = () -> {
+            throw new IOException("backend unavailable");
+        };
+
+        LocalDateTime before = LocalDateTime.now();
+        deletionService.drain();
+        deletionService.drain();
+
+        assertThat(deleteAllCalls.get()).isEqualTo(1);
+        StorageDeletion deletion = outbox.rows().get(0);
+        assertThat(deletion.getAttempts()).isEqualTo(1);
+        assertThat(deletion.getLastError()).isEqualTo("backend unavailable");
+        assertThat(deletion.getNextAttemptAt()).isAfter(before.plusSeconds(1));
+        assertThat(backend.contains("userdata/a/1/x.jpg")).isTrue();
+    }
+
+    @Test
+    void commitCancelsPendingDeletionOfSameContent() throws IOException {
+        BlobStorageService.StagedBlob staged = stage();
+        String blobName = staged.getHash() + ".jpg";
+        backend.add(layout.blobKey(blobName), CONTENT, 0);
+        deletionService.deleteBlobsAfterCommit(List.of(blobName));
+        assertThat(outbox.size()).isEqualTo(2);
+
+        blobStorageService.commit(staged, "jpg");
+        deletionService.drain();
+
+        assertThat(outbox.size()).isZero();
+        assertThat(deleteAllCalls.get()).isZero();
+        assertThat(backend.contains(layout.blobKey(blobName))).isTrue();
+        assertThat(Files.exists(staged.getPath())).isFalse();
+    }
+
+    @Test
+    void commitDuringDrainWaitsAndStoresObjectAgain() throws Exception {
+        BlobStorageService.StagedBlob staged = stage();
+        String blobName = staged.getHash() + ".jpg";
+        String key = layout.blobKey(blobName);
+        backend.add(key, CONTENT, 0);
+        deletionService.deleteBlobsAfterCommit(List.of(blobName));
+
+        /* 后台已经确认文件没有记录，即将删除对象时，相同内容的上传开始提交 */
+        CountDownLatch deleting = new CountDownLatch(1);
+        beforeDeleteAll = () -> {
+            deleting.countDown();
+            Thread.sleep(300);
+            return null;
+        };
+        Future<?> drainer = executor.submit(deletionService::drain);
+        assertThat(deleting.await(5, TimeUnit.SECONDS)).isTrue();
+
+        blobStorageService.commit(staged, "jpg");
+        drainer.get(5, TimeUnit.SECONDS);
+
+        /* 提交等到后台删除结束后才检查对象是否存在，随后重新写入 */
+        assertThat(backend.deletedKeys()).contains(key);
+        assertThat(backend.contains(key)).isTrue();
+        assertThat(backend.stat(key).getSize()).isEqualTo(CONTENT.length);
+        assertThat(outbox.size()).isZero();
+    }
+
+    /**
+     * 发件箱表的内存模型。
+     */
+    private static final class Outbox {
+
+        private final List<Row> rows = new ArrayList<>();
+        private long nextId;
+
+        synchronized int insertAll(String keys, String hashes, LocalDateTime now) {
+            String[] keyList = keys.split("\n", -1);
+            String[] hashList = hashes.split("\n", -1);
+            for (int i = 0; i < keyList.length; i++) {
+                StorageDeletion deletion = new StorageDeletion();
+                deletion.setId(++nextId);
+                deletion.setObjectKey(keyList[i]);
+                deletion.setBlobHash(hashList[i].isEmpty() ? null : hashList[i]);
+                deletion.setNextAttemptAt(now);
+                deletion.setCreatedAt(now);
+                rows.add(new Row(deletion));
+            }
+            return keyList.length;
+        }
+
+        synchronized List<StorageDeletion> claim(LocalDateTime now, int limit) {
+            List<StorageDeletion> claimed = new ArrayList<>();
+            for (Row row : rows) {
+                if (claimed.size() < limit && row.owner == null && !row.deletion.getNextAttemptAt().isAfter(now)) {
+                    row.owner = Thread.currentThread();
+                    claimed.add(row.deletion);
+                }
+            }
+            return claimed;
+        }
+
+        synchronized int deleteByObjectKeys(Collection<String> keys) throws InterruptedException {
+            while (rows.stream().anyMatch(row -> keys.contains(row.deletion.getObjectKey())
+                    && row.owner != null && row.owner != Thread.currentThread())) {
+                wait();
+            }
+            int before = rows.size();
+            rows.removeIf(row -> keys.contains(row.deletion.getObjectKey()) && !row.deleted);
+            return before - rows.size();
+        }
+
+        synchronized void deleteAll(Iterable<StorageDeletion> batch) {
+            for (StorageDeletion deletion : batch) {
+                for (Row row : rows) {
+                    if (row.deletion == deletion) {
+                        row.deleted = true;
+                    }
+                }
+            }
+        }
+
+        synchronized void endTransaction() {
+            rows.removeIf(row -> row.deleted && row.owner == Thread.currentThread());
+            for (Row row : rows) {
+                if (row.owner == Thread.currentThread()) {
+                    row.owner = null;
+                }
+            }
+            notifyAll();
+        }
+
+        synchronized int size() {
+            return rows.size();
+        }
+
+        synchronized List<StorageDeletion> rows() {
+            List<StorageDeletion> deletions = new ArrayList<>();
+            for (Row row : rows) {
+                deletions.add(row.deletion);
+            }
+            return deletions;
+        }
+    }
+
+    private static final class Row {
+
+        private final StorageDeletion deletion;
+        private Thread owner;
+        private boolean deleted;
+
+        Row(StorageDeletion deletion) {
+            this.deletion = deletion;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.flechazo.jnyzdairy.service;
+
+import com.flechazo.jnyzdairy.config.StorageConfig;
+import com.flechazo.jnyzdairy.dto.StorageGcReport;
+import com.flechazo.jnyzdairy.entity.JobCheckpoint;
+import com.flechazo.jnyzdairy.entity.StorageJournalEntry;
+import com.flechazo.jnyzdairy.entity.StorageOperation;
+import com.flechazo.jnyzdairy.repository.DiaryImageRepository;
+import com.flechazo.jnyzdairy.repository.StoredBlobRepository;
+import com.flechazo.jnyzdairy.repository.UserRepository;
+import com.flechazo.jnyzdairy.util.StorageLayout;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * {@link StorageGcService} 的单元测试：全量回收的归并连接，以及由存储变更日志驱动的增量回收。
+ *
+ * @author Flechazo
+ */
+class StorageGcServiceTest {
+
+    private static final String REFERENCED = "a" + "1".repeat(63) + ".jpg";
+    private static final String ORPHAN = "a" + "2".repeat(63) + ".jpg";
+    private static final String RECENT = "a" + "3".repeat(63) + ".jpg";
+    private static final String REGISTERED = "b" + "4".repeat(63) + ".png";
+    private static final String AVATAR = "7/avatar/0123456789abcdef-512.jpg";
+    private static final String AVATAR_VARIANT = "avatar/0123456789abcdef-128.jpg";
+    private static final byte[] CONTENT = {1, 2, 3};
+
+    @TempDir
+    Path root;
+
+    private final long old = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2);
+    private final InMemoryStorageBackend backend = new InMemoryStorageBackend();
+    private final StoredBlobRepository storedBlobRepository = mock(StoredBlobRepository.class);
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final DiaryImageRepository diaryImageRepository = mock(DiaryImageRepository.class);
+    private final StorageJournalService journalService = mock(StorageJournalService.class);
+
+    private StorageConfig config;
+    private StorageLayout layout;
+
+    @BeforeEach
+    void setUp() {
+        config = new StorageConfig();
+        config.setRootPath(root.toString());
+        config.getLayout().setLevels(1);
+        config.getLayout().setWidth(1);
+        config.getGc().setGracePeriodMinutes(60);
+        config.getGc().setParallelism(2);
+        config.getGc().setMaxScannedPerSecond(0);
+        config.getGc().setMaxDeletesPerSecond(0);
+        layout = new StorageLayout(config);
+
+        /* 引用按分片过滤并排序，与原生查询的返回顺序一致 */
+        when(storedBlobRepository.streamReferencedNames(anyString())).thenAnswer(invocation -> {
+            String shard = invocation.getArgument(0);
+            return List.of(REFERENCED).stream().filter(name -> name.startsWith(shard)).sorted();
+        });
+        when(userRepository.streamReferencedPaths(anyString())).thenAnswer(invocation -> {
+            String shard = invocation.getArgument(0);
+            return List.of(AVATAR).stream()
+                    .filter(path -> layout.userKey(7L, path.substring(2)).startsWith(layout.userShardPrefix(shard)))
+                    .sorted();
+        });
+        when(storedBlobRepository.existsById(REGISTERED.substring(0, 64))).thenReturn(true);
+    }
+
+    private StorageGcService service(boolean journalEnabled) {
+        config.getJournal().setEnabled(journalEnabled);
+        BlobStorageService blobStorageService = new BlobStorageService(storedBlobRepository, backend, layout,
+                mock(StorageDeletionService.class), root.toString());
+        return new StorageGcService(config, backend, layout, blobStorageService, storedBlobRepository,
+                userRepository, diaryImageRepository, journalService, mock(PlatformTransactionManager.class));
+    }
+
+    private void populate() {
+        backend.add(layout.blobKey(REFERENCED), CONTENT, old);
+        backend.add(layout.legacyBlobKey(REFERENCED), CONTENT, old);
+        backend.add(layout.blobKey(ORPHAN), CONTENT, old);
+        backend.add(layout.blobKey(RECENT), CONTENT, System.currentTimeMillis());
+        backend.add(layout.blobKey(REGISTERED), CONTENT, old);
+        /* 摘要以a开头的文件放在了c分片下，布局中不可能访问到 */
+        backend.add("blobs/c/" + ORPHAN, CONTENT, old);
+        backend.add(layout.userKey(7L, AVATAR.substring(2)), CONTENT, old);
+        backend.add(layout.userKey(7L, AVATAR_VARIANT), CONTENT, old);
+        backend.add(layout.userKey(7L, "old.jpg"), CONTENT, old);
+        backend.add("backgrounds/bg.jpg", CONTENT, old);
+    }
+
+    @Test
+    void fullRunDeletesOnlyUnreferencedFilesOutsideGracePeriod() {
+        populate();
+
+        StorageGcReport report = service(false).run(false, true);
+
+        assertThat(report.getShardsTotal()).isEqualTo(32);
+        assertThat(report.getShardsDone()).isEqualTo(32);
+        assertThat(report.getShardsFailed()).isZero();
+        assertThat(report.getScanned()).isEqualTo(9);
+        assertThat(report.getSkippedRecent()).isEqualTo(1);
+        assertThat(report.getDeleted()).isEqualTo(3);
+        assertThat(backend.deletedKeys()).containsExactlyInAnyOrder(
+                layout.blobKey(ORPHAN), "blobs/c/" + ORPHAN, layout.userKey(7L, "old.jpg"));
+        assertThat(backend.contains(layout.blobKey(REFERENCED))).isTrue();
+        assertThat(backend.contains(layout.legacyBlobKey(REFERENCED))).isTrue();
+        assertThat(backend.contains(layout.blobKey(REGISTERED))).isTrue();
+        assertThat(backend.contains(layout.userKey(7L, AVATAR_VARIANT))).isTrue();
+        assertThat(backend.contains("backgrounds/bg.jpg")).isTrue();
+    }
+
+    @Test
+    void dryRunReportsOrphansWithoutDeleting() {
+        populate();
+
+        StorageGcReport report = service(false).run(true, true);
+
+        assertThat(report.getOrphans()).isEqualTo(3);
+        assertThat(report.getOrphanBytes()).isEqualTo(3L * CONTENT.length);
+        assertThat(report.getOrphanKeys()).hasSize(3);
+        assertThat(report.getDeleted()).isZero();
+        assertThat(backend.deletedKeys()).isEmpty();
+    }
+
+    @Test
+    void fullRunWithJournalMarksRescanComplete() {
+        populate();
+
+        StorageGcReport report = service(true).run(false, false);
+
+        assertThat(report.isIncremental()).isFalse();
+        verify(journalService).beginRescan("gc");
+        verify(journalService).completeRescan("gc");
+        assertThat(backend.listCalls()).isPositive();
+    }
+
+    @Test
+    void incrementalRunChecksOnlyJournaledKeysOutsideGracePeriod() {
+        populate();
+        JobCheckpoint checkpoint = new JobCheckpoint("gc", "10");
+        checkpoint.setCompleted(true);
+        when(journalService.getCheckpoint("gc")).thenReturn(checkpoint);
+        LocalDateTime before = LocalDateTime.now().minusHours(2);
+        when(journalService.read(10L, 1000)).thenReturn(List.of(
+                entry(11, StorageOperation.CREATE, layout.blobKey(ORPHAN), before),
+                entry(12, StorageOperation.REPLACE, layout.blobKey(REFERENCED), before),
+                entry(13, StorageOperation.DELETE, layout.userKey(7L, "old.jpg"), before),
+                entry(14, StorageOperation.CREATE, "blobs/c/" + ORPHAN, LocalDateTime.now())));
+        when(storedBlobRepository.existsByHashAndRefCountGreaterThan(REFERENCED.substring(0, 64), 0))
+                .thenReturn(true);
+
+        StorageGcReport report = service(true).run(false, false);
+
+        assertThat(report.isIncremental()).isTrue();
+        assertThat(report.getShardsFailed()).isZero();
+        assertThat(report.getScanned()).isEqualTo(3);
+        assertThat(report.getReferenced()).isEqualTo(1);
+        assertThat(report.getDeleted()).isEqualTo(1);
+        /* 只处理日志中的对象：删除操作不检查，宽限期内记录的条目留到下一次 */
+        assertThat(backend.deletedKeys()).containsExactly(layout.blobKey(ORPHAN));
+        assertThat(backend.contains(layout.userKey(7L, "old.jpg"))).isTrue();
+        assertThat(backend.contains("blobs/c/" + ORPHAN)).isTrue();
+        assertThat(backend.listCalls()).isZero();
+        verify(journalService).advance("gc", 13L);
+        verify(journalService, never()).beginRescan(anyString());
+    }
+
+    @Test
+    void incrementalDryRunDoesNotAdvanceCheckpoint() {
+        populate();
+        JobCheckpoint checkpoint = new JobCheckpoint("gc", "10");
+        checkpoint.setCompleted(true);
+        when(journalService.getCheckpoint("gc")).thenReturn(checkpoint);
+        when(journalService.read(10L, 1000)).thenReturn(List.of(
+                entry(11, StorageOperation.CREATE, layout.blobKey(ORPHAN), LocalDateTime.now().minusHours(2))));
+
+        StorageGcReport report = service(true).run(true, false);
+
+        assertThat(report.getOrphans()).isEqualTo(1);
+        assertThat(backend.deletedKeys()).isEmpty();
+        verify(journalService, never()).advance(anyString(), anyLong());
+    }
+
+    private static StorageJournalEntry entry(long seq, StorageOperation operation, String key,
+                                             LocalDateTime recordedAt) {
+        StorageJournalEntry entry = new StorageJournalEntry(operation, key, CONTENT.length);
+        entry.setSeq(seq);
+        entry.setRecordedAt(recordedAt);
+        return entry;
+    }
+}
@@ -0,0 +1,75 @@
+package com.flechazo.jnyzdairy.service;
+
+import com.flechazo.jnyzdairy.config.StorageConfig;
+import com.flechazo.jnyzdairy.entity.UserStorageUsage;
+import com.flechazo.jnyzdairy.repository.DiaryImageRepository;
+import com.flechazo.jnyzdairy.repository.UserStorageUsageRepository;
+import com.flechazo.jnyzdairy.util.StorageLayout;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * {@link StorageQuotaService} 的单元测试：核对用量时每个文件只计入一次。
+ * <p>
+ * 按内容寻址存储的图片由数据库统计，用户目录下的头像和旧日记图片由存储后端的列表统计。
+ *
+ * @author Flechazo
+ */
+class StorageQuotaServiceTest {
+
+    private static final Long USER_ID = 7L;
+
+    private final UserStorageUsageRepository usageRepository = mock(UserStorageUsageRepository.class);
+    private final DiaryImageRepository diaryImageRepository = mock(DiaryImageRepository.class);
+    private final InMemoryStorageBackend backend = new InMemoryStorageBackend();
+
+    private StorageQuotaService quotaService;
+
+    @BeforeEach
+    void setUp() {
+        StorageConfig config = new StorageConfig();
+        StorageLayout layout = new StorageLayout(config);
+        quotaService = new StorageQuotaService(config, usageRepository, diaryImageRepository, backend, layout,
+                mock(PlatformTransactionManager.class));
+
+        /* 头像和一张未按内容寻址存储的旧日记图片位于用户目录下，后者在数据库中也有记录 */
+        backend.add(layout.userKey(USER_ID, "avatar/a.jpg"), new byte[100], 0);
+        backend.add(layout.legacyUserKey(USER_ID, "diary/old.jpg"), new byte[200], 0);
+        backend.add(layout.userKey(8L, "avatar/b.jpg"), new byte[50], 0);
+        when(diaryImageRepository.sumContentAddressedByteSizeByUserId(USER_ID)).thenReturn(1000L);
+        when(diaryImageRepository.countByDiaryUserIdAndContentHashIsNotNull(USER_ID)).thenReturn(2L);
+    }
+
+    private void stored(long bytes, long files) {
+        UserStorageUsage usage = new UserStorageUsage();
+        usage.setUserId(USER_ID);
+        usage.setUsedBytes(bytes);
+        usage.setFileCount(files);
+        when(usageRepository.findById(USER_ID)).thenReturn(Optional.of(usage));
+    }
+
+    @Test
+    void countsLegacyImagesOnlyThroughListing() {
+        stored(1500, 5);
+
+        assertThat(quotaService.reconcile(USER_ID)).isTrue();
+
+        verify(usageRepository).set(USER_ID, 1300, 4);
+    }
+
+    @Test
+    void leavesMatchingUsageUnchanged() {
+        stored(1300, 4);
+
+        assertThat(quotaService.reconcile(USER_ID)).isFalse();
+
+        verify(usageRepository, never()).set(anyLong(), anyLong(), anyLong());
+    }
+}
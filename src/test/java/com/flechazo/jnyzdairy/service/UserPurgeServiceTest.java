@@ -0,0 +1,275 @@
+package com.flechazo.jnyzdairy.service;
+
+import com.flechazo.jnyzdairy.config.StorageConfig;
+import com.flechazo.jnyzdairy.entity.User;
+import com.flechazo.jnyzdairy.repository.DiaryImageRepository;
+import com.flechazo.jnyzdairy.repository.DiaryRepository;
+import com.flechazo.jnyzdairy.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * {@link UserPurgeService} 的单元测试：分批清理、失败后从剩余数据继续，以及失败的用户不影响其他用户。
+ * <p>
+ * 用户、日记和图片由内存模型代替，领取用户的查询按删除时间、重试时间和排序规则在模型上求值。
+ *
+ * @author Flechazo
+ */
+class UserPurgeServiceTest {
+
+    private static final long RETRY_BACKOFF = 60L * 60 * 1000;
+
+    private final Map<Long, PurgeUser> users = new TreeMap<>();
+    private final Map<Long, List<String>> imagePaths = new HashMap<>();
+    private final List<String> deletedPaths = new ArrayList<>();
+    private final Set<String> failingPaths = new HashSet<>();
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final DiaryRepository diaryRepository = mock(DiaryRepository.class);
+    private final DiaryImageRepository diaryImageRepository = mock(DiaryImageRepository.class);
+    private final FileStorageService fileStorageService = mock(FileStorageService.class);
+
+    private UserPurgeService purgeService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        StorageConfig config = new StorageConfig();
+        config.getPurge().setBatchSize(2);
+        config.getPurge().setMaxRowsPerSecond(0);
+        config.getPurge().setMaxFilesPerSecond(0);
+        config.getPurge().setRetryBackoff(RETRY_BACKOFF);
+
+        when(userRepository.claimPurgeCandidate(any(), any())).thenAnswer(invocation -> {
+            LocalDateTime cutoff = invocation.getArgument(0);
+            LocalDateTime retryBefore = invocation.getArgument(1);
+            return users.values().stream()
+                    .filter(user -> user.purgedAt == null && !user.deletedAt.isAfter(cutoff))
+                    .filter(user -> user.retryAt == null || !user.retryAt.isAfter(retryBefore))
+                    .min(Comparator.comparing((PurgeUser user) -> user.deletedAt).thenComparing(user -> user.id))
+                    .map(user -> user.id);
+        });
+        when(userRepository.findById(anyLong())).thenAnswer(invocation -> {
+            PurgeUser user = users.get(invocation.<Long>getArgument(0));
+            User entity = new User();
+            entity.setId(user.id);
+            entity.setAvatarPath(user.avatarPath);
+            return Optional.of(entity);
+        });
+        when(userRepository.markPurged(anyLong(), any())).thenAnswer(invocation -> {
+            PurgeUser user = users.get(invocation.<Long>getArgument(0));
+            user.purgedAt = invocation.getArgument(1);
+            user.avatarPath = null;
+            return 1;
+        });
+        when(userRepository.findPurgeFailures(anyLong()))
+                .thenAnswer(invocation -> Optional.ofNullable(users.get(invocation.<Long>getArgument(0)).failures));
+        when(userRepository.recordPurgeFailure(anyLong(), anyInt(), any())).thenAnswer(invocation -> {
+            PurgeUser user = users.get(invocation.<Long>getArgument(0));
+            user.failures = invocation.getArgument(1);
+            user.retryAt = invocation.getArgument(2);
+            return 1;
+        });
+
+        when(diaryRepository.findIdsByUserId(anyLong(), any())).thenAnswer(invocation -> {
+            List<Long> diaryIds = users.get(invocation.<Long>getArgument(0)).diaryIds;
+            Pageable pageable = invocation.getArgument(1);
+            return new ArrayList<>(diaryIds.subList(0, Math.min(pageable.getPageSize(), diaryIds.size())));
+        });
+        when(diaryRepository.deleteByIds(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            users.values().forEach(user -> user.diaryIds.removeAll(ids));
+            return ids.size();
+        });
+        when(diaryImageRepository.findPathsByDiaryIdIn(anyCollection())).thenAnswer(invocation -> {
+            List<String> paths = new ArrayList<>();
+            for (Long diaryId : invocation.<Collection<Long>>getArgument(0)) {
+                paths.addAll(imagePaths.getOrDefault(diaryId, List.of()));
+            }
+            return paths;
+        });
+        when(diaryImageRepository.deleteByDiaryIds(anyCollection())).thenAnswer(invocation -> {
+            int rows = 0;
+            for (Long diaryId : invocation.<Collection<Long>>getArgument(0)) {
+                List<String> paths = imagePaths.remove(diaryId);
+                rows += paths == null ? 0 : paths.size();
+            }
+            return rows;
+        });
+
+        doAnswer(invocation -> {
+            Collection<String> paths = invocation.getArgument(0);
+            for (String path : paths) {
+                if (failingPaths.contains(path)) {
+                    throw new IOException("storage unavailable");
+                }
+            }
+            deletedPaths.addAll(paths);
+            return null;
+        }).when(fileStorageService).deleteFiles(anyCollection());
+        doAnswer(invocation -> deletedPaths.add(invocation.getArgument(0)))
+                .when(fileStorageService).deleteFile(anyString());
+
+        purgeService = new UserPurgeService(config, userRepository, diaryRepository, diaryImageRepository,
+                fileStorageService, mock(PlatformTransactionManager.class));
+    }
+
+    private PurgeUser addUser(long id, int deletedDaysAgo, String avatarPath, long... diaryIds) {
+        PurgeUser user = new PurgeUser(id, LocalDateTime.now().minusDays(deletedDaysAgo));
+        user.avatarPath = avatarPath;
+        for (long diaryId : diaryIds) {
+            user.diaryIds.add(diaryId);
+            imagePaths.put(diaryId, List.of(id + "/diary/" + diaryId + ".jpg"));
+        }
+        users.put(id, user);
+        return user;
+    }
+
+    @Test
+    void purgesDiariesInBatchesThenAvatarAndMarksPurged() throws InterruptedException {
+        PurgeUser user = addUser(1, 40, "1/avatar/a.jpg", 11, 12, 13, 14, 15);
+        PurgeUser recent = addUser(2, 10, "2/avatar/b.jpg", 21);
+
+        int purged = purgeService.purge();
+
+        assertThat(purged).isEqualTo(1);
+        assertThat(user.purgedAt).isNotNull();
+        assertThat(user.avatarPath).isNull();
+        assertThat(user.diaryIds).isEmpty();
+        assertThat(deletedPaths).containsExactly("1/diary/11.jpg", "1/diary/12.jpg", "1/diary/13.jpg",
+                "1/diary/14.jpg", "1/diary/15.jpg", "1/avatar/a.jpg");
+        /* 两篇、两篇、一篇，然后发现没有剩余的日记 */
+        verify(diaryRepository, times(4)).findIdsByUserId(eq(1L), any());
+        verify(diaryRepository, times(3)).deleteByIds(anyCollection());
+        verify(userRepository, never()).recordPurgeFailure(anyLong(), anyInt(), any());
+
+        assertThat(recent.purgedAt).isNull();
+        assertThat(recent.diaryIds).containsExactly(21L);
+        assertThat(imagePaths).containsOnlyKeys(21L);
+    }
+
+    @Test
+    void purgesUserWithoutDiariesOrAvatar() throws InterruptedException, IOException {
+        PurgeUser user = addUser(1, 40, null);
+
+        assertThat(purgeService.purge()).isEqualTo(1);
+
+        assertThat(user.purgedAt).isNotNull();
+        assertThat(deletedPaths).isEmpty();
+        verify(fileStorageService, never()).deleteFiles(anyCollection());
+    }
+
+    @Test
+    void resumesFromRemainingDiariesAfterFailedBatch() throws InterruptedException {
+        PurgeUser user = addUser(1, 40, "1/avatar/a.jpg", 11, 12, 13, 14, 15);
+        failingPaths.add("1/diary/13.jpg");
+        LocalDateTime before = LocalDateTime.now();
+
+        assertThat(purgeService.purge()).isZero();
+
+        /* 第一批已提交，第二批回滚，失败记录在用户上 */
+        assertThat(user.diaryIds).containsExactly(13L, 14L, 15L);
+        assertThat(deletedPaths).containsExactly("1/diary/11.jpg", "1/diary/12.jpg");
+        assertThat(user.purgedAt).isNull();
+        assertThat(user.failures).isEqualTo(1);
+        assertThat(user.retryAt).isAfterOrEqualTo(before.plusNanos(RETRY_BACKOFF * 1_000_000));
+
+        /* 退避时间内不再领取该用户 */
+        clearInvocations(diaryRepository);
+        assertThat(purgeService.purge()).isZero();
+        verify(diaryRepository, never()).findIdsByUserId(anyLong(), any());
+
+        /* 退避时间过后从剩余的日记继续 */
+        failingPaths.clear();
+        user.retryAt = LocalDateTime.now().minusSeconds(1);
+        assertThat(purgeService.purge()).isEqualTo(1);
+
+        assertThat(user.purgedAt).isNotNull();
+        assertThat(user.diaryIds).isEmpty();
+        assertThat(deletedPaths).containsExactly("1/diary/11.jpg", "1/diary/12.jpg", "1/diary/13.jpg",
+                "1/diary/14.jpg", "1/diary/15.jpg", "1/avatar/a.jpg");
+    }
+
+    @Test
+    void skipsFailingUserForRestOfRunAndPurgesOthers() throws InterruptedException {
+        PurgeUser failing = addUser(1, 50, null, 11);
+        PurgeUser other = addUser(2, 40, "2/avatar/b.jpg", 21, 22);
+        failingPaths.add("1/diary/11.jpg");
+
+        assertThat(purgeService.purge()).isEqualTo(1);
+
+        /* 最早删除的用户失败后只被领取一次，之后的用户照常清理 */
+        verify(diaryRepository, times(1)).findIdsByUserId(eq(1L), any());
+        assertThat(failing.failures).isEqualTo(1);
+        assertThat(failing.purgedAt).isNull();
+        assertThat(failing.diaryIds).containsExactly(11L);
+        assertThat(other.purgedAt).isNotNull();
+        assertThat(deletedPaths).containsExactly("2/diary/21.jpg", "2/diary/22.jpg", "2/avatar/b.jpg");
+    }
+
+    @Test
+    void doublesBackoffOnRepeatedFailures() throws InterruptedException {
+        PurgeUser user = addUser(1, 40, null, 11);
+        failingPaths.add("1/diary/11.jpg");
+
+        purgeService.purge();
+        user.retryAt = LocalDateTime.now().minusSeconds(1);
+        LocalDateTime before = LocalDateTime.now();
+        purgeService.purge();
+
+        assertThat(user.failures).isEqualTo(2);
+        assertThat(user.retryAt).isAfterOrEqualTo(before.plusNanos(2 * RETRY_BACKOFF * 1_000_000));
+        assertThat(user.retryAt).isBefore(before.plusNanos(3 * RETRY_BACKOFF * 1_000_000));
+    }
+
+    @Test
+    void abortsWhenClaimFails() {
+        addUser(1, 40, null, 11);
+        doThrow(new IllegalStateException("database down")).when(userRepository).claimPurgeCandidate(any(), any());
+
+        assertThatThrownBy(() -> purgeService.purge()).isInstanceOf(IllegalStateException.class);
+
+        verify(userRepository, never()).recordPurgeFailure(anyLong(), anyInt(), any());
+    }
+
+    @Test
+    void abortsWhenFailureCannotBeRecorded() {
+        addUser(1, 40, null, 11);
+        failingPaths.add("1/diary/11.jpg");
+        doThrow(new IllegalStateException("database down"))
+                .when(userRepository).recordPurgeFailure(anyLong(), anyInt(), any());
+
+        assertThatThrownBy(() -> purgeService.purge()).isInstanceOf(IllegalStateException.class);
+
+        verify(diaryRepository, times(1)).findIdsByUserId(eq(1L), any());
+    }
+
+    /**
+     * 内存中的已删除用户。
+     */
+    private static final class PurgeUser {
+
+        private final Long id;
+        private final LocalDateTime deletedAt;
+        private final List<Long> diaryIds = new ArrayList<>();
+        private String avatarPath;
+        private LocalDateTime purgedAt;
+        private Integer failures;
+        private LocalDateTime retryAt;
+
+        private PurgeUser(Long id, LocalDateTime deletedAt) {
+            this.id = id;
+            this.deletedAt = deletedAt;
+        }
+    }
+}
@@ -0,0 +1,457 @@
+package com.flechazo.jnyzdairy.service.impl;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 测试用的进程内S3兼容服务，只实现 {@link S3StorageBackend} 用到的接口，使用路径风格访问单个存储桶。
+ * <p>
+ * 支持普通上传、分片上传（创建、上传分片、完成、中止）、HEAD、带Range的GET、删除、批量删除、服务端复制
+ * 以及分页的ListObjectsV2，可以注入分片上传失败、后续分页失败和批量删除中单个对象的错误。
+ * 请求体按 {@code aws-chunked} 编码时先解码。
+ *
+ * @author Flechazo
+ */
+class InProcessS3Server implements AutoCloseable {
+
+    private static final Pattern KEY = Pattern.compile("<Key>(.*?)</Key>");
+    private static final Pattern PART_NUMBER = Pattern.compile("<PartNumber>(\\d+)</PartNumber>");
+
+    private final String bucket;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final NavigableMap<String, StoredObject> objects = new ConcurrentSkipListMap<>();
+    private final Map<String, SortedMap<Integer, byte[]>> uploads = Collections.synchronizedMap(new HashMap<>());
+    private final AtomicInteger uploadIds = new AtomicInteger();
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+
+    /**
+     * 每页最多返回的对象数，小于请求的数量时强制分页。
+     */
+    volatile int pageSize = 1000;
+
+    /**
+     * 上传该编号的分片时返回403，0表示不注入错误。
+     */
+    volatile int failingPart;
+
+    /**
+     * 为 {@code true} 时带续传令牌的列举请求返回403，即第一页之后的分页失败。
+     */
+    volatile boolean failLaterPages;
+
+    /**
+     * 批量删除时报告错误且不删除的对象键。
+     */
+    final Set<String> deleteErrors = Collections.synchronizedSet(new HashSet<>());
+
+    InProcessS3Server(String bucket) throws IOException {
+        this.bucket = bucket;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    String endpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    void putObject(String key, byte[] content) {
+        objects.put(key, new StoredObject(content, md5Etag(content)));
+    }
+
+    byte[] object(String key) {
+        StoredObject object = objects.get(key);
+        return object == null ? null : object.content;
+    }
+
+    Set<String> keys() {
+        return new TreeSet<>(objects.keySet());
+    }
+
+    int pendingUploads() {
+        return uploads.size();
+    }
+
+    /**
+     * 已处理的请求，形如 {@code UploadPart 2}、{@code ListObjectsV2}、{@code DeleteObjects 1000}。
+     */
+    List<String> requests() {
+        return List.copyOf(requests);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getRawPath();
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String bucketPath = "/" + bucket;
+            if (!path.equals(bucketPath) && !path.startsWith(bucketPath + "/")) {
+                error(exchange, 404, "NoSuchBucket");
+                return;
+            }
+            String key = decode(path.substring(Math.min(path.length(), bucketPath.length() + 1)));
+            byte[] body = readBody(exchange);
+
+            if (key.isEmpty()) {
+                if ("GET".equals(method)) {
+                    list(exchange, query);
+                } else if ("POST".equals(method) && query.containsKey("delete")) {
+                    deleteObjects(exchange, body);
+                } else {
+                    error(exchange, 400, "InvalidRequest");
+                }
+                return;
+            }
+            switch (method) {
+                case "PUT" -> {
+                    if (query.containsKey("uploadId")) {
+                        uploadPart(exchange, query, body);
+                    } else if (exchange.getRequestHeaders().containsKey("x-amz-copy-source")) {
+                        copy(exchange, key);
+                    } else {
+                        requests.add("PutObject");
+                        putObject(key, body);
+                        exchange.getResponseHeaders().set("ETag", objects.get(key).etag);
+                        exchange.sendResponseHeaders(200, -1);
+                    }
+                }
+                case "HEAD" -> head(exchange, key);
+                case "GET" -> get(exchange, key);
+                case "DELETE" -> {
+                    if (query.containsKey("uploadId")) {
+                        requests.add("AbortMultipartUpload");
+                        uploads.remove(query.get("uploadId"));
+                    } else {
+                        requests.add("DeleteObject");
+                        objects.remove(key);
+                    }
+                    exchange.sendResponseHeaders(204, -1);
+                }
+                case "POST" -> {
+                    if (query.containsKey("uploads")) {
+                        createUpload(exchange, key);
+                    } else if (query.containsKey("uploadId")) {
+                        completeUpload(exchange, key, query.get("uploadId"), body);
+                    } else {
+                        error(exchange, 400, "InvalidRequest");
+                    }
+                }
+                default -> error(exchange, 405, "MethodNotAllowed");
+            }
+        }
+    }
+
+    private void list(HttpExchange exchange, Map<String, String> query) throws IOException {
+        requests.add("ListObjectsV2");
+        String token = query.get("continuation-token");
+        if (token != null && failLaterPages) {
+            error(exchange, 403, "AccessDenied");
+            return;
+        }
+        String prefix = query.getOrDefault("prefix", "");
+        int maxKeys = Math.min(pageSize, Integer.parseInt(query.getOrDefault("max-keys", "1000")));
+        NavigableMap<String, StoredObject> candidates = token == null
+                ? objects.tailMap(prefix, true) : objects.tailMap(token, false);
+
+        StringBuilder contents = new StringBuilder();
+        int count = 0;
+        String last = null;
+        boolean truncated = false;
+        for (Map.Entry<String, StoredObject> entry : candidates.entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            if (count == maxKeys) {
+                truncated = true;
+                break;
+            }
+            StoredObject object = entry.getValue();
+            contents.append("<Contents><Key>").append(escape(entry.getKey())).append("</Key>")
+                    .append("<LastModified>").append(Instant.ofEpochMilli(object.lastModified)).append("</LastModified>")
+                    .append("<ETag>").append(escape(object.etag)).append("</ETag>")
+                    .append("<Size>").append(object.content.length).append("</Size>")
+                    .append("<StorageClass>STANDARD</StorageClass></Contents>");
+            count++;
+            last = entry.getKey();
+        }
+        StringBuilder xml = new StringBuilder("<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">")
+                .append("<Name>").append(bucket).append("</Name>")
+                .append("<Prefix>").append(escape(prefix)).append("</Prefix>")
+                .append("<KeyCount>").append(count).append("</KeyCount>")
+                .append("<MaxKeys>").append(maxKeys).append("</MaxKeys>")
+                .append("<IsTruncated>").append(truncated).append("</IsTruncated>");
+        if (token != null) {
+            xml.append("<ContinuationToken>").append(escape(token)).append("</ContinuationToken>");
+        }
+        if (truncated) {
+            xml.append("<NextContinuationToken>").append(escape(last)).append("</NextContinuationToken>");
+        }
+        xml.append(contents).append("</ListBucketResult>");
+        xml(exchange, 200, xml.toString());
+    }
+
+    private void deleteObjects(HttpExchange exchange, byte[] body) throws IOException {
+        List<String> keys = new ArrayList<>();
+        Matcher matcher = KEY.matcher(new String(body, StandardCharsets.UTF_8));
+        while (matcher.find()) {
+            keys.add(unescape(matcher.group(1)));
+        }
+        requests.add("DeleteObjects " + keys.size());
+        StringBuilder xml = new StringBuilder("<DeleteResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">");
+        for (String key : keys) {
+            if (deleteErrors.contains(key)) {
+                xml.append("<Error><Key>").append(escape(key)).append("</Key><Code>AccessDenied</Code>")
+                        .append("<Message>Access Denied</Message></Error>");
+            } else {
+                objects.remove(key);
+            }
+        }
+        xml.append("</DeleteResult>");
+        xml(exchange, 200, xml.toString());
+    }
+
+    private void copy(HttpExchange exchange, String key) throws IOException {
+        requests.add("CopyObject");
+        String source = decode(exchange.getRequestHeaders().getFirst("x-amz-copy-source"));
+        if (source.startsWith("/")) {
+            source = source.substring(1);
+        }
+        StoredObject object = source.startsWith(bucket + "/") ? objects.get(source.substring(bucket.length() + 1)) : null;
+        if (object == null) {
+            error(exchange, 404, "NoSuchKey");
+            return;
+        }
+        objects.put(key, new StoredObject(object.content, object.etag));
+        xml(exchange, 200, "<CopyObjectResult><ETag>" + escape(object.etag) + "</ETag><LastModified>"
+                + Instant.ofEpochMilli(object.lastModified) + "</LastModified></CopyObjectResult>");
+    }
+
+    private void head(HttpExchange exchange, String key) throws IOException {
+        StoredObject object = objects.get(key);
+        if (object == null) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        objectHeaders(exchange, object);
+        exchange.getResponseHeaders().set("Content-Length", Integer.toString(object.content.length));
+        exchange.sendResponseHeaders(200, -1);
+    }
+
+    private void get(HttpExchange exchange, String key) throws IOException {
+        requests.add("GetObject");
+        StoredObject object = objects.get(key);
+        if (object == null) {
+            error(exchange, 404, "NoSuchKey");
+            return;
+        }
+        objectHeaders(exchange, object);
+        byte[] content = object.content;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        int status = 200;
+        int start = 0;
+        int end = content.length - 1;
+        if (range != null && range.startsWith("bytes=")) {
+            String[] bounds = range.substring("bytes=".length()).split("-", 2);
+            start = Integer.parseInt(bounds[0]);
+            end = bounds[1].isEmpty() ? end : Math.min(end, Integer.parseInt(bounds[1]));
+            status = 206;
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+        }
+        int length = end - start + 1;
+        exchange.sendResponseHeaders(status, length == 0 ? -1 : length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(content, start, length);
+        }
+    }
+
+    private void createUpload(HttpExchange exchange, String key) throws IOException {
+        requests.add("CreateMultipartUpload");
+        String uploadId = "upload-" + uploadIds.incrementAndGet();
+        uploads.put(uploadId, new TreeMap<>());
+        xml(exchange, 200, "<InitiateMultipartUploadResult><Bucket>" + bucket + "</Bucket><Key>" + escape(key)
+                + "</Key><UploadId>" + uploadId + "</UploadId></InitiateMultipartUploadResult>");
+    }
+
+    private void uploadPart(HttpExchange exchange, Map<String, String> query, byte[] body) throws IOException {
+        int partNumber = Integer.parseInt(query.get("partNumber"));
+        requests.add("UploadPart " + partNumber);
+        SortedMap<Integer, byte[]> parts = uploads.get(query.get("uploadId"));
+        if (parts == null) {
+            error(exchange, 404, "NoSuchUpload");
+            return;
+        }
+        if (partNumber == failingPart) {
+            error(exchange, 403, "AccessDenied");
+            return;
+        }
+        parts.put(partNumber, body);
+        exchange.getResponseHeaders().set("ETag", md5Etag(body));
+        exchange.sendResponseHeaders(200, -1);
+    }
+
+    private void completeUpload(HttpExchange exchange, String key, String uploadId, byte[] body) throws IOException {
+        requests.add("CompleteMultipartUpload");
+        SortedMap<Integer, byte[]> parts = uploads.remove(uploadId);
+        if (parts == null) {
+            error(exchange, 404, "NoSuchUpload");
+            return;
+        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        Matcher matcher = PART_NUMBER.matcher(new String(body, StandardCharsets.UTF_8));
+        int count = 0;
+        while (matcher.find()) {
+            byte[] part = parts.get(Integer.parseInt(matcher.group(1)));
+            if (part == null) {
+                error(exchange, 400, "InvalidPart");
+                return;
+            }
+            content.writeBytes(part);
+            count++;
+        }
+        String etag = "\"" + md5Hex(content.toByteArray()) + "-" + count + "\"";
+        objects.put(key, new StoredObject(content.toByteArray(), etag));
+        xml(exchange, 200, "<CompleteMultipartUploadResult><Bucket>" + bucket + "</Bucket><Key>" + escape(key)
+                + "</Key><ETag>" + escape(etag) + "</ETag></CompleteMultipartUploadResult>");
+    }
+
+    private void objectHeaders(HttpExchange exchange, StoredObject object) {
+        exchange.getResponseHeaders().set("ETag", object.etag);
+        exchange.getResponseHeaders().set("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME
+                .format(Instant.ofEpochMilli(object.lastModified).atZone(ZoneOffset.UTC)));
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+    }
+
+    private void error(HttpExchange exchange, int status, String code) throws IOException {
+        xml(exchange, status, "<Error><Code>" + code + "</Code><Message>" + code + "</Message>"
+                + "<RequestId>test</RequestId></Error>");
+    }
+
+    private void xml(HttpExchange exchange, int status, String xml) throws IOException {
+        byte[] bytes = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + xml).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * 读取请求体，{@code aws-chunked} 编码时去掉分块头和签名。
+     */
+    private byte[] readBody(HttpExchange exchange) throws IOException {
+        byte[] raw;
+        try (InputStream in = exchange.getRequestBody()) {
+            raw = in.readAllBytes();
+        }
+        String sha256 = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+        String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        boolean chunked = (sha256 != null && sha256.startsWith("STREAMING-"))
+                || (encoding != null && encoding.contains("aws-chunked"));
+        if (!chunked) {
+            return raw;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int offset = 0;
+        while (offset < raw.length) {
+            int lineEnd = indexOfCrlf(raw, offset);
+            String header = new String(raw, offset, lineEnd - offset, StandardCharsets.US_ASCII);
+            int size = Integer.parseInt(header.split(";", 2)[0].trim(), 16);
+            offset = lineEnd + 2;
+            if (size == 0) {
+                break;
+            }
+            out.write(raw, offset, size);
+            offset += size + 2;
+        }
+        return out.toByteArray();
+    }
+
+    private static int indexOfCrlf(byte[] data, int from) {
+        for (int i = from; i + 1 < data.length; i++) {
+            if (data[i] == '\r' && data[i + 1] == '\n') {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Malformed aws-chunked body");
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            query.put(decode(eq < 0 ? pair : pair.substring(0, eq)), eq < 0 ? "" : decode(pair.substring(eq + 1)));
+        }
+        return query;
+    }
+
+    private static String decode(String value) {
+        return URLDecoder.decode(value.replace("+", "%2B"), StandardCharsets.UTF_8);
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static String unescape(String value) {
+        return value.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"").replace("&amp;", "&");
+    }
+
+    private static String md5Etag(byte[] content) {
+        return "\"" + md5Hex(content) + "\"";
+    }
+
+    private static String md5Hex(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 存储的对象，修改时间精确到秒，与HTTP头中的时间一致。
+     */
+    private static final class StoredObject {
+
+        private final byte[] content;
+        private final String etag;
+        private final long lastModified = Instant.now().getEpochSecond() * 1000;
+
+        private StoredObject(byte[] content, String etag) {
+            this.content = content;
+            this.etag = etag;
+        }
+    }
+}
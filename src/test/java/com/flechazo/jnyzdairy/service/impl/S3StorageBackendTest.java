@@ -0,0 +1,213 @@
+package com.flechazo.jnyzdairy.service.impl;
+
+import com.flechazo.jnyzdairy.config.StorageConfig;
+import com.flechazo.jnyzdairy.dto.StorageObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * {@link S3StorageBackend} 的测试，使用 {@link InProcessS3Server} 代替真实的S3服务：
+ * 分片上传与中止、Range读取、批量删除的错误处理以及列举时去除键前缀。
+ *
+ * @author Flechazo
+ */
+class S3StorageBackendTest {
+
+    private static final String BUCKET = "diary";
+    private static final String PREFIX = "app/";
+    private static final int MB = 1024 * 1024;
+
+    @TempDir
+    Path root;
+
+    private InProcessS3Server server;
+    private StorageConfig config;
+    private S3StorageBackend backend;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new InProcessS3Server(BUCKET);
+        config = new StorageConfig();
+        config.setRootPath(root.resolve("storage").toString());
+        StorageConfig.S3 s3 = config.getS3();
+        s3.setEndpoint(server.endpoint());
+        s3.setBucket(BUCKET);
+        s3.setPrefix(PREFIX);
+        s3.setAccessKey("test");
+        s3.setSecretKey("test");
+        s3.setMultipartThreshold(MB);
+        backend = new S3StorageBackend(config);
+    }
+
+    @AfterEach
+    void tearDown() {
+        backend.close();
+        server.close();
+    }
+
+    @Test
+    void storesObjectsUnderPrefix() throws IOException {
+        byte[] content = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+        backend.put("blobs/a.txt", new ByteArrayInputStream(content), content.length);
+
+        assertThat(server.object(PREFIX + "blobs/a.txt")).isEqualTo(content);
+        StorageObject object = backend.stat("blobs/a.txt");
+        assertThat(object.getKey()).isEqualTo("blobs/a.txt");
+        assertThat(object.getSize()).isEqualTo(content.length);
+        try (InputStream in = backend.get("blobs/a.txt")) {
+            assertThat(in.readAllBytes()).isEqualTo(content);
+        }
+    }
+
+    @Test
+    void readsRanges() throws IOException {
+        server.putObject(PREFIX + "a.txt", "0123456789".getBytes(StandardCharsets.US_ASCII));
+
+        try (InputStream in = backend.get("a.txt", 2, 4)) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.US_ASCII)).isEqualTo("2345");
+        }
+        try (InputStream in = backend.get("a.txt", 8, 100)) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.US_ASCII)).isEqualTo("89");
+        }
+        try (InputStream in = backend.get("a.txt", 3, 0)) {
+            assertThat(in.readAllBytes()).isEmpty();
+        }
+        assertThat(server.requests()).filteredOn("GetObject"::equals).hasSize(2);
+    }
+
+    @Test
+    void reportsMissingObjects() throws IOException {
+        assertThat(backend.stat("missing")).isNull();
+        assertThatThrownBy(() -> backend.get("missing")).isInstanceOf(NoSuchFileException.class);
+        assertThat(backend.move("missing", "target")).isFalse();
+    }
+
+    @Test
+    void uploadsLargeFilesInParts() throws IOException {
+        /* 分片大小低于S3的下限时按5MB分片 */
+        config.getS3().setPartSize(MB);
+        backend.close();
+        backend = new S3StorageBackend(config);
+        byte[] content = random(11 * MB);
+        Path source = root.resolve("large.bin");
+        Files.write(source, content);
+
+        backend.put("blobs/large.bin", source);
+
+        assertThat(server.object(PREFIX + "blobs/large.bin")).isEqualTo(content);
+        assertThat(server.requests()).filteredOn(request -> request.startsWith("UploadPart"))
+                .containsExactly("UploadPart 1", "UploadPart 2", "UploadPart 3");
+        assertThat(server.pendingUploads()).isZero();
+        assertThat(source).doesNotExist();
+    }
+
+    @Test
+    void abortsMultipartUploadWhenPartFails() throws IOException {
+        server.failingPart = 2;
+        Path source = root.resolve("large.bin");
+        Files.write(source, random(11 * MB));
+
+        assertThatThrownBy(() -> backend.put("blobs/large.bin", source)).isInstanceOf(IOException.class)
+                .hasMessageContaining("blobs/large.bin");
+
+        assertThat(server.requests()).contains("AbortMultipartUpload").doesNotContain("CompleteMultipartUpload");
+        assertThat(server.pendingUploads()).isZero();
+        assertThat(server.object(PREFIX + "blobs/large.bin")).isNull();
+        assertThat(source).exists();
+    }
+
+    @Test
+    void deletesInBatches() throws IOException {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            keys.add("blobs/" + i);
+            server.putObject(PREFIX + "blobs/" + i, new byte[1]);
+        }
+        server.putObject(PREFIX + "kept", new byte[1]);
+
+        backend.deleteAll(keys);
+
+        assertThat(server.requests()).filteredOn(request -> request.startsWith("DeleteObjects"))
+                .containsExactly("DeleteObjects 1000", "DeleteObjects 1000", "DeleteObjects 500");
+        assertThat(server.keys()).containsExactly(PREFIX + "kept");
+    }
+
+    @Test
+    void failsBatchDeleteWhenObjectsAreNotDeleted() {
+        server.putObject(PREFIX + "a", new byte[1]);
+        server.putObject(PREFIX + "b", new byte[1]);
+        server.deleteErrors.add(PREFIX + "b");
+
+        assertThatThrownBy(() -> backend.deleteAll(List.of("a", "b"))).isInstanceOf(IOException.class)
+                .hasMessageContaining("1 of 2")
+                .hasMessageContaining(PREFIX + "b")
+                .hasMessageContaining("AccessDenied");
+        assertThat(server.keys()).containsExactly(PREFIX + "b");
+    }
+
+    @Test
+    void listsAcrossPagesWithoutPrefix() throws IOException {
+        server.pageSize = 2;
+        for (String key : List.of("blobs/a", "blobs/b", "blobs/c", "blobs/d", "blobs/e", "users/1/avatar.jpg")) {
+            server.putObject(PREFIX + key, new byte[3]);
+        }
+        server.putObject("blobs/outside", new byte[3]);
+
+        try (Stream<StorageObject> objects = backend.list("blobs/")) {
+            assertThat(objects.map(StorageObject::getKey))
+                    .containsExactly("blobs/a", "blobs/b", "blobs/c", "blobs/d", "blobs/e");
+        }
+        assertThat(server.requests()).filteredOn("ListObjectsV2"::equals).hasSize(3);
+    }
+
+    @Test
+    void surfacesLaterPageFailuresAsUncheckedIOException() throws IOException {
+        server.pageSize = 2;
+        for (String key : List.of("blobs/a", "blobs/b", "blobs/c")) {
+            server.putObject(PREFIX + key, new byte[3]);
+        }
+        server.failLaterPages = true;
+
+        try (Stream<StorageObject> objects = backend.list("blobs/")) {
+            assertThatThrownBy(objects::toList).isInstanceOf(UncheckedIOException.class)
+                    .hasCauseInstanceOf(IOException.class)
+                    .hasMessageContaining("blobs/");
+        }
+    }
+
+    @Test
+    void movesWithServerSideCopy() throws IOException {
+        server.putObject(PREFIX + "staging/a", "abc".getBytes(StandardCharsets.US_ASCII));
+
+        assertThat(backend.move("staging/a", "blobs/a")).isTrue();
+
+        assertThat(server.keys()).containsExactly(PREFIX + "blobs/a");
+        assertThat(server.object(PREFIX + "blobs/a")).isEqualTo("abc".getBytes(StandardCharsets.US_ASCII));
+        assertThat(server.requests()).contains("CopyObject").doesNotContain("GetObject");
+    }
+
+    private static byte[] random(int size) {
+        byte[] content = new byte[size];
+        new Random(42).nextBytes(content);
+        return content;
+    }
+}
@@ -0,0 +1,259 @@
+package com.flechazo.jnyzdairy.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link FileResponseWriter} 的单元测试：Range解析与合并、条件请求以及multipart/byteranges输出。
+ *
+ * @author Flechazo
+ */
+class FileResponseWriterTest {
+
+    private static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.US_ASCII);
+    private static final long LAST_MODIFIED = 1_700_000_000_000L;
+    private static final String ETAG = "\"abc\"";
+
+    private final FileResponseWriter writer = new FileResponseWriter();
+
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @BeforeEach
+    void setUp() {
+        request = new MockHttpServletRequest("GET", "/api/files/1/a.txt");
+        response = new MockHttpServletResponse();
+    }
+
+    private void write() throws IOException {
+        writer.write(request, response, "a.txt", CONTENT.length, LAST_MODIFIED, "text/plain", ETAG, false,
+                (start, count, out) -> out.write(CONTENT, (int) start, (int) count));
+    }
+
+    private String body() throws IOException {
+        return response.getContentAsString(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    void writesFullContentWithoutRange() throws IOException {
+        write();
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getHeader(HttpHeaders.ACCEPT_RANGES)).isEqualTo("bytes");
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo(ETAG);
+        assertThat(response.getContentLengthLong()).isEqualTo(CONTENT.length);
+        assertThat(response.getContentAsByteArray()).isEqualTo(CONTENT);
+    }
+
+    @Test
+    void writesSingleRange() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+
+        write();
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 2-5/10");
+        assertThat(response.getContentLengthLong()).isEqualTo(4);
+        assertThat(body()).isEqualTo("2345");
+    }
+
+    @Test
+    void writesSuffixAndOpenEndedRanges() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=-3");
+        write();
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 7-9/10");
+        assertThat(body()).isEqualTo("789");
+
+        setUp();
+        request.addHeader(HttpHeaders.RANGE, "bytes=8-");
+        write();
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 8-9/10");
+        assertThat(body()).isEqualTo("89");
+    }
+
+    @Test
+    void clampsRangeEndToContentLength() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=5-100");
+
+        write();
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 5-9/10");
+        assertThat(body()).isEqualTo("56789");
+    }
+
+    @Test
+    void rejectsUnsatisfiableRange() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=20-30");
+
+        write();
+
+        assertThat(response.getStatus()).isEqualTo(416);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */10");
+        assertThat(response.getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    void ignoresMalformedOrUnsupportedRange() throws IOException {
+        for (String header : new String[]{"items=0-1", "bytes=abc", "bytes=5-2", "bytes=3"}) {
+            setUp();
+            request.addHeader(HttpHeaders.RANGE, header);
+
+            write();
+
+            assertThat(response.getStatus()).as(header).isEqualTo(200);
+            assertThat(response.getContentAsByteArray()).as(header).isEqualTo(CONTENT);
+        }
+    }
+
+    @Test
+    void ignoresTooManyRanges() throws IOException {
+        StringBuilder header = new StringBuilder("bytes=0-0");
+        for (int i = 1; i <= 16; i++) {
+            header.append(",").append(i % 10).append("-").append(i % 10);
+        }
+        request.addHeader(HttpHeaders.RANGE, header.toString());
+
+        write();
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsByteArray()).isEqualTo(CONTENT);
+    }
+
+    @Test
+    void mergesOverlappingAndAdjacentRanges() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=4-5,0-1,1-2,3-3");
+
+        write();
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 0-5/10");
+        assertThat(body()).isEqualTo("012345");
+    }
+
+    @Test
+    void answersDuplicateWholeRangesWithSingleFullResponse() throws IOException {
+        String[] specs = new String[16];
+        Arrays.fill(specs, "0-");
+        request.addHeader(HttpHeaders.RANGE, "bytes=" + String.join(",", specs));
+
+        write();
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentLengthLong()).isEqualTo(CONTENT.length);
+        assertThat(response.getContentAsByteArray()).isEqualTo(CONTENT);
+    }
+
+    @Test
+    void writesMultipleRangesAsMultipartByteranges() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=7-8,0-1");
+
+        write();
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        String contentType = response.getContentType();
+        assertThat(contentType).startsWith("multipart/byteranges; boundary=");
+        String boundary = contentType.substring(contentType.indexOf('=') + 1);
+        String expected = "\r\n--" + boundary + "\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "Content-Range: bytes 0-1/10\r\n\r\n"
+                + "01"
+                + "\r\n--" + boundary + "\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "Content-Range: bytes 7-8/10\r\n\r\n"
+                + "78"
+                + "\r\n--" + boundary + "--\r\n";
+        assertThat(body()).isEqualTo(expected);
+        assertThat(response.getContentLengthLong()).isEqualTo(expected.length());
+    }
+
+    @Test
+    void headRequestWritesHeadersOnly() throws IOException {
+        request.setMethod("HEAD");
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-1,5-6");
+
+        write();
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getContentLengthLong()).isPositive();
+        assertThat(response.getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    void returnsNotModifiedForMatchingIfNoneMatch() throws IOException {
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\", W/" + ETAG);
+
+        write();
+
+        assertThat(response.getStatus()).isEqualTo(304);
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo(ETAG);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    void ifNoneMatchTakesPrecedenceOverIfModifiedSince() throws IOException {
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\"");
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, LAST_MODIFIED + 60_000);
+
+        write();
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsByteArray()).isEqualTo(CONTENT);
+    }
+
+    @Test
+    void returnsNotModifiedForIfModifiedSince() throws IOException {
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, LAST_MODIFIED);
+        write();
+        assertThat(response.getStatus()).isEqualTo(304);
+
+        setUp();
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, LAST_MODIFIED - 1000);
+        write();
+        assertThat(response.getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void honoursRangeOnlyWhenIfRangeMatchesStrongly() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-1");
+        request.addHeader(HttpHeaders.IF_RANGE, ETAG);
+        write();
+        assertThat(response.getStatus()).isEqualTo(206);
+
+        setUp();
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-1");
+        request.addHeader(HttpHeaders.IF_RANGE, "\"other\"");
+        write();
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsByteArray()).isEqualTo(CONTENT);
+
+        setUp();
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-1");
+        request.addHeader(HttpHeaders.IF_RANGE, "W/" + ETAG);
+        write();
+        assertThat(response.getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void honoursRangeWhenIfRangeDateIsNotOlderThanLastModified() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-1");
+        request.addHeader(HttpHeaders.IF_RANGE, "Tue, 14 Nov 2023 22:13:20 GMT");
+        write();
+        assertThat(response.getStatus()).isEqualTo(206);
+
+        setUp();
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-1");
+        request.addHeader(HttpHeaders.IF_RANGE, "Tue, 14 Nov 2023 22:13:19 GMT");
+        write();
+        assertThat(response.getStatus()).isEqualTo(200);
+    }
+}
@@ -0,0 +1,211 @@
+package com.flechazo.jnyzdairy.util;
+
+import com.flechazo.jnyzdairy.config.ImageConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_Profile;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+/**
+ * {@link ImageOptimizer} 的单元测试：默认只无损地去除JPEG元数据并保留方向和ICC配置，
+ * 开启重新编码时有损副本带上原图的ICC配置。
+ *
+ * @author Flechazo
+ */
+class ImageOptimizerTest {
+
+    private static final byte[] ICC_SEGMENT = iccSegment();
+    private static final byte[] XMP_SEGMENT = concat("http://ns.adobe.com/xap/1.0/\0".getBytes(StandardCharsets.US_ASCII),
+            new byte[4000]);
+
+    @TempDir
+    Path root;
+
+    private final ImageConfig config = new ImageConfig();
+    private final ImageUtils imageUtils = mock(ImageUtils.class);
+    private ImageOptimizer optimizer;
+
+    @BeforeEach
+    void setUp() {
+        when(imageUtils.applyOrientation(any(), anyInt())).thenAnswer(invocation -> invocation.getArgument(0));
+        optimizer = new ImageOptimizer(config, new ImageCodec(config), imageUtils);
+    }
+
+    @Test
+    void stripsMetadataWithoutReencodingByDefault() throws IOException {
+        byte[] original = jpeg(List.of(
+                segment(0xE1, XMP_SEGMENT),
+                segment(0xE2, ICC_SEGMENT),
+                segment(0xFE, "comment".getBytes(StandardCharsets.US_ASCII))));
+        Path file = write(original);
+
+        assertThat(optimizer.optimize(file, "image/jpeg", 1)).isTrue();
+
+        byte[] optimized = Files.readAllBytes(file);
+        assertThat(optimized.length).isLessThan(original.length);
+        assertThat(markers(optimized)).doesNotContain(0xE1, 0xFE).contains(0xE0, 0xE2);
+        assertThat(payloads(optimized, 0xE2)).containsExactly(ICC_SEGMENT);
+        assertThat(scan(optimized)).isEqualTo(scan(original));
+        assertThat(ImageHeaderParser.readOrientation(optimized)).isEqualTo(1);
+        verifyNoInteractions(imageUtils);
+    }
+
+    @Test
+    void keepsOrientationInMinimalExif() throws IOException {
+        byte[] original = jpeg(List.of(segment(0xE1, exif(6, 4000))));
+        Path file = write(original);
+
+        assertThat(optimizer.optimize(file, "image/jpeg", 6)).isTrue();
+
+        byte[] optimized = Files.readAllBytes(file);
+        assertThat(optimized.length).isLessThan(original.length);
+        assertThat(markers(optimized)).startsWith(0xE0, 0xE1);
+        assertThat(ImageHeaderParser.readOrientation(optimized)).isEqualTo(6);
+        assertThat(scan(optimized)).isEqualTo(scan(original));
+        verifyNoInteractions(imageUtils);
+    }
+
+    @Test
+    void keepsFileWithoutRemovableMetadata() throws IOException {
+        byte[] original = jpeg(List.of());
+        Path file = write(original);
+
+        assertThat(optimizer.optimize(file, "image/jpeg", 1)).isFalse();
+
+        assertThat(Files.readAllBytes(file)).isEqualTo(original);
+    }
+
+    @Test
+    void reencodedCopyCarriesIccProfile() throws IOException {
+        config.getOptimize().setReencodeJpeg(true);
+        config.getOptimize().setJpegQuality(0.1f);
+        byte[] original = jpeg(List.of(segment(0xE2, ICC_SEGMENT)));
+        Path file = write(original);
+
+        assertThat(optimizer.optimize(file, "image/jpeg", 1)).isTrue();
+
+        byte[] optimized = Files.readAllBytes(file);
+        assertThat(scan(optimized)).isNotEqualTo(scan(original));
+        assertThat(markers(optimized)).startsWith(0xE0, 0xE2);
+        assertThat(payloads(optimized, 0xE2)).containsExactly(ICC_SEGMENT);
+        assertThat(ImageIO.read(file.toFile())).isNotNull();
+    }
+
+    private Path write(byte[] content) throws IOException {
+        Path file = root.resolve("image.jpg");
+        Files.write(file, content);
+        return file;
+    }
+
+    /**
+     * 编码一张噪点图片，并在JFIF段之后插入指定的段。
+     */
+    private static byte[] jpeg(List<byte[]> segments) throws IOException {
+        BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", encoded);
+        byte[] bytes = encoded.toByteArray();
+        assertThat(bytes[3] & 0xFF).isEqualTo(0xE0);
+
+        int offset = 4 + (((bytes[4] & 0xFF) << 8) | (bytes[5] & 0xFF));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(bytes, 0, offset);
+        for (byte[] segment : segments) {
+            out.write(segment);
+        }
+        out.write(bytes, offset, bytes.length - offset);
+        return out.toByteArray();
+    }
+
+    private static byte[] segment(int marker, byte[] payload) {
+        int length = payload.length + 2;
+        return concat(new byte[]{(byte) 0xFF, (byte) marker, (byte) (length >> 8), (byte) length}, payload);
+    }
+
+    /**
+     * 小端EXIF段，第0个IFD包含方向标签，之后填充指定字节数模拟缩略图等数据。
+     */
+    private static byte[] exif(int orientation, int padding) {
+        byte[] header = {
+                'E', 'x', 'i', 'f', 0, 0,
+                'I', 'I', 0x2A, 0, 8, 0, 0, 0,
+                1, 0,
+                0x12, 0x01, 3, 0, 1, 0, 0, 0, (byte) orientation, 0, 0, 0,
+                0, 0, 0, 0
+        };
+        return concat(header, new byte[padding]);
+    }
+
+    private static byte[] iccSegment() {
+        byte[] profile = ICC_Profile.getInstance(ColorSpace.CS_sRGB).getData();
+        return concat("ICC_PROFILE\0".getBytes(StandardCharsets.US_ASCII), new byte[]{1, 1}, profile);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 扫描开始段之前各段的标记。
+     */
+    private static List<Integer> markers(byte[] jpeg) {
+        List<Integer> markers = new ArrayList<>();
+        for (int offset = 2; (jpeg[offset + 1] & 0xFF) != 0xDA; offset += 2 + length(jpeg, offset)) {
+            markers.add(jpeg[offset + 1] & 0xFF);
+        }
+        return markers;
+    }
+
+    private static List<byte[]> payloads(byte[] jpeg, int marker) {
+        List<byte[]> payloads = new ArrayList<>();
+        for (int offset = 2; (jpeg[offset + 1] & 0xFF) != 0xDA; offset += 2 + length(jpeg, offset)) {
+            if ((jpeg[offset + 1] & 0xFF) == marker) {
+                payloads.add(Arrays.copyOfRange(jpeg, offset + 4, offset + 2 + length(jpeg, offset)));
+            }
+        }
+        return payloads;
+    }
+
+    /**
+     * 从扫描开始段到文件末尾的字节。
+     */
+    private static byte[] scan(byte[] jpeg) {
+        int offset = 2;
+        while ((jpeg[offset + 1] & 0xFF) != 0xDA) {
+            offset += 2 + length(jpeg, offset);
+        }
+        return Arrays.copyOfRange(jpeg, offset, jpeg.length);
+    }
+
+    private static int length(byte[] jpeg, int offset) {
+        return ((jpeg[offset + 2] & 0xFF) << 8) | (jpeg[offset + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,115 @@
+package com.flechazo.jnyzdairy.util;
+
+import net.coobird.thumbnailator.Thumbnails;
+import net.coobird.thumbnailator.geometry.Positions;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 水印合成性能对比：Thumbnailator水印（原有实现）、Java2D合成、标量像素合成与Vector API像素合成。
+ * <p>
+ * 目标图片为4032x3024的手机照片尺寸，水印图层为带半透明像素的ARGB图层。
+ * 运行方式：直接执行 {@link #main(String[])}，或通过JMH命令行运行；向量实现需要以 {@code -Pvector} 构建。
+ *
+ * @author Flechazo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class WatermarkCompositingBenchmark {
+
+    @Param({"256", "1024"})
+    private int overlaySize;
+
+    private BufferedImage photo;
+    private BufferedImage target;
+    private BufferedImage overlay;
+    private AlphaCompositor scalar;
+    private AlphaCompositor vector;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        photo = new BufferedImage(4032, 3024, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) photo.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt() | 0xFF000000;
+        }
+
+        overlay = new BufferedImage(overlaySize, overlaySize / 4, BufferedImage.TYPE_INT_ARGB);
+        int[] overlayPixels = ((DataBufferInt) overlay.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < overlayPixels.length; i++) {
+            /* 模拟文字水印：大部分像素透明，其余半透明 */
+            overlayPixels[i] = random.nextInt(4) == 0 ? 0x80FFFFFF : 0;
+        }
+
+        target = new BufferedImage(photo.getWidth(), photo.getHeight(), BufferedImage.TYPE_INT_RGB);
+        scalar = new ScalarAlphaCompositor();
+        /* 只有以vector配置构建时才包含向量实现 */
+        vector = WatermarkEngine.createVectorCompositor();
+    }
+
+    @Setup(Level.Invocation)
+    public void resetTarget() {
+        photo.copyData(target.getRaster());
+    }
+
+    @Benchmark
+    public BufferedImage thumbnailator() throws IOException {
+        return Thumbnails.of(target)
+                .scale(1.0)
+                .watermark(Positions.BOTTOM_RIGHT, overlay, 1.0f)
+                .asBufferedImage();
+    }
+
+    @Benchmark
+    public BufferedImage java2d() {
+        Graphics2D graphics = target.createGraphics();
+        graphics.setComposite(AlphaComposite.SrcOver);
+        graphics.drawImage(overlay, target.getWidth() - overlay.getWidth(),
+                target.getHeight() - overlay.getHeight(), null);
+        graphics.dispose();
+        return target;
+    }
+
+    @Benchmark
+    public BufferedImage scalar() {
+        return blend(scalar);
+    }
+
+    @Benchmark
+    public BufferedImage vector() {
+        if (vector == null) {
+            throw new IllegalStateException("Vector alpha compositor unavailable, build with -Pvector");
+        }
+        return blend(vector);
+    }
+
+    private BufferedImage blend(AlphaCompositor compositor) {
+        int[] dst = ((DataBufferInt) target.getRaster().getDataBuffer()).getData();
+        int[] src = ((DataBufferInt) overlay.getRaster().getDataBuffer()).getData();
+        int x = target.getWidth() - overlay.getWidth();
+        int y = target.getHeight() - overlay.getHeight();
+        compositor.blend(dst, y * target.getWidth() + x, target.getWidth(),
+                src, 0, overlay.getWidth(), overlay.getWidth(), overlay.getHeight());
+        return target;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(WatermarkCompositingBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}